@@ -0,0 +1,85 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.ERROR;
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.SUCCESS;
+
+/**
+ * Measures concurrent writes and reads of site results in {@link ResultService}.
+ * <p>
+ * Writers report one site result after another to a query until all sites reported, then move on to the next query.
+ * Readers concurrently poll the aggregate of the query currently being written to and of an already completed query.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultServiceBenchmark {
+
+  private static final long COMPLETED_QUERY_ID = 0L;
+
+  @Param({"40", "80"})
+  private int sites;
+
+  private ResultService resultService;
+  private ResultLine[] resultLines;
+  private final AtomicLong currentQueryId = new AtomicLong(1);
+
+  @Setup
+  public void setUp() {
+    resultService = new ResultService(new InMemoryResultStore(Duration.ofMinutes(5)),
+        PeriodDuration.of(Duration.ofMinutes(5)), null, null);
+    resultLines = new ResultLine[sites];
+    for (int i = 0; i < sites; i++) {
+      resultLines[i] = ResultLine.builder()
+          .siteName("site-" + i)
+          .type(i % 10 == 0 ? ERROR : SUCCESS)
+          .result(i * 17L)
+          .build();
+      resultService.addResultLine(COMPLETED_QUERY_ID, resultLines[i]);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class WriterState {
+    private int nextSite;
+    private long queryId = -1;
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(2)
+  public void addResultLine(WriterState writerState) {
+    if (writerState.queryId < 0 || writerState.nextSite == sites) {
+      writerState.queryId = currentQueryId.incrementAndGet();
+      writerState.nextSite = 0;
+    }
+    resultService.addResultLine(writerState.queryId, resultLines[writerState.nextSite++]);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(6)
+  public void readCurrentQuery(Blackhole blackhole) {
+    var resultAggregate = resultService.findAggregateByQuery(currentQueryId.get());
+    blackhole.consume(resultAggregate.totalNumberOfPatients());
+    blackhole.consume(resultAggregate.successfulResults());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void readCompletedQuery(Blackhole blackhole) {
+    var resultAggregate = resultService.findAggregateByQuery(COMPLETED_QUERY_ID);
+    blackhole.consume(resultAggregate.totalNumberOfPatients());
+    blackhole.consume(resultAggregate.successfulResults());
+  }
+}
@@ -0,0 +1,44 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
+import de.numcodex.sq2cql.model.structured_query.StructuredQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting a {@link Ccdl} into the structured query model of sq2cql via an intermediate JSON string with
+ * the conversion via a token buffer used by {@link CqlQueryTranslator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CcdlConversionBenchmark {
+
+  @Param({"50", "100", "200"})
+  private int criteria;
+
+  private ObjectMapper jsonUtil;
+  private Ccdl ccdl;
+
+  @Setup
+  public void setUp() {
+    jsonUtil = QueryTranslatorSpringConfig.translationObjectMapper();
+    ccdl = CcdlFixtures.mixed(criteria);
+  }
+
+  @Benchmark
+  public StructuredQuery jsonStringRoundTrip() throws JsonProcessingException {
+    return jsonUtil.readValue(jsonUtil.writeValueAsString(ccdl), StructuredQuery.class);
+  }
+
+  @Benchmark
+  public StructuredQuery tokenBuffer() throws QueryTranslationException {
+    return CqlQueryTranslator.toStructuredQuery(jsonUtil, ccdl);
+  }
+}
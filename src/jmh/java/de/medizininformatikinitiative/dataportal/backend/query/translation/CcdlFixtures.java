@@ -0,0 +1,159 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
+import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
+import de.medizininformatikinitiative.dataportal.backend.common.api.Unit;
+import de.medizininformatikinitiative.dataportal.backend.query.api.AttributeFilter;
+import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
+import de.medizininformatikinitiative.dataportal.backend.query.api.TimeRestriction;
+import de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.medizininformatikinitiative.dataportal.backend.common.api.Comparator.GREATER_EQUAL;
+import static de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilterType.CONCEPT;
+import static de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilterType.QUANTITY_COMPARATOR;
+
+/**
+ * Builds {@link Ccdl CCDLs} of configurable size resembling the ones created by users of the UI.
+ */
+final class CcdlFixtures {
+
+  static final URI VERSION = URI.create("http://to_be_decided.com/draft-2/schema#");
+
+  private static final TermCode LABORATORY_CONTEXT = termCode("Laboruntersuchung", "fdpg.mii.cds",
+      "Laboruntersuchung");
+  private static final TermCode DIAGNOSIS_CONTEXT = termCode("Diagnose", "fdpg.mii.cds", "Diagnose");
+  private static final TermCode VERIFICATION_STATUS = termCode("verificationStatus",
+      "http://hl7.org/fhir/StructureDefinition", "Status");
+  private static final Unit UNIT = Unit.builder().code("mg/dL").display("mg/dL").build();
+
+  private CcdlFixtures() {
+  }
+
+  /**
+   * Creates a CCDL with the given number of criteria spread over inclusion and exclusion criteria. The criteria
+   * alternate between plain diagnoses, laboratory values with quantity filters, diagnoses with attribute filters and
+   * criteria with time restrictions, each group being combined by OR with up to three other criteria.
+   *
+   * @param criteria the total number of criteria of the CCDL
+   * @return the CCDL
+   */
+  static Ccdl mixed(int criteria) {
+    var inclusionCriteria = new ArrayList<List<Criterion>>();
+    var exclusionCriteria = new ArrayList<List<Criterion>>();
+    var group = new ArrayList<Criterion>();
+
+    for (int i = 0; i < criteria; i++) {
+      group.add(criterion(i));
+      if (group.size() == 4 || i == criteria - 1) {
+        (i % 5 == 0 ? exclusionCriteria : inclusionCriteria).add(List.copyOf(group));
+        group.clear();
+      }
+    }
+
+    return Ccdl.builder()
+        .version(VERSION)
+        .display("Generated CCDL with %d criteria".formatted(criteria))
+        .inclusionCriteria(inclusionCriteria)
+        .exclusionCriteria(exclusionCriteria)
+        .build();
+  }
+
+  static Criterion criterion(int i) {
+    return switch (i % 4) {
+      case 0 -> diagnosis(i);
+      case 1 -> laboratoryValue(i);
+      case 2 -> diagnosisWithAttributeFilter(i);
+      default -> withTimeRestriction(diagnosis(i));
+    };
+  }
+
+  static Criterion diagnosis(int i) {
+    return criterion(DIAGNOSIS_CONTEXT, termCode("I%02d.%d".formatted(i % 100, i % 10),
+        "http://fhir.de/CodeSystem/bfarm/icd-10-gm", "Diagnosis " + i));
+  }
+
+  static Criterion laboratoryValue(int i) {
+    return withQuantityFilter(criterion(LABORATORY_CONTEXT, termCode("%d-%d".formatted(1000 + i, i % 10),
+        "http://loinc.org", "Laboratory value " + i)), 10.0 + i);
+  }
+
+  static Criterion diagnosisWithAttributeFilter(int i) {
+    return withAttributeFilter(diagnosis(i), VERIFICATION_STATUS);
+  }
+
+  /**
+   * Creates a criterion without any filters.
+   *
+   * @param context  the context of the criterion, may be {@code null}
+   * @param termCode the term code of the criterion
+   * @return the criterion
+   */
+  static Criterion criterion(TermCode context, TermCode termCode) {
+    return Criterion.builder()
+        .context(context)
+        .termCodes(List.of(termCode))
+        .build();
+  }
+
+  /**
+   * Adds a filter for quantities in mg/dL greater or equal to the given value to the criterion.
+   */
+  static Criterion withQuantityFilter(Criterion criterion, double value) {
+    return copyOf(criterion)
+        .valueFilter(ValueFilter.builder()
+            .type(QUANTITY_COMPARATOR)
+            .comparator(GREATER_EQUAL)
+            .quantityUnit(UNIT)
+            .value(value)
+            .build())
+        .build();
+  }
+
+  /**
+   * Adds a filter selecting confirmed concepts of the given attribute to the criterion.
+   */
+  static Criterion withAttributeFilter(Criterion criterion, TermCode attributeCode) {
+    return copyOf(criterion)
+        .attributeFilters(List.of(AttributeFilter.builder()
+            .type(CONCEPT)
+            .attributeCode(attributeCode)
+            .selectedConcepts(List.of(termCode("confirmed",
+                "http://terminology.hl7.org/CodeSystem/condition-ver-status", "confirmed")))
+            .build()))
+        .build();
+  }
+
+  /**
+   * Restricts the criterion to the years 2020 to 2024.
+   */
+  static Criterion withTimeRestriction(Criterion criterion) {
+    return copyOf(criterion)
+        .timeRestriction(TimeRestriction.builder()
+            .afterDate("2020-01-01")
+            .beforeDate("2024-12-31")
+            .build())
+        .build();
+  }
+
+  private static Criterion.CriterionBuilder copyOf(Criterion criterion) {
+    return Criterion.builder()
+        .context(criterion.context())
+        .termCodes(criterion.termCodes())
+        .attributeFilters(criterion.attributeFilters())
+        .valueFilter(criterion.valueFilter())
+        .timeRestriction(criterion.timeRestriction());
+  }
+
+  private static TermCode termCode(String code, String system, String display) {
+    return TermCode.builder()
+        .code(code)
+        .system(system)
+        .version("1.0.0")
+        .display(display)
+        .build();
+  }
+}
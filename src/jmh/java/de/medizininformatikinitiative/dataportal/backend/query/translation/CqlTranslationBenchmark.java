@@ -0,0 +1,59 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
+import de.medizininformatikinitiative.dataportal.backend.query.translation.OntologyCcdlFixtures.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the translation of {@link Ccdl CCDLs} of different shapes into CQL by {@link CqlQueryTranslator}.
+ * <p>
+ * The sq2cql translator is built exactly like the application does from the ontology files referenced by the
+ * environment variables {@code MAPPINGS_FILE} and {@code CONCEPT_TREE_FILE}, defaulting to the files downloaded by the
+ * maven profile "download-ontology". All criteria of the translated CCDLs are taken from the mapping file, so
+ * translation cost grows with the ontology just like in production.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CqlTranslationBenchmark {
+
+  @Param
+  private Shape shape;
+
+  @Param({"10", "50"})
+  private int criteria;
+
+  private CqlQueryTranslator cqlQueryTranslator;
+  private Ccdl ccdl;
+
+  @Setup
+  public void setUp() throws IOException, QueryTranslationException {
+    var jsonUtil = QueryTranslatorSpringConfig.translationObjectMapper();
+    var mappingsFile = new File(environmentOrDefault("MAPPINGS_FILE", "ontology/mapping_cql.json"));
+    var conceptTreeFile = new File(environmentOrDefault("CONCEPT_TREE_FILE", "ontology/mapping_tree.json"));
+
+    cqlQueryTranslator = new CqlQueryTranslator(
+        QueryTranslatorSpringConfig.createCqlTranslator(jsonUtil, mappingsFile, conceptTreeFile), jsonUtil);
+    ccdl = OntologyCcdlFixtures.fromMappingsFile(jsonUtil, mappingsFile).create(shape, criteria);
+
+    // Fail fast instead of measuring the cost of exceptions.
+    cqlQueryTranslator.translate(ccdl);
+  }
+
+  private static String environmentOrDefault(String name, String defaultValue) {
+    return Optional.ofNullable(System.getenv(name)).orElse(defaultValue);
+  }
+
+  @Benchmark
+  public String translate() throws QueryTranslationException {
+    return cqlQueryTranslator.translate(ccdl);
+  }
+}
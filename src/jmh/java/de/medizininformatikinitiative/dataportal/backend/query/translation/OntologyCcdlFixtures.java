@@ -0,0 +1,169 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
+import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
+import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.StreamSupport;
+
+/**
+ * Builds {@link Ccdl CCDLs} of different shapes from the entries of a CQL mapping file, so that every criterion of the
+ * generated CCDLs can actually be translated. Only the term codes are taken from the mapping file, the criteria are
+ * built by {@link CcdlFixtures}.
+ */
+final class OntologyCcdlFixtures {
+
+  /**
+   * The shapes of generated CCDLs.
+   */
+  enum Shape {
+    /**
+     * A single group of plain criteria combined by OR.
+     */
+    WIDE_OR_GROUP,
+    /**
+     * A single inclusion criterion with many groups of exclusion criteria, each group combining two criteria by AND.
+     */
+    DEEP_EXCLUSION,
+    /**
+     * Criteria combined by AND, each of them having either a value filter or an attribute filter.
+     */
+    VALUE_AND_ATTRIBUTE_FILTERS,
+    /**
+     * Criteria combined by AND, each of them restricted to a time range.
+     */
+    TIME_RESTRICTIONS
+  }
+
+  private final List<JsonNode> mappings;
+
+  private OntologyCcdlFixtures(List<JsonNode> mappings) {
+    this.mappings = mappings;
+  }
+
+  /**
+   * Reads the entries of the given CQL mapping file.
+   *
+   * @param jsonUtil     the object mapper to read the mapping file with
+   * @param mappingsFile the CQL mapping file, e.g. {@code mapping_cql.json}
+   * @return fixtures backed by the mapping entries
+   * @throws IOException if the mapping file can't be read
+   */
+  static OntologyCcdlFixtures fromMappingsFile(ObjectMapper jsonUtil, File mappingsFile) throws IOException {
+    var mappings = StreamSupport.stream(jsonUtil.readTree(mappingsFile).spliterator(), false)
+        .filter(mapping -> mapping.path("key").has("termCode"))
+        .toList();
+    if (mappings.isEmpty()) {
+      throw new IllegalArgumentException("mapping file '%s' contains no mappings".formatted(mappingsFile));
+    }
+    return new OntologyCcdlFixtures(mappings);
+  }
+
+  /**
+   * Creates a CCDL of the given shape.
+   *
+   * @param shape    the shape of the CCDL
+   * @param criteria the total number of criteria of the CCDL
+   * @return the CCDL
+   */
+  Ccdl create(Shape shape, int criteria) {
+    var ccdl = Ccdl.builder()
+        .version(CcdlFixtures.VERSION)
+        .display("%s with %d criteria".formatted(shape, criteria));
+
+    return switch (shape) {
+      case WIDE_OR_GROUP -> ccdl
+          .inclusionCriteria(List.of(criteria(criteria, mapping -> true, OntologyCcdlFixtures::plainCriterion)))
+          .build();
+      case DEEP_EXCLUSION -> {
+        var exclusionCriteria = criteria(criteria - 1, mapping -> true, OntologyCcdlFixtures::plainCriterion);
+        var exclusionGroups = new ArrayList<List<Criterion>>();
+        for (int i = 0; i < exclusionCriteria.size(); i += 2) {
+          exclusionGroups.add(exclusionCriteria.subList(i, Math.min(i + 2, exclusionCriteria.size())));
+        }
+        yield ccdl
+            .inclusionCriteria(List.of(criteria(1, mapping -> true, OntologyCcdlFixtures::plainCriterion)))
+            .exclusionCriteria(exclusionGroups)
+            .build();
+      }
+      case VALUE_AND_ATTRIBUTE_FILTERS -> ccdl
+          .inclusionCriteria(andCombined(criteria(criteria,
+              mapping -> isQuantityMapping(mapping) || firstCodingAttribute(mapping) != null,
+              OntologyCcdlFixtures::filteredCriterion)))
+          .build();
+      case TIME_RESTRICTIONS -> ccdl
+          .inclusionCriteria(andCombined(criteria(criteria, mapping -> mapping.has("timeRestrictionFhirPath"),
+              OntologyCcdlFixtures::timeRestrictedCriterion)))
+          .build();
+    };
+  }
+
+  private List<Criterion> criteria(int count, Predicate<JsonNode> mappingFilter,
+                                   Function<JsonNode, Criterion> criterionFactory) {
+    var matchingMappings = mappings.stream().filter(mappingFilter).toList();
+    if (matchingMappings.isEmpty()) {
+      throw new IllegalArgumentException("mapping file contains no mappings suitable for the requested shape");
+    }
+
+    var criteria = new ArrayList<Criterion>(count);
+    for (int i = 0; i < count; i++) {
+      // Spread the criteria evenly over all suitable mappings to mirror queries touching many different modules.
+      criteria.add(criterionFactory.apply(matchingMappings.get((int) ((long) i * matchingMappings.size() / count))));
+    }
+    return criteria;
+  }
+
+  private static List<List<Criterion>> andCombined(List<Criterion> criteria) {
+    return criteria.stream().map(List::of).toList();
+  }
+
+  private static Criterion plainCriterion(JsonNode mapping) {
+    var key = mapping.path("key");
+    return CcdlFixtures.criterion(key.has("context") ? termCode(key.path("context")) : null,
+        termCode(key.path("termCode")));
+  }
+
+  private static Criterion filteredCriterion(JsonNode mapping) {
+    if (isQuantityMapping(mapping)) {
+      return CcdlFixtures.withQuantityFilter(plainCriterion(mapping), 10.0);
+    }
+    var attributeCode = termCode(firstCodingAttribute(mapping).path("attributeKey"));
+    return CcdlFixtures.withAttributeFilter(plainCriterion(mapping), attributeCode);
+  }
+
+  private static Criterion timeRestrictedCriterion(JsonNode mapping) {
+    return CcdlFixtures.withTimeRestriction(plainCriterion(mapping));
+  }
+
+  private static boolean isQuantityMapping(JsonNode mapping) {
+    return "quantity".equalsIgnoreCase(mapping.path("valueType").asText());
+  }
+
+  private static JsonNode firstCodingAttribute(JsonNode mapping) {
+    for (var attribute : mapping.path("attributeFhirPaths")) {
+      var attributeType = attribute.path("attributeType").asText();
+      if (attribute.has("attributeKey")
+          && ("coding".equalsIgnoreCase(attributeType) || "code".equalsIgnoreCase(attributeType))) {
+        return attribute;
+      }
+    }
+    return null;
+  }
+
+  private static TermCode termCode(JsonNode termCode) {
+    return TermCode.builder()
+        .code(termCode.path("code").asText())
+        .system(termCode.path("system").asText())
+        .version(termCode.hasNonNull("version") ? termCode.path("version").asText() : null)
+        .display(termCode.path("display").asText())
+        .build();
+  }
+}
@@ -0,0 +1,185 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of the ontology search ranking available entries first by a {@code function_score} script with
+ * the ranking by a boosted should-clause used by {@link TerminologyEsService}.
+ * <p>
+ * The index is created with the mapping of the ontology and filled with copies of the ontology test data, every tenth
+ * of them being available. Sample time mode reports the p50 and p99 latencies of both query forms.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OntologySearchScoringBenchmark {
+
+  private static final int BULK_SIZE = 5_000;
+  private static final int PAGE_SIZE = 20;
+  private static final List<String> KEYWORDS = List.of("Blutdr", "Diagnose", "Haut", "R03", "");
+
+  @Param({"100000"})
+  private int documents;
+
+  private final ObjectMapper jsonUtil = new ObjectMapper();
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private ElasticsearchContainer elasticsearch;
+  private URI searchUri;
+  private List<String> shouldBoostQueries;
+  private List<String> scriptScoreQueries;
+  private int nextKeyword;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InterruptedException {
+    elasticsearch = new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch:9.1.4")
+        .withEnv("discovery.type", "single-node")
+        .withEnv("xpack.security.enabled", "false");
+    elasticsearch.start();
+
+    var baseUri = "http://" + elasticsearch.getHttpHostAddress() + "/ontology";
+    send(HttpRequest.newBuilder(URI.create(baseUri))
+        .PUT(HttpRequest.BodyPublishers.ofByteArray(readResource("ontology.json"))));
+    indexDocuments(URI.create(baseUri + "/_bulk"));
+    send(HttpRequest.newBuilder(URI.create(baseUri + "/_refresh")).POST(HttpRequest.BodyPublishers.noBody()));
+
+    searchUri = URI.create(baseUri + "/_search");
+    shouldBoostQueries = KEYWORDS.stream().map(this::shouldBoostQuery).toList();
+    scriptScoreQueries = KEYWORDS.stream().map(this::scriptScoreQuery).toList();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    elasticsearch.stop();
+  }
+
+  @Benchmark
+  public String shouldBoost() throws IOException, InterruptedException {
+    return search(shouldBoostQueries);
+  }
+
+  @Benchmark
+  public String scriptScore() throws IOException, InterruptedException {
+    return search(scriptScoreQueries);
+  }
+
+  private String search(List<String> queries) throws IOException, InterruptedException {
+    var query = queries.get(nextKeyword++ % queries.size());
+    return send(HttpRequest.newBuilder(searchUri).POST(HttpRequest.BodyPublishers.ofString(query)));
+  }
+
+  private String shouldBoostQuery(String keyword) {
+    var query = TerminologyEsService.createOntologySearchQuery(keyword, List.of(), false);
+    return searchBody(JsonpUtils.toJsonString(query, new JacksonJsonpMapper()));
+  }
+
+  /**
+   * The query of the ontology search as it was before ranking available entries by a should-clause.
+   */
+  private String scriptScoreQuery(String keyword) {
+    var boolQuery = keyword.isEmpty()
+        ? "{\"bool\":{\"filter\":[]}}"
+        : """
+        {"bool":{"filter":[],"must":[{"multi_match":{"query":%s,"fields":["%s","%s","%s","%s"]}}]}}"""
+        .formatted(toJson(keyword), TerminologyEsService.FIELD_NAME_DISPLAY_DE,
+            TerminologyEsService.FIELD_NAME_DISPLAY_EN, TerminologyEsService.FIELD_NAME_TERMCODE_WITH_BOOST,
+            TerminologyEsService.FIELD_NAME_DISPLAY_ORIGINAL_WITH_BOOST);
+    return searchBody("""
+        {"function_score":{"query":%s,"functions":[{"script_score":{"script":{"source":\
+        "doc['availability'].value == 0 ? _score : _score + 100"}}}],"boost_mode":"replace"}}"""
+        .formatted(boolQuery));
+  }
+
+  private String searchBody(String query) {
+    return "{\"size\":%d,\"query\":%s}".formatted(PAGE_SIZE, query);
+  }
+
+  private String toJson(String value) {
+    try {
+      return jsonUtil.writeValueAsString(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void indexDocuments(URI bulkUri) throws IOException, InterruptedException {
+    var fixtures = readFixtureDocuments();
+    var bulk = new StringBuilder();
+    for (int i = 0; i < documents; i++) {
+      var document = (ObjectNode) fixtures.get(i % fixtures.size()).deepCopy();
+      document.put("availability", i % 10 == 0 ? i : 0);
+      bulk.append("{\"index\":{\"_id\":\"").append(UUID.randomUUID()).append("\"}}\n")
+          .append(jsonUtil.writeValueAsString(document)).append('\n');
+      if ((i + 1) % BULK_SIZE == 0 || i + 1 == documents) {
+        send(HttpRequest.newBuilder(bulkUri)
+            .header("Content-Type", "application/x-ndjson")
+            .POST(HttpRequest.BodyPublishers.ofString(bulk.toString())).build());
+        bulk.setLength(0);
+      }
+    }
+  }
+
+  private List<JsonNode> readFixtureDocuments() throws IOException {
+    var fixtures = new ArrayList<JsonNode>();
+    try (var reader = new BufferedReader(new InputStreamReader(openResource("ontology_testdata.json"),
+        StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        var node = line.isBlank() ? null : jsonUtil.readTree(line);
+        if (node != null && !node.has("index")) {
+          fixtures.add(node);
+        }
+      }
+    }
+    return fixtures;
+  }
+
+  private String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+    return send(request.header("Content-Type", "application/json").build());
+  }
+
+  private String send(HttpRequest request) throws IOException, InterruptedException {
+    var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() >= 300) {
+      throw new IllegalStateException("Elasticsearch responded with status %d: %s"
+          .formatted(response.statusCode(), response.body()));
+    }
+    return response.body();
+  }
+
+  private byte[] readResource(String name) throws IOException {
+    try (var in = openResource(name)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private InputStream openResource(String name) {
+    var in = OntologySearchScoringBenchmark.class.getResourceAsStream(name);
+    if (in == null) {
+      throw new IllegalStateException("Missing resource " + name);
+    }
+    return in;
+  }
+}
@@ -47,6 +47,7 @@ public class WebSecurityConfig {
   public static final String PATH_CCDL = "/ccdl";
   public static final String PATH_CRTDL = "/crtdl";
   public static final String PATH_SUMMARY_RESULT = "/summary-result";
+  public static final String PATH_SUMMARY_RESULT_STREAM = "/summary-result/stream";
   public static final String PATH_DETAILED_OBFUSCATED_RESULT = "/detailed-obfuscated-result";
   public static final String PATH_DETAILED_RESULT = "/detailed-result";
   public static final String PATH_TERMINOLOGY = "/terminology";
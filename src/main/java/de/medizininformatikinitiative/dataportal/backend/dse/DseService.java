@@ -5,18 +5,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfileTreeNode;
 import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfileRepository;
+import de.medizininformatikinitiative.dataportal.backend.terminology.OntologyVersion;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Provides the DSE profile tree and the DSE profiles of the ontology.
+ * <p>
+ * All DSE profiles are parsed and indexed once at startup and kept in memory. They are reloaded as a whole as soon as
+ * the ontology version changes.
+ */
 @Service
 @Slf4j
 public class DseService {
@@ -28,12 +38,19 @@ public class DseService {
 
   private final ObjectMapper objectMapper;
 
+  private final OntologyVersion ontologyVersion;
+
+  private volatile LoadedProfiles loadedProfiles;
+
   public DseService(@Value("${app.dseProfileTreeFile}") String dseProfileTreeFilename,
                     DseProfileRepository dseProfileRepository,
-                    ObjectMapper objectMapper) throws IOException {
+                    ObjectMapper objectMapper,
+                    OntologyVersion ontologyVersion) throws IOException {
     this.dseProfileRepository = dseProfileRepository;
     this.objectMapper = objectMapper;
+    this.ontologyVersion = ontologyVersion;
     this.profileTree = readProfileTree(dseProfileTreeFilename);
+    this.loadedProfiles = loadProfiles(ontologyVersion.get());
   }
 
   public DseProfileTreeNode readProfileTree(String dseProfileTreeFilename) throws IOException {
@@ -42,30 +59,83 @@ public class DseService {
   }
 
   public List<DseProfile> getProfileData(List<String> profileIds) {
-    var results = new ArrayList<DseProfile>();
+    var profiles = getIndexedProfiles(profileIds);
+    return profileIds.stream().map(profileId -> profiles.get(profileId).profile()).toList();
+  }
 
-    for (String profileId : profileIds) {
-      Optional<de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfile> dseProfile;
-      try {
-        dseProfile = dseProfileRepository.findByUrl(profileId);
-      } catch (DataIntegrityViolationException e) {
-        dseProfile = Optional.empty();
+  /**
+   * Gets the indexed DSE profiles with the given URLs.
+   * <p>
+   * Unknown URLs are mapped to a profile only carrying an error code and cause.
+   *
+   * @param profileUrls the URLs of the DSE profiles
+   * @return the indexed DSE profiles mapped to their URL, in the order of {@code profileUrls}
+   */
+  public Map<String, IndexedDseProfile> getIndexedProfiles(Collection<String> profileUrls) {
+    var profiles = currentProfiles();
+    var results = new LinkedHashMap<String, IndexedDseProfile>();
+    for (String profileUrl : profileUrls) {
+      var invalidProfile = profiles.invalidProfilesByUrl().get(profileUrl);
+      if (invalidProfile != null) {
+        throw new RuntimeException(invalidProfile);
+      }
+      results.computeIfAbsent(profileUrl, url -> Objects.requireNonNullElseGet(profiles.profilesByUrl().get(url),
+          () -> IndexedDseProfile.of(DseProfile.builder()
+              .url(url)
+              .errorCode("TBD-00000")
+              .errorCause("profile not found")
+              .build())));
+    }
+    return results;
+  }
+
+  private LoadedProfiles currentProfiles() {
+    var version = ontologyVersion.get();
+    var profiles = loadedProfiles;
+    if (!Objects.equals(profiles.ontologyVersion(), version)) {
+      synchronized (this) {
+        profiles = loadedProfiles;
+        if (!Objects.equals(profiles.ontologyVersion(), version)) {
+          try {
+            profiles = loadProfiles(version);
+            loadedProfiles = profiles;
+          } catch (DataAccessException e) {
+            log.warn("Could not reload DSE profiles for ontology version '{}', keeping version '{}'", version,
+                profiles.ontologyVersion(), e);
+          }
+        }
       }
-      if (dseProfile.isPresent()) {
-        try {
-          results.add(objectMapper.readValue(dseProfile.get().getEntry(), DseProfile.class));
-        } catch (JsonProcessingException e) {
-          throw new RuntimeException(e);
+    }
+    return profiles;
+  }
+
+  private LoadedProfiles loadProfiles(String version) {
+    var profilesByUrl = new HashMap<String, IndexedDseProfile>();
+    var invalidProfilesByUrl = new HashMap<String, JsonProcessingException>();
+    for (var dseProfile : dseProfileRepository.findAll()) {
+      try {
+        var profile = IndexedDseProfile.of(objectMapper.readValue(dseProfile.getEntry(), DseProfile.class));
+        if (profilesByUrl.putIfAbsent(dseProfile.getUrl(), profile) != null) {
+          log.warn("Found multiple DSE profiles with url '{}', using the first one", dseProfile.getUrl());
         }
-      } else {
-        results.add(DseProfile.builder()
-            .url(profileId)
-            .errorCode("TBD-00000")
-            .errorCause("profile not found")
-            .build());
+      } catch (JsonProcessingException e) {
+        log.error("Could not parse DSE profile with url '{}'", dseProfile.getUrl(), e);
+        invalidProfilesByUrl.put(dseProfile.getUrl(), e);
       }
     }
+    log.info("Loaded {} DSE profiles for ontology version '{}'", profilesByUrl.size(), version);
+    return new LoadedProfiles(version, Map.copyOf(profilesByUrl), Map.copyOf(invalidProfilesByUrl));
+  }
 
-    return results;
+  /**
+   * All DSE profiles of a single ontology version.
+   *
+   * @param ontologyVersion      the ontology version the profiles were loaded for
+   * @param profilesByUrl        the parsed and indexed profiles by their URL
+   * @param invalidProfilesByUrl the parse errors of profiles that could not be parsed by their URL
+   */
+  private record LoadedProfiles(String ontologyVersion,
+                                Map<String, IndexedDseProfile> profilesByUrl,
+                                Map<String, JsonProcessingException> invalidProfilesByUrl) {
   }
 }
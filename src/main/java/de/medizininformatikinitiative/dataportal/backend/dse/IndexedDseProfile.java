@@ -0,0 +1,94 @@
+package de.medizininformatikinitiative.dataportal.backend.dse;
+
+import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
+import de.medizininformatikinitiative.dataportal.backend.dse.api.Field;
+import de.medizininformatikinitiative.dataportal.backend.dse.api.Reference;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A parsed {@link DseProfile} together with indexes of the ids of its fields and references.
+ * <p>
+ * Ids are matched case-insensitively.
+ *
+ * @param profile            the DSE profile
+ * @param fieldIds           the lower-cased ids of all fields, including nested children
+ * @param referenceIds       the lower-cased ids of all top-level references
+ * @param nestedReferenceIds the lower-cased ids of all references, including nested children
+ */
+public record IndexedDseProfile(
+    DseProfile profile,
+    Set<String> fieldIds,
+    Set<String> referenceIds,
+    Set<String> nestedReferenceIds
+) {
+
+  /**
+   * Indexes the given DSE profile.
+   *
+   * @param profile the DSE profile to index
+   * @return the indexed DSE profile
+   */
+  public static IndexedDseProfile of(DseProfile profile) {
+    var fieldIds = new HashSet<String>();
+    addFieldIds(profile.fields(), fieldIds);
+
+    var referenceIds = new HashSet<String>();
+    profile.references().forEach(reference -> addId(reference.id(), referenceIds));
+
+    var nestedReferenceIds = new HashSet<String>();
+    addReferenceIds(profile.references(), nestedReferenceIds);
+
+    return new IndexedDseProfile(profile, Set.copyOf(fieldIds), Set.copyOf(referenceIds),
+        Set.copyOf(nestedReferenceIds));
+  }
+
+  /**
+   * Checks whether the profile contains a field, possibly nested as a child of another field, with the given id.
+   */
+  public boolean containsField(String id) {
+    return id != null && fieldIds.contains(normalize(id));
+  }
+
+  /**
+   * Checks whether the profile contains a top-level reference with the given id.
+   */
+  public boolean containsReference(String id) {
+    return id != null && referenceIds.contains(normalize(id));
+  }
+
+  /**
+   * Checks whether the profile contains a reference, possibly nested as a child of another reference, with the given
+   * id.
+   */
+  public boolean containsNestedReference(String id) {
+    return id != null && nestedReferenceIds.contains(normalize(id));
+  }
+
+  private static void addFieldIds(List<Field> fields, Set<String> ids) {
+    for (var field : fields) {
+      addId(field.id(), ids);
+      addFieldIds(field.children(), ids);
+    }
+  }
+
+  private static void addReferenceIds(List<Reference> references, Set<String> ids) {
+    for (var reference : references) {
+      addId(reference.id(), ids);
+      addReferenceIds(reference.children(), ids);
+    }
+  }
+
+  private static void addId(String id, Set<String> ids) {
+    if (id != null) {
+      ids.add(normalize(id));
+    }
+  }
+
+  private static String normalize(String id) {
+    return id.toLowerCase(Locale.ROOT);
+  }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -20,8 +21,8 @@ public record DseProfile(
     @JsonProperty String errorCause
 ) {
   public DseProfile {
-    fields = (fields == null) ? List.of() : fields;
-    filters = (filters == null) ? List.of() : filters;
-    references = (references == null) ? List.of() : references;
+    fields = (fields == null) ? List.of() : Collections.unmodifiableList(fields);
+    filters = (filters == null) ? List.of() : Collections.unmodifiableList(filters);
+    references = (references == null) ? List.of() : Collections.unmodifiableList(references);
   }
 }
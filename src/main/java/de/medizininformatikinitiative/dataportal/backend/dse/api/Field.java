@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -18,6 +19,6 @@ public record Field(
     @JsonProperty List<Field> children
 ) {
   public Field {
-    children = (children == null) ? List.of() : children;
+    children = (children == null) ? List.of() : Collections.unmodifiableList(children);
   }
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -15,6 +16,6 @@ public record Filter(
     @JsonProperty List<String> valueSetUrls
 ) {
   public Filter {
-    valueSetUrls = (valueSetUrls == null) ? List.of() : valueSetUrls;
+    valueSetUrls = (valueSetUrls == null) ? List.of() : Collections.unmodifiableList(valueSetUrls);
   }
 }
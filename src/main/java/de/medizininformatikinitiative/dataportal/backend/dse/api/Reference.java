@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -20,7 +21,7 @@ public record Reference(
     @JsonProperty List<Reference> children
 ) {
   public Reference {
-    referencedProfiles = (referencedProfiles == null) ? List.of() : referencedProfiles;
-    children = (children == null) ? List.of() : children;
+    referencedProfiles = (referencedProfiles == null) ? List.of() : Collections.unmodifiableList(referencedProfiles);
+    children = (children == null) ? List.of() : Collections.unmodifiableList(children);
   }
 }
@@ -5,11 +5,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Query;
 import de.medizininformatikinitiative.dataportal.backend.query.api.*;
 import de.medizininformatikinitiative.dataportal.backend.query.api.status.*;
+import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryAuthorCache;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatchException;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatcher;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.*;
+import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.QueryQuotaCounter;
 import de.medizininformatikinitiative.dataportal.backend.query.result.RandomSiteNameGenerator;
-import de.medizininformatikinitiative.dataportal.backend.query.result.ResultLine;
+import de.medizininformatikinitiative.dataportal.backend.query.result.ResultAggregate;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultService;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationException;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslator;
@@ -19,9 +21,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.threeten.extra.PeriodDuration;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 
 @Service
@@ -39,13 +42,17 @@ public class QueryHandlerService {
                              @NonNull QueryContentRepository queryContentRepository,
                              @NonNull ResultService resultService,
                              @NonNull @Qualifier("cql") QueryTranslator queryTranslator,
-                             @NonNull ObjectMapper jsonUtil) {
+                             @NonNull ObjectMapper jsonUtil,
+                             @NonNull QueryQuotaCounter queryQuotaCounter,
+                             @NonNull QueryAuthorCache queryAuthorCache) {
     this.queryDispatcher = queryDispatcher;
     this.queryRepository = queryRepository;
     this.queryContentRepository = queryContentRepository;
     this.resultService = resultService;
     this.queryTranslator = queryTranslator;
     this.jsonUtil = jsonUtil;
+    this.queryQuotaCounter = queryQuotaCounter;
+    this.queryAuthorCache = queryAuthorCache;
   }
 
   private final QueryDispatcher queryDispatcher;
@@ -60,9 +67,14 @@ public class QueryHandlerService {
 
   private ObjectMapper jsonUtil;
 
+  private final QueryQuotaCounter queryQuotaCounter;
+
+  private final QueryAuthorCache queryAuthorCache;
+
   public Mono<Long> runQuery(Ccdl ccdl, String userId) {
     try {
       var queryId = queryDispatcher.enqueueNewQuery(ccdl, userId);
+      queryQuotaCounter.record(userId, queryId);
       return queryDispatcher.dispatchEnqueuedQuery(queryId)
           .thenReturn(queryId);
     } catch (QueryDispatchException e) {
@@ -72,6 +84,7 @@ public class QueryHandlerService {
 
   public Long runQueryAsync(Ccdl ccdl, String userId) throws QueryDispatchException {
       var queryId = queryDispatcher.enqueueNewQuery(ccdl, userId);
+      queryQuotaCounter.record(userId, queryId);
       queryDispatcher.dispatchEnqueuedQueryAsync(queryId);
 
       return queryId;
@@ -79,25 +92,39 @@ public class QueryHandlerService {
 
   @Transactional
   public QueryResult getQueryResult(Long queryId, de.medizininformatikinitiative.dataportal.backend.query.QueryHandlerService.ResultDetail resultDetail) {
-    var singleSiteResults = resultService.findSuccessfulByQuery(queryId);
-    List<QueryResultLine> resultLines = new ArrayList<>();
+    return buildQueryResult(queryId, resultDetail, resultService.findAggregateByQuery(queryId));
+  }
+
+  /**
+   * Streams the result of a query, emitting an updated {@link QueryResult} whenever a site reports a new result.
+   * <p>
+   * The stream completes when the results of the query expire.
+   *
+   * @param queryId      the query id
+   * @param resultDetail the level of detail of each emitted result
+   * @return a stream of results of the query
+   */
+  public Flux<QueryResult> streamQueryResult(Long queryId, ResultDetail resultDetail) {
+    return resultService.streamSuccessfulByQuery(queryId)
+        .map(singleSiteResults -> buildQueryResult(queryId, resultDetail, ResultAggregate.of(singleSiteResults)));
+  }
+
+  private QueryResult buildQueryResult(Long queryId, ResultDetail resultDetail, ResultAggregate resultAggregate) {
+    List<QueryResultLine> resultLines = List.of();
 
-    if (resultDetail != de.medizininformatikinitiative.dataportal.backend.query.QueryHandlerService.ResultDetail.SUMMARY) {
-      resultLines = singleSiteResults.stream()
+    if (resultDetail != ResultDetail.SUMMARY) {
+      resultLines = resultAggregate.successfulResults().stream()
           .map(ssr -> QueryResultLine.builder()
-              .siteName(resultDetail == de.medizininformatikinitiative.dataportal.backend.query.QueryHandlerService.ResultDetail.DETAILED_OBFUSCATED ? RandomSiteNameGenerator.generateRandomSiteName() : ssr.siteName())
+              .siteName(resultDetail == ResultDetail.DETAILED_OBFUSCATED ? RandomSiteNameGenerator.generateRandomSiteName() : ssr.siteName())
               .numberOfPatients(ssr.result())
               .build())
           .toList();
     }
 
-    var totalMatchesInPopulation = singleSiteResults.stream()
-        .mapToLong(ResultLine::result).sum();
-
     return QueryResult.builder()
         .queryId(queryId)
         .resultLines(resultLines)
-        .totalNumberOfPatients(totalMatchesInPopulation)
+        .totalNumberOfPatients(resultAggregate.totalNumberOfPatients())
         .build();
   }
 
@@ -130,24 +157,30 @@ public class QueryHandlerService {
   }
 
   public String getAuthorId(Long queryId) throws QueryNotFoundException {
-    return queryRepository.getAuthor(queryId).orElseThrow(QueryNotFoundException::new);
+    return queryAuthorCache.getAuthor(queryId).orElseThrow(QueryNotFoundException::new);
   }
 
   public Long getAmountOfQueriesByUserAndInterval(String userId, String interval) {
-    return queryRepository.countQueriesByAuthorInTheLastNMinutes(userId, PeriodDuration.parse(interval).getDuration().toMinutes());
+    return countQueriesByAuthor(userId, interval);
   }
 
   public Long getRetryAfterTime(String userId, int offset, String interval) {
+    var duration = PeriodDuration.parse(interval).getDuration();
+    if (queryQuotaCounter.covers(duration)) {
+      return queryQuotaCounter.ageOfNthLatest(userId, offset)
+          .map(age -> duration.getSeconds() - age.getSeconds() + 1)
+          .orElse(0L);
+    }
     try {
-      return PeriodDuration.parse(interval).getDuration().getSeconds() - queryRepository.getAgeOfNToLastQueryInSeconds(userId, offset) + 1;
+      return duration.getSeconds() - queryRepository.getAgeOfNToLastQueryInSeconds(userId, offset) + 1;
     } catch (NullPointerException e) {
       return 0L;
     }
   }
 
   public QueryQuota getSentQueryStatistics(String userName, int softAmount, String softInterval, int hardAmount, String hardInterval) {
-    var softUsed = queryRepository.countQueriesByAuthorInTheLastNMinutes(userName, PeriodDuration.parse(softInterval).getDuration().toMinutes());
-    var hardUsed = queryRepository.countQueriesByAuthorInTheLastNMinutes(userName, PeriodDuration.parse(hardInterval).getDuration().toMinutes());
+    var softUsed = countQueriesByAuthor(userName, softInterval);
+    var hardUsed = countQueriesByAuthor(userName, hardInterval);
 
     return QueryQuota.builder()
         .soft(QueryQuotaEntry.builder()
@@ -163,6 +196,18 @@ public class QueryHandlerService {
         .build();
   }
 
+  /**
+   * Counts the queries created by the given user within the given interval before now. The count is served from memory
+   * if the {@link QueryQuotaCounter} covers the interval and from the database otherwise.
+   */
+  private Long countQueriesByAuthor(String userId, String interval) {
+    var minutes = PeriodDuration.parse(interval).getDuration().toMinutes();
+    if (queryQuotaCounter.covers(Duration.ofMinutes(minutes))) {
+      return queryQuotaCounter.count(userId, Duration.ofMinutes(minutes));
+    }
+    return queryRepository.countQueriesByAuthorInTheLastNMinutes(userId, minutes);
+  }
+
   public String translateQueryToCql(Ccdl ccdl) throws QueryTranslationException {
     return queryTranslator.translate(ccdl);
   }
@@ -1,7 +1,5 @@
 package de.medizininformatikinitiative.dataportal.backend.query.api.validation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
@@ -14,9 +12,9 @@ import de.medizininformatikinitiative.dataportal.backend.terminology.UiProfileNo
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.AttributeDefinition;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.ValueDefinitonType;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeAvailabilityCheck;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeableConceptService;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.TerminologyEsService;
-import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import jakarta.validation.ConstraintValidator;
@@ -27,10 +25,14 @@ import org.springframework.stereotype.Component;
 import java.text.MessageFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Validator for {@link Ccdl} that does an actual check based on a JSON schema.
@@ -47,9 +49,6 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
 
   private final CodeableConceptService codeableConceptService;
 
-  @NonNull
-  private final ObjectMapper jsonUtil;
-
   /**
    * Required args constructor.
    *
@@ -58,12 +57,10 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
   @Autowired
   public CcdlValidator(TerminologyService terminologyService,
                        TerminologyEsService terminologyEsService,
-                       CodeableConceptService codeableConceptService,
-                       ObjectMapper jsonUtil) {
+                       CodeableConceptService codeableConceptService) {
     this.terminologyService = terminologyService;
     this.terminologyEsService = terminologyEsService;
     this.codeableConceptService = codeableConceptService;
-    this.jsonUtil = jsonUtil;
   }
 
   /**
@@ -76,16 +73,132 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
                          ConstraintValidatorContext ctx) {
 
     ctx.disableDefaultConstraintViolation();
-    return !containsInvalidCriteria(ctx, ccdl);
+    return !containsInvalidCriteria(ctx, ccdl, lookUpTerminology(ccdl));
+  }
+
+  /**
+   * Resolves all term codes and UI profiles referenced by the criteria of the {@link Ccdl} up front, so that
+   * validating the criteria needs one query for each of them instead of one per criterion and term code.
+   * <p>
+   * Likewise, all selected concepts and referenced criteria are checked against their value sets and criteria sets
+   * with one search request each instead of one per filter.
+   */
+  private TerminologyLookup lookUpTerminology(Ccdl ccdl) {
+    var termCodes = new HashSet<TermCode>();
+    var contextualizedTermcodeHashes = new HashMap<Criterion, String>();
+
+    Stream.of(ccdl.inclusionCriteria(), ccdl.exclusionCriteria())
+        .filter(Objects::nonNull)
+        .flatMap(List::stream)
+        .filter(Objects::nonNull)
+        .flatMap(List::stream)
+        .filter(criterion -> criterion.context() != null && criterion.termCodes() != null
+            && !criterion.termCodes().isEmpty())
+        .forEach(criterion -> {
+          contextualizedTermcodeHashes.put(criterion, TerminologyEsService.createContextualizedTermcodeHash(criterion));
+          criterion.termCodes().stream()
+              .filter(termCode -> !IGNORED_CONSENT_SYSTEM.equalsIgnoreCase(termCode.system()))
+              .forEach(termCodes::add);
+        });
+
+    var uiProfiles = terminologyService.getUiProfiles(Set.copyOf(contextualizedTermcodeHashes.values()));
+
+    var valueSetChecks = new HashSet<CodeAvailabilityCheck>();
+    var criteriaSetChecks = new HashSet<CodeAvailabilityCheck>();
+    contextualizedTermcodeHashes.forEach((criterion, hash) -> {
+      var uiProfile = uiProfiles.get(hash);
+      if (uiProfile != null) {
+        collectCodeAvailabilityChecks(criterion, uiProfile, valueSetChecks, criteriaSetChecks);
+      }
+    });
+
+    return new TerminologyLookup(terminologyService.findExistingTermCodes(termCodes), uiProfiles,
+        valueSetChecks.isEmpty() ? Map.of() : codeableConceptService.availableCodesInValueSets(valueSetChecks),
+        criteriaSetChecks.isEmpty() ? Map.of()
+            : terminologyEsService.availableCodesInReferencedCriteriaSets(criteriaSetChecks));
+  }
+
+  /**
+   * Collects the checks of selected concepts and referenced criteria of the criterion that the validation will need.
+   * <p>
+   * Checks without any sets to check against are left out, they're rejected on validation.
+   */
+  private void collectCodeAvailabilityChecks(Criterion criterion, UiProfile uiProfile,
+                                             Set<CodeAvailabilityCheck> valueSetChecks,
+                                             Set<CodeAvailabilityCheck> criteriaSetChecks) {
+    var valueFilter = criterion.valueFilter();
+    if (valueFilter != null && valueFilter.type() == ValueFilterType.CONCEPT && uiProfile.valueDefinition() != null) {
+      addCheck(valueSetChecks, distinctCodes(valueFilter.selectedConcepts()),
+          uiProfile.valueDefinition().referencedValueSets().stream().distinct().toList());
+    }
+    if (criterion.attributeFilters() == null) {
+      return;
+    }
+    for (var attributeFilter : criterion.attributeFilters()) {
+      if (attributeFilter.type() == ValueFilterType.CONCEPT) {
+        addCheck(valueSetChecks, distinctCodes(attributeFilter.selectedConcepts()),
+            referencedValueSetUrls(uiProfile));
+      } else if (attributeFilter.type() == ValueFilterType.REFERENCE && attributeFilter.criteria() != null) {
+        for (var referencedCriterion : attributeFilter.criteria()) {
+          addCheck(criteriaSetChecks, distinctCodes(referencedCriterion.termCodes()),
+              referencedCriteriaSetUrls(uiProfile));
+        }
+      }
+    }
+  }
+
+  private static void addCheck(Set<CodeAvailabilityCheck> checks, List<String> codes, List<String> setUrls) {
+    if (!codes.isEmpty() && !setUrls.isEmpty()) {
+      checks.add(new CodeAvailabilityCheck(codes, setUrls));
+    }
   }
 
-  private boolean containsInvalidCriteria(ConstraintValidatorContext ctx, Ccdl ccdl) {
-    var hasErrors = containsInvalidCriteria(ctx, "/inclusionCriteria", ccdl.inclusionCriteria());
-    return containsInvalidCriteria(ctx, "/exclusionCriteria", ccdl.exclusionCriteria())
+  private static List<String> distinctCodes(List<TermCode> termCodes) {
+    return termCodes == null ? List.of() : termCodes.stream()
+        .map(TermCode::code)
+        .distinct()
+        .toList();
+  }
+
+  private static List<String> referencedValueSetUrls(UiProfile uiProfile) {
+    return uiProfile.attributeDefinitions().stream()
+        .filter(Objects::nonNull)
+        .filter(f -> f.type() == ValueDefinitonType.CONCEPT)
+        .flatMap(ad -> ad.referencedValueSets().stream())
+        .distinct()
+        .toList();
+  }
+
+  private static List<String> referencedCriteriaSetUrls(UiProfile uiProfile) {
+    return uiProfile.attributeDefinitions().stream()
+        .filter(Objects::nonNull)
+        .filter(f -> f.type() == ValueDefinitonType.REFERENCE)
+        .flatMap(ad -> ad.referencedCriteriaSets().stream())
+        .distinct()
+        .toList();
+  }
+
+  private List<String> availableCodesInValueSets(TerminologyLookup lookup, List<String> codes,
+                                                 List<String> valueSetUrls) {
+    var availableCodes = lookup.availableValueSetCodes().get(new CodeAvailabilityCheck(codes, valueSetUrls));
+    return availableCodes != null ? availableCodes : codeableConceptService.availableCodesInValueSets(codes, valueSetUrls);
+  }
+
+  private List<String> availableCodesInCriteriaSets(TerminologyLookup lookup, List<String> codes,
+                                                    List<String> criteriaSetUrls) {
+    var availableCodes = lookup.availableCriteriaSetCodes().get(new CodeAvailabilityCheck(codes, criteriaSetUrls));
+    return availableCodes != null ? availableCodes
+        : terminologyEsService.availableCodesInReferencedCriteriaSets(codes, criteriaSetUrls);
+  }
+
+  private boolean containsInvalidCriteria(ConstraintValidatorContext ctx, Ccdl ccdl, TerminologyLookup lookup) {
+    var hasErrors = containsInvalidCriteria(ctx, "/inclusionCriteria", ccdl.inclusionCriteria(), lookup);
+    return containsInvalidCriteria(ctx, "/exclusionCriteria", ccdl.exclusionCriteria(), lookup)
         || hasErrors;
   }
 
-  private boolean containsInvalidCriteria(ConstraintValidatorContext ctx, String jsonPointerBase, List<List<Criterion>> criteria) {
+  private boolean containsInvalidCriteria(ConstraintValidatorContext ctx, String jsonPointerBase,
+                                          List<List<Criterion>> criteria, TerminologyLookup lookup) {
     if (criteria == null || criteria.isEmpty()) return false;
     var hasErrors = false;
 
@@ -114,10 +227,10 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
           hasErrors = true;
         }
 
-        hasErrors = checkForInvalidSelectedConceptsAndFilters(ctx, MessageFormat.format("{0}/{1}/{2}", jsonPointerBase, i, j), criterion) || hasErrors;
+        hasErrors = checkForInvalidSelectedConceptsAndFilters(ctx, MessageFormat.format("{0}/{1}/{2}", jsonPointerBase, i, j), criterion, lookup) || hasErrors;
 
         hasErrors = containsTermcodesNotInSystem(ctx, criterion.termCodes(),
-            MessageFormat.format("{0}/{1}/{2}/termCodes", jsonPointerBase, i, j)) || hasErrors;
+            MessageFormat.format("{0}/{1}/{2}/termCodes", jsonPointerBase, i, j), lookup) || hasErrors;
       }
     }
     return hasErrors;
@@ -125,14 +238,15 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
 
   private boolean containsTermcodesNotInSystem(ConstraintValidatorContext ctx,
                                                List<TermCode> termCodes,
-                                               String jsonPointerBase) {
+                                               String jsonPointerBase,
+                                               TerminologyLookup lookup) {
     var hasErrors = false;
     for (int i = 0; i < termCodes.size(); i++) {
       TermCode termCode = termCodes.get(i);
       if (termCode.system().equalsIgnoreCase(IGNORED_CONSENT_SYSTEM)) {
         continue;
       }
-      if (!terminologyService.isExistingTermCode(termCode.system(), termCode.code())) {
+      if (!lookup.existingTermCodes().contains(termCode)) {
         ValidationErrorBuilder.addError(
             ctx,
             MessageFormat.format("{0}/{1}", jsonPointerBase, i),
@@ -145,26 +259,24 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
     return hasErrors;
   }
 
-  private boolean checkForInvalidSelectedConceptsAndFilters(ConstraintValidatorContext ctx, String jsonPointerBase, Criterion criterion) {
+  private boolean checkForInvalidSelectedConceptsAndFilters(ConstraintValidatorContext ctx, String jsonPointerBase,
+                                                            Criterion criterion, TerminologyLookup lookup) {
     var hasErrors = false;
     // Get UI Profile
     try {
-      var uiProfileString = terminologyService.getUiProfile(TerminologyEsService.createContextualizedTermcodeHash(criterion));
-      var uiProfile = jsonUtil.readValue(uiProfileString, UiProfile.class);
+      var uiProfile = lookup.uiProfile(TerminologyEsService.createContextualizedTermcodeHash(criterion));
       // Check the valueFilter
       hasErrors = valueFilterContainsInvalidConcepts(ctx, criterion, uiProfile,
-          MessageFormat.format("{0}/valueFilter/selectedConcepts", jsonPointerBase));
+          MessageFormat.format("{0}/valueFilter/selectedConcepts", jsonPointerBase), lookup);
 
       // Check the attributeFilters
       hasErrors = attributeFiltersContainInvalidConceptsOrReferences(ctx, criterion, uiProfile,
-          MessageFormat.format("{0}/attributeFilters", jsonPointerBase)) || hasErrors;
+          MessageFormat.format("{0}/attributeFilters", jsonPointerBase), lookup) || hasErrors;
 
       // Check units/quantities
       hasErrors = unitsAndQuantitiesContainErrors(ctx, criterion, uiProfile,
           MessageFormat.format("{0}/valueFilter", jsonPointerBase)) || hasErrors;
 
-    } catch (JsonProcessingException e) {
-      throw new RuntimeException(e);
     } catch (UiProfileNotFoundException uie) {
       ValidationErrorBuilder.addError(
           ctx,
@@ -264,15 +376,17 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
   private boolean attributeFiltersContainInvalidConceptsOrReferences(ConstraintValidatorContext ctx,
                                                                      Criterion criterion,
                                                                      UiProfile uiProfile,
-                                                                     String jsonPointerBase) {
-    return attributeFiltersContainInvalidConcepts(ctx, criterion, uiProfile, jsonPointerBase)
-        || attributeFiltersContainInvalidReferences(ctx, criterion, uiProfile, jsonPointerBase);
+                                                                     String jsonPointerBase,
+                                                                     TerminologyLookup lookup) {
+    return attributeFiltersContainInvalidConcepts(ctx, criterion, uiProfile, jsonPointerBase, lookup)
+        || attributeFiltersContainInvalidReferences(ctx, criterion, uiProfile, jsonPointerBase, lookup);
   }
 
   private boolean attributeFiltersContainInvalidReferences(ConstraintValidatorContext ctx,
                                                            Criterion criterion,
                                                            UiProfile uiProfile,
-                                                           String jsonPointerBase) {
+                                                           String jsonPointerBase,
+                                                           TerminologyLookup lookup) {
     var hasErrors = false;
     if (criterion.attributeFilters() != null && !criterion.attributeFilters().isEmpty()) {
       for (int i = 0; i < criterion.attributeFilters().size(); ++i) {
@@ -283,20 +397,13 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
         if (attributeFilter.criteria() != null && !attributeFilter.criteria().isEmpty()) {
           for (int j = 0; j < attributeFilter.criteria().size(); ++j) {
             var criteria = attributeFilter.criteria().get(j);
-            var referenceCodes = criteria.termCodes().stream()
-                .map(TermCode::code)
-                .distinct()
-                .toList();
+            var referenceCodes = distinctCodes(criteria.termCodes());
             // 2 Extract value sets
-            var referencedCriteriaSetUrlsTypeReference = uiProfile.attributeDefinitions().stream()
-                .filter(Objects::nonNull)
-                .filter(f -> f.type() == ValueDefinitonType.REFERENCE)
-                .flatMap(ad -> ad.referencedCriteriaSets().stream())
-                .distinct()
-                .toList();
+            var referencedCriteriaSetUrlsTypeReference = referencedCriteriaSetUrls(uiProfile);
 
             if (!referenceCodes.isEmpty()) {
-              var availableCodes = terminologyEsService.availableCodesInReferencedCriteriaSets(referenceCodes, referencedCriteriaSetUrlsTypeReference);
+              var availableCodes = availableCodesInCriteriaSets(lookup, referenceCodes,
+                  referencedCriteriaSetUrlsTypeReference);
               var unavailableCodes = new ArrayList<>(referenceCodes);
               unavailableCodes.removeAll(availableCodes);
               if (!unavailableCodes.isEmpty()) {
@@ -333,7 +440,8 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
   private boolean attributeFiltersContainInvalidConcepts(ConstraintValidatorContext ctx,
                                                                      Criterion criterion,
                                                                      UiProfile uiProfile,
-                                                                     String jsonPointerBase) {
+                                                                     String jsonPointerBase,
+                                                                     TerminologyLookup lookup) {
     var hasErrors = false;
     if (criterion.attributeFilters() != null && !criterion.attributeFilters().isEmpty()) {
       for (int i = 0; i < criterion.attributeFilters().size(); ++i) {
@@ -341,18 +449,10 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
         if (attributeFilter.type() != ValueFilterType.CONCEPT) {
           continue;
         }
-        var selectedConceptCodes = attributeFilter.selectedConcepts().stream()
-            .map(TermCode::code)
-            .distinct()
-            .toList();
-        var referencedValueSetUrls = uiProfile.attributeDefinitions().stream()
-            .filter(Objects::nonNull)
-            .filter(f -> f.type() == ValueDefinitonType.CONCEPT)
-            .flatMap(ad -> ad.referencedValueSets().stream())
-            .distinct()
-            .toList();
+        var selectedConceptCodes = distinctCodes(attributeFilter.selectedConcepts());
+        var referencedValueSetUrls = referencedValueSetUrls(uiProfile);
         if (!selectedConceptCodes.isEmpty()) {
-          var availableCodes = codeableConceptService.availableCodesInValueSets(selectedConceptCodes, referencedValueSetUrls);
+          var availableCodes = availableCodesInValueSets(lookup, selectedConceptCodes, referencedValueSetUrls);
           var unavailableCodes = new ArrayList<>(selectedConceptCodes);
           unavailableCodes.removeAll(availableCodes);
           if (!unavailableCodes.isEmpty()) {
@@ -378,16 +478,14 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
   private boolean valueFilterContainsInvalidConcepts(ConstraintValidatorContext ctx,
                                                      Criterion criterion,
                                                      UiProfile uiProfile,
-                                                     String jsonPointerBase) {
+                                                     String jsonPointerBase,
+                                                     TerminologyLookup lookup) {
     var valueFilter = criterion.valueFilter();
     if (valueFilter == null || valueFilter.type() != ValueFilterType.CONCEPT) {
       return false;
     }
 
-    var codes = criterion.valueFilter().selectedConcepts().stream()
-        .map(TermCode::code)
-        .distinct()
-        .toList();
+    var codes = distinctCodes(criterion.valueFilter().selectedConcepts());
 
     if (codes.isEmpty()) {
       return false;
@@ -398,7 +496,7 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
         .distinct()
         .toList();
     // check with elastic search - which selected concepts can be found
-    var availableCodes = codeableConceptService.availableCodesInValueSets(codes, valueSetUrls);
+    var availableCodes = availableCodesInValueSets(lookup, codes, valueSetUrls);
     var unavailableCodes = codes.stream()
         .filter(code -> !availableCodes.contains(code))
         .toList();
@@ -426,4 +524,25 @@ public class CcdlValidator implements ConstraintValidator<CcdlValidation, Ccdl>
     }
     return LocalDate.parse(timeRestriction.beforeDate()).isBefore(LocalDate.parse(timeRestriction.afterDate()));
   }
+
+  /**
+   * The term codes and UI profiles referenced by the criteria of a single {@link Ccdl}.
+   *
+   * @param existingTermCodes         the referenced term codes that exist
+   * @param uiProfiles                the UI profiles mapped to the hash of their contextualized term code
+   * @param availableValueSetCodes    the available codes of selected concepts mapped to their check
+   * @param availableCriteriaSetCodes the available codes of referenced criteria mapped to their check
+   */
+  private record TerminologyLookup(Set<TermCode> existingTermCodes, Map<String, UiProfile> uiProfiles,
+                                   Map<CodeAvailabilityCheck, List<String>> availableValueSetCodes,
+                                   Map<CodeAvailabilityCheck, List<String>> availableCriteriaSetCodes) {
+
+    private UiProfile uiProfile(String contextualizedTermcodeHash) throws UiProfileNotFoundException {
+      var uiProfile = uiProfiles.get(contextualizedTermcodeHash);
+      if (uiProfile == null) {
+        throw new UiProfileNotFoundException();
+      }
+      return uiProfile;
+    }
+  }
 }
@@ -3,13 +3,14 @@ package de.medizininformatikinitiative.dataportal.backend.query.api.validation;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
 import de.medizininformatikinitiative.dataportal.backend.dse.DseService;
+import de.medizininformatikinitiative.dataportal.backend.dse.IndexedDseProfile;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
-import de.medizininformatikinitiative.dataportal.backend.dse.api.Field;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Attribute;
 import de.medizininformatikinitiative.dataportal.backend.query.api.AttributeGroup;
 import de.medizininformatikinitiative.dataportal.backend.query.api.DataExtraction;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Filter;
 import de.medizininformatikinitiative.dataportal.backend.query.api.status.ValidationIssueType;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeAvailabilityCheck;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeableConceptService;
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
@@ -21,7 +22,10 @@ import org.springframework.stereotype.Component;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Validator for {@link DataExtraction} that does an actual check based on a JSON schema.
@@ -63,36 +67,21 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
     return !containsInvalidEntries(ctx, dataExtraction);
   }
 
-  private boolean fieldOrChildrenMatch(Field field, String attributeRef) {
-
-    if (field.id().equalsIgnoreCase(attributeRef)) {
-      return true;
-    }
-
-    if (field.children() != null && !field.children().isEmpty()) {
-      return field.children().stream()
-              .anyMatch(child -> fieldOrChildrenMatch(child, attributeRef));
-    }
-
-    return false;
-  }
-
   private boolean containsInvalidEntries(ConstraintValidatorContext ctx, DataExtraction dataExtraction) {
     if (dataExtraction == null || dataExtraction.attributeGroups() == null || dataExtraction.attributeGroups().isEmpty()) return false;
     var hasErrors = false;
 
     // Get all dse entries and save them in a map
     var referencedGroups = dataExtraction.attributeGroups().stream().map(AttributeGroup::groupReference).distinct().toList();
-    var profileData = dseService.getProfileData(referencedGroups.stream().map(URI::toString).toList());
+    var profileData = dseService.getIndexedProfiles(referencedGroups.stream().map(URI::toString).toList());
+    var availableCodes = lookUpAvailableFilterCodes(dataExtraction, profileData);
 
     for (int i = 0;  i < dataExtraction.attributeGroups().size(); i++) {
       // each groupReference can be resolved in ontology dse_profiles
       var attributeGroup = dataExtraction.attributeGroups().get(i);
-      var dseProfileOptional = profileData.stream()
-          .filter(p -> attributeGroup.groupReference().toString().equals(p.url()))
-          .findFirst();
-      DseProfile dseProfile = null;
-      if (dseProfileOptional.isEmpty() || dseProfileOptional.get().errorCode() != null) {
+      var dseProfileOptional = findProfile(profileData, attributeGroup);
+      IndexedDseProfile dseProfile = null;
+      if (dseProfileOptional.isEmpty() || dseProfileOptional.get().profile().errorCode() != null) {
         ValidationErrorBuilder.addError(
             ctx,
             MessageFormat.format("/attributeGroups/{0}/groupReference", i),
@@ -102,8 +91,8 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
       } else {
         dseProfile = dseProfileOptional.get();
         if (attributeGroup.filter() != null) {
-          hasErrors = hasErrorsInAttributeGroupFilters(ctx, attributeGroup, dseProfile,
-              MessageFormat.format("/attributeGroups/{0}", i)) || hasErrors;
+          hasErrors = hasErrorsInAttributeGroupFilters(ctx, attributeGroup, dseProfile.profile(),
+              MessageFormat.format("/attributeGroups/{0}", i), availableCodes) || hasErrors;
         }
       }
       if (attributeGroup.attributes() != null) {
@@ -114,10 +103,50 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
     return hasErrors;
   }
 
+  private static Optional<IndexedDseProfile> findProfile(Map<String, IndexedDseProfile> profileData,
+                                                        AttributeGroup attributeGroup) {
+    return Optional.ofNullable(profileData.get(attributeGroup.groupReference().toString()));
+  }
+
+  /**
+   * Checks the codes of all filters of the {@link DataExtraction} against the value sets of their profiles with a
+   * single search request instead of one per filter.
+   */
+  private Map<CodeAvailabilityCheck, List<String>> lookUpAvailableFilterCodes(DataExtraction dataExtraction,
+                                                                           Map<String, IndexedDseProfile> profileData) {
+    var checks = new HashSet<CodeAvailabilityCheck>();
+    for (var attributeGroup : dataExtraction.attributeGroups()) {
+      var dseProfile = findProfile(profileData, attributeGroup);
+      if (attributeGroup.filter() == null || dseProfile.isEmpty() || dseProfile.get().profile().errorCode() != null) {
+        continue;
+      }
+      var valueSetUrls = tokenFilterValueSetUrls(dseProfile.get().profile());
+      for (var attributeFilter : attributeGroup.filter()) {
+        var codes = filterCodes(attributeFilter);
+        if (!codes.isEmpty() && !valueSetUrls.isEmpty()) {
+          checks.add(new CodeAvailabilityCheck(codes, valueSetUrls));
+        }
+      }
+    }
+    return checks.isEmpty() ? Map.of() : codeableConceptService.availableCodesInValueSets(checks);
+  }
+
+  private static List<String> filterCodes(Filter attributeFilter) {
+    return attributeFilter.codes() == null ? List.of() : attributeFilter.codes().stream().map(TermCode::code).toList();
+  }
+
+  private static List<String> tokenFilterValueSetUrls(DseProfile dseProfile) {
+    return dseProfile.filters().stream()
+        .filter(filter -> filter.type().equals("token"))
+        .flatMap(filter -> filter.valueSetUrls().stream())
+        .distinct()
+        .toList();
+  }
+
   private boolean attributesContainErrors(ConstraintValidatorContext ctx,
                                           DataExtraction dataExtraction,
                                           AttributeGroup attributeGroup,
-                                          DseProfile dseProfile,
+                                          IndexedDseProfile dseProfile,
                                           String jsonPointerBase) {
     var hasErrors = false;
     for (int i = 0; i < attributeGroup.attributes().size(); i++) {
@@ -125,7 +154,7 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
 
       if (dseProfile != null) {
 
-        if (dseProfile.references().stream().anyMatch(ref -> ref.id().equalsIgnoreCase(attribute.attributeRef()))) {
+        if (dseProfile.containsReference(attribute.attributeRef())) {
           // ensure linkedGroup exists for each attribute of type "reference" in dse profile
           if (attribute.linkedGroups() == null || attribute.linkedGroups().isEmpty()) {
             ValidationErrorBuilder.addError(
@@ -135,7 +164,7 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
             );
             hasErrors = true;
           }
-        } else if (dseProfile.fields().stream().noneMatch(field -> fieldOrChildrenMatch(field, attribute.attributeRef()))) {
+        } else if (!dseProfile.containsField(attribute.attributeRef())) {
           // attributes of DSE features (attributeGroups) (fields) not in ontology profile for feature
           ValidationErrorBuilder.addError(
               ctx,
@@ -175,14 +204,15 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
   private boolean hasErrorsInAttributeGroupFilters(ConstraintValidatorContext ctx,
                                                    AttributeGroup attributeGroup,
                                                    DseProfile dseProfile,
-                                                   String jsonPointerBase) {
+                                                   String jsonPointerBase,
+                                                   Map<CodeAvailabilityCheck, List<String>> availableCodes) {
     var hasErrors = false;
     for (int i = 0; i < attributeGroup.filter().size(); i++) {
       var attributeFilter = attributeGroup.filter().get(i);
         hasErrors = hasUnsupportedFilterTypes(ctx, dseProfile, attributeFilter,
             MessageFormat.format("{0}/filter/{1}", jsonPointerBase, i)) || hasErrors;
         hasErrors = codesMissingInValueSets(ctx, dseProfile, attributeFilter,
-            MessageFormat.format("{0}/filter/{1}", jsonPointerBase, i)) || hasErrors;
+            MessageFormat.format("{0}/filter/{1}", jsonPointerBase, i), availableCodes) || hasErrors;
       hasErrors = hasInvalidDateSettings(ctx, attributeFilter,
           MessageFormat.format("{0}/filter/{1}", jsonPointerBase, i)) || hasErrors;
       }
@@ -207,15 +237,15 @@ public class DataExtractionValidator implements ConstraintValidator<DataExtracti
   private boolean codesMissingInValueSets(ConstraintValidatorContext ctx,
                                           DseProfile dseProfile,
                                           Filter attributeFilter,
-                                          String jsonPointerBase) {
-    var codes = attributeFilter.codes().stream().map(TermCode::code).toList();
-    var valueSetUrls = dseProfile.filters().stream()
-        .filter(filter -> filter.type().equals("token"))
-        .flatMap(filter -> filter.valueSetUrls().stream())
-        .distinct()
-        .toList();
+                                          String jsonPointerBase,
+                                          Map<CodeAvailabilityCheck, List<String>> availableCodesByCheck) {
+    var codes = filterCodes(attributeFilter);
+    var valueSetUrls = tokenFilterValueSetUrls(dseProfile);
     if (!codes.isEmpty()) {
-      var availableCodes = codeableConceptService.availableCodesInValueSets(codes, valueSetUrls);
+      var availableCodes = availableCodesByCheck.get(new CodeAvailabilityCheck(codes, valueSetUrls));
+      if (availableCodes == null) {
+        availableCodes = codeableConceptService.availableCodesInValueSets(codes, valueSetUrls);
+      }
       var unavailableCodes = new ArrayList<>(codes);
       unavailableCodes.removeAll(availableCodes);
       if (!unavailableCodes.isEmpty()) {
@@ -7,9 +7,10 @@ import de.medizininformatikinitiative.dataportal.backend.common.api.Comparator;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
+import de.medizininformatikinitiative.dataportal.backend.dse.DseService;
+import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
+import de.medizininformatikinitiative.dataportal.backend.dse.api.Field;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.LocalizedValue;
-import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfile;
-import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfileRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.api.*;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.AttributeDefinition;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.CodeableConceptEntry;
@@ -26,7 +27,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -44,7 +48,7 @@ public class DataqueryCsvExportService {
   private static final String FILTER_DELIMITER = "or";
   private static final String REFERENCING_GROUPS_DELIMITER = ", ";
   @NonNull
-  private final DseProfileRepository dseProfileRepository;
+  private final DseService dseService;
   @NonNull
   private final UiProfileRepository uiProfileRepository;
   @NonNull
@@ -59,13 +63,45 @@ public class DataqueryCsvExportService {
   private ObjectMapper jsonUtil;
 
   public String jsonToCsv(DataExtraction in, SUPPORTED_LANGUAGES lang) throws IOException {
-    Map<String, String> idMap = new HashMap<>();
     StringWriter stringWriter = new StringWriter();
-    CSVWriter csvWriter = new CSVWriter(stringWriter,
-        csvDelimiter,
-        csvTextWrapper,
-        CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-        CSVWriter.DEFAULT_LINE_END);
+    writeCsv(prepare(in), lang, stringWriter);
+    return stringWriter.toString();
+  }
+
+  /**
+   * Resolves the DSE profiles referenced by the attribute groups of the given {@link DataExtraction} and collects the
+   * displays needed to write its CSV representation.
+   * <p>
+   * The result does not depend on the language, so it can be shared by the CSV files of all supported languages.
+   *
+   * @param in the data extraction to export
+   * @return the data extraction together with the displays of its referenced profiles
+   * @throws DataqueryCsvExportException if a referenced DSE profile does not exist
+   */
+  public PreparedDataExtraction prepare(DataExtraction in) {
+    var profileUrls = in.attributeGroups().stream()
+        .map(attributeGroup -> attributeGroup.groupReference().toString())
+        .collect(Collectors.toSet());
+    var profileDisplays = new HashMap<String, ProfileDisplays>();
+    dseService.getIndexedProfiles(profileUrls).forEach((url, indexedProfile) -> {
+      var profile = indexedProfile.profile();
+      if (profile.errorCode() != null) {
+        throw new DataqueryCsvExportException();
+      }
+      profileDisplays.put(url, ProfileDisplays.of(profile));
+    });
+    return new PreparedDataExtraction(in, Map.copyOf(profileDisplays));
+  }
+
+  /**
+   * Writes the CSV representation of the given {@link DataExtraction} row by row to the given writer.
+   * <p>
+   * The writer is flushed but not closed.
+   */
+  public void writeCsv(PreparedDataExtraction prepared, SUPPORTED_LANGUAGES lang, Writer writer) throws IOException {
+    var in = prepared.dataExtraction();
+    Map<String, String> idMap = new HashMap<>();
+    CSVWriter csvWriter = createCsvWriter(writer);
 
     csvWriter.writeNext(
         Arrays.stream(FEATURE_HEADERS)
@@ -79,22 +115,27 @@ public class DataqueryCsvExportService {
     }
 
     for (AttributeGroup attributeGroup : in.attributeGroups()) {
-      var dseProfileOptional = dseProfileRepository.findByUrl(attributeGroup.groupReference().toString());
-      String[] row = getRow(attributeGroup, idMap, dseProfileOptional, in, lang);
+      var profileDisplays = prepared.profileDisplaysByUrl().get(attributeGroup.groupReference().toString());
+      String[] row = getRow(attributeGroup, idMap, profileDisplays, in, lang);
       csvWriter.writeNext(row);
     }
 
-    csvWriter.close();
-    return stringWriter.toString();
+    flush(csvWriter);
   }
 
   public String jsonToCsv(List<List<Criterion>> in, SUPPORTED_LANGUAGES lang) throws IOException {
     StringWriter stringWriter = new StringWriter();
-    CSVWriter csvWriter = new CSVWriter(stringWriter,
-        csvDelimiter,
-        csvTextWrapper,
-        CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-        CSVWriter.DEFAULT_LINE_END);
+    writeCsv(in, lang, stringWriter);
+    return stringWriter.toString();
+  }
+
+  /**
+   * Writes the CSV representation of the given criteria row by row to the given writer.
+   * <p>
+   * The writer is flushed but not closed.
+   */
+  public void writeCsv(List<List<Criterion>> in, SUPPORTED_LANGUAGES lang, Writer writer) throws IOException {
+    CSVWriter csvWriter = createCsvWriter(writer);
 
     csvWriter.writeNext(
         Arrays.stream(INCLUSION_HEADERS)
@@ -112,28 +153,41 @@ public class DataqueryCsvExportService {
       }
     }
 
-    csvWriter.close();
-    return stringWriter.toString();
+    flush(csvWriter);
+  }
+
+  private static void flush(CSVWriter csvWriter) throws IOException {
+    csvWriter.flush();
+    // CSVWriter swallows exceptions while writing rows, so they have to be checked for explicitly
+    if (csvWriter.checkError()) {
+      throw csvWriter.getException();
+    }
   }
 
-  ;
+  private CSVWriter createCsvWriter(Writer writer) {
+    return new CSVWriter(writer,
+        csvDelimiter,
+        csvTextWrapper,
+        CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+        CSVWriter.DEFAULT_LINE_END);
+  }
 
-  private String[] getRow(AttributeGroup attributeGroup, Map<String, String> idMap, Optional<DseProfile> dseProfileOptional, DataExtraction dataExtraction, SUPPORTED_LANGUAGES lang) {
+  private String[] getRow(AttributeGroup attributeGroup, Map<String, String> idMap, ProfileDisplays profileDisplays, DataExtraction dataExtraction, SUPPORTED_LANGUAGES lang) {
     String id = idMap.get(attributeGroup.id());
-    String module = getModule(dseProfileOptional, lang);
-    String profileType = getProfile(dseProfileOptional, lang);
+    String module = getLocalizedDisplayEntry(profileDisplays.module(), lang);
+    String profileType = getLocalizedDisplayEntry(profileDisplays.display(), lang);
     String featureName = attributeGroup.name();
     String filter = getFilter(attributeGroup, lang);
     String timeRestriction = getTimeRestriction(attributeGroup);
     String onlyExtractIfLinked =
         (attributeGroup.includeReferenceOnly() != null && attributeGroup.includeReferenceOnly()) ? getReferencedBy(attributeGroup, idMap, dataExtraction, lang) : "";
     String isRequired = attributeGroup.attributes().stream().anyMatch(Attribute::mustHave) ? MultiMessageBundle.getEntry("yes", lang) : "";
-    FieldsAndLinks fieldsAndLinks = getFieldsAndLinks(attributeGroup, idMap, dseProfileOptional, lang);
+    FieldsAndLinks fieldsAndLinks = getFieldsAndLinks(attributeGroup, idMap, profileDisplays, lang);
 
     return new String[]{id, module, profileType, featureName, fieldsAndLinks.fields(), filter, timeRestriction, fieldsAndLinks.links(), onlyExtractIfLinked, isRequired};
   }
 
-  private FieldsAndLinks getFieldsAndLinks(AttributeGroup attributeGroup, Map<String, String> idMap, Optional<DseProfile> dseProfileOptional, SUPPORTED_LANGUAGES lang) {
+  private FieldsAndLinks getFieldsAndLinks(AttributeGroup attributeGroup, Map<String, String> idMap, ProfileDisplays profileDisplays, SUPPORTED_LANGUAGES lang) {
     List<String> fieldsList = new ArrayList<>();
     List<String> linksList = new ArrayList<>();
 
@@ -146,23 +200,15 @@ public class DataqueryCsvExportService {
                     attribute.mustHave() ? " (" + MultiMessageBundle.getEntry("required", lang) + ")" : ""))
                 .collect(Collectors.joining(" " + MultiMessageBundle.getEntry("and", lang) + " "))
         );
-      } else if (dseProfileOptional.isPresent()) {
-        try {
-          var dseProfile = jsonUtil.readValue(dseProfileOptional.get().getEntry(), de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile.class);
-          var fieldEntryOptional = dseProfile.fields().stream().filter(profile -> profile.id().equalsIgnoreCase(attribute.attributeRef())).findFirst();
-          if (fieldEntryOptional.isPresent()) {
-            var fieldEntry = fieldEntryOptional.get();
-            fieldsList.add(
-                MessageFormat.format("{0}{1}",
-                    getLocalizedDisplayEntry(fieldEntry.display(), lang),
-                    attribute.mustHave() ? " (" + MultiMessageBundle.getEntry("required", lang) + ")" : "")
-            );
-          }
-        } catch (JsonProcessingException | NoSuchElementException e) {
-          throw new DataqueryCsvExportException();
-        }
       } else {
-        throw new DataqueryCsvExportException();
+        var fieldDisplay = profileDisplays.fieldDisplay(attribute.attributeRef());
+        if (fieldDisplay != null) {
+          fieldsList.add(
+              MessageFormat.format("{0}{1}",
+                  getLocalizedDisplayEntry(fieldDisplay, lang),
+                  attribute.mustHave() ? " (" + MultiMessageBundle.getEntry("required", lang) + ")" : "")
+          );
+        }
       }
     }
 
@@ -223,32 +269,6 @@ public class DataqueryCsvExportService {
     return "";
   }
 
-  private String getProfile(Optional<DseProfile> dseProfileOptional, SUPPORTED_LANGUAGES lang) {
-    if (dseProfileOptional.isPresent()) {
-      try {
-        var dseProfile = jsonUtil.readValue(dseProfileOptional.get().getEntry(), de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile.class);
-        return getLocalizedDisplayEntry(dseProfile.display(), lang);
-      } catch (JsonProcessingException e) {
-        throw new DataqueryCsvExportException();
-      }
-    } else {
-      throw new DataqueryCsvExportException();
-    }
-  }
-
-  private String getModule(Optional<DseProfile> dseProfileOptional, SUPPORTED_LANGUAGES lang) {
-    if (dseProfileOptional.isPresent()) {
-      try {
-        var dseProfile = jsonUtil.readValue(dseProfileOptional.get().getEntry(), de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile.class);
-        return getLocalizedDisplayEntry(dseProfile.module(), lang);
-      } catch (JsonProcessingException e) {
-        throw new DataqueryCsvExportException();
-      }
-    } else {
-      throw new DataqueryCsvExportException();
-    }
-  }
-
   private String[] getRow(Criterion criterion, int conjunctionGroup, SUPPORTED_LANGUAGES lang) {
 
     EsSearchResultEntry criterionEsEntry = terminologyEsService.getSearchResultEntryByCriterion(criterion);
@@ -378,6 +398,18 @@ public class DataqueryCsvExportService {
     zos.closeEntry();
   }
 
+  /**
+   * Adds a new entry to the zip file and lets {@code contentWriter} write its content straight into it.
+   */
+  public void addFileToZip(ZipOutputStream zos, String fileName, ZipEntryContentWriter contentWriter)
+      throws IOException {
+    zos.putNextEntry(new ZipEntry(fileName));
+    var writer = new OutputStreamWriter(zos, StandardCharsets.UTF_8);
+    contentWriter.writeTo(writer);
+    writer.flush();
+    zos.closeEntry();
+  }
+
   private String getLocalizedDisplayEntry(DisplayEntry displayEntry, SUPPORTED_LANGUAGES lang, boolean fallbackToOriginal) {
     Optional<LocalizedValue> localizedValueOptional = displayEntry.translations().stream()
         .filter(lv -> lv.language().equalsIgnoreCase(lang.getJsonKey()))
@@ -427,6 +459,59 @@ public class DataqueryCsvExportService {
     private final String language;
   }
 
+  /**
+   * Writes the content of a single zip entry.
+   */
+  @FunctionalInterface
+  public interface ZipEntryContentWriter {
+    void writeTo(Writer writer) throws IOException;
+  }
+
+  /**
+   * A {@link DataExtraction} together with the displays of all DSE profiles referenced by its attribute groups.
+   *
+   * @param dataExtraction       the data extraction to export
+   * @param profileDisplaysByUrl the displays of the referenced DSE profiles by their URL
+   */
+  public record PreparedDataExtraction(
+      DataExtraction dataExtraction,
+      Map<String, ProfileDisplays> profileDisplaysByUrl
+  ) {
+  }
+
+  /**
+   * The displays of a single DSE profile.
+   *
+   * @param module             the display of the module of the profile
+   * @param display            the display of the profile itself
+   * @param fieldDisplaysById  the displays of the top-level fields of the profile by their lower-cased id
+   */
+  public record ProfileDisplays(
+      DisplayEntry module,
+      DisplayEntry display,
+      Map<String, DisplayEntry> fieldDisplaysById
+  ) {
+
+    static ProfileDisplays of(DseProfile profile) {
+      var fieldDisplaysById = new HashMap<String, DisplayEntry>();
+      for (Field field : profile.fields()) {
+        if (field.id() != null && field.display() != null) {
+          fieldDisplaysById.putIfAbsent(field.id().toLowerCase(Locale.ROOT), field.display());
+        }
+      }
+      return new ProfileDisplays(profile.module(), profile.display(), Map.copyOf(fieldDisplaysById));
+    }
+
+    /**
+     * Gets the display of the top-level field with the given id, matched case-insensitively.
+     *
+     * @return the display of the field or {@code null} if the profile has no such field
+     */
+    DisplayEntry fieldDisplay(String fieldId) {
+      return fieldId == null ? null : fieldDisplaysById.get(fieldId.toLowerCase(Locale.ROOT));
+    }
+  }
+
   @Builder
   record FieldsAndLinks(
       String fields,
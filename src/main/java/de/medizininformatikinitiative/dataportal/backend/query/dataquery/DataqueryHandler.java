@@ -1,7 +1,10 @@
 package de.medizininformatikinitiative.dataportal.backend.query.dataquery;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
+import de.medizininformatikinitiative.dataportal.backend.query.api.Crtdl;
 import de.medizininformatikinitiative.dataportal.backend.query.api.DataExtraction;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Dataquery;
 import de.medizininformatikinitiative.dataportal.backend.query.api.status.SavedQuerySlots;
@@ -12,14 +15,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.threeten.extra.PeriodDuration;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipOutputStream;
@@ -155,43 +159,63 @@ public class DataqueryHandler {
         .build();
   }
 
-  public ByteArrayOutputStream createCsvExportZipfile(Dataquery dataquery) throws DataqueryException, IOException {
+  /**
+   * Creates a zip file containing the definition of the given dataquery as JSON and its criteria and features as CSV
+   * files for all supported languages.
+   * <p>
+   * The dataquery is checked and the DSE profiles it references are resolved right away, while the zip file gets
+   * written straight into the output stream the returned body is called with. The CSV files of all languages are
+   * streamed one after another, so that none of them is held in memory.
+   *
+   * @param dataquery the dataquery to export
+   * @return the body writing the zip file
+   * @throws DataqueryException if the dataquery has no cohort definition
+   * @throws DataqueryCsvExportException if a DSE profile referenced by the dataquery does not exist
+   */
+  public StreamingResponseBody createCsvExportZipfile(Dataquery dataquery) throws DataqueryException {
     if (dataquery.content() == null || dataquery.content().cohortDefinition() == null) {
       throw new DataqueryException("No ccdl part present");
     }
-    var byteArrayOutputStream = new ByteArrayOutputStream();
-    var zipOutputStream = new ZipOutputStream(byteArrayOutputStream);
-    Map<String, String> files = new HashMap<>();
-    files.put("Datendefinition.json", jsonUtil.writeValueAsString(dataquery.content()));
-
-    for (DataqueryCsvExportService.SUPPORTED_LANGUAGES lang : DataqueryCsvExportService.SUPPORTED_LANGUAGES.values()) {
-      if (dataquery.content().cohortDefinition().inclusionCriteria() == null) {
-        // Call with empty lists to just write the headers to the file
-        files.put(MultiMessageBundle.getEntry("filenameInclusion", lang) + ".csv", csvExportHandler.jsonToCsv(List.of(List.of()), lang));
-      } else {
-        files.put(MultiMessageBundle.getEntry("filenameInclusion", lang) + ".csv", csvExportHandler.jsonToCsv(dataquery.content().cohortDefinition().inclusionCriteria(), lang));
-      }
-      if (dataquery.content().cohortDefinition().exclusionCriteria() == null) {
-        // Call with empty lists to just write the headers to the file
-        files.put(MultiMessageBundle.getEntry("filenameExclusion", lang) + ".csv", csvExportHandler.jsonToCsv(List.of(List.of()), lang));
-      } else {
-        files.put(MultiMessageBundle.getEntry("filenameExclusion", lang) + ".csv", csvExportHandler.jsonToCsv(dataquery.content().cohortDefinition().exclusionCriteria(), lang));
-      }
-      if (dataquery.content().dataExtraction() == null) {
-        // Call with empty lists to just write the headers to the file
-        files.put(MultiMessageBundle.getEntry("filenameFeatures", lang) + ".csv", csvExportHandler.jsonToCsv(DataExtraction.builder().build(), lang));
-      } else {
-        files.put(MultiMessageBundle.getEntry("filenameFeatures", lang) + ".csv", csvExportHandler.jsonToCsv(dataquery.content().dataExtraction(), lang));
+    var crtdl = dataquery.content();
+    // Use an empty data extraction to just write the headers to the file in case it is missing
+    var dataExtraction = csvExportHandler.prepare(
+        crtdl.dataExtraction() == null ? DataExtraction.builder().build() : crtdl.dataExtraction());
+    return outputStream -> writeCsvExportZipfile(crtdl, dataExtraction, outputStream);
+  }
+
+  private void writeCsvExportZipfile(Crtdl crtdl, DataqueryCsvExportService.PreparedDataExtraction dataExtraction,
+                                     OutputStream outputStream) throws IOException {
+    var zipOutputStream = new ZipOutputStream(outputStream);
+    csvExportHandler.addFileToZip(zipOutputStream, "Datendefinition.json",
+        writer -> jsonUtil.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(writer, crtdl));
+
+    for (var lang : DataqueryCsvExportService.SUPPORTED_LANGUAGES.values()) {
+      for (var csvFile : csvFileWriters(crtdl, dataExtraction, lang).entrySet()) {
+        csvExportHandler.addFileToZip(zipOutputStream, csvFile.getKey(), csvFile.getValue());
       }
     }
 
-    for (Map.Entry<String, String> file : files.entrySet()) {
-      csvExportHandler.addFileToZip(zipOutputStream, file.getKey(), file.getValue());
-    }
+    zipOutputStream.finish();
+  }
 
-    zipOutputStream.close();
-    byteArrayOutputStream.close();
-    return byteArrayOutputStream;
+  private Map<String, DataqueryCsvExportService.ZipEntryContentWriter> csvFileWriters(
+      Crtdl crtdl, DataqueryCsvExportService.PreparedDataExtraction dataExtraction,
+      DataqueryCsvExportService.SUPPORTED_LANGUAGES lang) {
+    var cohortDefinition = crtdl.cohortDefinition();
+    // Use empty lists to just write the headers to the file in case a part is missing
+    var inclusionCriteria = cohortDefinition.inclusionCriteria() == null
+        ? List.<List<Criterion>>of(List.of()) : cohortDefinition.inclusionCriteria();
+    var exclusionCriteria = cohortDefinition.exclusionCriteria() == null
+        ? List.<List<Criterion>>of(List.of()) : cohortDefinition.exclusionCriteria();
+
+    var csvFileWriters = new LinkedHashMap<String, DataqueryCsvExportService.ZipEntryContentWriter>();
+    csvFileWriters.put(MultiMessageBundle.getEntry("filenameInclusion", lang) + ".csv",
+        writer -> csvExportHandler.writeCsv(inclusionCriteria, lang, writer));
+    csvFileWriters.put(MultiMessageBundle.getEntry("filenameExclusion", lang) + ".csv",
+        writer -> csvExportHandler.writeCsv(exclusionCriteria, lang, writer));
+    csvFileWriters.put(MultiMessageBundle.getEntry("filenameFeatures", lang) + ".csv",
+        writer -> csvExportHandler.writeCsv(dataExtraction, lang, writer));
+    return csvFileWriters;
   }
 
   private boolean hasAccess(de.medizininformatikinitiative.dataportal.backend.query.persistence.Dataquery dataquery, Authentication authentication) {
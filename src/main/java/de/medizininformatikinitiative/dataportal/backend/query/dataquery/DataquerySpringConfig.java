@@ -19,6 +19,7 @@ public class DataquerySpringConfig {
       @Value("${app.maxSavedQueriesPerUser}") Integer maxSavedQueriesPerUser,
       @Value("${app.keycloakAdminRole}") String keycloakAdminRole
   ) {
-    return new DataqueryHandler(dataqueryCsvExportService, jsonUtil, dataqueryRepository, maxSavedQueriesPerUser, keycloakAdminRole);
+    return new DataqueryHandler(dataqueryCsvExportService, jsonUtil, dataqueryRepository, maxSavedQueriesPerUser,
+        keycloakAdminRole);
   }
 }
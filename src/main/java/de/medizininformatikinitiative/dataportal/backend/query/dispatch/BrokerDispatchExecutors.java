@@ -0,0 +1,62 @@
+package de.medizininformatikinitiative.dataportal.backend.query.dispatch;
+
+import de.medizininformatikinitiative.dataportal.backend.query.broker.BrokerClient;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkheads isolating the dispatches to different brokers from each other.
+ * <p>
+ * Every broker gets an executor of its own with a fixed number of threads and a bounded queue, so that a slow or
+ * unresponsive broker can only exhaust its own threads. Dispatches exceeding the queue capacity of a broker are
+ * rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+ */
+public class BrokerDispatchExecutors implements AutoCloseable {
+
+  private final Map<BrokerClient, ExecutorService> executors = new IdentityHashMap<>();
+
+  /**
+   * Creates a new BrokerDispatchExecutors.
+   *
+   * @param brokerClients    the brokers to create an executor for
+   * @param threadsPerBroker the number of threads dispatching to a single broker concurrently
+   * @param queueCapacity    the number of dispatches per broker that may wait for a free thread
+   */
+  public BrokerDispatchExecutors(List<BrokerClient> brokerClients, int threadsPerBroker, int queueCapacity) {
+    for (var brokerClient : brokerClients) {
+      var threadFactory = new CustomizableThreadFactory("broker-dispatch-%s-".formatted(brokerClient.getBrokerType()));
+      executors.put(brokerClient, new ThreadPoolExecutor(threadsPerBroker, threadsPerBroker, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity), threadFactory));
+    }
+  }
+
+  /**
+   * Returns the executor dispatches to the given broker have to run on.
+   *
+   * @param brokerClient one of the brokers this instance was created with
+   * @return the executor of the broker
+   */
+  public ExecutorService forBroker(BrokerClient brokerClient) {
+    var executor = executors.get(brokerClient);
+    if (executor == null) {
+      throw new IllegalArgumentException("No dispatch executor for broker type '%s'"
+          .formatted(brokerClient.getBrokerType()));
+    }
+    return executor;
+  }
+
+  /**
+   * Shuts down the executors of all brokers. Running and queued dispatches still finish.
+   */
+  @Override
+  public void close() {
+    executors.values().forEach(ExecutorService::shutdown);
+  }
+}
@@ -0,0 +1,58 @@
+package de.medizininformatikinitiative.dataportal.backend.query.dispatch;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.Optional;
+
+/**
+ * Keeps the authors of queries in memory, so that checking the access to a query doesn't need the database.
+ * <p>
+ * The author of a query never changes and queries are never deleted, so cached authors never go stale. Authors are
+ * put into the cache when a query is enqueued and read through from the database otherwise. Unknown queries are not
+ * cached. Hit and miss counts are exposed as {@code cache.gets} metrics tagged with {@code queryAuthor}.
+ */
+public class QueryAuthorCache {
+
+  private final QueryRepository queryRepository;
+  private final Cache<Long, String> authors;
+
+  /**
+   * Creates a new QueryAuthorCache.
+   *
+   * @param queryRepository the repository authors of queries not cached yet are read from
+   * @param maxSize         the maximum number of queries whose authors are kept
+   * @param meterRegistry   the registry the cache metrics are registered with
+   */
+  public QueryAuthorCache(QueryRepository queryRepository, long maxSize, MeterRegistry meterRegistry) {
+    this.queryRepository = queryRepository;
+    this.authors = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, authors, "queryAuthor");
+  }
+
+  /**
+   * Returns the author of the query with the given id.
+   *
+   * @param queryId the id of the query
+   * @return the id of the author or empty if there is no query with the given id
+   */
+  public Optional<String> getAuthor(Long queryId) {
+    return Optional.ofNullable(authors.get(queryId, id -> queryRepository.getAuthor(id).orElse(null)));
+  }
+
+  /**
+   * Remembers the author of a newly enqueued query.
+   *
+   * @param queryId  the id of the query
+   * @param authorId the id of the author
+   */
+  void put(Long queryId, String authorId) {
+    authors.put(queryId, authorId);
+  }
+}
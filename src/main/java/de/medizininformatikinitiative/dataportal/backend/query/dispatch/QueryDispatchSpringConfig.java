@@ -3,14 +3,18 @@ package de.medizininformatikinitiative.dataportal.backend.query.dispatch;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.hash.Hashing;
 import de.medizininformatikinitiative.dataportal.backend.query.broker.BrokerClient;
-import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryDispatchRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationComponent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
@@ -25,10 +29,31 @@ public class QueryDispatchSpringConfig {
       QueryHashCalculator queryHashCalculator,
       @Qualifier("translation") ObjectMapper jsonUtil,
       QueryRepository queryRepository,
-      QueryContentRepository queryContentRepository,
-      QueryDispatchRepository queryDispatchRepository) {
+      QueryDispatchRepository queryDispatchRepository,
+      BrokerDispatchExecutors brokerDispatchExecutors,
+      @Value("${app.broker.dispatch.timeout:PT30S}") Duration brokerDispatchTimeout,
+      ObjectProvider<MeterRegistry> meterRegistry,
+      QueryAuthorCache queryAuthorCache) {
     return new QueryDispatcher(queryBrokerClients, queryTranslationComponent, queryHashCalculator, jsonUtil, queryRepository,
-        queryContentRepository, queryDispatchRepository);
+        queryDispatchRepository, brokerDispatchExecutors, brokerDispatchTimeout,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new), queryAuthorCache);
+  }
+
+  @Bean
+  public QueryAuthorCache createQueryAuthorCache(QueryRepository queryRepository,
+                                                 @Value("${app.queryAuthorCache.maxSize:100000}") long maxSize,
+                                                 ObjectProvider<MeterRegistry> meterRegistry) {
+    return new QueryAuthorCache(queryRepository, maxSize, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+
+  // Dispatches to each broker run on threads of their own, so that a slow broker neither delays other brokers nor
+  // blocks the general purpose task executor.
+  @Bean(destroyMethod = "close")
+  public BrokerDispatchExecutors createBrokerDispatchExecutors(
+      @Qualifier("brokerClients") List<BrokerClient> queryBrokerClients,
+      @Value("${app.broker.dispatch.threads:8}") int threadsPerBroker,
+      @Value("${app.broker.dispatch.queueCapacity:100}") int queueCapacity) {
+    return new BrokerDispatchExecutors(queryBrokerClients, threadsPerBroker, queueCapacity);
   }
 
   @Bean
@@ -12,6 +12,8 @@ import de.medizininformatikinitiative.dataportal.backend.query.persistence.*;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryDispatch.QueryDispatchId;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationComponent;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 import lombok.Getter;
 import lombok.NonNull;
@@ -22,11 +24,19 @@ import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
 /**
@@ -37,6 +47,8 @@ import java.util.function.Predicate;
 @RequiredArgsConstructor
 public class QueryDispatcher {
 
+  static final String DISPATCH_TIMER_NAME = "dataportal.query.dispatch";
+
   @NonNull
   private List<BrokerClient> queryBrokerClients;
 
@@ -53,10 +65,19 @@ public class QueryDispatcher {
   private QueryRepository queryRepository;
 
   @NonNull
-  private QueryContentRepository queryContentRepository;
+  private QueryDispatchRepository queryDispatchRepository;
 
   @NonNull
-  private QueryDispatchRepository queryDispatchRepository;
+  private BrokerDispatchExecutors brokerDispatchExecutors;
+
+  @NonNull
+  private Duration brokerDispatchTimeout;
+
+  @NonNull
+  private MeterRegistry meterRegistry;
+
+  @NonNull
+  private QueryAuthorCache queryAuthorCache;
 
   /**
    * Enqueues a {@link Ccdl}, allowing it to be published afterward. Enqueued queries are stored within
@@ -72,21 +93,18 @@ public class QueryDispatcher {
     var querySerialized = serializedCcdl(query);
 
     var queryHash = queryHashCalculator.calculateSerializedQueryBodyHash(querySerialized);
-    var queryBody = queryContentRepository.findByHash(queryHash)
-        .orElseGet(() -> {
-          var freshQueryBody = new QueryContent(querySerialized);
-          freshQueryBody.setHash(queryHash);
-          return queryContentRepository.save(freshQueryBody);
-        });
-
-    var queryId = persistEnqueuedQuery(queryBody, userId);
+    var queryId = queryRepository.enqueue(querySerialized, queryHash, userId);
+    queryAuthorCache.put(queryId, userId);
     log.info("enqueued query '{}'", queryId);
     return queryId;
   }
 
   /**
    * Dispatches (publishes) an already enqueued query in a broadcast fashion using all configured {@link BrokerClient}s.
-   * The dispatch is designed to happen asynchronously (but not in parallel).
+   * <p>
+   * Nothing is dispatched until the returned {@link Mono} is subscribed to. The brokers are then dispatched to one after
+   * another on the subscribing thread, without the bounded executors and the timeout used by
+   * {@link #dispatchEnqueuedQueryAsync(Long)}.
    *
    * @param queryId Identifies the backend query that shall be dispatched.
    * @return A {@link Mono} in complete state if at least a single broker managed to publish the query. If all brokers
@@ -97,7 +115,8 @@ public class QueryDispatcher {
     try {
       var enqueuedQuery = getEnqueuedQuery(queryId);
       var deserializedQueryBody = getCcdlFromEnqueuedQuery(enqueuedQuery);
-      var translatedQueryBodyFormats = translateQueryIntoTargetFormats(deserializedQueryBody);
+      var translatedQueryBodyFormats = translateQueryIntoTargetFormats(enqueuedQuery.getQueryContent(),
+          deserializedQueryBody);
 
       var dispatchable = new Dispatchable(enqueuedQuery, translatedQueryBodyFormats);
 
@@ -121,20 +140,31 @@ public class QueryDispatcher {
     }
   }
 
+  /**
+   * Dispatches (publishes) an already enqueued query in a broadcast fashion using all configured {@link BrokerClient}s.
+   * <p>
+   * All brokers are dispatched to concurrently, each of them on its own bounded executor and bounded by the configured
+   * broker dispatch timeout. The query counts as dispatched as soon as the first broker succeeds. Dispatches to the
+   * remaining brokers finish in the background. Outcome and latency of every single broker dispatch are recorded.
+   *
+   * @param queryId Identifies the backend query that shall be dispatched.
+   * @throws QueryDispatchException If the query can't be prepared for dispatch or all brokers failed to publish it.
+   */
   @Async
   public void dispatchEnqueuedQueryAsync(Long queryId) throws QueryDispatchException {
     try {
       var enqueuedQuery = getEnqueuedQuery(queryId);
       var deserializedQueryBody = getCcdlFromEnqueuedQuery(enqueuedQuery);
-      var translatedQueryBodyFormats = translateQueryIntoTargetFormats(deserializedQueryBody);
+      var translatedQueryBodyFormats = translateQueryIntoTargetFormats(enqueuedQuery.getQueryContent(),
+          deserializedQueryBody);
 
       var dispatchable = new Dispatchable(enqueuedQuery, translatedQueryBodyFormats);
 
-      // Dispatch to all brokers synchronously
-      boolean allDispatchesFailed = queryBrokerClients.stream()
-          .noneMatch(broker -> dispatchSynchronously(dispatchable, broker));
+      var dispatches = queryBrokerClients.stream()
+          .map(broker -> dispatchConcurrently(dispatchable, broker))
+          .toList();
 
-      if (allDispatchesFailed) {
+      if (!awaitFirstSuccessfulDispatch(dispatches)) {
         throw new QueryDispatchException(
             "cannot dispatch query with id '%s'. Dispatch failed for all brokers".formatted(queryId)
         );
@@ -149,8 +179,77 @@ public class QueryDispatcher {
   }
 
   /**
-   * Dispatches a single dispatchable entity (query) using the specified broker.
-   * Dispatching happens in an asynchronous fashion.
+   * Dispatches a single dispatchable entity (query) using the specified broker on the executor of that broker.
+   * <p>
+   * A dispatch not finishing within the broker dispatch timeout after it started running is considered failed. It gets
+   * interrupted and isn't persisted, even if the broker finishes it anyway. A dispatch the executor of the broker has
+   * no capacity left for is rejected right away.
+   *
+   * @param dispatchable This is going to be dispatched.
+   * @param broker       This actually dispatches the dispatchable entity.
+   * @return A future that always completes normally with either true (dispatch was successful) or false (dispatch
+   * failed, timed out or got rejected).
+   */
+  private CompletableFuture<Boolean> dispatchConcurrently(Dispatchable dispatchable, BrokerClient broker) {
+    var startTime = System.nanoTime();
+    var dispatch = new BrokerDispatch(dispatchable, broker);
+    try {
+      brokerDispatchExecutors.forBroker(broker).execute(dispatch.task);
+    } catch (RejectedExecutionException e) {
+      dispatch.result.completeExceptionally(e);
+    }
+    return dispatch.result
+        .handle((dispatched, error) -> {
+          var outcome = DispatchOutcome.of(dispatched, error);
+          var latency = Duration.ofNanos(System.nanoTime() - startTime);
+          recordDispatch(dispatchable.query.getId(), broker, outcome, latency, error);
+          return outcome == DispatchOutcome.SUCCESS;
+        });
+  }
+
+  private void recordDispatch(Long queryId, BrokerClient broker, DispatchOutcome outcome, Duration latency,
+                              Throwable error) {
+    var brokerType = String.valueOf(broker.getBrokerType());
+    Timer.builder(DISPATCH_TIMER_NAME)
+        .description("Duration of dispatching a query to a single broker")
+        .tag("broker", brokerType)
+        .tag("outcome", outcome.tagValue())
+        .register(meterRegistry)
+        .record(latency);
+
+    switch (outcome) {
+      case SUCCESS -> log.debug("Dispatch of query '{}' with broker type '{}' succeeded after {} ms", queryId,
+          brokerType, latency.toMillis());
+      case TIMEOUT -> log.warn("Dispatch of query '{}' with broker type '{}' timed out after {} ms", queryId,
+          brokerType, latency.toMillis());
+      case REJECTED -> log.warn("Dispatch of query '{}' with broker type '{}' was rejected, because too many "
+          + "dispatches to this broker are pending", queryId, brokerType);
+      case FAILURE -> log.warn("Dispatch of query '{}' with broker type '{}' failed after {} ms", queryId,
+          brokerType, latency.toMillis(), error);
+    }
+  }
+
+  /**
+   * Waits until either one of the given dispatches succeeded or all of them are done.
+   *
+   * @param dispatches dispatches to all brokers, each of them completing with their success
+   * @return true if at least a single dispatch succeeded, false otherwise
+   */
+  private static boolean awaitFirstSuccessfulDispatch(List<CompletableFuture<Boolean>> dispatches) {
+    var firstSuccess = new CompletableFuture<Boolean>();
+    dispatches.forEach(dispatch -> dispatch.thenAccept(dispatched -> {
+      if (dispatched) {
+        firstSuccess.complete(true);
+      }
+    }));
+    CompletableFuture.allOf(dispatches.toArray(CompletableFuture[]::new))
+        .whenComplete((ignored, error) -> firstSuccess.complete(false));
+    return firstSuccess.join();
+  }
+
+  /**
+   * Dispatches a single dispatchable entity (query) using the specified broker once the returned {@link Mono} is
+   * subscribed to.
    *
    * @param dispatchable This is going to be dispatched.
    * @param broker       This actually dispatches the dispatchable entity.
@@ -159,27 +258,18 @@ public class QueryDispatcher {
    */
   private Mono<Boolean> dispatchAsynchronously(Dispatchable dispatchable, BrokerClient broker) {
     return Mono.fromCallable(() -> {
-      try {
-        var brokerQueryId = broker.createQuery(dispatchable.query.getId());
-
-        for (Entry<QueryMediaType, String> queryBodyFormats : dispatchable.serializedQueryByFormat.entrySet()) {
-          broker.addQueryDefinition(brokerQueryId, queryBodyFormats.getKey(),
-              queryBodyFormats.getValue());
-        }
-        broker.publishQuery(brokerQueryId);
-        persistDispatchedQuery(dispatchable.query, brokerQueryId, broker.getBrokerType());
-        log.info("dispatched query '{}' as '{}' with broker type '{}'", dispatchable.query.getId(),
-            brokerQueryId, broker.getBrokerType());
-        return true;
-      } catch (UnsupportedMediaTypeException | QueryNotFoundException | IOException e) {
-        log.error("failed to dispatch query '{}' with broker type '{}': {}",
-            dispatchable.query.getId(), broker.getBrokerType(), e.getMessage());
-        return false;
-      }
+      var brokerQueryId = publishSynchronously(dispatchable, broker);
+      brokerQueryId.ifPresent(id -> persistDispatch(dispatchable, broker, id));
+      return brokerQueryId.isPresent();
     });
   }
 
-  private Boolean dispatchSynchronously(Dispatchable dispatchable, BrokerClient broker) {
+  /**
+   * Publishes a single dispatchable entity (query) using the specified broker without persisting the dispatch.
+   *
+   * @return the ID of the query within the broker or empty if publishing failed
+   */
+  private Optional<String> publishSynchronously(Dispatchable dispatchable, BrokerClient broker) {
     try {
       var brokerQueryId = broker.createQuery(dispatchable.query.getId());
 
@@ -188,19 +278,21 @@ public class QueryDispatcher {
       }
 
       broker.publishQuery(brokerQueryId);
-      persistDispatchedQuery(dispatchable.query, brokerQueryId, broker.getBrokerType());
-
-      log.info("Dispatched query '{}' as '{}' with broker type '{}'",
-          dispatchable.query.getId(), brokerQueryId, broker.getBrokerType());
-      return true;
+      return Optional.of(brokerQueryId);
 
     } catch (UnsupportedMediaTypeException | QueryNotFoundException | IOException | QueryDefinitionNotFoundException e) {
       log.error("Failed to dispatch query '{}' with broker type '{}': {}",
           dispatchable.query.getId(), broker.getBrokerType(), e.getMessage());
-      return false;
+      return Optional.empty();
     }
   }
 
+  private void persistDispatch(Dispatchable dispatchable, BrokerClient broker, String brokerQueryId) {
+    persistDispatchedQuery(dispatchable.query, brokerQueryId, broker.getBrokerType());
+    log.info("Dispatched query '{}' as '{}' with broker type '{}'", dispatchable.query.getId(), brokerQueryId,
+        broker.getBrokerType());
+  }
+
   private String serializedCcdl(Ccdl query) throws QueryDispatchException {
     try {
       return jsonUtil.writeValueAsString(query);
@@ -209,14 +301,6 @@ public class QueryDispatcher {
     }
   }
 
-  private Long persistEnqueuedQuery(QueryContent queryBody, String userId) {
-    var feasibilityQuery = new Query();
-    feasibilityQuery.setCreatedAt(Timestamp.from(Instant.now()));
-    feasibilityQuery.setCreatedBy(userId);
-    feasibilityQuery.setQueryContent(queryBody);
-    return queryRepository.save(feasibilityQuery).getId();
-  }
-
   private void persistDispatchedQuery(Query query, String brokerInternalId, BrokerClientType brokerType) {
     var queryDispatchId = new QueryDispatchId();
     queryDispatchId.setQueryId(query.getId());
@@ -244,15 +328,93 @@ public class QueryDispatcher {
     }
   }
 
-  private Map<QueryMediaType, String> translateQueryIntoTargetFormats(Ccdl query)
+  private Map<QueryMediaType, String> translateQueryIntoTargetFormats(QueryContent queryContent, Ccdl query)
       throws QueryDispatchException {
     try {
-      return queryTranslationComponent.translate(query);
+      return queryTranslationComponent.translate(queryContent.getHash(), query);
     } catch (QueryTranslationException e) {
       throw new QueryDispatchException("cannot translate enqueued query body into configured formats", e);
     }
   }
 
+  /**
+   * A single dispatch to a broker, whose timeout starts as soon as it runs on the executor of the broker.
+   * <p>
+   * Either finishing the dispatch or its timeout decides its result, whichever comes first. A timed out dispatch gets
+   * interrupted. If the broker publishes the query nonetheless, the dispatch is still persisted, so that results of the
+   * query can be mapped and the query gets removed from the broker later on. Its outcome stays a timeout, though.
+   * Persisting happens on the executor thread within a transaction of its own, as the transaction of the dispatching
+   * caller isn't available there.
+   */
+  private class BrokerDispatch implements Runnable {
+
+    private final Dispatchable dispatchable;
+    private final BrokerClient broker;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private final FutureTask<Void> task = new FutureTask<>(this, null);
+    private final AtomicBoolean decided = new AtomicBoolean();
+
+    private BrokerDispatch(Dispatchable dispatchable, BrokerClient broker) {
+      this.dispatchable = dispatchable;
+      this.broker = broker;
+    }
+
+    @Override
+    public void run() {
+      CompletableFuture.delayedExecutor(brokerDispatchTimeout.toMillis(), TimeUnit.MILLISECONDS)
+          .execute(this::timeOut);
+      try {
+        var brokerQueryId = publishSynchronously(dispatchable, broker);
+        var inTime = decided.compareAndSet(false, true);
+        if (brokerQueryId.isPresent()) {
+          if (!inTime) {
+            log.warn("Dispatch of query '{}' with broker type '{}' finished after the timeout",
+                dispatchable.query.getId(), broker.getBrokerType());
+            // The interruption by the timeout must not make persisting the published query fail
+            Thread.interrupted();
+          }
+          persistDispatch(dispatchable, broker, brokerQueryId.get());
+        }
+        if (inTime) {
+          result.complete(brokerQueryId.isPresent());
+        }
+      } catch (Exception e) {
+        decided.set(true);
+        result.completeExceptionally(e);
+      }
+    }
+
+    private void timeOut() {
+      if (decided.compareAndSet(false, true)) {
+        result.completeExceptionally(new TimeoutException("Dispatch exceeded the timeout of %s"
+            .formatted(brokerDispatchTimeout)));
+        task.cancel(true);
+      }
+    }
+  }
+
+  private enum DispatchOutcome {
+    SUCCESS,
+    FAILURE,
+    TIMEOUT,
+    REJECTED;
+
+    private static DispatchOutcome of(Boolean dispatched, Throwable error) {
+      if (error == null) {
+        return Boolean.TRUE.equals(dispatched) ? SUCCESS : FAILURE;
+      }
+      var cause = error instanceof CompletionException ? error.getCause() : error;
+      if (cause instanceof TimeoutException) {
+        return TIMEOUT;
+      }
+      return cause instanceof RejectedExecutionException ? REJECTED : FAILURE;
+    }
+
+    private String tagValue() {
+      return name().toLowerCase();
+    }
+  }
+
   @Getter
   @RequiredArgsConstructor
   private static class Dispatchable {
@@ -0,0 +1,54 @@
+package de.medizininformatikinitiative.dataportal.backend.query.persistence;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class QueryContentTranslation {
+
+  @EmbeddedId
+  private QueryContentTranslationId id;
+
+  @Column(name = "translation", nullable = false)
+  private String translation;
+
+  @Override
+  public final boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null) return false;
+    Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+    Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+    if (thisEffectiveClass != oEffectiveClass) return false;
+    QueryContentTranslation that = (QueryContentTranslation) o;
+    return getId() != null && Objects.equals(getId(), that.getId());
+  }
+
+  @Override
+  public final int hashCode() {
+    return Objects.hash(id);
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Embeddable
+  public static class QueryContentTranslationId implements Serializable {
+    @Column(name = "query_content_hash")
+    private String queryContentHash;
+
+    @Column(name = "mapping_version")
+    private String mappingVersion;
+
+    @Column(name = "media_type")
+    private String mediaType;
+  }
+}
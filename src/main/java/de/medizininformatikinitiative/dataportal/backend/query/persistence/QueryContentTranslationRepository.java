@@ -0,0 +1,32 @@
+package de.medizininformatikinitiative.dataportal.backend.query.persistence;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslation.QueryContentTranslationId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.NativeQuery;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface QueryContentTranslationRepository
+    extends JpaRepository<QueryContentTranslation, QueryContentTranslationId> {
+
+  @Query("SELECT t FROM QueryContentTranslation t WHERE t.id.queryContentHash = ?1 AND t.id.mappingVersion = ?2")
+  List<QueryContentTranslation> findByQueryContentHashAndMappingVersion(String queryContentHash,
+                                                                          String mappingVersion);
+
+  @Modifying
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  @Query("DELETE FROM QueryContentTranslation t WHERE t.id.queryContentHash = ?1 AND t.id.mappingVersion <> ?2")
+  int deleteOtherMappingVersions(String queryContentHash, String mappingVersion);
+
+  @Modifying
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  @NativeQuery(value = """
+      INSERT INTO query_content_translation (query_content_hash, mapping_version, media_type, translation)
+      VALUES (?1, ?2, ?3, ?4)
+      ON CONFLICT DO NOTHING""")
+  int insertIfAbsent(String queryContentHash, String mappingVersion, String mediaType, String translation);
+}
@@ -0,0 +1,13 @@
+package de.medizininformatikinitiative.dataportal.backend.query.persistence;
+
+import java.sql.Timestamp;
+
+/**
+ * Identifier and creation time of a {@link Query}, without its content.
+ */
+public interface QueryCreation {
+
+  Long getId();
+
+  Timestamp getCreatedAt();
+}
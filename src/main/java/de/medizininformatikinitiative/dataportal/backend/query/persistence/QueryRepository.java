@@ -13,12 +13,37 @@ public interface QueryRepository extends JpaRepository<Query, Long> {
   @org.springframework.data.jpa.repository.Query("SELECT t FROM Query t WHERE t.createdBy = ?1")
   Optional<List<Query>> findByAuthor(String authorId);
 
+  /**
+   * Stores a new query of the given author in a single statement, together with its content unless a content with
+   * the same hash is stored already.
+   * <p>
+   * Identical contents enqueued concurrently end up as a single content, since the conflict on the unique hash is
+   * resolved by the database instead of failing one of the statements.
+   *
+   * @param queryContent     the serialized content of the query
+   * @param queryContentHash the hash of the serialized content
+   * @param authorId         the id of the author of the query
+   * @return the id of the new query
+   */
+  @NativeQuery(value = """
+      WITH content AS (
+        INSERT INTO query_content (query_content, hash) VALUES (?1, ?2)
+        ON CONFLICT (hash) DO UPDATE SET hash = EXCLUDED.hash
+        RETURNING id
+      )
+      INSERT INTO query (query_content_id, created_by) SELECT id, ?3 FROM content
+      RETURNING id""")
+  Long enqueue(String queryContent, String queryContentHash, String authorId);
+
   @org.springframework.data.jpa.repository.Query("SELECT t.createdBy FROM Query t WHERE t.id = ?1")
   Optional<String> getAuthor(Long queryId);
 
   @NativeQuery(value = "SELECT count (*) FROM query WHERE created_by = ?1 AND created_at > (current_timestamp - (?2 * interval '1 minute'))")
   Long countQueriesByAuthorInTheLastNMinutes(String authorId, long minutes);
 
+  @org.springframework.data.jpa.repository.Query("SELECT t.id AS id, t.createdAt AS createdAt FROM Query t WHERE t.createdBy = ?1 AND t.createdAt > ?2")
+  List<QueryCreation> findCreationsByAuthorSince(String authorId, Timestamp since);
+
   @NativeQuery(value = "SELECT EXTRACT (EPOCH from ( SELECT (current_timestamp - created_at) from query WHERE created_by = ?1 ORDER BY created_at desc LIMIT 1 OFFSET ?2))")
   Long getAgeOfNToLastQueryInSeconds(String authorId, int offset);
 
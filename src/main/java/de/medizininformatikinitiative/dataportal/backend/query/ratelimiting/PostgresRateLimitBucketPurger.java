@@ -0,0 +1,66 @@
+package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically deletes the rate limiting buckets from the shared Postgres storage that weren't written for a while.
+ * <p>
+ * A bucket that wasn't written for as long as it takes to refill it completely is full again. Deleting it is therefore
+ * safe, as the bucket created anew on its next access is indistinguishable from the deleted one. The time of the last
+ * write of a bucket is maintained by a trigger on the table.
+ */
+@Slf4j
+public class PostgresRateLimitBucketPurger implements AutoCloseable {
+
+  private static final String DELETE_EXPIRED_BUCKETS = """
+      DELETE FROM rate_limit_bucket WHERE written_at <= current_timestamp - (? * interval '1 millisecond')""";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Duration bucketExpiry;
+  private final Duration purgeInterval;
+  private final ScheduledExecutorService purgeExecutor;
+
+  /**
+   * Creates a new PostgresRateLimitBucketPurger.
+   *
+   * @param dataSource    the data source of the database holding the buckets
+   * @param bucketExpiry  the duration after its last write a bucket is deleted, which has to be at least the longest
+   *                      time it takes to refill any bucket
+   * @param purgeInterval the interval in which expired buckets are deleted from the database
+   */
+  public PostgresRateLimitBucketPurger(DataSource dataSource, Duration bucketExpiry, Duration purgeInterval) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.bucketExpiry = bucketExpiry;
+    this.purgeInterval = purgeInterval;
+    this.purgeExecutor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  /**
+   * Starts purging expired buckets.
+   */
+  public void start() {
+    purgeExecutor.scheduleWithFixedDelay(this::purgeExpiredBuckets, purgeInterval.toMillis(),
+        purgeInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    purgeExecutor.shutdownNow();
+  }
+
+  void purgeExpiredBuckets() {
+    try {
+      var purged = jdbcTemplate.update(DELETE_EXPIRED_BUCKETS, bucketExpiry.toMillis());
+      log.debug("Purged {} expired rate limiting buckets", purged);
+    } catch (RuntimeException e) {
+      log.error("Could not purge expired rate limiting buckets", e);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Counts the queries each user created within a sliding window, so that the query creation quotas can be checked
+ * without querying the database.
+ * <p>
+ * The window of a user covers the last {@code horizon} and is loaded from the database on first access. Afterward,
+ * every query enqueued by this instance is recorded in it. Windows are loaded anew once their time to live is over,
+ * so that queries created by other instances of the backend are taken into account eventually. At most the windows
+ * of the maximum number of users are kept. Their number is exposed as {@code cache.size} metric tagged with
+ * {@code queryQuota}.
+ * <p>
+ * Intervals longer than the horizon are not covered by the windows and have to be counted in the database instead.
+ * <p>
+ * Windows only take queries created by this instance into account immediately. Running multiple instances, a user may
+ * exceed the quotas once per instance until the windows are loaded again. A {@link #disabled(QueryRepository,
+ * MeterRegistry) disabled} counter covers no interval at all, so that every quota gets counted in the database.
+ */
+public class QueryQuotaCounter {
+
+  private final QueryRepository queryRepository;
+  private final Duration horizon;
+  private final LoadingCache<String, Window> windows;
+
+  /**
+   * Creates a new QueryQuotaCounter.
+   *
+   * @param queryRepository the repository the windows are loaded from
+   * @param horizon         the longest interval the windows cover
+   * @param maximumUsers    the maximum number of users whose windows are kept
+   * @param timeToLive      the time after which the window of a user is loaded from the database again
+   * @param meterRegistry   the registry the window count metrics are registered with
+   */
+  public QueryQuotaCounter(QueryRepository queryRepository, Duration horizon, long maximumUsers, Duration timeToLive,
+                           MeterRegistry meterRegistry) {
+    this.queryRepository = queryRepository;
+    this.horizon = horizon;
+    this.windows = Caffeine.newBuilder()
+        .maximumSize(maximumUsers)
+        .expireAfterWrite(timeToLive)
+        .recordStats()
+        .build(this::loadWindow);
+    CaffeineCacheMetrics.monitor(meterRegistry, windows, "queryQuota");
+  }
+
+  /**
+   * Creates a counter that covers no interval and keeps no windows.
+   *
+   * @param queryRepository the repository the windows would be loaded from
+   * @param meterRegistry   the registry the window count metrics are registered with
+   * @return the disabled counter
+   */
+  public static QueryQuotaCounter disabled(QueryRepository queryRepository, MeterRegistry meterRegistry) {
+    return new QueryQuotaCounter(queryRepository, Duration.ZERO, 0, Duration.ZERO, meterRegistry);
+  }
+
+  private Window loadWindow(String userId) {
+    var window = new Window();
+    queryRepository.findCreationsByAuthorSince(userId, Timestamp.from(Instant.now().minus(horizon)))
+        .forEach(creation -> window.add(creation.getId(), creation.getCreatedAt().toInstant()));
+    return window;
+  }
+
+  /**
+   * Tells whether the windows cover the given interval.
+   *
+   * @param interval the interval to count the queries in
+   * @return {@code true} if queries in the interval can be counted by this counter
+   */
+  public boolean covers(Duration interval) {
+    return !horizon.isZero() && interval.compareTo(horizon) <= 0;
+  }
+
+  /**
+   * Counts the queries the given user created within the given interval before now.
+   *
+   * @param userId   the id of the user
+   * @param interval the interval, which has to be {@link #covers(Duration) covered}
+   * @return the number of queries the user created in the interval
+   */
+  public long count(String userId, Duration interval) {
+    return windows.get(userId).countSince(Instant.now().minus(interval));
+  }
+
+  /**
+   * Returns the age of the query created by the given user, which is preceded by {@code offset} more recent ones.
+   *
+   * @param userId the id of the user
+   * @param offset the number of more recent queries of the user
+   * @return the age of the query or empty if the user didn't create that many queries within the horizon
+   */
+  public Optional<Duration> ageOfNthLatest(String userId, int offset) {
+    return windows.get(userId).nthLatest(offset)
+        .map(createdAt -> Duration.between(createdAt, Instant.now()));
+  }
+
+  /**
+   * Records that the given user just created a query.
+   *
+   * @param userId  the id of the user
+   * @param queryId the id of the created query
+   */
+  public void record(String userId, Long queryId) {
+    if (horizon.isZero()) {
+      return;
+    }
+    windows.get(userId).add(queryId, Instant.now());
+  }
+
+  private class Window {
+
+    private final List<Creation> creations = new ArrayList<>();
+
+    /**
+     * Adds a query unless it is part of this window already, which is the case if the window was loaded after the
+     * query was created.
+     */
+    private synchronized void add(Long queryId, Instant createdAt) {
+      var horizonStart = Instant.now().minus(horizon);
+      creations.removeIf(creation -> creation.createdAt.isBefore(horizonStart));
+      if (creations.stream().noneMatch(creation -> creation.queryId.equals(queryId))) {
+        creations.add(new Creation(queryId, createdAt));
+        creations.sort(Comparator.comparing(Creation::createdAt));
+      }
+    }
+
+    private synchronized long countSince(Instant since) {
+      return creations.stream().filter(creation -> creation.createdAt.isAfter(since)).count();
+    }
+
+    private synchronized Optional<Instant> nthLatest(int offset) {
+      if (offset < 0 || offset >= creations.size()) {
+        return Optional.empty();
+      }
+      return Optional.of(creations.get(creations.size() - 1 - offset).createdAt);
+    }
+  }
+
+  private record Creation(Long queryId, Instant createdAt) {
+  }
+}
@@ -0,0 +1,40 @@
+package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.threeten.extra.PeriodDuration;
+
+@Configuration
+@Slf4j
+public class QueryQuotaSpringConfig {
+
+  @Bean
+  public QueryQuotaCounter createQueryQuotaCounter(
+      QueryRepository queryRepository,
+      @Value("${app.privacy.quota.create.inMemory:false}") boolean inMemory,
+      @Value("${app.privacy.quota.soft.create.interval}") String softInterval,
+      @Value("${app.privacy.quota.hard.create.interval}") String hardInterval,
+      @Value("${app.privacy.quota.create.maxUsers:100000}") long maxUsers,
+      @Value("${app.privacy.quota.create.timeToLive:PT1M}") String timeToLive,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    if (!inMemory) {
+      log.info("Create disabled QueryQuotaCounter, counting created queries in the database");
+      return QueryQuotaCounter.disabled(queryRepository, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    var softDuration = PeriodDuration.parse(softInterval).getDuration();
+    var hardDuration = PeriodDuration.parse(hardInterval).getDuration();
+    var horizon = softDuration.compareTo(hardDuration) > 0 ? softDuration : hardDuration;
+
+    log.info("Create QueryQuotaCounter covering {} for at most {} users, loading them again after {}", horizon,
+        maxUsers, timeToLive);
+    return new QueryQuotaCounter(queryRepository, horizon, maxUsers, PeriodDuration.parse(timeToLive).getDuration(),
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+}
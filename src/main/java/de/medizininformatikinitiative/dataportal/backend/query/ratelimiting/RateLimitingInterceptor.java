@@ -61,9 +61,9 @@ public class RateLimitingInterceptor implements HandlerInterceptor {
       return false;
     }
 
-    // Handle Summary Result
-    if ((request.getRequestURI()
-        .endsWith(WebSecurityConfig.PATH_SUMMARY_RESULT))) {
+    // Handle Summary Result. Opening a stream of summary results is charged like a single poll.
+    if (request.getRequestURI().endsWith(WebSecurityConfig.PATH_SUMMARY_RESULT)
+        || request.getRequestURI().endsWith(WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM)) {
       var summaryResultTokenBucket = rateLimitingService.resolveSummaryResultBucket(
           authentication.getName());
       var summaryResultProbe = summaryResultTokenBucket.tryConsumeAndReturnRemaining(
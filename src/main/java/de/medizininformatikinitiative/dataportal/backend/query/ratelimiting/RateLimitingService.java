@@ -1,22 +1,51 @@
 package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.Getter;
+import org.springframework.lang.Nullable;
 import org.threeten.extra.PeriodDuration;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Implement a rate-limiting service via a {@link Bucket} on a per-user basis.
  * <p>
  * The limit is defined via application.yaml or env variable.
+ * <p>
+ * The buckets of each kind are kept in a cache. A bucket expires once it hasn't been accessed for as long as it takes to
+ * refill it completely. A bucket created anew after that is indistinguishable from the expired one, so expiry never
+ * changes the limits. The caches of the polling buckets are additionally bounded by the maximum number of users, as
+ * evicting a polling bucket early at most allows a single additional poll. The bucket limiting the amount of detailed
+ * obfuscated results is part of the privacy quota, so its cache only ever drops buckets by expiry. The number of
+ * buckets of each kind is exposed as {@code cache.size} metric tagged with the name of the cache.
+ * <p>
+ * Optionally, the state of the buckets is kept in a storage shared by all instances of the backend, so that a user gets
+ * the same allowance no matter how many instances are running. The cached buckets then act as near-cache: the polling
+ * buckets are served from their local state and only synchronized with the shared storage once per synchronization
+ * interval, keeping the storage out of the polling hot path. The bucket limiting the amount of detailed obfuscated
+ * results is part of the privacy quota and therefore always consumed from the shared storage directly. Shared buckets
+ * not written for the {@link #getBucketExpiry() bucket expiry} are full again and may be deleted from the storage.
  */
 public class RateLimitingService {
 
-  private final Map<String, Bucket> summaryResultRetrievalCache = new ConcurrentHashMap<>();
-  private final Map<String, Bucket> detailedResultRetrievalCache = new ConcurrentHashMap<>();
-  private final Map<String, Bucket> detailedViewObfuscatedResultRetrievalCache = new ConcurrentHashMap<>();
+  private final Cache<String, Bucket> summaryResultRetrievalCache;
+  private final Cache<String, Bucket> detailedResultRetrievalCache;
+  private final Cache<String, Bucket> detailedViewObfuscatedResultRetrievalCache;
+
+  @Nullable
+  private final ProxyManager<String> sharedBuckets;
+  private final Duration synchronizationInterval;
 
   private final PeriodDuration intervalPollingSummary;
   private final PeriodDuration intervalPollingDetailed;
@@ -34,24 +63,83 @@ public class RateLimitingService {
    * @param intervalPollingDetailed    the duration after which the user can poll detailed results again
    * @param amountDetailedObfuscated   the amount of times a user can request detailed obfuscated results
    * @param intervalDetailedObfuscated the timespan after which a users access is "forgotten"
+   * @param maximumUsers               the maximum number of users whose polling buckets of a single kind are kept
+   * @param meterRegistry              the registry the bucket count metrics are registered with
+   */
+  public RateLimitingService(PeriodDuration intervalPollingSummary, PeriodDuration intervalPollingDetailed,
+                             int amountDetailedObfuscated, PeriodDuration intervalDetailedObfuscated,
+                             long maximumUsers, MeterRegistry meterRegistry) {
+    this(intervalPollingSummary, intervalPollingDetailed, amountDetailedObfuscated, intervalDetailedObfuscated,
+        maximumUsers, meterRegistry, null, Duration.ZERO);
+  }
+
+  /**
+   * Creates a new RateLimitingService keeping the state of its buckets in a shared storage.
+   *
+   * @param intervalPollingSummary     the duration after which the user can poll summary results again
+   * @param intervalPollingDetailed    the duration after which the user can poll detailed results again
+   * @param amountDetailedObfuscated   the amount of times a user can request detailed obfuscated results
+   * @param intervalDetailedObfuscated the timespan after which a users access is "forgotten"
+   * @param maximumUsers               the maximum number of users whose polling buckets of a single kind are kept
+   * @param meterRegistry              the registry the bucket count metrics are registered with
+   * @param sharedBuckets              the shared storage of the buckets or {@code null} to keep buckets locally
+   * @param synchronizationInterval    the maximum time the polling buckets are served from their local state
    */
-  public RateLimitingService(PeriodDuration intervalPollingSummary, PeriodDuration intervalPollingDetailed, int amountDetailedObfuscated, PeriodDuration intervalDetailedObfuscated) {
+  public RateLimitingService(PeriodDuration intervalPollingSummary, PeriodDuration intervalPollingDetailed,
+                             int amountDetailedObfuscated, PeriodDuration intervalDetailedObfuscated,
+                             long maximumUsers, MeterRegistry meterRegistry,
+                             @Nullable ProxyManager<String> sharedBuckets, Duration synchronizationInterval) {
+    this.sharedBuckets = sharedBuckets;
+    this.synchronizationInterval = synchronizationInterval;
     this.intervalPollingSummary = intervalPollingSummary;
     this.intervalPollingDetailed = intervalPollingDetailed;
     this.amountDetailedObfuscated = amountDetailedObfuscated;
     this.intervalDetailedObfuscated = intervalDetailedObfuscated;
+    this.summaryResultRetrievalCache = createBucketCache("rateLimiting.summaryResult",
+        Caffeine.newBuilder().maximumSize(maximumUsers), intervalPollingSummary.getDuration(), meterRegistry);
+    this.detailedResultRetrievalCache = createBucketCache("rateLimiting.detailedObfuscatedResult",
+        Caffeine.newBuilder().maximumSize(maximumUsers), intervalPollingDetailed.getDuration(), meterRegistry);
+    // Evicting a bucket before it is full again would reset the privacy quota of the user, so this cache isn't bounded
+    this.detailedViewObfuscatedResultRetrievalCache = createBucketCache("rateLimiting.viewDetailedObfuscatedResult",
+        Caffeine.newBuilder(), viewDetailedObfuscatedRefillTime(), meterRegistry);
+  }
+
+  private static Cache<String, Bucket> createBucketCache(String name, Caffeine<Object, Object> cacheBuilder,
+                                                         Duration refillTime, MeterRegistry meterRegistry) {
+    Cache<String, Bucket> cache = cacheBuilder
+        .expireAfterAccess(refillTime)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    return cache;
+  }
+
+  /**
+   * Returns the longest time it takes to refill any bucket completely. A bucket not consumed from for that long is full
+   * again.
+   *
+   * @return the longest refill time of all buckets
+   */
+  public Duration getBucketExpiry() {
+    var refillTimes = List.of(intervalPollingSummary.getDuration(), intervalPollingDetailed.getDuration(),
+        viewDetailedObfuscatedRefillTime());
+    return Collections.max(refillTimes);
+  }
+
+  private Duration viewDetailedObfuscatedRefillTime() {
+    return intervalDetailedObfuscated.getDuration().multipliedBy(Math.max(amountDetailedObfuscated, 1));
   }
 
   public Bucket resolveSummaryResultBucket(String userId) {
-    return summaryResultRetrievalCache.computeIfAbsent(userId, this::newSummaryResultBucket);
+    return summaryResultRetrievalCache.get(userId, this::newSummaryResultBucket);
   }
 
   public Bucket resolveDetailedObfuscatedResultBucket(String userId) {
-    return detailedResultRetrievalCache.computeIfAbsent(userId, this::newDetailedResultBucket);
+    return detailedResultRetrievalCache.get(userId, this::newDetailedResultBucket);
   }
 
   public Bucket resolveViewDetailedObfuscatedBucket(String userId) {
-    return detailedViewObfuscatedResultRetrievalCache.computeIfAbsent(userId, this::newViewDetailedObfuscatedResultBucket);
+    return detailedViewObfuscatedResultRetrievalCache.get(userId, this::newViewDetailedObfuscatedResultBucket);
   }
 
   public void addTokensToDetailedObfuscatedResultBucket(String userId, int amount) {
@@ -59,21 +147,34 @@ public class RateLimitingService {
   }
 
   private Bucket newSummaryResultBucket(String userId) {
-    return Bucket.builder()
-        .addLimit(limit -> limit.capacity(1).refillIntervally(1, intervalPollingSummary.getDuration()))
-        .build();
+    return newBucket("summary-result:" + userId, Bandwidth.builder()
+        .capacity(1).refillIntervally(1, intervalPollingSummary.getDuration())
+        .build(), true);
   }
 
   private Bucket newDetailedResultBucket(String userId) {
-    return Bucket.builder()
-        .addLimit(limit -> limit.capacity(1).refillIntervally(1, intervalPollingDetailed.getDuration()))
-        .build();
+    return newBucket("detailed-obfuscated-result:" + userId, Bandwidth.builder()
+        .capacity(1).refillIntervally(1, intervalPollingDetailed.getDuration())
+        .build(), true);
   }
 
   private Bucket newViewDetailedObfuscatedResultBucket(String userId) {
-    return Bucket.builder()
-        .addLimit(limit -> limit.capacity(amountDetailedObfuscated).refillIntervally(1, intervalDetailedObfuscated.getDuration()))
-        .build();
+    return newBucket("view-detailed-obfuscated-result:" + userId, Bandwidth.builder()
+        .capacity(amountDetailedObfuscated).refillIntervally(1, intervalDetailedObfuscated.getDuration())
+        .build(), false);
+  }
+
+  private Bucket newBucket(String key, Bandwidth limit, boolean synchronizeDelayed) {
+    if (sharedBuckets == null) {
+      return Bucket.builder().addLimit(limit).build();
+    }
+    var configuration = BucketConfiguration.builder().addLimit(limit).build();
+    var bucketBuilder = sharedBuckets.builder();
+    if (synchronizeDelayed) {
+      bucketBuilder = bucketBuilder.withOptimization(
+          Optimizations.delaying(new DelayParameters(Long.MAX_VALUE, synchronizationInterval)));
+    }
+    return bucketBuilder.build(key, () -> configuration);
   }
 
 }
@@ -1,28 +1,76 @@
 package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
 
+import io.github.bucket4j.distributed.jdbc.BucketTableSettings;
+import io.github.bucket4j.distributed.jdbc.PrimaryKeyMapper;
+import io.github.bucket4j.distributed.jdbc.SQLProxyConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.postgresql.PostgreSQLSelectForUpdateBasedProxyManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.threeten.extra.PeriodDuration;
 
+import javax.sql.DataSource;
+
 @Configuration
 @Slf4j
 public class RateLimitingServiceSpringConfig {
 
+  @Bean
+  @ConditionalOnExpression("${app.sharedRateLimits.enabled:false}")
+  public ProxyManager<String> createSharedRateLimitBuckets(DataSource dataSource) {
+    log.info("Create shared Postgres storage for rate limiting buckets");
+    return new PostgreSQLSelectForUpdateBasedProxyManager<>(SQLProxyConfiguration.builder()
+        .withPrimaryKeyMapper(PrimaryKeyMapper.STRING)
+        .withTableSettings(BucketTableSettings.customSettings("rate_limit_bucket", "id", "state"))
+        .build(dataSource));
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnExpression("${app.sharedRateLimits.enabled:false}")
+  public PostgresRateLimitBucketPurger createRateLimitBucketPurger(
+      @Value("${app.sharedRateLimits.purgeInterval:PT1M}") String purgeInterval,
+      DataSource dataSource, RateLimitingService rateLimitingService) {
+    var bucketExpiry = rateLimitingService.getBucketExpiry();
+    log.info("Purge rate limiting buckets not written for {} from the shared storage every {}", bucketExpiry,
+        purgeInterval);
+    var purger = new PostgresRateLimitBucketPurger(dataSource, bucketExpiry,
+        PeriodDuration.parse(purgeInterval).getDuration());
+    purger.start();
+    return purger;
+  }
+
   @Bean
   public RateLimitingService createRateLimitingService(
       @Value("${app.privacy.quota.read.resultSummary.pollingInterval}") String pollingIntervalSummary,
       @Value("${app.privacy.quota.read.resultDetailedObfuscated.pollingInterval}") String pollingIntervalDetailed,
       @Value("${app.privacy.quota.read.resultDetailedObfuscated.amount}") int detailedObfuscatedAmount,
-      @Value("${app.privacy.quota.read.resultDetailedObfuscated.interval}") String detailedObfuscatedInterval) {
+      @Value("${app.privacy.quota.read.resultDetailedObfuscated.interval}") String detailedObfuscatedInterval,
+      @Value("${app.privacy.quota.read.maxUsers:100000}") long maxUsers,
+      @Value("${app.sharedRateLimits.synchronizationInterval:PT1S}") String synchronizationInterval,
+      ObjectProvider<MeterRegistry> meterRegistry,
+      ObjectProvider<ProxyManager<String>> sharedBuckets) {
 
     log.info(
         "Create RateLimitingService with interval of {} for summary result endpoint, {} for detailed"
-            + " obfuscated results and {} allowed requests to detailed obfuscated result per {}",
-        pollingIntervalSummary, pollingIntervalDetailed, detailedObfuscatedAmount, detailedObfuscatedInterval);
+            + " obfuscated results and {} allowed requests to detailed obfuscated result per {}, keeping the buckets"
+            + " of at most {} users",
+        pollingIntervalSummary, pollingIntervalDetailed, detailedObfuscatedAmount, detailedObfuscatedInterval,
+        maxUsers);
+    var sharedBucketStorage = sharedBuckets.getIfAvailable();
+    if (sharedBucketStorage != null) {
+      log.info("Share rate limiting buckets between all instances, synchronizing polling buckets every {}",
+          synchronizationInterval);
+    }
     return new RateLimitingService(PeriodDuration.parse(pollingIntervalSummary),
         PeriodDuration.parse(pollingIntervalDetailed),
-        detailedObfuscatedAmount, PeriodDuration.parse(detailedObfuscatedInterval));
+        detailedObfuscatedAmount, PeriodDuration.parse(detailedObfuscatedInterval), maxUsers,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new), sharedBucketStorage,
+        PeriodDuration.parse(synchronizationInterval).getDuration());
   }
 }
@@ -0,0 +1,119 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import lombok.Builder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores results of queries volatile within the memory of this instance.
+ * <p>
+ * All results of a query are cleared after a configurable duration following the last write.
+ */
+public class InMemoryResultStore implements ResultStore {
+
+  private static final Listener NO_OP_LISTENER = new Listener() {
+    @Override
+    public void onResultsChanged(long queryId, ResultLine resultLine) {
+    }
+
+    @Override
+    public void onResultsRemoved(long queryId, boolean expired) {
+    }
+  };
+
+  private final Cache<Long, QueryResult> queryResultCache;
+  private volatile Listener listener = NO_OP_LISTENER;
+
+  /**
+   * Creates a new InMemoryResultStore.
+   *
+   * @param resultExpiry the duration after which a result shouldn't be available anymore
+   */
+  public InMemoryResultStore(Duration resultExpiry) {
+    this.queryResultCache = Caffeine.newBuilder()
+        .expireAfterWrite(resultExpiry)
+        .scheduler(Scheduler.systemScheduler())
+        .removalListener((key, value, cause) -> onRemoval(key, cause))
+        .build();
+  }
+
+  private void onRemoval(Long key, RemovalCause cause) {
+    if (key != null && cause != RemovalCause.REPLACED) {
+      listener.onResultsRemoved(key, cause == RemovalCause.EXPIRED);
+    }
+  }
+
+  @Override
+  public void addResultLine(long queryId, ResultLine resultLine) {
+    var queryResult = queryResultCache.asMap()
+        .merge(queryId, QueryResult.ofResultLine(resultLine), QueryResult::merge);
+    if (queryResult.resultsBySite().get(resultLine.siteName()) == resultLine) {
+      listener.onResultsChanged(queryId, resultLine);
+    }
+  }
+
+  @Override
+  public List<ResultLine> findByQuery(long queryId) {
+    return List.copyOf(queryResultCache.asMap().getOrDefault(queryId, QueryResult.EMPTY)
+        .resultsBySite()
+        .values());
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Holds all submitted {@link ResultLine results} from sites to a query.
+   */
+  @Builder
+  private record QueryResult(Map<String, ResultLine> resultsBySite) {
+
+    private static final QueryResult EMPTY = QueryResult.builder()
+        .resultsBySite(Map.of())
+        .build();
+
+    private static QueryResult ofResultLine(ResultLine resultLine) {
+      return QueryResult.builder()
+          .resultsBySite(Map.of(resultLine.siteName(), resultLine))
+          .build();
+    }
+
+    /**
+     * Merges the result lines of {@code this} and the {@code other} query
+     * result.
+     * <p>
+     * Prioritises result lines of {@code this} query result over the ones of
+     * the {@code other} query result in a way that result lines of a site
+     * already present in {@code this} query result will not be overwritten with
+     * ones from the {@code other} query result.
+     * <p>
+     * The map of result lines is copied at most once and not at all if the
+     * other query result only contains sites already present in this one.
+     *
+     * @param other the query result to merge into this query result
+     * @return a query result containing the result lines from this query
+     * result and result lines from new sites of the other query result
+     */
+    private QueryResult merge(QueryResult other) {
+      if (resultsBySite.keySet().containsAll(other.resultsBySite.keySet())) {
+        return this;
+      }
+      Map<String, ResultLine> mergedResultsBySite = new HashMap<>(
+          resultsBySite);
+      other.resultsBySite.forEach(mergedResultsBySite::putIfAbsent);
+      return QueryResult.builder()
+          .resultsBySite(Collections.unmodifiableMap(mergedResultsBySite))
+          .build();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores results of queries in a Postgres table shared by all instances of the backend.
+ * <p>
+ * Results of a query expire after a configurable duration following the last write of a result line of that query.
+ * Expired results are no longer returned and get purged periodically. Every change is announced via Postgres
+ * {@code NOTIFY} on a dedicated channel, so that every instance listening on that channel can inform its
+ * {@link Listener} - regardless of which instance received the result. Notifications about new results carry the
+ * result line itself, so that listeners don't have to read it from the database.
+ * <p>
+ * The connection listening for notifications is held open for the lifetime of the store and is therefore taken from
+ * a separate data source that doesn't pool its connections.
+ */
+@Slf4j
+public class PostgresResultStore implements ResultStore, AutoCloseable {
+
+  static final String CHANNEL = "query_result";
+  private static final String PAYLOAD_CHANGED = "changed:";
+  private static final String PAYLOAD_REMOVED = "removed:";
+  private static final int NOTIFICATION_POLL_TIMEOUT_MILLIS = 1000;
+  private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+  private static final String INSERT_RESULT_LINE = """
+      WITH inserted AS (
+          INSERT INTO query_result_line (query_id, site_name, result_type, result) VALUES (?, ?, ?, ?)
+          ON CONFLICT (query_id, site_name) DO NOTHING
+          RETURNING query_id)
+      SELECT pg_notify(?, ?) FROM inserted""";
+
+  private static final String SELECT_RESULT_LINES = """
+      SELECT site_name, result_type, result FROM query_result_line
+      WHERE query_id = ?
+        AND (SELECT max(written_at) FROM query_result_line WHERE query_id = ?)
+            > current_timestamp - (? * interval '1 millisecond')""";
+
+  private static final String DELETE_EXPIRED_RESULT_LINES = """
+      DELETE FROM query_result_line WHERE query_id IN (
+          SELECT query_id FROM query_result_line
+          GROUP BY query_id
+          HAVING max(written_at) <= current_timestamp - (? * interval '1 millisecond'))
+      RETURNING query_id""";
+
+  private final DataSource listenerDataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final Duration resultExpiry;
+  private final Duration purgeInterval;
+  private final ScheduledExecutorService purgeExecutor;
+  private final ExecutorService notificationExecutor;
+  private volatile Listener listener;
+  private volatile boolean running;
+
+  /**
+   * Creates a new PostgresResultStore.
+   *
+   * @param dataSource         the data source of the database holding the results
+   * @param listenerDataSource the non-pooling data source of the same database the connection listening for
+   *                           notifications is obtained from
+   * @param resultExpiry       the duration after which a result shouldn't be available anymore
+   * @param purgeInterval      the interval in which expired results are deleted from the database
+   */
+  public PostgresResultStore(DataSource dataSource, DataSource listenerDataSource, Duration resultExpiry,
+                             Duration purgeInterval) {
+    this.listenerDataSource = listenerDataSource;
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.resultExpiry = resultExpiry;
+    this.purgeInterval = purgeInterval;
+    this.purgeExecutor = Executors.newSingleThreadScheduledExecutor();
+    this.notificationExecutor = Executors.newSingleThreadExecutor();
+  }
+
+  /**
+   * Starts listening for notifications of other instances and purging expired results.
+   */
+  public void start() {
+    running = true;
+    notificationExecutor.execute(this::listenForNotifications);
+    purgeExecutor.scheduleWithFixedDelay(this::purgeExpiredResults, purgeInterval.toMillis(),
+        purgeInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    purgeExecutor.shutdownNow();
+    notificationExecutor.shutdownNow();
+  }
+
+  @Override
+  public void addResultLine(long queryId, ResultLine resultLine) {
+    jdbcTemplate.queryForList(INSERT_RESULT_LINE, queryId, resultLine.siteName(),
+        resultLine.type().getShortcode(), resultLine.result(), CHANNEL, changedPayload(queryId, resultLine));
+  }
+
+  /**
+   * Encodes the query ID and the result line as {@code changed:<query-id>:<result-type>:<result>:<site-name>}. The site
+   * name comes last, as it is the only part that may contain colons.
+   */
+  static String changedPayload(long queryId, ResultLine resultLine) {
+    return PAYLOAD_CHANGED + queryId + ":" + resultLine.type().getShortcode() + ":" + resultLine.result() + ":"
+        + resultLine.siteName();
+  }
+
+  @Override
+  public List<ResultLine> findByQuery(long queryId) {
+    return jdbcTemplate.query(SELECT_RESULT_LINES,
+        (rs, rowNum) -> ResultLine.builder()
+            .siteName(rs.getString("site_name"))
+            .type(ResultType.fromShortcode(rs.getString("result_type")))
+            .result(rs.getLong("result"))
+            .build(),
+        queryId, queryId, resultExpiry.toMillis());
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Deletes all expired results. Only the instance actually deleting the results of a query is informed about their
+   * expiry, all other instances are informed about their removal.
+   */
+  void purgeExpiredResults() {
+    try {
+      var expiredQueryIds = jdbcTemplate.queryForList(DELETE_EXPIRED_RESULT_LINES, Long.class,
+              resultExpiry.toMillis()).stream()
+          .distinct()
+          .toList();
+
+      for (var queryId : expiredQueryIds) {
+        log.debug("Purged expired results of query with ID {}", queryId);
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, PAYLOAD_REMOVED + queryId);
+        if (listener != null) {
+          listener.onResultsRemoved(queryId, true);
+        }
+      }
+    } catch (RuntimeException e) {
+      log.error("Could not purge expired query results", e);
+    }
+  }
+
+  private void listenForNotifications() {
+    while (running) {
+      try (var connection = listenerDataSource.getConnection()) {
+        var pgConnection = connection.unwrap(PGConnection.class);
+        try (var statement = connection.createStatement()) {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        log.info("Listening for query result notifications on channel '{}'", CHANNEL);
+
+        while (running) {
+          var notifications = pgConnection.getNotifications(NOTIFICATION_POLL_TIMEOUT_MILLIS);
+          if (notifications != null) {
+            for (var notification : notifications) {
+              handleNotification(notification);
+            }
+          }
+        }
+      } catch (SQLException e) {
+        if (!running) {
+          return;
+        }
+        log.error("Lost connection while listening for query result notifications. Reconnecting in {}",
+            RECONNECT_DELAY, e);
+        try {
+          Thread.sleep(RECONNECT_DELAY.toMillis());
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void handleNotification(PGNotification notification) {
+    var payload = notification.getParameter();
+    var currentListener = listener;
+    if (currentListener == null || payload == null) {
+      return;
+    }
+
+    try {
+      if (payload.startsWith(PAYLOAD_CHANGED)) {
+        notifyChanged(currentListener, payload);
+      } else if (payload.startsWith(PAYLOAD_REMOVED)) {
+        currentListener.onResultsRemoved(Long.parseLong(payload.substring(PAYLOAD_REMOVED.length())), false);
+      } else {
+        log.warn("Ignoring unknown query result notification '{}'", payload);
+      }
+    } catch (RuntimeException e) {
+      log.error("Could not handle query result notification '{}'", payload, e);
+    }
+  }
+
+  private static void notifyChanged(Listener listener, String payload) {
+    var parts = payload.substring(PAYLOAD_CHANGED.length()).split(":", 4);
+    if (parts.length != 4) {
+      throw new IllegalArgumentException("Malformed payload");
+    }
+    listener.onResultsChanged(Long.parseLong(parts[0]), ResultLine.builder()
+        .type(ResultType.fromShortcode(parts[1]))
+        .result(Long.parseLong(parts[2]))
+        .siteName(parts[3])
+        .build());
+  }
+}
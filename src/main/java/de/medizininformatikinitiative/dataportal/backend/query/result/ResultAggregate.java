@@ -0,0 +1,58 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType;
+import lombok.Builder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the successful {@link ResultLine results} of a query together with values derived from them.
+ * <p>
+ * An aggregate is computed once whenever a site reports a result, so that reading the results of a query doesn't need
+ * to filter and sum all result lines again.
+ *
+ * @param successfulResults     all results of the query with {@link ResultType result type}
+ *                              {@link ResultType#SUCCESS success}
+ * @param totalNumberOfPatients the sum of the number of patients over all successful results
+ */
+@Builder
+public record ResultAggregate(List<ResultLine> successfulResults, long totalNumberOfPatients) {
+
+  public static final ResultAggregate EMPTY = new ResultAggregate(List.of(), 0);
+
+  public ResultAggregate {
+    successfulResults = List.copyOf(successfulResults);
+  }
+
+  /**
+   * Aggregates the given result lines, ignoring all results that have not been successful.
+   *
+   * @param resultLines all result lines of a query
+   * @return the aggregate of the successful results
+   */
+  public static ResultAggregate of(Collection<ResultLine> resultLines) {
+    var successfulResults = resultLines.stream()
+        .filter(resultLine -> resultLine.type() == ResultType.SUCCESS)
+        .toList();
+    return new ResultAggregate(successfulResults, successfulResults.stream().mapToLong(ResultLine::result).sum());
+  }
+
+  /**
+   * Adds the given result line to this aggregate, unless it hasn't been successful or its site already reported a
+   * successful result.
+   *
+   * @param resultLine a new result line of the query
+   * @return the aggregate including the result line or this aggregate if it's unchanged
+   */
+  public ResultAggregate with(ResultLine resultLine) {
+    if (resultLine.type() != ResultType.SUCCESS || successfulResults.stream()
+        .anyMatch(successfulResult -> successfulResult.siteName().equals(resultLine.siteName()))) {
+      return this;
+    }
+    var extendedResults = new ArrayList<>(successfulResults);
+    extendedResults.add(resultLine);
+    return new ResultAggregate(extendedResults, totalNumberOfPatients + resultLine.result());
+  }
+}
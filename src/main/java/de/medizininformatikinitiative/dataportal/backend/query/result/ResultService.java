@@ -2,69 +2,115 @@ package de.medizininformatikinitiative.dataportal.backend.query.result;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalCause;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.BrokerClientType;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryDispatchRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType;
-import lombok.Builder;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.aktin.broker.client2.BrokerAdmin2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threeten.extra.PeriodDuration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Stores results of queries volatile.
  * <p>
  * Query results are stored in form of {@link ResultLine result lines}, one for
- * each site per query. All results of a query are cleared after a configurable
- * duration. Only the first result per query will be kept.
+ * each site per query, within a {@link ResultStore}. All results of a query are
+ * cleared after a configurable duration. Only the first result per query will be
+ * kept.
+ * <p>
+ * For every query whose results have been read an immutable
+ * {@link ResultAggregate} is kept that gets extended by every incoming result,
+ * so reading results is cheap regardless of how often they are polled. Results
+ * of queries nobody asked for are not read from the {@link ResultStore}.
+ * <p>
+ * Besides being queried, results can be observed as a stream of updates that
+ * completes as soon as the results of the query expire.
  */
 @Slf4j
 public class ResultService {
 
   private static final Logger resultLogger = LoggerFactory.getLogger("resultLogger");
+  private static final Duration EMIT_RETRY_DURATION = Duration.ofMillis(100);
 
-  private final Cache<Long, QueryResult> queryResultCache;
+  private final ResultStore resultStore;
+  private final Cache<Long, ResultAggregate> resultAggregates;
+  private final Sinks.Many<ResultUpdate> resultUpdates;
+  private final Duration resultExpiry;
   private final BrokerAdmin2 aktinBrokerClient;
 
   @NonNull
   private final QueryDispatchRepository queryDispatchRepository;
 
   /**
-   * Creates a new ResultService.
+   * Creates a new ResultService keeping all results in memory.
    *
    * @param resultExpiry the duration after which a result shouldn't be
    *                     available anymore
    */
   public ResultService(PeriodDuration resultExpiry, BrokerAdmin2 aktinBrokerClient,
                        QueryDispatchRepository queryDispatchRepository) {
+    this(new InMemoryResultStore(resultExpiry.getDuration()), resultExpiry, aktinBrokerClient,
+        queryDispatchRepository);
+  }
+
+  /**
+   * Creates a new ResultService.
+   *
+   * @param resultStore  the store holding the results
+   * @param resultExpiry the duration after which a result shouldn't be
+   *                     available anymore
+   */
+  public ResultService(ResultStore resultStore, PeriodDuration resultExpiry, BrokerAdmin2 aktinBrokerClient,
+                       QueryDispatchRepository queryDispatchRepository) {
     this.queryDispatchRepository = queryDispatchRepository;
     this.aktinBrokerClient = aktinBrokerClient;
-    this.queryResultCache = Caffeine.newBuilder()
+    this.resultExpiry = resultExpiry.getDuration();
+    this.resultUpdates = Sinks.many().multicast().directBestEffort();
+    this.resultStore = resultStore;
+    this.resultAggregates = Caffeine.newBuilder()
         .expireAfterWrite(resultExpiry.getDuration())
-        .removalListener((key, value, cause) -> onRemoval(key, cause))
         .build();
+    this.resultStore.setListener(new ResultStore.Listener() {
+      @Override
+      public void onResultsChanged(long queryId, ResultLine resultLine) {
+        var resultAggregate = resultAggregates.asMap()
+            .computeIfPresent(queryId, (id, previous) -> previous.with(resultLine));
+        if (resultAggregate != null) {
+          publishUpdate(new ResultUpdate(queryId, resultAggregate.successfulResults(), false));
+        }
+      }
+
+      @Override
+      public void onResultsRemoved(long queryId, boolean expired) {
+        onRemoval(queryId, expired);
+      }
+    });
   }
 
   /**
-   * Deletes Query from AKTIN broker if the query has been dispatched to AKTIN
-   * Broker.
+   * Notifies observers of the query that its results are gone and deletes Query
+   * from AKTIN broker if the query has been dispatched to AKTIN Broker.
    *
-   * @param key the query id as saved in the cache
+   * @param queryId the query id whose results were removed
+   * @param expired whether the results were removed due to their expiry
    */
-  private void onRemoval(Object key, Object cause) {
+  private void onRemoval(long queryId, boolean expired) {
+    resultAggregates.invalidate(queryId);
+    publishUpdate(ResultUpdate.expired(queryId));
 
-    if (this.aktinBrokerClient == null || !cause.equals(RemovalCause.EXPIRED)) {
+    if (this.aktinBrokerClient == null || !expired) {
       return;
     }
 
-    Long queryId = (Long) key;
     var queryDispatch = queryDispatchRepository.findByQueryIdAndBrokerType(
         Long.toString(queryId), BrokerClientType.AKTIN);
 
@@ -97,10 +143,23 @@ public class ResultService {
    * ResultType#SUCCESS success}
    */
   public List<ResultLine> findSuccessfulByQuery(long queryId) {
-    return queryResultCache.asMap().getOrDefault(queryId, QueryResult.EMPTY)
-        .resultsBySite()
-        .values().stream()
-        .filter(resultLine -> resultLine.type() == ResultType.SUCCESS).toList();
+    return findAggregateByQuery(queryId).successfulResults();
+  }
+
+  /**
+   * Finds the {@link ResultAggregate aggregate} of all successful
+   * {@link ResultLine results} for a query.
+   * <p>
+   * In case the query is not found, or the query has no results, an
+   * {@link ResultAggregate#EMPTY empty aggregate} is returned.
+   *
+   * @param queryId the query id
+   * @return the aggregate of all successful results for the given {@code queryId}
+   */
+  public ResultAggregate findAggregateByQuery(long queryId) {
+    // Loading the aggregate blocks incoming results of the query until it's cached, so that none of them is missed.
+    // Results already contained in the loaded aggregate are ignored when they come in afterward.
+    return resultAggregates.get(queryId, id -> ResultAggregate.of(resultStore.findByQuery(id)));
   }
 
   /**
@@ -113,51 +172,53 @@ public class ResultService {
    * @param result  the {@link ResultLine result} from a site
    */
   public void addResultLine(Long queryId, ResultLine result) {
-    queryResultCache.asMap()
-        .merge(queryId, QueryResult.ofResultLine(result), QueryResult::merge);
+    resultStore.addResultLine(queryId, result);
     resultLogger.info("{};{};{}", queryId, result.siteName(), result.result());
   }
 
   /**
-   * Holds all submitted {@link ResultLine results} from sites to a query.
+   * Streams all {@link ResultLine results} for a query, that have been
+   * successful.
+   * <p>
+   * The stream starts with the results currently known and emits the complete
+   * list of successful results again whenever a site reports a new successful
+   * result. It completes once the results of the query expire or, in case no
+   * site reports anything, after the result expiry duration has passed without
+   * any update.
+   *
+   * @param queryId the query id
+   * @return a stream of lists of all {@link ResultLine results} for the given
+   * {@code queryId}, that have the {@link ResultType result type}
+   * {@link ResultType#SUCCESS success}
    */
-  @Builder
-  private record QueryResult(Map<String, ResultLine> resultsBySite) {
-
-    private static final QueryResult EMPTY = QueryResult.builder()
-        .resultsBySite(Map.of())
-        .build();
+  public Flux<List<ResultLine>> streamSuccessfulByQuery(long queryId) {
+    return Flux.defer(() -> {
+      var emittedSites = new AtomicInteger(-1);
+      var updates = resultUpdates.asFlux()
+          .filter(update -> update.queryId() == queryId)
+          .takeWhile(update -> !update.expired())
+          .map(ResultUpdate::successfulResults)
+          .onBackpressureLatest();
+
+      // Subscribing to the updates before reading the current results guarantees that no update is missed. Results
+      // of a site are never replaced, so only lists that grew since the last emission carry new information.
+      return Flux.merge(updates, Mono.fromSupplier(() -> findSuccessfulByQuery(queryId)))
+          .filter(resultLines -> emittedSites.getAndAccumulate(resultLines.size(), Math::max) < resultLines.size())
+          .timeout(resultExpiry, Flux.empty());
+    });
+  }
 
-    private QueryResult {
-      resultsBySite = Map.copyOf(resultsBySite);
-    }
+  private void publishUpdate(ResultUpdate update) {
+    resultUpdates.emitNext(update, Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY_DURATION));
+  }
 
-    private static QueryResult ofResultLine(ResultLine resultLine) {
-      return QueryResult.builder()
-          .resultsBySite(Map.of(resultLine.siteName(), resultLine))
-          .build();
-    }
+  /**
+   * Notification about changed results of a single query.
+   */
+  private record ResultUpdate(long queryId, List<ResultLine> successfulResults, boolean expired) {
 
-    /**
-     * Merges the result lines of {@code this} and the {@code other} query
-     * result, returning a new query result.
-     * <p>
-     * Prioritises result lines of {@code this} query result over the ones of
-     * the {@code other} query result in a way that result lines of a site
-     * already present in {@code this} query result will not be overwritten with
-     * ones from the {@code other} query result.
-     *
-     * @param other the query result to merge into this query result
-     * @return a new query result containing the result lines from this query
-     * result and result lines from new sites of the other query result
-     */
-    private QueryResult merge(QueryResult other) {
-      Map<String, ResultLine> mergedResultsBySite = new HashMap<>(
-          resultsBySite);
-      other.resultsBySite.forEach(mergedResultsBySite::putIfAbsent);
-      return QueryResult.builder()
-          .resultsBySite(mergedResultsBySite)
-          .build();
+    private static ResultUpdate expired(long queryId) {
+      return new ResultUpdate(queryId, List.of(), true);
     }
   }
 }
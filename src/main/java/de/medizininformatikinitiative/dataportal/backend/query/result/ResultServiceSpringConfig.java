@@ -6,10 +6,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.aktin.broker.client2.AuthFilter;
 import org.aktin.broker.client2.BrokerAdmin2;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
 import org.threeten.extra.PeriodDuration;
 
+import javax.sql.DataSource;
 import java.net.URI;
 import java.net.http.WebSocket.Builder;
 
@@ -26,9 +30,34 @@ public class ResultServiceSpringConfig {
   @Value("${app.broker.aktin.broker.apiKey:}")
   private String brokerApiKey;
 
+  @Bean
+  @ConditionalOnExpression("!${app.sharedResultStore.enabled:false}")
+  public ResultStore createInMemoryResultStore(@Value("${app.queryResultExpiry}") String resultExpiry) {
+    log.info("Create in-memory ResultStore");
+    return new InMemoryResultStore(PeriodDuration.parse(resultExpiry).getDuration());
+  }
+
+  @Bean
+  @ConditionalOnExpression("${app.sharedResultStore.enabled:false}")
+  public ResultStore createPostgresResultStore(
+      @Value("${app.queryResultExpiry}") String resultExpiry,
+      @Value("${app.sharedResultStore.purgeInterval:PT10S}") String purgeInterval,
+      DataSource dataSource, DataSourceProperties dataSourceProperties) {
+    log.info("Create shared Postgres ResultStore purging expired results every {}", purgeInterval);
+    // The connection listening for notifications is held open permanently and must not be taken from the pool.
+    var listenerDataSource = dataSourceProperties.initializeDataSourceBuilder()
+        .type(SimpleDriverDataSource.class)
+        .build();
+    var resultStore = new PostgresResultStore(dataSource, listenerDataSource,
+        PeriodDuration.parse(resultExpiry).getDuration(), PeriodDuration.parse(purgeInterval).getDuration());
+    resultStore.start();
+    return resultStore;
+  }
+
   @Bean
   public ResultService createResultService(
-      @Value("${app.queryResultExpiry}") String resultExpiry, QueryDispatchRepository queryDispatchRepository) {
+      @Value("${app.queryResultExpiry}") String resultExpiry, ResultStore resultStore,
+      QueryDispatchRepository queryDispatchRepository) {
 
     BrokerAdmin2 client = null;
 
@@ -38,7 +67,7 @@ public class ResultServiceSpringConfig {
     }
 
     log.info("Create ResultService with result TTL of {}", resultExpiry);
-    return new ResultService(PeriodDuration.parse(resultExpiry), client, queryDispatchRepository);
+    return new ResultService(resultStore, PeriodDuration.parse(resultExpiry), client, queryDispatchRepository);
   }
 
   @AllArgsConstructor
@@ -0,0 +1,63 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import java.util.List;
+
+/**
+ * Represents a storage facility for {@link ResultLine result lines} of queries.
+ * <p>
+ * Results of a query expire after a configurable duration. Implementations inform a registered
+ * {@link Listener} about changed and removed results - no matter whether the change originated from this or another
+ * instance sharing the same store.
+ */
+public interface ResultStore {
+
+  /**
+   * Adds {@code resultLine} to the results of the query with {@code queryId}.
+   * <p>
+   * Only the <b>first</b> {@link ResultLine result} per site is kept. Subsequent results of the same site will be
+   * discarded.
+   *
+   * @param queryId    identifies the query the result belongs to
+   * @param resultLine the result from a site
+   */
+  void addResultLine(long queryId, ResultLine resultLine);
+
+  /**
+   * Gets all {@link ResultLine result lines} of a query that have not expired yet.
+   *
+   * @param queryId identifies the query whose results shall be returned
+   * @return the results of the query, or an empty {@link List} if the query is unknown or its results expired
+   */
+  List<ResultLine> findByQuery(long queryId);
+
+  /**
+   * Registers the {@link Listener} that is informed about changes to the stored results. Replaces any previously
+   * registered listener.
+   *
+   * @param listener the listener to inform
+   */
+  void setListener(Listener listener);
+
+  /**
+   * Reacts on changes of stored results.
+   */
+  interface Listener {
+
+    /**
+     * Called after a new result line has been stored for a query. Not called for result lines that were discarded,
+     * because the site already reported a result.
+     *
+     * @param queryId    identifies the query whose results changed
+     * @param resultLine the result line that was stored
+     */
+    void onResultsChanged(long queryId, ResultLine resultLine);
+
+    /**
+     * Called after all results of a query have been removed from the store.
+     *
+     * @param queryId identifies the query whose results were removed
+     * @param expired {@code true} if the results expired and this instance is the one that evicted them
+     */
+    void onResultsRemoved(long queryId, boolean expired);
+  }
+}
@@ -1,12 +1,15 @@
 package de.medizininformatikinitiative.dataportal.backend.query.translation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
 import de.numcodex.sq2cql.Translator;
+import de.numcodex.sq2cql.model.structured_query.StructuredQuery;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
+import java.io.IOException;
+
 /**
  * A translator for translating a {@link Ccdl} into its CQL representation.
  */
@@ -21,18 +24,34 @@ class CqlQueryTranslator implements QueryTranslator {
 
   @Override
   public String translate(Ccdl query) throws QueryTranslationException {
-    de.numcodex.sq2cql.model.structured_query.StructuredQuery ccdl;
-    try {
-      ccdl = jsonUtil.readValue(jsonUtil.writeValueAsString(query),
-          de.numcodex.sq2cql.model.structured_query.StructuredQuery.class);
-    } catch (JsonProcessingException e) {
-      throw new QueryTranslationException("cannot encode/decode CCDL as JSON", e);
-    }
+    var structuredQuery = toStructuredQuery(jsonUtil, query);
 
     try {
-      return translator.toCql(ccdl).print();
+      return translator.toCql(structuredQuery).print();
     } catch (Exception e) {
       throw new QueryTranslationException("cannot translate CCDL to CQL format", e);
     }
   }
+
+  /**
+   * Converts a {@link Ccdl} into the structured query model of sq2cql.
+   * <p>
+   * Both models share the same JSON representation. The CCDL is serialized into a {@link TokenBuffer} that is read
+   * back directly, so no intermediate JSON string gets rendered and parsed again.
+   *
+   * @param jsonUtil the object mapper defining the JSON representation of both models
+   * @param query    the CCDL to convert
+   * @return the structured query representing the given CCDL
+   * @throws QueryTranslationException if the CCDL can't be converted
+   */
+  static StructuredQuery toStructuredQuery(ObjectMapper jsonUtil, Ccdl query) throws QueryTranslationException {
+    try (var buffer = new TokenBuffer(jsonUtil, false)) {
+      jsonUtil.writeValue(buffer, query);
+      try (var parser = buffer.asParser(jsonUtil)) {
+        return jsonUtil.readValue(parser, StructuredQuery.class);
+      }
+    } catch (IOException e) {
+      throw new QueryTranslationException("cannot encode/decode CCDL as JSON", e);
+    }
+  }
 }
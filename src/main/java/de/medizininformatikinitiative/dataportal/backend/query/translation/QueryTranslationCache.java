@@ -0,0 +1,126 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the translations of query contents into the given formats.
+ * <p>
+ * Translations are keyed by the hash of the query content and the version of the mappings used for translating. The
+ * mapping version changes whenever the inputs of any configured translator or the set of configured formats change,
+ * so that translations made with outdated mappings are never reused. The in-memory cache is bounded and can optionally
+ * be backed by the database, allowing translations to survive restarts and to be shared between instances. Persisting
+ * happens in transactions of its own, so that it never affects the transaction of the caller.
+ */
+@Slf4j
+public class QueryTranslationCache {
+
+  private final Cache<TranslationKey, Map<QueryMediaType, String>> translations;
+  private final String mappingVersion;
+  private final Set<QueryMediaType> formats;
+  private final QueryContentTranslationRepository translationRepository;
+
+  /**
+   * Creates a new QueryTranslationCache.
+   *
+   * @param mappingVersion        version of the mappings used for translating
+   * @param formats               the formats whose translations are cached
+   * @param maximumSize           the maximum number of query contents whose translations are kept in memory
+   * @param translationRepository repository persisting translations, {@code null} if translations shall only be kept
+   *                              in memory
+   */
+  public QueryTranslationCache(String mappingVersion, Set<QueryMediaType> formats, long maximumSize,
+                               QueryContentTranslationRepository translationRepository) {
+    this.mappingVersion = mappingVersion;
+    this.formats = Set.copyOf(formats);
+    this.translationRepository = translationRepository;
+    this.translations = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .build();
+  }
+
+  /**
+   * Returns the formats whose translations are cached.
+   *
+   * @return the cached formats
+   */
+  public Set<QueryMediaType> getFormats() {
+    return formats;
+  }
+
+  /**
+   * Finds the translations of the query content with the given hash made with the current mapping version.
+   *
+   * @param queryContentHash the hash of the query content
+   * @return the translations into the cached formats mapped to their corresponding media type, or an empty
+   * {@link Optional} if the query content hasn't been translated into all of them with the current mapping version yet
+   */
+  public Optional<Map<QueryMediaType, String>> find(String queryContentHash) {
+    var key = new TranslationKey(queryContentHash, mappingVersion);
+    var cachedTranslations = translations.getIfPresent(key);
+    if (cachedTranslations != null || translationRepository == null) {
+      return Optional.ofNullable(cachedTranslations);
+    }
+
+    var persistedTranslations = findPersisted(queryContentHash);
+    persistedTranslations.ifPresent(t -> translations.put(key, t));
+    return persistedTranslations;
+  }
+
+  /**
+   * Stores the translations of the query content with the given hash made with the current mapping version. Only the
+   * translations into the cached formats are kept.
+   *
+   * @param queryContentHash  the hash of the query content
+   * @param queryTranslations the translations mapped to their corresponding media type
+   */
+  public void put(String queryContentHash, Map<QueryMediaType, String> queryTranslations) {
+    var immutableTranslations = queryTranslations.entrySet().stream()
+        .filter(translation -> formats.contains(translation.getKey()))
+        .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, Map.Entry::getValue));
+    translations.put(new TranslationKey(queryContentHash, mappingVersion), immutableTranslations);
+    if (translationRepository != null) {
+      persist(queryContentHash, immutableTranslations);
+    }
+  }
+
+  private Optional<Map<QueryMediaType, String>> findPersisted(String queryContentHash) {
+    try {
+      var persistedTranslations = new EnumMap<QueryMediaType, String>(QueryMediaType.class);
+      translationRepository.findByQueryContentHashAndMappingVersion(queryContentHash, mappingVersion)
+          .forEach(t -> persistedTranslations.put(QueryMediaType.fromRepresentation(t.getId().getMediaType()),
+              t.getTranslation()));
+      return persistedTranslations.keySet().equals(formats)
+          ? Optional.of(Map.copyOf(persistedTranslations))
+          : Optional.empty();
+    } catch (DataAccessException | IllegalArgumentException e) {
+      log.warn("Could not load persisted translations of query content with hash '{}'", queryContentHash, e);
+      return Optional.empty();
+    }
+  }
+
+  private void persist(String queryContentHash, Map<QueryMediaType, String> queryTranslations) {
+    try {
+      // Translations made with outdated mappings will never be read again.
+      translationRepository.deleteOtherMappingVersions(queryContentHash, mappingVersion);
+      // Another instance may have persisted the same translations concurrently, which are kept.
+      queryTranslations.forEach((format, translation) -> translationRepository.insertIfAbsent(queryContentHash,
+          mappingVersion, format.getRepresentation(), translation));
+    } catch (DataAccessException e) {
+      log.warn("Could not persist translations of query content with hash '{}'", queryContentHash, e);
+    }
+  }
+
+  private record TranslationKey(String queryContentHash, String mappingVersion) {
+  }
+}
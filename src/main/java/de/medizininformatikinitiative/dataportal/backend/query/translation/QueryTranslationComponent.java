@@ -3,38 +3,204 @@ package de.medizininformatikinitiative.dataportal.backend.query.translation;
 import de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Provides functions for translating {@link Ccdl} into different formats.
+ * <p>
+ * Formats are either required or optional. Required formats are translated one after another and a single failing
+ * translation fails the whole translation. Optional formats are translated concurrently on a dedicated executor, each
+ * bounded by a timeout. A failing, timed out or rejected optional translation only leaves out that format. Timed out
+ * translations get interrupted.
  */
 @Slf4j
-@RequiredArgsConstructor
 public class QueryTranslationComponent {
 
   @NonNull
   private final Map<QueryMediaType, QueryTranslator> translators;
 
+  @NonNull
+  private final Set<QueryMediaType> optionalFormats;
+
+  private final ExecutorService translationExecutor;
+
+  private final Duration translationTimeout;
+
+  private final QueryTranslationCache translationCache;
+
+  private final Map<QueryMediaType, QueryTranslator> uncachedTranslators;
+
+  /**
+   * Creates a new QueryTranslationComponent with all formats being required and not caching any translations.
+   *
+   * @param translators the translators mapped to the media type they translate into
+   */
+  public QueryTranslationComponent(@NonNull Map<QueryMediaType, QueryTranslator> translators) {
+    this(translators, null);
+  }
+
+  /**
+   * Creates a new QueryTranslationComponent with all formats being required.
+   *
+   * @param translators      the translators mapped to the media type they translate into
+   * @param translationCache cache for translations of already known query contents, {@code null} if translations
+   *                         shall not be cached
+   */
+  public QueryTranslationComponent(@NonNull Map<QueryMediaType, QueryTranslator> translators,
+                                   QueryTranslationCache translationCache) {
+    this(translators, Set.of(), null, null, translationCache);
+  }
+
+  /**
+   * Creates a new QueryTranslationComponent.
+   *
+   * @param translators         the translators mapped to the media type they translate into
+   * @param optionalFormats     the formats whose translation may fail without failing the whole translation
+   * @param translationExecutor executor translating into optional formats, only required if there are any
+   * @param translationTimeout  maximum duration of a translation into an optional format, only required if there are
+   *                            any optional formats
+   * @param translationCache    cache for translations of already known query contents, {@code null} if translations
+   *                            shall not be cached
+   */
+  public QueryTranslationComponent(@NonNull Map<QueryMediaType, QueryTranslator> translators,
+                                   @NonNull Set<QueryMediaType> optionalFormats,
+                                   ExecutorService translationExecutor,
+                                   Duration translationTimeout,
+                                   QueryTranslationCache translationCache) {
+    if (!optionalFormats.isEmpty() && (translationExecutor == null || translationTimeout == null)) {
+      throw new IllegalArgumentException("optional formats require a translation executor and timeout");
+    }
+    this.translators = translators;
+    this.optionalFormats = Set.copyOf(optionalFormats);
+    this.translationExecutor = translationExecutor;
+    this.translationTimeout = translationTimeout;
+    this.translationCache = translationCache;
+    this.uncachedTranslators = translationCache == null
+        ? translators
+        : translators.entrySet().stream()
+        .filter(translator -> !translationCache.getFormats().contains(translator.getKey()))
+        .collect(Collectors.toUnmodifiableMap(Entry::getKey, Entry::getValue));
+  }
+
   /**
    * Translates a {@link Ccdl} into different formats using the configured translators.
+   * <p>
+   * Translations into optional formats run concurrently to the translations into required formats. Optional formats
+   * whose translation failed or timed out are missing in the result.
    *
    * @param query The query that shall be translated.
    * @return The query translated into different formats mapped to their corresponding media type.
-   * @throws QueryTranslationException If any translation fails.
+   * @throws QueryTranslationException If any translation into a required format fails.
    */
   public Map<QueryMediaType, String> translate(Ccdl query) throws QueryTranslationException {
+    return translate(translators, query);
+  }
+
+  private Map<QueryMediaType, String> translate(Map<QueryMediaType, QueryTranslator> translators, Ccdl query)
+      throws QueryTranslationException {
+    var optionalTranslations = new HashMap<QueryMediaType, CompletableFuture<String>>();
+    for (Entry<QueryMediaType, QueryTranslator> translatorMapping : translators.entrySet()) {
+      if (optionalFormats.contains(translatorMapping.getKey())) {
+        optionalTranslations.put(translatorMapping.getKey(),
+            translateConcurrently(translatorMapping.getKey(), translatorMapping.getValue(), query));
+      }
+    }
+
     var translationResults = new HashMap<QueryMediaType, String>();
     for (Entry<QueryMediaType, QueryTranslator> translatorMapping : translators.entrySet()) {
-      var translation = translatorMapping.getValue().translate(query);
-      log.debug(translation);
-      translationResults.put(translatorMapping.getKey(), translation);
+      if (!optionalFormats.contains(translatorMapping.getKey())) {
+        var translation = translatorMapping.getValue().translate(query);
+        log.debug(translation);
+        translationResults.put(translatorMapping.getKey(), translation);
+      }
     }
 
+    optionalTranslations.forEach((format, translation) -> {
+      var result = translation.join();
+      if (result != null) {
+        translationResults.put(format, result);
+      }
+    });
     return translationResults;
   }
+
+  /**
+   * Translates a {@link Ccdl} into an optional format on the translation executor.
+   *
+   * @return A future always completing normally, either with the translation or with {@code null} if the translation
+   * failed, timed out or was rejected by the executor.
+   */
+  private CompletableFuture<String> translateConcurrently(QueryMediaType format, QueryTranslator translator,
+                                                          Ccdl query) {
+    var translation = new CompletableFuture<String>();
+    var task = new FutureTask<Void>(() -> {
+      try {
+        var result = translator.translate(query);
+        log.debug(result);
+        translation.complete(result);
+      } catch (QueryTranslationException | RuntimeException e) {
+        translation.completeExceptionally(e);
+      }
+    }, null);
+    try {
+      translationExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      translation.completeExceptionally(e);
+    }
+    return translation
+        .orTimeout(translationTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .whenComplete((result, error) -> {
+          if (error != null) {
+            task.cancel(true);
+          }
+        })
+        .exceptionally(e -> {
+          log.warn("Translation into optional format '{}' failed. The query is dispatched without it", format, e);
+          return null;
+        });
+  }
+
+  /**
+   * Translates the {@link Ccdl} of a stored query content into different formats using the configured translators.
+   * <p>
+   * Translations of query contents already translated before are taken from the translation cache, skipping their
+   * translators. Formats the cache doesn't hold are translated anew every time.
+   *
+   * @param queryContentHash The hash of the query content holding the query, may be {@code null} if unknown.
+   * @param query            The query that shall be translated.
+   * @return The query translated into different formats mapped to their corresponding media type.
+   * @throws QueryTranslationException If any translation into a required format fails.
+   */
+  public Map<QueryMediaType, String> translate(String queryContentHash, Ccdl query) throws QueryTranslationException {
+    if (translationCache == null || queryContentHash == null) {
+      return translate(query);
+    }
+
+    var cachedTranslations = translationCache.find(queryContentHash);
+    if (cachedTranslations.isPresent()) {
+      log.debug("Using cached translations of query content with hash '{}'", queryContentHash);
+      var translations = new HashMap<>(cachedTranslations.get());
+      translations.putAll(translate(uncachedTranslators, query));
+      return translations;
+    }
+
+    var translations = translate(query);
+    // Translations missing an optional format shall be retried the next time the query gets dispatched.
+    if (translations.keySet().containsAll(translationCache.getFormats())) {
+      translationCache.put(queryContentHash, translations);
+    }
+    return translations;
+  }
 }
@@ -2,12 +2,16 @@ package de.medizininformatikinitiative.dataportal.backend.query.translation;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslationRepository;
 import de.numcodex.sq2cql.Translator;
 import de.numcodex.sq2cql.model.Mapping;
 import de.numcodex.sq2cql.model.MappingContext;
 import de.numcodex.sq2cql.model.MappingTreeBase;
 import de.numcodex.sq2cql.model.MappingTreeModuleRoot;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,14 +20,23 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -45,6 +58,16 @@ public class QueryTranslatorSpringConfig {
   private boolean cqlTranslationEnabled;
   @Value("${app.fhirTranslationEnabled:true}")
   private boolean fhirTranslationEnabled;
+  @Value("${app.translation.timeout:PT20S}")
+  private Duration translationTimeout;
+  @Value("${app.translationCache.enabled:true}")
+  private boolean translationCacheEnabled;
+  @Value("${app.translationCache.maxSize:1000}")
+  private long translationCacheMaxSize;
+  @Value("${app.translationCache.persistent:false}")
+  private boolean translationCachePersistent;
+  @Value("${app.translationCache.flareMappingVersion:}")
+  private String flareMappingVersion;
 
   public QueryTranslatorSpringConfig(ApplicationContext appContext) {
     this.appContext = Objects.requireNonNull(appContext);
@@ -56,7 +79,10 @@ public class QueryTranslatorSpringConfig {
   }
 
   @Bean
-  QueryTranslationComponent createQueryTranslationService(@Qualifier("json") QueryTranslator jsonQueryTranslator) {
+  QueryTranslationComponent createQueryTranslationService(
+      @Qualifier("json") QueryTranslator jsonQueryTranslator,
+      @Qualifier("translationExecutor") ExecutorService translationExecutor,
+      ObjectProvider<QueryContentTranslationRepository> translationRepository) throws IOException {
     var queryTranslators = new HashMap<QueryMediaType, QueryTranslator>();
     queryTranslators.put(STRUCTURED_QUERY, jsonQueryTranslator);
 
@@ -67,14 +93,69 @@ public class QueryTranslatorSpringConfig {
     if (cqlTranslationEnabled) {
       queryTranslators.put(CQL, getQueryTranslatorByQualifier("cql"));
     }
-    return new QueryTranslationComponent(queryTranslators);
+
+    // CQL is required, as a query missing it would be dropped by the CQL broker without any notice. FHIR search is
+    // only needed by brokers using FLARE, which fail on their own if it's missing.
+    var optionalFormats = Set.of(FHIR);
+    // Changes of the FLARE mappings can't be detected, so FHIR search translations are only cached if their version
+    // is configured explicitly.
+    var cachedFormats = queryTranslators.keySet().stream()
+        .filter(format -> format != FHIR || !flareMappingVersion.isBlank())
+        .collect(Collectors.toUnmodifiableSet());
+    var translationCache = translationCacheEnabled
+        ? new QueryTranslationCache(calculateMappingVersion(cachedFormats), cachedFormats, translationCacheMaxSize,
+        translationCachePersistent ? translationRepository.getObject() : null)
+        : null;
+    return new QueryTranslationComponent(queryTranslators, optionalFormats, translationExecutor, translationTimeout,
+        translationCache);
+  }
+
+  @Qualifier("translationExecutor")
+  @Bean(destroyMethod = "shutdown")
+  ExecutorService createTranslationExecutor(@Value("${app.translation.threads:8}") int threads,
+                                            @Value("${app.translation.queueCapacity:100}") int queueCapacity) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+        new CustomizableThreadFactory("query-translation-"));
+  }
+
+  /**
+   * Calculates a version identifying the mappings used for translating into the given formats. The version changes
+   * as soon as the set of formats or any input of their translators changes. These are the content of the mapping
+   * files for CQL, and the FLARE instance together with the configured version of its mappings for FHIR search
+   * queries.
+   */
+  private String calculateMappingVersion(Set<QueryMediaType> formats) throws IOException {
+    var hasher = Hashing.sha256().newHasher();
+    for (var format : formats.stream().sorted().toList()) {
+      hasher.putString(format.name(), StandardCharsets.UTF_8);
+      if (format == CQL) {
+        for (var fileName : List.of(mappingsFile, conceptTreeFile)) {
+          var file = new File(fileName);
+          hasher.putString(file.isFile() ? Files.asByteSource(file).hash(Hashing.sha256()).toString() : fileName,
+              StandardCharsets.UTF_8);
+        }
+      } else if (format == FHIR) {
+        hasher.putString(flareBaseUrl, StandardCharsets.UTF_8)
+            .putString(flareMappingVersion, StandardCharsets.UTF_8);
+      }
+    }
+    return hasher.hash().toString();
   }
 
   @Lazy
   @Bean
   Translator createCqlTranslator(@Qualifier("translation") ObjectMapper jsonUtil) throws IOException {
-    var mappings = jsonUtil.readValue(new File(mappingsFile), Mapping[].class);
-    var mappingTreeBase = new MappingTreeBase(Arrays.stream(jsonUtil.readValue(new File(conceptTreeFile), MappingTreeModuleRoot[].class)).toList());
+    return createCqlTranslator(jsonUtil, new File(mappingsFile), new File(conceptTreeFile));
+  }
+
+  /**
+   * Creates the sq2cql translator from the given mapping files. Kept separate from the bean definition, so that
+   * benchmarks are able to build the very same translator.
+   */
+  static Translator createCqlTranslator(ObjectMapper jsonUtil, File mappingsFile, File conceptTreeFile)
+      throws IOException {
+    var mappings = jsonUtil.readValue(mappingsFile, Mapping[].class);
+    var mappingTreeBase = new MappingTreeBase(Arrays.stream(jsonUtil.readValue(conceptTreeFile, MappingTreeModuleRoot[].class)).toList());
 
     return Translator.of(MappingContext.of(
         Stream.of(mappings)
@@ -152,6 +233,10 @@ public class QueryTranslatorSpringConfig {
   @Qualifier("translation")
   @Bean
   ObjectMapper createTranslationObjectMapper() {
+    return translationObjectMapper();
+  }
+
+  static ObjectMapper translationObjectMapper() {
     ObjectMapper mapper = new ObjectMapper();
     mapper.findAndRegisterModules();
     mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
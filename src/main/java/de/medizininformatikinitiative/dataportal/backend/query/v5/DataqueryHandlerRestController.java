@@ -2,6 +2,7 @@ package de.medizininformatikinitiative.dataportal.backend.query.v5;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.query.api.CrtdlSectionInfo;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Dataquery;
 import de.medizininformatikinitiative.dataportal.backend.query.dataquery.DataqueryCsvExportException;
@@ -12,9 +13,11 @@ import de.medizininformatikinitiative.dataportal.backend.validation.ValidationSe
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
@@ -35,11 +38,14 @@ public class DataqueryHandlerRestController {
   private final static String API_VERSION = "v5";
   private final DataqueryHandler dataqueryHandler;
   private final ValidationService validationService;
+  private final ObjectMapper jsonUtil;
 
   public DataqueryHandlerRestController(DataqueryHandler dataqueryHandler,
-                                        ValidationService validationService) {
+                                        ValidationService validationService,
+                                        ObjectMapper jsonUtil) {
     this.dataqueryHandler = dataqueryHandler;
     this.validationService = validationService;
+    this.jsonUtil = jsonUtil;
   }
 
   @PostMapping(path = "")
@@ -115,31 +121,32 @@ public class DataqueryHandlerRestController {
   }
 
   @GetMapping(path = "/{dataqueryId}" + PATH_CRTDL, produces = "application/zip")
-  public ResponseEntity<Object> getDataqueryCrtdlCsv(@PathVariable(value = "dataqueryId") Long dataqueryId,
-                                                     Authentication authentication) {
+  public ResponseEntity<StreamingResponseBody> getDataqueryCrtdlCsv(@PathVariable(value = "dataqueryId") Long dataqueryId,
+                                                                    Authentication authentication) {
     try {
       var dataquery = dataqueryHandler.getDataqueryById(dataqueryId, authentication);
-      var zipByteArrayOutputStream = dataqueryHandler.createCsvExportZipfile(dataquery);
+      var zipFile = dataqueryHandler.createCsvExportZipfile(dataquery);
       HttpHeaders headers = new HttpHeaders();
       String headerValue = "attachment; filename=" + dataquery.label().toUpperCase() + "_dataquery.zip";
       headers.add(HttpHeaders.CONTENT_DISPOSITION, headerValue);
       headers.add(HttpHeaders.CONTENT_TYPE, "application/zip");
-      return new ResponseEntity<>(zipByteArrayOutputStream.toByteArray(), headers, HttpStatus.OK);
+      return new ResponseEntity<>(zipFile, headers, HttpStatus.OK);
     } catch (IOException e) {
       return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
     } catch (DataqueryException e) {
       return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-    } catch (DataqueryCsvExportException e) {
-      return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
     }
   }
 
   @PostMapping(path = "/convert" + PATH_CRTDL)
-  public ResponseEntity<Object> convertCrtdlToCsv(@RequestBody JsonNode crtdlNode,
-                                                  Authentication authentication) {
+  public ResponseEntity<StreamingResponseBody> convertCrtdlToCsv(@RequestBody JsonNode crtdlNode,
+                                                                 Authentication authentication) {
     var validationErrors = validationService.validateCrtdlSchema(crtdlNode);
     if (!validationErrors.isEmpty()) {
-      return new ResponseEntity<>(validationErrors, HttpStatus.BAD_REQUEST);
+      // The successful response is streamed, so the errors have to be written the same way
+      return ResponseEntity.badRequest()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body(outputStream -> jsonUtil.writeValue(outputStream, validationErrors));
     }
 
     var crtdl = validationService.crtdlFromJsonNode(crtdlNode);
@@ -151,21 +158,26 @@ public class DataqueryHandlerRestController {
         .label("")
         .build();
     try {
-      var zipByteArrayOutputStream = dataqueryHandler.createCsvExportZipfile(dataquery);
+      var zipFile = dataqueryHandler.createCsvExportZipfile(dataquery);
       HttpHeaders headers = new HttpHeaders();
       String headerValue = "attachment; filename=untitled.zip";
       headers.add(HttpHeaders.CONTENT_DISPOSITION, headerValue);
       headers.add(HttpHeaders.CONTENT_TYPE, "application/zip");
-      return new ResponseEntity<>(zipByteArrayOutputStream.toByteArray(), headers, HttpStatus.OK);
-    } catch (IOException e) {
-      return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+      return new ResponseEntity<>(zipFile, headers, HttpStatus.OK);
     } catch (DataqueryException e) {
       return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-    } catch (DataqueryCsvExportException e) {
-      return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
     }
   }
 
+  /*
+  CSV exports are streamed, so this only results in a proper status as long as no part of the export has been sent yet.
+  Otherwise, the client just sees an aborted download.
+  */
+  @ExceptionHandler(DataqueryCsvExportException.class)
+  public ResponseEntity<Object> handleCsvExportException(DataqueryCsvExportException e) {
+    return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+  }
+
   @GetMapping(path = "")
   public ResponseEntity<Object> getDataqueries(
       @RequestParam(value = "skip-validation", required = false, defaultValue = "false") boolean skipValidation,
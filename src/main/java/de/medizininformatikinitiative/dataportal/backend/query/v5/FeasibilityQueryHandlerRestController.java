@@ -25,7 +25,9 @@ import org.apache.commons.text.StringEscapeUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -33,6 +35,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.threeten.extra.PeriodDuration;
+import reactor.core.publisher.Flux;
 
 import java.net.URI;
 import java.security.Principal;
@@ -266,15 +269,30 @@ public class FeasibilityQueryHandlerRestController {
     var queryResult = queryHandlerService.getQueryResult(queryId,
         ResultDetail.SUMMARY);
 
+    return new ResponseEntity<>(applySummaryPrivacyThreshold(queryResult), HttpStatus.OK);
+  }
+
+  @GetMapping(value = "/{id}" + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<Flux<ServerSentEvent<Object>>> streamSummaryQueryResult(
+      @PathVariable("id") Long queryId,
+      Authentication authentication) {
+    if (!hasAccess(queryId, authentication)) {
+      return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+    }
+    var events = queryHandlerService.streamQueryResult(queryId, ResultDetail.SUMMARY)
+        .map(this::applySummaryPrivacyThreshold)
+        .map(body -> ServerSentEvent.builder(body).build());
+
+    return new ResponseEntity<>(events, HttpStatus.OK);
+  }
+
+  private Object applySummaryPrivacyThreshold(QueryResult queryResult) {
     if (queryResult.totalNumberOfPatients() < privacyThresholdResults) {
-      var issues = FeasibilityIssues.builder()
+      return FeasibilityIssues.builder()
           .issues(List.of(FeasibilityIssue.PRIVACY_RESTRICTION_RESULT_SIZE))
           .build();
-      return new ResponseEntity<>(
-          issues,
-          HttpStatus.OK);
     }
-    return new ResponseEntity<>(queryResult, HttpStatus.OK);
+    return queryResult;
   }
 
   @PostMapping(value = "/cql")
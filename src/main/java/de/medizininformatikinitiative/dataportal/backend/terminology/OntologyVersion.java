@@ -0,0 +1,55 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology;
+
+import com.google.common.base.Suppliers;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Supplies the version of the ontology within the database.
+ * <p>
+ * The ontology gets applied to the database by migrations, so the latest applied migration identifies the ontology
+ * version. It is checked at most once per {@code checkInterval}. In case the check fails, the last known version is
+ * kept.
+ */
+@Slf4j
+public class OntologyVersion implements Supplier<String> {
+
+  private final Supplier<String> versionCheck;
+
+  /**
+   * Creates a new OntologyVersion.
+   *
+   * @param jdbcTemplate  template used for querying the migration history
+   * @param flywayTable   the table holding the migration history
+   * @param checkInterval the interval in which the version is checked for changes
+   */
+  public OntologyVersion(JdbcTemplate jdbcTemplate, String flywayTable, Duration checkInterval) {
+    var lastKnownVersion = new AtomicReference<String>();
+    com.google.common.base.Supplier<String> check = () -> {
+      try {
+        lastKnownVersion.set(String.valueOf(
+            jdbcTemplate.queryForObject("select max(installed_rank) from " + flywayTable, Long.class)));
+      } catch (DataAccessException e) {
+        log.warn("Could not determine the ontology version, keeping version '{}'", lastKnownVersion.get(), e);
+      }
+      return lastKnownVersion.get();
+    };
+    this.versionCheck = Suppliers.memoizeWithExpiration(check, checkInterval.toNanos(), TimeUnit.NANOSECONDS)::get;
+  }
+
+  /**
+   * Gets the current ontology version.
+   *
+   * @return the ontology version or {@code null} if it could never be determined
+   */
+  @Override
+  public String get() {
+    return versionCheck.get();
+  }
+}
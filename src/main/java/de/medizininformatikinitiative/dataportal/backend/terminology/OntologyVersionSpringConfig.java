@@ -0,0 +1,20 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class OntologyVersionSpringConfig {
+
+  @Bean
+  public OntologyVersion createOntologyVersion(
+      JdbcTemplate jdbcTemplate,
+      @Value("${spring.flyway.table:flyway_schema_history}") String flywayTable,
+      @Value("${app.ontologyVersionCheckInterval:PT1M}") Duration versionCheckInterval) {
+    return new OntologyVersion(jdbcTemplate, flywayTable, versionCheckInterval);
+  }
+}
@@ -6,6 +6,7 @@ import de.medizininformatikinitiative.dataportal.backend.terminology.api.*;
 import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.Context;
 import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.TermCode;
 import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.TermCodeRepository;
+import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.TermCodeRepository.ContextualizedTermCodeDetails;
 import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfileRepository;
 import lombok.Getter;
 import lombok.NonNull;
@@ -17,8 +18,15 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -28,6 +36,8 @@ public class TerminologyService {
 
   private final TermCodeRepository termCodeRepository;
 
+  private final UiProfileCache uiProfileCache;
+
   @Getter
   private final List<TerminologySystemEntry> terminologySystems;
 
@@ -38,9 +48,11 @@ public class TerminologyService {
   public TerminologyService(@Value("${app.terminologySystemsFile}") String terminologySystemsFilename,
                             UiProfileRepository uiProfileRepository,
                             TermCodeRepository termCodeRepository,
+                            UiProfileCache uiProfileCache,
                             ObjectMapper jsonUtil) throws IOException {
     this.uiProfileRepository = uiProfileRepository;
     this.termCodeRepository = termCodeRepository;
+    this.uiProfileCache = uiProfileCache;
     this.jsonUtil = jsonUtil;
     this.terminologySystems = jsonUtil.readValue(new URL("file:" + terminologySystemsFilename), new TypeReference<>() {
     });
@@ -51,14 +63,21 @@ public class TerminologyService {
         .min().orElse(Integer.MAX_VALUE);
   }
 
-  public String getUiProfile(String contextualizedTermCodeHash)
-      throws UiProfileNotFoundException {
-    Optional<de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfile> uiProfile = uiProfileRepository.findByContextualizedTermcodeHash(contextualizedTermCodeHash);
-    if (uiProfile.isPresent()) {
-      return uiProfile.get().getUiProfile();
-    } else {
-      throw new UiProfileNotFoundException();
+  /**
+   * Gets the parsed UI profiles of all given contextualized term codes.
+   * <p>
+   * UI profiles are served from the {@link UiProfileCache}, so only the ones not parsed yet are loaded with a single
+   * query.
+   *
+   * @param contextualizedTermCodeHashes the hashes of the contextualized term codes
+   * @return the UI profiles mapped to the hash of their contextualized term code, hashes without a UI profile are
+   * absent
+   */
+  public Map<String, UiProfile> getUiProfiles(Collection<String> contextualizedTermCodeHashes) {
+    if (contextualizedTermCodeHashes.isEmpty()) {
+      return Map.of();
     }
+    return uiProfileCache.findByContextualizedTermCodeHashes(contextualizedTermCodeHashes);
   }
 
   public String getUiProfileName(String contextualizedTermCodeHash) {
@@ -70,12 +89,54 @@ public class TerminologyService {
     return termCodeRepository.existsTermCode(system, code);
   }
 
+  /**
+   * Determines which of the given term codes exist with a single query.
+   * <p>
+   * Term codes are matched by system and code only, just like in {@link #isExistingTermCode(String, String)}.
+   *
+   * @param termCodes the term codes to look up
+   * @return the subset of {@code termCodes} that exist
+   */
+  public Set<de.medizininformatikinitiative.dataportal.backend.common.api.TermCode> findExistingTermCodes(
+      Collection<de.medizininformatikinitiative.dataportal.backend.common.api.TermCode> termCodes) {
+    var codes = termCodes.stream()
+        .map(de.medizininformatikinitiative.dataportal.backend.common.api.TermCode::code)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    if (codes.isEmpty()) {
+      return Set.of();
+    }
+
+    var existingSystemsAndCodes = termCodeRepository.findAllByCodes(codes).stream()
+        .map(tc -> Arrays.asList(tc.getSystem(), tc.getCode()))
+        .collect(Collectors.toSet());
+    return termCodes.stream()
+        .filter(tc -> tc.system() != null && tc.code() != null)
+        .filter(tc -> existingSystemsAndCodes.contains(Arrays.asList(tc.system(), tc.code())))
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Gets the term code, context and UI profile name of all given contextualized term codes with a single query.
+   *
+   * @param criteriaIds the hashes of the contextualized term codes
+   * @return one entry per id in the order of {@code criteriaIds}, entries of unknown ids are empty
+   */
   public List<CriteriaProfileData> getCriteriaProfileData(List<String> criteriaIds) {
-    List<CriteriaProfileData> results = new ArrayList<>();
+    if (criteriaIds.isEmpty()) {
+      return List.of();
+    }
+
+    var detailsByHash = termCodeRepository.findDetailsByContextualizedTermcodeHashes(Set.copyOf(criteriaIds)).stream()
+        .collect(Collectors.toMap(ContextualizedTermCodeDetails::getContextualizedTermcodeHash, Function.identity(),
+            (first, second) -> first));
 
+    List<CriteriaProfileData> results = new ArrayList<>(criteriaIds.size());
     for (String id : criteriaIds) {
-      TermCode tc = termCodeRepository.findTermCodeByContextualizedTermcodeHash(id).orElse(null);
-      Context c = termCodeRepository.findContextByContextualizedTermcodeHash(id).orElse(null);
+      var details = detailsByHash.get(id);
+      TermCode tc = details == null ? null : details.getTermCode();
+      Context c = details == null ? null : details.getContext();
+      String uiProfileName = details == null ? null : details.getUiProfileName();
       de.medizininformatikinitiative.dataportal.backend.common.api.TermCode context;
       List<de.medizininformatikinitiative.dataportal.backend.common.api.TermCode> termCodes = new ArrayList<>();
 
@@ -102,7 +163,7 @@ public class TerminologyService {
       results.add(
           CriteriaProfileData.builder()
               .id(id)
-              .uiProfileId(getUiProfileName(id))
+              .uiProfileId(uiProfileName == null ? "undefined" : uiProfileName)
               .context(context)
               .termCodes(termCodes)
               .build()
@@ -113,9 +174,14 @@ public class TerminologyService {
   }
 
   public List<CriteriaProfileData> addDisplayDataToCriteriaProfileData(List<CriteriaProfileData> criteriaProfileData, List<EsSearchResultEntry> displayData) {
-    var result = new ArrayList<CriteriaProfileData>();
+    var displayDataById = new HashMap<String, EsSearchResultEntry>();
+    for (EsSearchResultEntry entry : displayData) {
+      displayDataById.putIfAbsent(entry.id(), entry);
+    }
+
+    var result = new ArrayList<CriteriaProfileData>(criteriaProfileData.size());
     for (CriteriaProfileData cpd : criteriaProfileData) {
-      var searchResultEntry = displayData.stream().filter(dd -> cpd.id().equals(dd.id())).findFirst().orElse(null);
+      var searchResultEntry = displayDataById.get(cpd.id());
       if (searchResultEntry == null) {
         result.add(cpd);
       } else {
@@ -126,15 +192,6 @@ public class TerminologyService {
   }
 
   public List<UiProfile> getUiProfiles() {
-    var uiProfiles = uiProfileRepository.findAll();
-    return uiProfiles.stream()
-        .map(uip -> {
-          try {
-            return jsonUtil.readValue(uip.getUiProfile(), UiProfile.class);
-          } catch (Exception e) {
-            throw new RuntimeException("Failed to parse uiProfileId: " + uip.getUiProfile(), e);
-          }
-        })
-        .toList();
+    return uiProfileCache.findAll();
   }
 }
@@ -0,0 +1,129 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile;
+import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfileRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches parsed {@link UiProfile UI profiles}.
+ * <p>
+ * UI profiles are stored as JSON within the database and only change with a new ontology. Parsed profiles are kept by
+ * their id and are additionally found by the hashes of the contextualized term codes referring to them. All cached
+ * profiles are dropped as soon as the ontology version changes.
+ */
+public class UiProfileCache {
+
+  private final UiProfileRepository uiProfileRepository;
+  private final ObjectMapper jsonUtil;
+  private final Supplier<String> ontologyVersion;
+  private volatile CachedUiProfiles cachedUiProfiles;
+
+  /**
+   * Creates a new UiProfileCache.
+   *
+   * @param uiProfileRepository repository holding the serialized UI profiles
+   * @param jsonUtil            object mapper used for parsing UI profiles
+   * @param ontologyVersion     supplies the version of the ontology currently in use
+   */
+  public UiProfileCache(UiProfileRepository uiProfileRepository, ObjectMapper jsonUtil,
+                        Supplier<String> ontologyVersion) {
+    this.uiProfileRepository = uiProfileRepository;
+    this.jsonUtil = jsonUtil;
+    this.ontologyVersion = ontologyVersion;
+    this.cachedUiProfiles = new CachedUiProfiles(null);
+  }
+
+  /**
+   * Finds the UI profiles of all given contextualized term codes.
+   * <p>
+   * Only UI profiles not cached yet are loaded, using a single query.
+   *
+   * @param contextualizedTermCodeHashes the hashes of the contextualized term codes
+   * @return the UI profiles mapped to the hash of their contextualized term code, hashes without a UI profile are absent
+   */
+  public Map<String, UiProfile> findByContextualizedTermCodeHashes(Collection<String> contextualizedTermCodeHashes) {
+    var cache = currentCache();
+    var uiProfiles = new HashMap<String, UiProfile>();
+    var uncachedHashes = new HashSet<String>();
+    for (var hash : contextualizedTermCodeHashes) {
+      var uiProfileId = cache.uiProfileIdsByHash.get(hash);
+      var uiProfile = uiProfileId == null ? null : cache.uiProfilesById.get(uiProfileId);
+      if (uiProfile == null) {
+        uncachedHashes.add(hash);
+      } else {
+        uiProfiles.put(hash, uiProfile);
+      }
+    }
+
+    if (!uncachedHashes.isEmpty()) {
+      uiProfileRepository.findAllByContextualizedTermcodeHashes(uncachedHashes).forEach(contextualizedUiProfile -> {
+        var uiProfile = cache.uiProfilesById.computeIfAbsent(contextualizedUiProfile.getUiProfileId(),
+            id -> parse(contextualizedUiProfile.getUiProfile()));
+        cache.uiProfileIdsByHash.put(contextualizedUiProfile.getContextualizedTermcodeHash(),
+            contextualizedUiProfile.getUiProfileId());
+        uiProfiles.put(contextualizedUiProfile.getContextualizedTermcodeHash(), uiProfile);
+      });
+    }
+    return uiProfiles;
+  }
+
+  /**
+   * Finds all UI profiles.
+   *
+   * @return all UI profiles
+   */
+  public List<UiProfile> findAll() {
+    var cache = currentCache();
+    var allUiProfiles = cache.allUiProfiles;
+    if (allUiProfiles == null) {
+      allUiProfiles = uiProfileRepository.findAll().stream()
+          .map(uiProfile -> cache.uiProfilesById.computeIfAbsent(uiProfile.getId(),
+              id -> parse(uiProfile.getUiProfile())))
+          .toList();
+      cache.allUiProfiles = allUiProfiles;
+    }
+    return allUiProfiles;
+  }
+
+  private CachedUiProfiles currentCache() {
+    var version = ontologyVersion.get();
+    var cache = cachedUiProfiles;
+    if (!Objects.equals(cache.ontologyVersion, version)) {
+      cache = new CachedUiProfiles(version);
+      cachedUiProfiles = cache;
+    }
+    return cache;
+  }
+
+  private UiProfile parse(String uiProfile) {
+    try {
+      return jsonUtil.readValue(uiProfile, UiProfile.class);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to parse uiProfileId: " + uiProfile, e);
+    }
+  }
+
+  /**
+   * All UI profiles cached for a single ontology version.
+   */
+  private static class CachedUiProfiles {
+    private final String ontologyVersion;
+    private final Map<Long, UiProfile> uiProfilesById = new ConcurrentHashMap<>();
+    private final Map<String, Long> uiProfileIdsByHash = new ConcurrentHashMap<>();
+    private volatile List<UiProfile> allUiProfiles;
+
+    private CachedUiProfiles(String ontologyVersion) {
+      this.ontologyVersion = ontologyVersion;
+    }
+  }
+}
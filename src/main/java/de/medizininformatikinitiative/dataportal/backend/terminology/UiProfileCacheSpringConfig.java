@@ -0,0 +1,16 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfileRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UiProfileCacheSpringConfig {
+
+  @Bean
+  public UiProfileCache createUiProfileCache(UiProfileRepository uiProfileRepository, ObjectMapper jsonUtil,
+                                             OntologyVersion ontologyVersion) {
+    return new UiProfileCache(uiProfileRepository, jsonUtil, ontologyVersion);
+  }
+}
@@ -7,6 +7,7 @@ import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -26,9 +27,9 @@ public record AttributeDefinition(
     @JsonProperty("referencedValueSet") List<String> referencedValueSets
 ) {
   public AttributeDefinition {
-    selectableConcepts = (selectableConcepts == null) ? List.of() : selectableConcepts;
-    allowedUnits = (allowedUnits == null) ? List.of() : allowedUnits;
-    referencedCriteriaSets = (referencedCriteriaSets == null) ? List.of() : referencedCriteriaSets;
-    referencedValueSets = (referencedValueSets == null) ? List.of() : referencedValueSets;
+    selectableConcepts = (selectableConcepts == null) ? List.of() : Collections.unmodifiableList(selectableConcepts);
+    allowedUnits = (allowedUnits == null) ? List.of() : Collections.unmodifiableList(allowedUnits);
+    referencedCriteriaSets = (referencedCriteriaSets == null) ? List.of() : Collections.unmodifiableList(referencedCriteriaSets);
+    referencedValueSets = (referencedValueSets == null) ? List.of() : Collections.unmodifiableList(referencedValueSets);
   }
 }
\ No newline at end of file
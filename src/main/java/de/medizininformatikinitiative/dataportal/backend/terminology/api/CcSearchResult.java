@@ -1,5 +1,6 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Data;
 
@@ -10,4 +11,6 @@ import java.util.List;
 public class CcSearchResult {
   private long totalHits;
   private List<CodeableConceptEntry> results;
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private String nextCursor;
 }
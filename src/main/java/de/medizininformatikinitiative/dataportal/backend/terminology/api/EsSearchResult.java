@@ -1,5 +1,6 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 
 import java.util.List;
@@ -7,6 +8,7 @@ import java.util.List;
 @Builder
 public record EsSearchResult(
     long totalHits,
-    List<EsSearchResultEntry> results
+    List<EsSearchResultEntry> results,
+    @JsonInclude(JsonInclude.Include.NON_NULL) String nextCursor
 ) {
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 
+import java.util.Collections;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.ALWAYS)
@@ -15,6 +16,6 @@ public record UiProfile(
     @JsonProperty("attributeDefinitions") List<AttributeDefinition> attributeDefinitions
 ) {
   public UiProfile {
-    attributeDefinitions = (attributeDefinitions == null) ? List.of() : attributeDefinitions;
+    attributeDefinitions = (attributeDefinitions == null) ? List.of() : Collections.unmodifiableList(attributeDefinitions);
   }
 }
@@ -0,0 +1,12 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import java.util.List;
+
+/**
+ * A check for which of the given codes are part of at least one of the given sets, e.g. value sets or criteria sets.
+ *
+ * @param codes   the codes to check
+ * @param setUrls the urls of the sets the codes should be part of
+ */
+public record CodeAvailabilityCheck(List<String> codes, List<String> setUrls) {
+}
@@ -0,0 +1,106 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.TermsInclude;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermsQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermsQueryField;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs many {@link CodeAvailabilityCheck code availability checks} against a single index with one search request.
+ * <p>
+ * Checks are grouped by their distinct sets. Each group becomes a filter aggregation on the documents being part of
+ * one of its sets, with a terms sub aggregation on the codes of all checks of the group.
+ */
+final class CodeAvailabilitySearch {
+
+  private static final String SET_GROUP_AGGREGATION_PREFIX = "set_group_";
+  private static final String EXISTING_CODES_AGGREGATION = "existing_codes";
+
+  private CodeAvailabilitySearch() {
+  }
+
+  /**
+   * Runs the given checks.
+   *
+   * @param operations    the operations used for searching
+   * @param documentClass the class of the documents to search
+   * @param setField      the field holding the urls of the sets a document is part of
+   * @param codeField     the keyword field holding the code of a document
+   * @param checks        the checks to run
+   * @return the available codes of each check, in the order of the codes of the check
+   * @throws IllegalArgumentException if a check has no codes or no set urls
+   */
+  static Map<CodeAvailabilityCheck, List<String>> availableCodes(ElasticsearchOperations operations,
+                                                                 Class<?> documentClass,
+                                                                 String setField,
+                                                                 String codeField,
+                                                                 Collection<CodeAvailabilityCheck> checks) {
+    var codesBySetGroup = new LinkedHashMap<Set<String>, Set<String>>();
+    for (var check : checks) {
+      if (check.codes() == null || check.codes().isEmpty() || check.setUrls() == null || check.setUrls().isEmpty()) {
+        throw new IllegalArgumentException();
+      }
+      codesBySetGroup.computeIfAbsent(Set.copyOf(check.setUrls()), setGroup -> new LinkedHashSet<>())
+          .addAll(check.codes());
+    }
+    if (codesBySetGroup.isEmpty()) {
+      return Map.of();
+    }
+
+    var setGroups = new ArrayList<>(codesBySetGroup.keySet());
+    var query = NativeQuery.builder().withMaxResults(0);
+    for (int i = 0; i < setGroups.size(); i++) {
+      var setGroup = setGroups.get(i);
+      var codes = List.copyOf(codesBySetGroup.get(setGroup));
+      var setQuery = new TermsQuery.Builder()
+          .field(setField)
+          .terms(new TermsQueryField.Builder()
+              .value(setGroup.stream().map(FieldValue::of).toList())
+              .build())
+          .build();
+      query.withAggregation(SET_GROUP_AGGREGATION_PREFIX + i,
+          Aggregation.of(a -> a.filter(setQuery._toQuery())
+              .aggregations(EXISTING_CODES_AGGREGATION, Aggregation.of(sub ->
+                  sub.terms(ta -> ta.field(codeField)
+                      .include(new TermsInclude.Builder().terms(codes).build())
+                      .size(codes.size()))))));
+    }
+
+    var searchHits = operations.search(query.build(), documentClass);
+    var aggregations = ((ElasticsearchAggregations) searchHits.getAggregations()).aggregationsAsMap();
+    var availableCodesBySetGroup = new LinkedHashMap<Set<String>, Set<String>>();
+    for (int i = 0; i < setGroups.size(); i++) {
+      var availableCodes = new HashSet<String>();
+      aggregations.get(SET_GROUP_AGGREGATION_PREFIX + i).aggregation().getAggregate().filter()
+          .aggregations().get(EXISTING_CODES_AGGREGATION).sterms().buckets().array()
+          .forEach(bucket -> {
+            if (bucket.docCount() > 0) {
+              availableCodes.add(bucket.key().stringValue());
+            }
+          });
+      availableCodesBySetGroup.put(setGroups.get(i), availableCodes);
+    }
+
+    return checks.stream()
+        .distinct()
+        .collect(Collectors.toMap(Function.identity(), check -> {
+          var availableCodes = availableCodesBySetGroup.get(Set.copyOf(check.setUrls()));
+          return check.codes().stream().filter(availableCodes::contains).distinct().toList();
+        }));
+  }
+}
@@ -1,7 +1,6 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.es;
 
 import co.elastic.clients.elasticsearch._types.FieldValue;
-import co.elastic.clients.elasticsearch._types.aggregations.*;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.CcSearchResult;
@@ -12,19 +11,18 @@ import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.Co
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.CodeableConceptEsRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
-import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.util.Pair;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.*;
 
 @Service
@@ -42,32 +40,88 @@ public class CodeableConceptService {
 
   private CodeableConceptEsRepository repo;
 
+  private SearchResultCache<SearchKey, CcSearchResult> searchResultCache;
+
+  private Duration cursorKeepAlive;
+
+  private final InFlightRequests<SearchKey, CcSearchResult> codeableConceptSearches = new InFlightRequests<>();
+
+  private final InFlightRequests<List<String>, List<CodeableConceptEntry>> entryLookups = new InFlightRequests<>();
+
   @Autowired
-  public CodeableConceptService(ElasticsearchOperations operations, CodeableConceptEsRepository repo) {
+  public CodeableConceptService(ElasticsearchOperations operations, CodeableConceptEsRepository repo,
+                                SearchResultCache<SearchKey, CcSearchResult> searchResultCache,
+                                @Value("${app.elastic.cursorKeepAlive:PT1M}") Duration cursorKeepAlive) {
     this.operations = operations;
     this.repo = repo;
+    this.searchResultCache = searchResultCache;
+    this.cursorKeepAlive = cursorKeepAlive;
   }
 
+  /**
+   * Searches for codeable concepts matching the given keyword within the given value sets.
+   * <p>
+   * Results are cached by the normalized search parameters. The keyword is stripped of surrounding whitespace and the
+   * order and duplicates of value sets are ignored. Concurrent searches with equal parameters share a single request
+   * to Elasticsearch, whether or not their result is cached.
+   */
   public CcSearchResult performCodeableConceptSearchWithRepoAndPaging(String keyword,
                                                                       @Nullable List<String> valueSets,
                                                                       @Nullable int pageSize,
                                                                       @Nullable int page) {
+    var searchKey = new SearchKey(keyword.strip(),
+        valueSets == null ? List.of() : valueSets.stream().sorted().distinct().toList(), pageSize, page);
+    return searchResultCache.get(searchKey,
+        key -> codeableConceptSearches.get(key, this::performCodeableConceptSearchWithRepoAndPaging));
+  }
 
-    List<Pair<String, List<String>>> filterList = new ArrayList<>();
-    if (!CollectionUtils.isEmpty(valueSets)) {
-      filterList.add(Pair.of(FILTER_KEY_VALUE_SETS, valueSets));
-    }
-
-    var searchHitPage = findByCodeOrDisplay(keyword, filterList, PageRequest.of(page, pageSize));
+  private CcSearchResult performCodeableConceptSearchWithRepoAndPaging(SearchKey searchKey) {
+    var searchHitPage = findByCodeOrDisplay(searchKey.keyword(), createFilterList(searchKey.valueSets()),
+        PageRequest.of(searchKey.page(), searchKey.pageSize()));
     List<CodeableConceptEntry> codeableConceptEntries = new ArrayList<>();
 
     searchHitPage.getSearchHits().forEach(hit -> codeableConceptEntries.add(CodeableConceptEntry.of(hit.getContent())));
     return CcSearchResult.builder()
         .totalHits(searchHitPage.getTotalHits())
-        .results(codeableConceptEntries)
+        .results(List.copyOf(codeableConceptEntries))
+        .build();
+  }
+
+  /**
+   * Searches for codeable concepts matching the given keyword within the given value sets, returning the page at the
+   * given cursor.
+   * <p>
+   * Pages after the first one are fetched by {@code search_after} on a point in time of the index, so deep pages are as
+   * fast as the first one and aren't limited by the result window of the index. Cursor searches are neither cached nor
+   * coalesced, as every cursor is only used by a single client.
+   *
+   * @param cursor either {@code *} to start a new search or the {@link CcSearchResult#getNextCursor() next cursor} of
+   *               the previous page
+   * @throws InvalidSearchCursorException if the cursor is invalid
+   */
+  public CcSearchResult performCodeableConceptSearchWithCursor(String keyword,
+                                                               @Nullable List<String> valueSets,
+                                                               int pageSize,
+                                                               String cursor) {
+    var filterList = createFilterList(valueSets == null ? List.of() : valueSets.stream().sorted().distinct().toList());
+    var page = CursorSearch.search(operations, CodeableConceptDocument.class,
+        createCodeableConceptSearchQuery(keyword.strip(), filterList), pageSize, cursor, cursorKeepAlive);
+
+    return CcSearchResult.builder()
+        .totalHits(page.totalHits())
+        .results(page.hits().stream().map(hit -> CodeableConceptEntry.of(hit.getContent())).toList())
+        .nextCursor(page.nextCursor())
         .build();
   }
 
+  private static List<Pair<String, List<String>>> createFilterList(List<String> valueSets) {
+    List<Pair<String, List<String>>> filterList = new ArrayList<>();
+    if (!valueSets.isEmpty()) {
+      filterList.add(Pair.of(FILTER_KEY_VALUE_SETS, valueSets));
+    }
+    return filterList;
+  }
+
   public CodeableConceptBulkSearchResult performExactSearch(CodeableConceptBulkSearchRequest request) {
     List<CodeableConceptEntry> results = new ArrayList<>();
     List<String> notFound = new ArrayList<>(request.searchterms());
@@ -85,11 +139,20 @@ public class CodeableConceptService {
         .build();
   }
 
+  /**
+   * Gets the codeable concepts with the given ids.
+   * <p>
+   * Concurrent lookups of the same ids share a single request to Elasticsearch.
+   */
   public List<CodeableConceptEntry> getSearchResultsEntryByIds(List<String> ids) {
+    return entryLookups.get(List.copyOf(ids), this::findSearchResultsEntryByIds);
+  }
+
+  private List<CodeableConceptEntry> findSearchResultsEntryByIds(List<String> ids) {
     var documents = repo.findAllById(ids);
     var codeableConceptEntries = new ArrayList<CodeableConceptEntry>();
     documents.forEach(d -> codeableConceptEntries.add(CodeableConceptEntry.of(d)));
-    return codeableConceptEntries;
+    return List.copyOf(codeableConceptEntries);
   }
 
   public CodeableConceptEntry getSearchResultEntryByTermCode(TermCode termCode) {
@@ -105,52 +168,38 @@ public class CodeableConceptService {
   }
 
   public List<String> availableCodesInValueSets(List<String> codes, List<String> valueSetUrls) {
-    if (codes == null || codes.isEmpty() || valueSetUrls == null || valueSetUrls.isEmpty()) {
-      throw new IllegalArgumentException();
-    }
-    var codesFound = new ArrayList<String>();
-
-    var termsQueryField = new TermsQueryField.Builder()
-        .value(valueSetUrls.stream().map(FieldValue::of).distinct().toList())
-        .build();
-
-    var termsQuery = new TermsQuery.Builder()
-        .field("value_sets")
-        .terms(termsQueryField)
-        .build();
+    var check = new CodeAvailabilityCheck(codes, valueSetUrls);
+    return availableCodesInValueSets(List.of(check)).get(check);
+  }
 
-    var termsInclude = new TermsInclude.Builder()
-        .terms(codes)
-        .build();
+  /**
+   * Determines for each of the given checks which of its codes are part of at least one of its value sets.
+   * <p>
+   * All checks are answered by a single search request.
+   *
+   * @param checks the checks, each consisting of codes and value set urls
+   * @return the available codes of each check
+   * @throws IllegalArgumentException if a check has no codes or no value set urls
+   */
+  public Map<CodeAvailabilityCheck, List<String>> availableCodesInValueSets(Collection<CodeAvailabilityCheck> checks) {
+    return CodeAvailabilitySearch.availableCodes(operations, CodeableConceptDocument.class, FILTER_KEY_VALUE_SETS,
+        FIELD_NAME_TERMCODE_KEYWORD, checks);
+  }
 
-    var aggregationQuery = NativeQuery.builder()
-        .withQuery(termsQuery._toQuery())
-        .withAggregation("existing_codes",
-            Aggregation.of(a ->
-                a.terms(ta ->
-                    ta.field("termcode.code.keyword")
-                        .include(termsInclude)
-                        .size(1000)
-                )))
-        .withMaxResults(0)
+  private SearchHits<CodeableConceptDocument> findByCodeOrDisplay(String keyword,
+                                                                  List<Pair<String, List<String>>> filterList,
+                                                                  PageRequest pageRequest) {
+    var query = new NativeQueryBuilder()
+        .withQuery(createCodeableConceptSearchQuery(keyword, filterList))
+        .withPageable(pageRequest)
         .build();
 
-    var searchHits = operations.search(aggregationQuery, CodeableConceptDocument.class);
-    var aggregations = (ElasticsearchAggregations) searchHits.getAggregations();
-    assert aggregations != null;
-    List<StringTermsBucket> buckets = aggregations.aggregationsAsMap().get("existing_codes").aggregation().getAggregate().sterms().buckets().array();
-    buckets.forEach(bucket -> {
-      if (bucket.docCount() > 0 ) {
-        codesFound.add(bucket.key().stringValue());
-      }
-    });
+    log.info(Objects.requireNonNull(query.getQuery()).toString());
 
-    return codesFound;
+    return operations.search(query, CodeableConceptDocument.class);
   }
 
-  private SearchHits<CodeableConceptDocument> findByCodeOrDisplay(String keyword,
-                                                                  List<Pair<String, List<String>>> filterList,
-                                                                  PageRequest pageRequest) {
+  private static Query createCodeableConceptSearchQuery(String keyword, List<Pair<String, List<String>>> filterList) {
     List<Query> filterTerms = new ArrayList<>();
 
     if (!filterList.isEmpty()) {
@@ -184,14 +233,7 @@ public class CodeableConceptService {
 
     }
 
-    var query = new NativeQueryBuilder()
-        .withQuery(boolQuery._toQuery())
-        .withPageable(pageRequest)
-        .build();
-
-    log.info(Objects.requireNonNull(query.getQuery()).toString());
-
-    return operations.search(query, CodeableConceptDocument.class);
+    return boolQuery._toQuery();
   }
 
   private SearchHits<CodeableConceptDocument> findExactMatchesByBulkSearchRequest(CodeableConceptBulkSearchRequest request) {
@@ -217,4 +259,9 @@ public class CodeableConceptService {
     return operations.search(finalQuery, CodeableConceptDocument.class);
   }
 
+  /**
+   * The normalized parameters of a codeable concept search.
+   */
+  record SearchKey(String keyword, List<String> valueSets, int pageSize, int page) {
+  }
 }
@@ -0,0 +1,209 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Pages through the hits of a search by {@code search_after} on a point in time of the index.
+ * <p>
+ * Unlike from/size paging, fetching a page doesn't get slower the deeper it is and isn't limited by the
+ * {@code index.max_result_window} of the index. Hits are sorted by descending score. The position of the next page is
+ * handed out as an opaque cursor, holding the point in time together with the sort values of the last hit. A cursor is
+ * bound to the index and the query of its search and rejected by any other search.
+ * <p>
+ * Every open point in time holds resources in the cluster and their number is limited per node. Most searches never
+ * get past their first page, so the first page is fetched by a plain search and a point in time is only opened once
+ * the second page is requested. Its keep alive is short and renewed with every page fetched, so that abandoned
+ * searches free their resources soon.
+ */
+final class CursorSearch {
+
+  /**
+   * The cursor requesting the first page of a new search.
+   */
+  static final String START = "*";
+
+  private static final ObjectMapper JSON_UTIL = new ObjectMapper();
+  private static final JacksonJsonpMapper QUERY_MAPPER = new JacksonJsonpMapper();
+  private static final int STATUS_NOT_FOUND = 404;
+  private static final String SEARCH_CONTEXT_MISSING = "search_context_missing_exception";
+
+  private CursorSearch() {
+  }
+
+  /**
+   * Fetches the page at the given cursor.
+   * <p>
+   * The point in time is opened when the second page is fetched, skipping the hits of the first page. Unless the index
+   * changed in the meantime, the point in time orders hits just like the plain search of the first page did. The point
+   * in time is closed as soon as the last page was fetched. Otherwise, its keep alive is renewed and it expires if the
+   * next page isn't fetched within the keep alive.
+   *
+   * @param operations    the operations used for searching
+   * @param documentClass the class of the documents to search
+   * @param query         the query of the search
+   * @param pageSize      the maximum number of hits of the page
+   * @param cursor        either {@link #START} or the cursor of the page returned by the previous call
+   * @param keepAlive     the time the point in time is kept alive between two pages
+   * @return the page together with the cursor of the next page
+   * @throws IllegalArgumentException     if {@code pageSize} is less than one
+   * @throws InvalidSearchCursorException if {@code cursor} is not a cursor returned by a search of the same index and
+   *                                      query or its point in time expired
+   */
+  static <T> CursorPage<T> search(ElasticsearchOperations operations,
+                                  Class<T> documentClass,
+                                  Query query,
+                                  int pageSize,
+                                  String cursor,
+                                  Duration keepAlive) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size must not be less than one");
+    }
+    var index = operations.getIndexCoordinatesFor(documentClass);
+    var queryHash = hash(query);
+    if (START.equals(cursor)) {
+      var hits = operations.search(sortedByScore(query).withMaxResults(pageSize).build(), documentClass);
+      var nextCursor = hits.getSearchHits().size() < pageSize
+          ? null
+          : new Position(index.getIndexName(), queryHash, null, null, pageSize).encode();
+      return new CursorPage<>(hits.getTotalHits(), hits.getSearchHits(), nextCursor);
+    }
+
+    var position = Position.decode(cursor);
+    if (!position.index().equals(index.getIndexName()) || !position.queryHash().equals(queryHash)) {
+      throw new InvalidSearchCursorException("Cursor belongs to a different search");
+    }
+    var opened = position.pointInTimeId() == null;
+    var pointInTimeId = opened ? operations.openPointInTime(index, keepAlive) : position.pointInTimeId();
+
+    var searchQuery = sortedByScore(query)
+        .withPointInTime(new org.springframework.data.elasticsearch.core.query.Query.PointInTime(
+            pointInTimeId, keepAlive))
+        .withMaxResults(position.skip() + pageSize);
+    if (position.searchAfter() != null) {
+      searchQuery.withSearchAfter(position.searchAfter());
+    }
+
+    SearchHits<T> hits;
+    try {
+      hits = operations.search(searchQuery.build(), documentClass);
+    } catch (RuntimeException e) {
+      if (opened) {
+        closeQuietly(operations, pointInTimeId, e);
+      } else if (isPointInTimeMissing(e)) {
+        throw new InvalidSearchCursorException(e);
+      }
+      throw e;
+    }
+    if (hits.getPointInTimeId() != null) {
+      pointInTimeId = hits.getPointInTimeId();
+    }
+    var searchHits = hits.getSearchHits();
+    var pageHits = searchHits.subList(Math.min(position.skip(), searchHits.size()), searchHits.size());
+    if (pageHits.size() < pageSize) {
+      operations.closePointInTime(pointInTimeId);
+      return new CursorPage<>(hits.getTotalHits(), pageHits, null);
+    }
+    var lastHit = pageHits.get(pageHits.size() - 1);
+    return new CursorPage<>(hits.getTotalHits(), pageHits,
+        new Position(position.index(), queryHash, pointInTimeId, lastHit.getSortValues(), 0).encode());
+  }
+
+  private static NativeQueryBuilder sortedByScore(Query query) {
+    return NativeQuery.builder()
+        .withQuery(query)
+        .withSort(SortOptions.of(s -> s.score(sc -> sc.order(SortOrder.Desc))));
+  }
+
+  private static String hash(Query query) {
+    var json = new StringWriter();
+    try (var generator = QUERY_MAPPER.jsonProvider().createGenerator(json)) {
+      query.serialize(generator, QUERY_MAPPER);
+    }
+    return Hashing.sha256().hashString(json.toString(), StandardCharsets.UTF_8).toString();
+  }
+
+  private static void closeQuietly(ElasticsearchOperations operations, String pointInTimeId, RuntimeException failure) {
+    try {
+      operations.closePointInTime(pointInTimeId);
+    } catch (RuntimeException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  /**
+   * Tells whether the search failed because the point in time it was run on has expired or was closed. Elasticsearch
+   * responds with a not found status in that case, which Spring Data may have translated into an exception of its own.
+   */
+  private static boolean isPointInTimeMissing(RuntimeException e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ElasticsearchException elasticsearchException) {
+        return elasticsearchException.status() == STATUS_NOT_FOUND
+            || SEARCH_CONTEXT_MISSING.equals(elasticsearchException.error().type());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A page of hits.
+   *
+   * @param totalHits  the total number of hits of the search
+   * @param hits       the hits of the page
+   * @param nextCursor the cursor of the next page or {@code null} if this is the last page
+   */
+  record CursorPage<T>(long totalHits, List<SearchHit<T>> hits, @Nullable String nextCursor) {
+  }
+
+  /**
+   * The position of a page within a point in time of the given index, encoded as cursor. The hash identifies the query
+   * of the search. A position without point in time follows the first page, whose hits have to be skipped once the
+   * point in time is opened.
+   */
+  record Position(String index, String queryHash, @Nullable String pointInTimeId, @Nullable List<Object> searchAfter,
+                  int skip) {
+
+    private String encode() {
+      try {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JSON_UTIL.writeValueAsBytes(this));
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static Position decode(String cursor) {
+      try {
+        var position = JSON_UTIL.readValue(Base64.getUrlDecoder().decode(cursor), Position.class);
+        var afterFirstPage = position.pointInTimeId() == null && position.searchAfter() == null
+            && position.skip() > 0;
+        var withinPointInTime = position.pointInTimeId() != null && position.searchAfter() != null
+            && position.skip() == 0;
+        if (position.index() == null || position.queryHash() == null || !(afterFirstPage || withinPointInTime)) {
+          throw new IllegalArgumentException("Incomplete cursor");
+        }
+        return position;
+      } catch (IllegalArgumentException | IOException e) {
+        throw new InvalidSearchCursorException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Coalesces identical concurrent requests of a single kind.
+ * <p>
+ * The first caller with a key performs the request, while all callers with an equal key arriving before it completes
+ * wait for and receive its result or exception. Results are not kept beyond the completion of the request, so this is
+ * independent of any caching of results.
+ *
+ * @param <K> the type of the request parameters
+ * @param <V> the type of the results
+ */
+public class InFlightRequests<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> requests = new ConcurrentHashMap<>();
+
+  /**
+   * Performs the request with the given parameters or joins the identical request already in flight.
+   *
+   * @param key     the request parameters
+   * @param request performs the request with the given parameters
+   * @return the result of the request
+   */
+  public V get(K key, Function<K, V> request) {
+    var future = new CompletableFuture<V>();
+    var inFlight = requests.putIfAbsent(key, future);
+    if (inFlight != null) {
+      return join(inFlight);
+    }
+    try {
+      var result = request.apply(key);
+      future.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      requests.remove(key, future);
+    }
+  }
+
+  private static <V> V join(CompletableFuture<V> inFlight) {
+    try {
+      return inFlight.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+}
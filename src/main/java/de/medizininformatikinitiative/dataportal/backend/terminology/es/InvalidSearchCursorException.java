@@ -0,0 +1,15 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid search cursor")
+public class InvalidSearchCursorException extends RuntimeException {
+  public InvalidSearchCursorException(String message) {
+    super(message);
+  }
+
+  public InvalidSearchCursorException(Throwable cause) {
+    super(cause);
+  }
+}
@@ -0,0 +1,63 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches the results of a single kind of terminology search.
+ * <p>
+ * The terminology only changes with a new ontology, so results are keyed by the normalized search parameters together
+ * with the ontology version. Results of an outdated ontology are never reused and simply age out. The cache is bounded
+ * in size, results expire after a fixed time and hit and miss counts are exposed as {@code cache.*} metrics tagged
+ * with the name of the cache.
+ *
+ * @param <K> the type of the normalized search parameters
+ * @param <V> the type of the search results
+ */
+public class SearchResultCache<K, V> {
+
+  private final Cache<VersionedKey<K>, V> results;
+  private final Supplier<String> ontologyVersion;
+
+  /**
+   * Creates a new SearchResultCache.
+   *
+   * @param name            the name of the cache used for tagging its metrics
+   * @param maximumSize     the maximum number of search results kept, {@code 0} disables caching
+   * @param timeToLive      the time after which a search result expires
+   * @param ontologyVersion supplies the version of the ontology currently in use
+   * @param meterRegistry   the registry the metrics of the cache are registered with
+   */
+  public SearchResultCache(String name, long maximumSize, Duration timeToLive, Supplier<String> ontologyVersion,
+                           MeterRegistry meterRegistry) {
+    this.ontologyVersion = ontologyVersion;
+    this.results = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, results, name);
+  }
+
+  /**
+   * Gets the cached result of the search with the given parameters or performs the search, caching its result.
+   * <p>
+   * Concurrent calls with equal parameters perform the search only once.
+   *
+   * @param key    the normalized search parameters
+   * @param search performs the search with the given parameters
+   * @return the search result
+   */
+  public V get(K key, Function<K, V> search) {
+    return results.get(new VersionedKey<>(key, ontologyVersion.get()), versionedKey -> search.apply(versionedKey.key()));
+  }
+
+  private record VersionedKey<K>(K key, String ontologyVersion) {
+  }
+}
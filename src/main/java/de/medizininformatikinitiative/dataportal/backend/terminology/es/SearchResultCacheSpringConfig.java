@@ -0,0 +1,52 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology.es;
+
+import de.medizininformatikinitiative.dataportal.backend.terminology.OntologyVersion;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.CcSearchResult;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.EsSearchResult;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.TermFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@ConditionalOnExpression("${app.elastic.enabled}")
+public class SearchResultCacheSpringConfig {
+
+  @Value("${app.elastic.searchCache.maxSize:10000}")
+  private long maxSize;
+
+  @Value("${app.elastic.searchCache.timeToLive:PT1H}")
+  private Duration timeToLive;
+
+  @Bean
+  SearchResultCache<TerminologyEsService.SearchKey, EsSearchResult> createOntologySearchResultCache(
+      OntologyVersion ontologyVersion, ObjectProvider<MeterRegistry> meterRegistry) {
+    return new SearchResultCache<>("ontologySearch", maxSize, timeToLive, ontologyVersion,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+
+  @Bean
+  SearchResultCache<CodeableConceptService.SearchKey, CcSearchResult> createCodeableConceptSearchResultCache(
+      OntologyVersion ontologyVersion, ObjectProvider<MeterRegistry> meterRegistry) {
+    return new SearchResultCache<>("codeableConceptSearch", maxSize, timeToLive, ontologyVersion,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+
+  /**
+   * Caches the unfiltered facets of all filter fields. They are a single result per ontology version, so the cache
+   * holds just one entry regardless of the configured maximum size.
+   */
+  @Bean
+  SearchResultCache<List<String>, List<TermFilter>> createAvailableFiltersCache(
+      OntologyVersion ontologyVersion, ObjectProvider<MeterRegistry> meterRegistry) {
+    return new SearchResultCache<>("availableFilters", 1, timeToLive, ontologyVersion,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+}
@@ -1,10 +1,8 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.es;
 
 import co.elastic.clients.elasticsearch._types.FieldValue;
-import co.elastic.clients.elasticsearch._types.Script;
 import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
 import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
-import co.elastic.clients.elasticsearch._types.aggregations.TermsInclude;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.*;
@@ -16,6 +14,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
@@ -30,10 +30,12 @@ import org.springframework.util.CollectionUtils;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -49,6 +51,8 @@ public class TerminologyEsService {
   public static final String FIELD_NAME_TERMCODE_WITH_BOOST = "termcode^2";
   public static final String FIELD_NAME_TERMCODE_KEYWORD = "termcode.keyword";
   private static final UUID NAMESPACE_UUID = UUID.fromString("00000000-0000-0000-0000-000000000000");
+  private static final String FACET_VALUES_AGGREGATION = "values";
+  static final float AVAILABILITY_BOOST = 100;
   private ElasticsearchOperations operations;
 
   private String[] filterFields;
@@ -57,12 +61,29 @@ public class TerminologyEsService {
 
   private OntologyListItemEsRepository ontologyListItemEsRepository;
 
+  private SearchResultCache<SearchKey, EsSearchResult> searchResultCache;
+
+  private Duration cursorKeepAlive;
+
+  private SearchResultCache<List<String>, List<TermFilter>> availableFiltersCache;
+
+  private final InFlightRequests<SearchKey, EsSearchResult> ontologySearches = new InFlightRequests<>();
+
+  private final InFlightRequests<FilterKey, List<TermFilter>> filterSearches = new InFlightRequests<>();
+
+  private final InFlightRequests<String, EsSearchResultEntry> entryLookups = new InFlightRequests<>();
+
   @Autowired
-  public TerminologyEsService(@Value("${app.elastic.filter}") String[] filterFields, ElasticsearchOperations operations, OntologyItemEsRepository ontologyItemEsRepository, OntologyListItemEsRepository ontologyListItemEsRepository) {
+  public TerminologyEsService(@Value("${app.elastic.filter}") String[] filterFields, ElasticsearchOperations operations, OntologyItemEsRepository ontologyItemEsRepository, OntologyListItemEsRepository ontologyListItemEsRepository, SearchResultCache<SearchKey, EsSearchResult> searchResultCache,
+                              SearchResultCache<List<String>, List<TermFilter>> availableFiltersCache,
+                              @Value("${app.elastic.cursorKeepAlive:PT1M}") Duration cursorKeepAlive) {
     this.filterFields = filterFields;
     this.operations = operations;
     this.ontologyItemEsRepository = ontologyItemEsRepository;
     this.ontologyListItemEsRepository = ontologyListItemEsRepository;
+    this.searchResultCache = searchResultCache;
+    this.availableFiltersCache = availableFiltersCache;
+    this.cursorKeepAlive = cursorKeepAlive;
   }
 
   public static String createContextualizedTermcodeHash(Criterion criterion) {
@@ -92,7 +113,16 @@ public class TerminologyEsService {
     return getSearchResultEntryByHash(contextualizedTermcodeHash);
   }
 
+  /**
+   * Gets the search result entry with the given hash.
+   * <p>
+   * Concurrent lookups of the same hash share a single request to Elasticsearch.
+   */
   public EsSearchResultEntry getSearchResultEntryByHash(String hash) {
+    return entryLookups.get(hash, this::findSearchResultEntryByHash);
+  }
+
+  private EsSearchResultEntry findSearchResultEntryByHash(String hash) {
     var ontologyItem = ontologyListItemEsRepository.findById(hash).orElseThrow(OntologyItemNotFoundException::new);
     return EsSearchResultEntry.of(ontologyItem);
   }
@@ -104,13 +134,32 @@ public class TerminologyEsService {
     return results;
   }
 
+  /**
+   * Computes the unfiltered facets of all configured filter fields as soon as the application is ready, so that the
+   * first request doesn't have to wait for them.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void precomputeAvailableFilters() {
+    try {
+      getAvailableFilters();
+    } catch (RuntimeException e) {
+      log.warn("Could not precompute the available filters, computing them on first request instead", e);
+    }
+  }
+
+  /**
+   * Gets the unfiltered facets of all configured filter fields.
+   * <p>
+   * The facets only change with the ontology, so they are computed by a single search and cached like search results,
+   * keyed by the ontology version and expiring after the same time. Concurrent requests arriving while the facets are
+   * computed share that search.
+   */
   public List<TermFilter> getAvailableFilters() {
-    var filterTerms = List.of(filterFields);
-    var list = new ArrayList<TermFilter>();
+    return availableFiltersCache.get(List.of(filterFields), filterFields -> computeAvailableFilters());
+  }
 
-    for (var term : filterTerms) {
-      list.add(getFilter(term));
-    }
+  private List<TermFilter> computeAvailableFilters() {
+    var list = new ArrayList<>(getFilters(List.of(filterFields), null, null, null, null));
 
     // Hardcode availability filter. It is not yet decided if and how this will be available anyways. TODO!
     list.add(TermFilter.builder()
@@ -119,9 +168,15 @@ public class TerminologyEsService {
         .values(List.of())
         .build());
 
-    return list;
+    return List.copyOf(list);
   }
 
+  /**
+   * Gets the facet of the given filter field, restricted by the search term and the selected values of all other
+   * filter fields.
+   * <p>
+   * Concurrent requests with equal parameters share a single search.
+   */
   public List<TermFilter> getAvailableFilters(String targetFilter,
                                               String searchTerm,
                                               List<String> contexts,
@@ -132,9 +187,19 @@ public class TerminologyEsService {
       throw new IllegalArgumentException("Unknown filter");
     }
 
-    return List.of(getFilter(targetFilter, searchTerm, contexts, kdsModules, terminologies));
+    var filterKey = new FilterKey(targetFilter, searchTerm == null ? "" : searchTerm.strip(),
+        SearchKey.normalize(contexts), SearchKey.normalize(kdsModules), SearchKey.normalize(terminologies));
+    return filterSearches.get(filterKey, key -> getFilters(List.of(key.targetFilter()), key.searchTerm(),
+        key.contexts(), key.kdsModules(), key.terminologies()));
   }
 
+  /**
+   * Searches the ontology for entries matching the given keyword and filters.
+   * <p>
+   * Results are cached by the normalized search parameters. The keyword is stripped of surrounding whitespace and the
+   * order and duplicates of filter values are ignored. Concurrent searches with equal parameters share a single
+   * request to Elasticsearch, whether or not their result is cached.
+   */
   public EsSearchResult performOntologySearchWithPaging(String keyword,
                                                         @Nullable List<String> criteriaSets,
                                                         @Nullable List<String> context,
@@ -143,27 +208,17 @@ public class TerminologyEsService {
                                                         @Nullable boolean availability,
                                                         @Nullable int pageSize,
                                                         @Nullable int page) {
+    var searchKey = new SearchKey(keyword.strip(), SearchKey.normalize(criteriaSets), SearchKey.normalize(context),
+        SearchKey.normalize(kdsModule), SearchKey.normalize(terminology), availability, pageSize, page);
+    return searchResultCache.get(searchKey, key -> ontologySearches.get(key, this::performOntologySearchWithPaging));
+  }
 
-
-    List<Pair<String, List<String>>> filterList = new ArrayList<>();
-    if (!CollectionUtils.isEmpty(criteriaSets)) {
-      filterList.add(Pair.of(FILTER_KEY_CRITERIA_SETS, criteriaSets));
-    }
-    if (!CollectionUtils.isEmpty(context)) {
-      filterList.add(Pair.of(FILTER_KEY_CONTEXT_CODE, context));
-    }
-    if (!CollectionUtils.isEmpty(kdsModule)) {
-      filterList.add(Pair.of(FILTER_KEY_KDS_MODULE, kdsModule));
-    }
-    if (!CollectionUtils.isEmpty(terminology)) {
-      filterList.add(Pair.of(FILTER_KEY_TERMINOLOGY, terminology));
-    }
-
+  private EsSearchResult performOntologySearchWithPaging(SearchKey searchKey) {
     SearchHits<OntologyListItemDocument> searchHitPage = findByNameOrTermcode(
-        keyword,
-        filterList,
-        availability,
-        PageRequest.of(page, pageSize)
+        searchKey.keyword(),
+        createFilterList(searchKey),
+        searchKey.availability(),
+        PageRequest.of(searchKey.page(), searchKey.pageSize())
     );
 
     List<EsSearchResultEntry> ontologyItems = new ArrayList<>();
@@ -171,10 +226,59 @@ public class TerminologyEsService {
     searchHitPage.getSearchHits().forEach(hit -> ontologyItems.add(EsSearchResultEntry.of(hit.getContent())));
     return EsSearchResult.builder()
         .totalHits(searchHitPage.getTotalHits())
-        .results(ontologyItems)
+        .results(List.copyOf(ontologyItems))
         .build();
   }
 
+  /**
+   * Searches the ontology for entries matching the given keyword and filters, returning the page at the given cursor.
+   * <p>
+   * Pages after the first one are fetched by {@code search_after} on a point in time of the index, so deep pages are as
+   * fast as the first one and aren't limited by the result window of the index. Cursor searches are neither cached nor
+   * coalesced, as every cursor is only used by a single client.
+   *
+   * @param cursor either {@code *} to start a new search or the {@link EsSearchResult#nextCursor() next cursor} of the
+   *               previous page
+   * @throws InvalidSearchCursorException if the cursor is invalid
+   */
+  public EsSearchResult performOntologySearchWithCursor(String keyword,
+                                                        @Nullable List<String> criteriaSets,
+                                                        @Nullable List<String> context,
+                                                        @Nullable List<String> kdsModule,
+                                                        @Nullable List<String> terminology,
+                                                        boolean availability,
+                                                        int pageSize,
+                                                        String cursor) {
+    var searchKey = new SearchKey(keyword.strip(), SearchKey.normalize(criteriaSets), SearchKey.normalize(context),
+        SearchKey.normalize(kdsModule), SearchKey.normalize(terminology), availability, pageSize, 0);
+    var query = createOntologySearchQuery(searchKey.keyword(), createFilterList(searchKey), availability);
+    var page = CursorSearch.search(operations, OntologyListItemDocument.class, query, pageSize, cursor,
+        cursorKeepAlive);
+
+    return EsSearchResult.builder()
+        .totalHits(page.totalHits())
+        .results(page.hits().stream().map(hit -> EsSearchResultEntry.of(hit.getContent())).toList())
+        .nextCursor(page.nextCursor())
+        .build();
+  }
+
+  private static List<Pair<String, List<String>>> createFilterList(SearchKey searchKey) {
+    List<Pair<String, List<String>>> filterList = new ArrayList<>();
+    if (!searchKey.criteriaSets().isEmpty()) {
+      filterList.add(Pair.of(FILTER_KEY_CRITERIA_SETS, searchKey.criteriaSets()));
+    }
+    if (!searchKey.contexts().isEmpty()) {
+      filterList.add(Pair.of(FILTER_KEY_CONTEXT_CODE, searchKey.contexts()));
+    }
+    if (!searchKey.kdsModules().isEmpty()) {
+      filterList.add(Pair.of(FILTER_KEY_KDS_MODULE, searchKey.kdsModules()));
+    }
+    if (!searchKey.terminologies().isEmpty()) {
+      filterList.add(Pair.of(FILTER_KEY_TERMINOLOGY, searchKey.terminologies()));
+    }
+    return filterList;
+  }
+
   public EsBulkSearchResult performExactSearch(TerminologyBulkSearchRequest request) {
     List<EsSearchResultEntryExtended> results = new ArrayList<>();
     List<String> notFound = new ArrayList<>(request.searchterms());
@@ -197,17 +301,38 @@ public class TerminologyEsService {
                                                                     List<Pair<String, List<String>>> filterList,
                                                                     boolean availability,
                                                                     PageRequest pageRequest) {
+    var finalQuery = new NativeQueryBuilder()
+        .withQuery(createOntologySearchQuery(keyword, filterList, availability))
+        .withPageable(pageRequest)
+        .build();
+
+    log.info(finalQuery.getQuery().toString());
+
+    return operations.search(finalQuery, OntologyListItemDocument.class);
 
+  }
+
+  /**
+   * Creates the query of the ontology search.
+   * <p>
+   * Available entries are ranked above all others by a constant boost of {@value AVAILABILITY_BOOST}, added to the
+   * score of the keyword match by an optional should-clause. This ranks entries exactly like adding the boost by a
+   * script, but lets Elasticsearch use its query-time optimizations instead of evaluating a script per matching
+   * document.
+   */
+  static Query createOntologySearchQuery(String keyword,
+                                         List<Pair<String, List<String>>> filterList,
+                                         boolean availability) {
     List<Query> filterTerms = new ArrayList<>();
+    var availableEntries = RangeQuery.of(r -> r
+        .number(n -> n
+            .field("availability")
+            .gt(0.0)
+        )
+    )._toQuery();
 
     if (availability) {
-      var availabilityFilter = RangeQuery.of(r -> r
-          .number(n -> n
-              .field("availability")
-              .gt(0.0)
-          )
-      );
-      filterTerms.add(availabilityFilter._toQuery());
+      filterTerms.add(availableEntries);
     }
 
     if (!filterList.isEmpty()) {
@@ -221,54 +346,22 @@ public class TerminologyEsService {
       });
     }
 
-    BoolQuery boolQuery;
+    var boolQueryBuilder = new BoolQuery.Builder()
+        .filter(filterTerms)
+        .should(ConstantScoreQuery.of(c -> c
+            .filter(availableEntries)
+            .boost(AVAILABILITY_BOOST))._toQuery())
+        // Without this, the should-clause would become mandatory for searches without keyword and filters.
+        .minimumShouldMatch("0");
 
-    if (keyword.isEmpty()) {
-      boolQuery = new BoolQuery.Builder()
-          .filter(filterTerms.isEmpty() ? List.of() : filterTerms)
-          .build();
-    } else {
-      var multiMatchQuery = new MultiMatchQuery.Builder()
+    if (!keyword.isEmpty()) {
+      boolQueryBuilder.must(new MultiMatchQuery.Builder()
           .query(keyword)
           .fields(List.of(FIELD_NAME_DISPLAY_DE, FIELD_NAME_DISPLAY_EN, FIELD_NAME_TERMCODE_WITH_BOOST, FIELD_NAME_DISPLAY_ORIGINAL_WITH_BOOST))
-          .build();
-
-      boolQuery = new BoolQuery.Builder()
-          .must(multiMatchQuery._toQuery())
-          .filter(filterTerms.isEmpty() ? List.of() : filterTerms)
-          .build();
+          .build()._toQuery());
     }
 
-    var innerQuery = new NativeQueryBuilder()
-        .withQuery(boolQuery._toQuery())
-        .withPageable(pageRequest)
-        .build();
-
-    var availabilityScoreScript = new Script.Builder()
-        .source("doc['availability'].value == 0 ? _score : _score + 100")
-        .build();
-
-    var function = FunctionScoreBuilders.scriptScore()
-        .script(availabilityScoreScript)
-        .build();
-
-    var functionList = List.of(function._toFunctionScore());
-
-    var functionScoreQuery = new FunctionScoreQuery.Builder()
-        .query(innerQuery.getQuery())
-        .functions(functionList)
-        .boostMode(FunctionBoostMode.Replace)
-        .build();
-
-    var finalQuery = new NativeQueryBuilder()
-        .withQuery(functionScoreQuery._toQuery())
-        .withPageable(pageRequest)
-        .build();
-
-    log.info(finalQuery.getQuery().toString());
-
-    return operations.search(finalQuery, OntologyListItemDocument.class);
-
+    return boolQueryBuilder.build()._toQuery();
   }
 
   private SearchHits<OntologyItemDocument> findExactMatchesByBulkSearchRequest(TerminologyBulkSearchRequest request) {
@@ -308,119 +401,139 @@ public class TerminologyEsService {
     return RelationEntry.of(ontologyItemRelationsDocument);
   }
 
-  private TermFilter getFilter(String targetFilter) {
-    return getFilter(targetFilter, null, null, null, null);
-  }
-
-  private TermFilter getFilter(String targetFilter,
-                               String searchTerm,
-                               List<String> contexts,
-                               List<String> kdsModules,
-                               List<String> terminologies) {
-    final var termElastic = targetFilter.equalsIgnoreCase("context") ? "context.code" : targetFilter;
+  /**
+   * Computes the facets of the given filter fields by a single search with one aggregation per field.
+   * <p>
+   * The facet of a field is restricted by the search term and the selected values of all other fields, but not by the
+   * selected values of the field itself.
+   */
+  private List<TermFilter> getFilters(List<String> targetFilters,
+                                      String searchTerm,
+                                      List<String> contexts,
+                                      List<String> kdsModules,
+                                      List<String> terminologies) {
     var queryBuilder = NativeQuery.builder()
-        .withAggregation(termElastic, Aggregation.of(a -> a
-            .terms(ta -> ta.field(termElastic).size(50))))
         .withMaxResults(0);
 
-    boolean anyListHasValues = Stream.of(contexts, kdsModules, terminologies)
-        .anyMatch(list -> list != null && !list.isEmpty());
-    boolean hasSearchTerm = searchTerm != null && !searchTerm.isBlank();
+    for (var targetFilter : targetFilters) {
+      final var termElastic = targetFilter.equalsIgnoreCase("context") ? "context.code" : targetFilter;
+      queryBuilder.withAggregation(targetFilter, Aggregation.of(a -> a
+          .filter(facetFilter(targetFilter, contexts, kdsModules, terminologies))
+          .aggregations(FACET_VALUES_AGGREGATION, values -> values
+              .terms(ta -> ta.field(termElastic).size(50)))));
+    }
 
-    if (anyListHasValues || hasSearchTerm) {
+    // search term must match at least one of the four fields
+    if (searchTerm != null && !searchTerm.isBlank()) {
       queryBuilder.withQuery(Query.of(q -> q
-          .bool(b -> {
-            // --- existing filters ---
-            if (!(CollectionUtils.isEmpty(contexts) || targetFilter.equalsIgnoreCase("context"))) {
-              b.filter(f -> f.terms(t -> t.field("context.code")
-                  .terms(tv -> tv.value(contexts.stream()
-                      .map(FieldValue::of).toList()))));
-            }
-            if (!(CollectionUtils.isEmpty(kdsModules) || targetFilter.equalsIgnoreCase("kds_module"))) {
-              b.filter(f -> f.terms(t -> t.field("kds_module")
-                  .terms(tv -> tv.value(kdsModules.stream()
-                      .map(FieldValue::of).toList()))));
-            }
-            if (!(CollectionUtils.isEmpty(terminologies) || targetFilter.equalsIgnoreCase("terminology"))) {
-              b.filter(f -> f.terms(t -> t.field("terminology")
-                  .terms(tv -> tv.value(terminologies.stream()
-                      .map(FieldValue::of).toList()))));
-            }
-
-            // --- new: search term must match at least one of the four fields ---
-            if (hasSearchTerm) {
-              b.must(m -> m.multiMatch(mm -> mm
+          .bool(b -> b
+              .must(m -> m.multiMatch(mm -> mm
                   .query(searchTerm)
                   .fields(List.of(FIELD_NAME_DISPLAY_DE, FIELD_NAME_DISPLAY_EN, FIELD_NAME_TERMCODE_WITH_BOOST, FIELD_NAME_DISPLAY_ORIGINAL_WITH_BOOST))
-              ));
-            }
-
-            return b;
-          })));
+              )))));
     }
 
     var aggregationQuery = queryBuilder.build();
     SearchHits<OntologyListItemDocument> searchHits = operations.search(aggregationQuery, OntologyListItemDocument.class);
     ElasticsearchAggregations aggregations = (ElasticsearchAggregations) searchHits.getAggregations();
     assert aggregations != null;
-    List<StringTermsBucket> buckets = aggregations.aggregationsAsMap().get(termElastic).aggregation().getAggregate().sterms().buckets().array();
-    List<TermFilterValue> termFilterValues = new ArrayList<>();
-    buckets.forEach(b -> {
-      if (!b.key().stringValue().isEmpty()) {
-        termFilterValues.add(TermFilterValue.builder()
-            .label(b.key().stringValue())
-            .count(b.docCount())
-            .build());
-      }
-    });
-    return TermFilter.builder()
-        .name(targetFilter)
-        .type("selectable-concept")
-        .values(termFilterValues)
-        .build();
-  }
-
-  public List<String> availableCodesInReferencedCriteriaSets(List<String> codes, List<String> criteriaSetUrls) {
-    if (codes == null || codes.isEmpty() || criteriaSetUrls == null || criteriaSetUrls.isEmpty()) {
-      throw new IllegalArgumentException();
+    var aggregationsByName = aggregations.aggregationsAsMap();
+
+    var termFilters = new ArrayList<TermFilter>();
+    for (var targetFilter : targetFilters) {
+      List<StringTermsBucket> buckets = aggregationsByName.get(targetFilter).aggregation().getAggregate().filter()
+          .aggregations().get(FACET_VALUES_AGGREGATION).sterms().buckets().array();
+      List<TermFilterValue> termFilterValues = new ArrayList<>();
+      buckets.forEach(b -> {
+        if (!b.key().stringValue().isEmpty()) {
+          termFilterValues.add(TermFilterValue.builder()
+              .label(b.key().stringValue())
+              .count(b.docCount())
+              .build());
+        }
+      });
+      termFilters.add(TermFilter.builder()
+          .name(targetFilter)
+          .type("selectable-concept")
+          .values(termFilterValues)
+          .build());
     }
-    var codesFound = new ArrayList<String>();
-
-    var termsQueryField = new TermsQueryField.Builder()
-        .value(criteriaSetUrls.stream().map(FieldValue::of).distinct().toList())
-        .build();
+    return termFilters;
+  }
 
-    var termsQuery = new TermsQuery.Builder()
-        .field("criteria_sets")
-        .terms(termsQueryField)
-        .build();
+  private static Query facetFilter(String targetFilter,
+                                   List<String> contexts,
+                                   List<String> kdsModules,
+                                   List<String> terminologies) {
+    return Query.of(q -> q
+        .bool(b -> {
+          if (!(CollectionUtils.isEmpty(contexts) || targetFilter.equalsIgnoreCase("context"))) {
+            b.filter(f -> f.terms(t -> t.field("context.code")
+                .terms(tv -> tv.value(contexts.stream()
+                    .map(FieldValue::of).toList()))));
+          }
+          if (!(CollectionUtils.isEmpty(kdsModules) || targetFilter.equalsIgnoreCase("kds_module"))) {
+            b.filter(f -> f.terms(t -> t.field("kds_module")
+                .terms(tv -> tv.value(kdsModules.stream()
+                    .map(FieldValue::of).toList()))));
+          }
+          if (!(CollectionUtils.isEmpty(terminologies) || targetFilter.equalsIgnoreCase("terminology"))) {
+            b.filter(f -> f.terms(t -> t.field("terminology")
+                .terms(tv -> tv.value(terminologies.stream()
+                    .map(FieldValue::of).toList()))));
+          }
+          return b;
+        }));
+  }
 
-    var termsInclude = new TermsInclude.Builder()
-        .terms(codes)
-        .build();
+  public List<String> availableCodesInReferencedCriteriaSets(List<String> codes, List<String> criteriaSetUrls) {
+    var check = new CodeAvailabilityCheck(codes, criteriaSetUrls);
+    return availableCodesInReferencedCriteriaSets(List.of(check)).get(check);
+  }
 
-    var aggregationQuery = NativeQuery.builder()
-        .withQuery(termsQuery._toQuery())
-        .withAggregation("existing_codes",
-            Aggregation.of(a ->
-                a.terms(ta ->
-                    ta.field("termcode.keyword")
-                        .include(termsInclude)
-                        .size(1000)
-                )))
-        .withMaxResults(0)
-        .build();
+  /**
+   * Determines for each of the given checks which of its codes are part of at least one of its criteria sets.
+   * <p>
+   * All checks are answered by a single search request.
+   *
+   * @param checks the checks, each consisting of codes and criteria set urls
+   * @return the available codes of each check
+   * @throws IllegalArgumentException if a check has no codes or no criteria set urls
+   */
+  public Map<CodeAvailabilityCheck, List<String>> availableCodesInReferencedCriteriaSets(
+      Collection<CodeAvailabilityCheck> checks) {
+    return CodeAvailabilitySearch.availableCodes(operations, OntologyItemDocument.class, FILTER_KEY_CRITERIA_SETS,
+        FIELD_NAME_TERMCODE_KEYWORD, checks);
+  }
 
-    var searchHits = operations.search(aggregationQuery, OntologyItemDocument.class);
-    var aggregations = (ElasticsearchAggregations) searchHits.getAggregations();
-    assert aggregations != null;
-    List<StringTermsBucket> buckets = aggregations.aggregationsAsMap().get("existing_codes").aggregation().getAggregate().sterms().buckets().array();
-    buckets.forEach(bucket -> {
-      if (bucket.docCount() > 0 ) {
-        codesFound.add(bucket.key().stringValue());
-      }
-    });
+  /**
+   * The normalized parameters of a facet search.
+   */
+  private record FilterKey(
+      String targetFilter,
+      String searchTerm,
+      List<String> contexts,
+      List<String> kdsModules,
+      List<String> terminologies
+  ) {
+  }
 
-    return codesFound;
+  /**
+   * The normalized parameters of an ontology search.
+   */
+  record SearchKey(
+      String keyword,
+      List<String> criteriaSets,
+      List<String> contexts,
+      List<String> kdsModules,
+      List<String> terminologies,
+      boolean availability,
+      int pageSize,
+      int page
+  ) {
+
+    static List<String> normalize(@Nullable List<String> filterValues) {
+      return filterValues == null ? List.of() : filterValues.stream().sorted().distinct().toList();
+    }
   }
 }
@@ -4,7 +4,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 public interface TermCodeRepository extends JpaRepository<TermCode, Long> {
 
@@ -14,9 +15,22 @@ public interface TermCodeRepository extends JpaRepository<TermCode, Long> {
   @Query("select case when count(t) > 0 then true else false end from TermCode t where t.code = :code and t.system = :system")
   boolean existsTermCode(@Param("system") String system, @Param("code") String code);
 
-  @Query("select tc from ContextualizedTermCode ctc left join TermCode tc on ctc.termCodeId = tc.id where ctc.contextTermcodeHash = :hash")
-  Optional<TermCode> findTermCodeByContextualizedTermcodeHash(@Param("hash") String contextualizedTermcodeHash);
+  @Query("select t from TermCode t where t.code in :codes")
+  List<TermCode> findAllByCodes(@Param("codes") Collection<String> codes);
 
-  @Query("select c from ContextualizedTermCode ctc left join Context c on ctc.contextId = c.id where ctc.contextTermcodeHash = :hash")
-  Optional<Context> findContextByContextualizedTermcodeHash(@Param("hash") String contextualizedTermcodeHash);
+  @Query("select ctc.contextTermcodeHash as contextualizedTermcodeHash, tc as termCode, c as context, up.name as uiProfileName from ContextualizedTermCode ctc left join TermCode tc on ctc.termCodeId = tc.id left join Context c on ctc.contextId = c.id left join UiProfile up on ctc.uiProfileId = up.id where ctc.contextTermcodeHash in :hashes")
+  List<ContextualizedTermCodeDetails> findDetailsByContextualizedTermcodeHashes(@Param("hashes") Collection<String> contextualizedTermcodeHashes);
+
+  /**
+   * The term code, context and UI profile name of a single contextualized term code.
+   */
+  interface ContextualizedTermCodeDetails {
+    String getContextualizedTermcodeHash();
+
+    TermCode getTermCode();
+
+    Context getContext();
+
+    String getUiProfileName();
+  }
 }
@@ -4,6 +4,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UiProfileRepository extends JpaRepository<UiProfile, Long> {
@@ -13,4 +15,18 @@ public interface UiProfileRepository extends JpaRepository<UiProfile, Long> {
 
   @Query("select up.name from ContextualizedTermCode ct left join UiProfile up on ct.uiProfileId = up.id where ct.contextTermcodeHash = :contextualizedTermcodeHash")
   Optional<String> getUiProfileNameByContextualizedTermcodeHash(@Param("contextualizedTermcodeHash") String contextualizedTermcodeHash);
+
+  @Query("select ct.contextTermcodeHash as contextualizedTermcodeHash, up.id as uiProfileId, up.uiProfile as uiProfile from ContextualizedTermCode ct join UiProfile up on ct.uiProfileId = up.id where ct.contextTermcodeHash in :contextualizedTermcodeHashes")
+  List<ContextualizedUiProfile> findAllByContextualizedTermcodeHashes(@Param("contextualizedTermcodeHashes") Collection<String> contextualizedTermcodeHashes);
+
+  /**
+   * The serialized UI profile of a single contextualized term code.
+   */
+  interface ContextualizedUiProfile {
+    String getContextualizedTermcodeHash();
+
+    Long getUiProfileId();
+
+    String getUiProfile();
+  }
 }
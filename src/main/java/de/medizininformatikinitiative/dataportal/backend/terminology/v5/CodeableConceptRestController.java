@@ -29,7 +29,13 @@ public class CodeableConceptRestController {
   public CcSearchResult searchOntologyItemsCriteriaQuery(@RequestParam("searchterm") String keyword,
                                                          @RequestParam(value = "value-sets", required = false) List<String> valueSets,
                                                          @RequestParam(value = "page-size", required = false, defaultValue = "20") int pageSize,
-                                                         @RequestParam(value = "page", required = false, defaultValue = "0") int page) {
+                                                         @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                                                         @RequestParam(value = "cursor", required = false) String cursor) {
+
+    if (cursor != null) {
+      return codeableConceptService
+          .performCodeableConceptSearchWithCursor(keyword, valueSets, pageSize, cursor);
+    }
 
     return codeableConceptService
         .performCodeableConceptSearchWithRepoAndPaging(keyword, valueSets, pageSize, page);
@@ -40,6 +40,19 @@ public class TerminologyRestController {
 
   @GetMapping("criteria-profile-data")
   public List<CriteriaProfileData> getCriteriaProfileData(@RequestParam List<String> ids) {
+    return findCriteriaProfileData(ids);
+  }
+
+  /*
+   Same as the GET variant, but takes the ids within the request body so that large lists of ids are not limited by the
+   maximum URL length.
+   */
+  @PostMapping("criteria-profile-data")
+  public List<CriteriaProfileData> postCriteriaProfileData(@RequestBody List<String> ids) {
+    return findCriteriaProfileData(ids);
+  }
+
+  private List<CriteriaProfileData> findCriteriaProfileData(List<String> ids) {
     var criteriaProfileData = terminologyService.getCriteriaProfileData(ids);
     var displayData = terminologyEsService.getSearchResultEntriesByHash(ids);
     return terminologyService.addDisplayDataToCriteriaProfileData(criteriaProfileData, displayData);
@@ -87,8 +100,13 @@ public class TerminologyRestController {
                                                          @RequestParam(value = "terminologies", required = false) List<String> terminologies,
                                                          @RequestParam(value = "availability", required = false, defaultValue = "false") boolean availability,
                                                          @RequestParam(value = "page-size", required = false, defaultValue = "20") int pageSize,
-                                                         @RequestParam(value = "page", required = false, defaultValue = "0") int page) {
+                                                         @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                                                         @RequestParam(value = "cursor", required = false) String cursor) {
 
+    if (cursor != null) {
+      return terminologyEsService
+          .performOntologySearchWithCursor(keyword, criteriaSets, contexts, kdsModules, terminologies, availability, pageSize, cursor);
+    }
 
     return terminologyEsService
         .performOntologySearchWithPaging(keyword, criteriaSets, contexts, kdsModules, terminologies, availability, pageSize, page);
@@ -1,9 +1,8 @@
 package de.medizininformatikinitiative.dataportal.backend.validation;
 
 import de.medizininformatikinitiative.dataportal.backend.dse.DseService;
+import de.medizininformatikinitiative.dataportal.backend.dse.IndexedDseProfile;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
-import de.medizininformatikinitiative.dataportal.backend.dse.api.Field;
-import de.medizininformatikinitiative.dataportal.backend.dse.api.Reference;
 import de.medizininformatikinitiative.dataportal.backend.query.api.*;
 import de.medizininformatikinitiative.dataportal.backend.query.api.status.UpgradeIssue;
 import de.medizininformatikinitiative.dataportal.backend.query.api.status.UpgradeIssueType;
@@ -33,24 +32,22 @@ public class UpgradeService {
 
     var referencedGroups = dataExtraction.attributeGroups().stream()
         .map(AttributeGroup::groupReference).distinct().toList();
-    var profileData = dseService.getProfileData(referencedGroups.stream().map(URI::toString).toList());
+    var profileData = dseService.getIndexedProfiles(referencedGroups.stream().map(URI::toString).toList());
 
     var issues = new ArrayList<UpgradeIssue>();
     var fixedDataExtraction = dataExtraction;
 
     for (int i = 0; i < dataExtraction.attributeGroups().size(); i++) {
       var fixedAttributeGroup = dataExtraction.attributeGroups().get(i);
-      AttributeGroup finalFixedAttributeGroup = fixedAttributeGroup;
-      var dseProfile = profileData.stream()
-          .filter(p -> finalFixedAttributeGroup.groupReference().toString().equals(p.url()))
-          .findFirst()
+      var indexedDseProfile = Optional.ofNullable(profileData.get(fixedAttributeGroup.groupReference().toString()))
           .orElseThrow(() -> new CrtdlUpgradeException("Dse Profile not found"));
+      var dseProfile = indexedDseProfile.profile();
 
       var handlers = dseProfile.errorCode() != null && !dseProfile.errorCode().isBlank()
           ? List.of((UpgradeHandler) this::handleProfileRemoved)
           : List.of(
           (UpgradeHandler) (de, ag, idx) -> handleFilterNameChange(de, ag, dseProfile, idx),
-          (UpgradeHandler) (de, ag, idx) -> handleFieldOrReferenceRemoved(de, ag, dseProfile, idx),
+          (UpgradeHandler) (de, ag, idx) -> handleFieldOrReferenceRemoved(de, ag, indexedDseProfile, idx),
           (UpgradeHandler) (de, ag, idx) -> handleLinkedGroupsRemoved(de, ag, dseProfile, idx)
       );
 
@@ -116,7 +113,7 @@ public class UpgradeService {
         .build();
   }
 
-  private DataExtractionUpgradeResult handleFieldOrReferenceRemoved(DataExtraction dataExtraction, AttributeGroup attributeGroup, DseProfile dseProfile, int groupIndex) {
+  private DataExtractionUpgradeResult handleFieldOrReferenceRemoved(DataExtraction dataExtraction, AttributeGroup attributeGroup, IndexedDseProfile dseProfile, int groupIndex) {
     var fixedDataExtraction = dataExtraction;
     var fixedAttributeGroup = attributeGroup;
     var issues = new ArrayList<UpgradeIssue>();
@@ -126,14 +123,14 @@ public class UpgradeService {
       boolean hasLinkedGroups = attribute.linkedGroups() != null && !attribute.linkedGroups().isEmpty();
 
       boolean isAvailable = hasLinkedGroups
-          ? dseProfile.references().stream().anyMatch(ref -> referenceOrChildrenMatch(ref, attribute.attributeRef()))
-          : dseProfile.fields().stream().anyMatch(field -> fieldOrChildrenMatch(field, attribute.attributeRef()));
+          ? dseProfile.containsNestedReference(attribute.attributeRef())
+          : dseProfile.containsField(attribute.attributeRef());
 
       if (isAvailable) continue;
 
       var firstMatch = hasLinkedGroups
-          ? findFirstMatchingParentReference(attribute.attributeRef(), dseProfile)
-          : findFirstMatchingParentField(attribute.attributeRef(), dseProfile);
+          ? findFirstMatchingParentReference(attribute.attributeRef(), dseProfile.profile())
+          : findFirstMatchingParentField(attribute.attributeRef(), dseProfile.profile());
 
       if (firstMatch.isPresent()) {
         var fixedAttribute = attribute.toBuilder().attributeRef(firstMatch.get()).build();
@@ -245,18 +242,6 @@ public class UpgradeService {
     }
   }
 
-  private boolean fieldOrChildrenMatch(Field field, String attributeRef) {
-    if (field.id().equalsIgnoreCase(attributeRef)) return true;
-    return field.children() != null && field.children().stream()
-        .anyMatch(child -> fieldOrChildrenMatch(child, attributeRef));
-  }
-
-  private boolean referenceOrChildrenMatch(Reference reference, String attributeRef) {
-    if (reference.id().equalsIgnoreCase(attributeRef)) return true;
-    return reference.children() != null && reference.children().stream()
-        .anyMatch(child -> referenceOrChildrenMatch(child, attributeRef));
-  }
-
   private AttributeGroup findAttributeGroup(DataExtraction extraction, String id) {
     return extraction.attributeGroups().stream()
         .filter(g -> Objects.equals(g.id(), id))
@@ -0,0 +1,11 @@
+CREATE TABLE query_result_line
+(
+    query_id    BIGINT      NOT NULL,
+    site_name   TEXT        NOT NULL,
+    result_type TEXT        NOT NULL,
+    result      BIGINT      NOT NULL,
+    written_at  timestamptz NOT NULL DEFAULT current_timestamp,
+    CONSTRAINT query_result_line_pk PRIMARY KEY (query_id, site_name)
+);
+
+CREATE INDEX idx_query_result_line_written_at ON query_result_line (written_at);
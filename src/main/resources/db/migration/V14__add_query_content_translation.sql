@@ -0,0 +1,8 @@
+CREATE TABLE query_content_translation
+(
+    query_content_hash TEXT NOT NULL,
+    mapping_version    TEXT NOT NULL,
+    media_type         TEXT NOT NULL,
+    translation        TEXT NOT NULL,
+    CONSTRAINT query_content_translation_pk PRIMARY KEY (query_content_hash, mapping_version, media_type)
+);
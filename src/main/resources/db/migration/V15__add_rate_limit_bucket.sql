@@ -0,0 +1,22 @@
+CREATE TABLE rate_limit_bucket
+(
+    id         TEXT PRIMARY KEY,
+    state      BYTEA,
+    written_at timestamptz NOT NULL DEFAULT current_timestamp
+);
+
+CREATE INDEX idx_rate_limit_bucket_written_at ON rate_limit_bucket (written_at);
+
+CREATE FUNCTION touch_rate_limit_bucket() RETURNS trigger AS
+$$
+BEGIN
+    NEW.written_at = current_timestamp;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER rate_limit_bucket_written_at
+    BEFORE UPDATE
+    ON rate_limit_bucket
+    FOR EACH ROW
+EXECUTE FUNCTION touch_rate_limit_bucket();
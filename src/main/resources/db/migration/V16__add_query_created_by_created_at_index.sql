@@ -0,0 +1 @@
+CREATE INDEX idx_query_created_by_created_at ON query (created_by, created_at);
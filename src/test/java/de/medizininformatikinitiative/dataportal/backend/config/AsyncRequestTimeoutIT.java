@@ -0,0 +1,101 @@
+package de.medizininformatikinitiative.dataportal.backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that asynchronously written responses outlive the 30 seconds the servlet container allows them by default.
+ * <p>
+ * Runs on a real server with the shipped configuration, as the timeout is enforced by the servlet container.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    classes = AsyncRequestTimeoutIT.StreamingApplication.class,
+    properties = "spring.config.location=file:src/main/resources/application.yml"
+)
+class AsyncRequestTimeoutIT {
+
+  private static final Duration RESPONSE_DURATION = Duration.ofSeconds(35);
+
+  @LocalServerPort
+  private int port;
+
+  @Test
+  void serverSentEventStreamOutlivesContainerDefaultTimeout() throws Exception {
+    var response = get("/sse");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).contains("data:late");
+  }
+
+  @Test
+  void streamingResponseBodyOutlivesContainerDefaultTimeout() throws Exception {
+    var response = get("/export");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo("early-late");
+  }
+
+  private HttpResponse<String> get(String path) throws Exception {
+    try (var client = HttpClient.newHttpClient()) {
+      return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+          HttpResponse.BodyHandlers.ofString());
+    }
+  }
+
+  @Configuration(proxyBeanMethods = false)
+  @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+      WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class, JacksonAutoConfiguration.class})
+  @Import(StreamingController.class)
+  static class StreamingApplication {
+  }
+
+  @RestController
+  static class StreamingController {
+
+    @GetMapping(value = "/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<String>> sse() {
+      return Flux.just(ServerSentEvent.builder("late").build())
+          .delaySubscription(RESPONSE_DURATION);
+    }
+
+    @GetMapping("/export")
+    StreamingResponseBody export() {
+      return outputStream -> {
+        outputStream.write("early-".getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+        try {
+          Thread.sleep(RESPONSE_DURATION.toMillis());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        outputStream.write("late".getBytes(StandardCharsets.UTF_8));
+      };
+    }
+  }
+}
@@ -7,23 +7,24 @@ import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry
 import de.medizininformatikinitiative.dataportal.backend.dse.api.*;
 import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfile;
 import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfileRepository;
+import de.medizininformatikinitiative.dataportal.backend.terminology.OntologyVersion;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class DseServiceTest {
@@ -31,26 +32,30 @@ class DseServiceTest {
   private final ObjectMapper objectMapper = new ObjectMapper();
   @Mock
   private DseProfileRepository dseProfileRepository;
-  private DseService dseService;
+  @Mock
+  private OntologyVersion ontologyVersion;
 
-  private DseService createDseService() throws IOException {
-    return new DseService("src/test/resources/ontology/dse/profile_tree.json", dseProfileRepository, objectMapper);
+  private DseService createDseService(DseProfile... dseProfiles) throws IOException {
+    doReturn("1").when(ontologyVersion).get();
+    doReturn(List.of(dseProfiles)).when(dseProfileRepository).findAll();
+    return new DseService("src/test/resources/ontology/dse/profile_tree.json", dseProfileRepository, objectMapper,
+        ontologyVersion);
   }
 
   @BeforeEach
-  public void setup() throws IOException {
-    Mockito.reset(dseProfileRepository);
-    dseService = createDseService();
+  public void setup() {
+    Mockito.reset(dseProfileRepository, ontologyVersion);
   }
 
   @Test
   void testCreateProfileTreeInstance_throwsOnProfileTreeNotFound() {
     assertThrows(FileNotFoundException.class, ()
-        -> new DseService("src/test/this/is/not/found.json", dseProfileRepository, objectMapper));
+        -> new DseService("src/test/this/is/not/found.json", dseProfileRepository, objectMapper, ontologyVersion));
   }
 
   @Test
-  void testGetProfileTree_succeeds() {
+  void testGetProfileTree_succeeds() throws IOException {
+    var dseService = createDseService();
 
     var profileTree = assertDoesNotThrow(() -> dseService.getProfileTree());
 
@@ -66,11 +71,14 @@ class DseServiceTest {
   @Test
   void testGetProfileTree_throwsOnObjectMapperError() {
     assertThrows(UnrecognizedPropertyException.class, ()
-        -> new DseService("src/test/resources/ontology/dse/bogus_profile_tree.json", dseProfileRepository, objectMapper));
+        -> new DseService("src/test/resources/ontology/dse/bogus_profile_tree.json", dseProfileRepository, objectMapper,
+        ontologyVersion));
   }
 
   @Test
-  void testGetProfileData_succeedsWithEmptyList() {
+  void testGetProfileData_succeedsWithEmptyList() throws IOException {
+    var dseService = createDseService();
+
     var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of()));
 
     assertNotNull(results);
@@ -78,45 +86,87 @@ class DseServiceTest {
   }
 
   @Test
-  void testGetProfileData_succeedsWithoutErrors() throws JsonProcessingException {
-    doReturn(Optional.of(createDummyDseProfile())).when(dseProfileRepository).findByUrl(any(String.class));
+  void testGetProfileData_succeedsWithoutErrors() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
 
-    var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of("1")));
+    var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of("http://example.com")));
 
     assertNotNull(results);
     assertEquals(1, results.size());
+    assertNull(results.get(0).errorCode());
   }
 
   @Test
-  void testGetProfileData_succeedsWithErrorEntryOnCaughtException() throws JsonProcessingException {
-    doThrow(DataIntegrityViolationException.class).when(dseProfileRepository).findByUrl(any(String.class));
+  void testGetProfileData_succeedsWithErrors() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
 
-    var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of("1")));
+    var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of("http://example.com", "not-found")));
 
     assertNotNull(results);
-    assertEquals(1, results.size());
-    assertEquals("TBD-00000", results.get(0).errorCode());
-    assertEquals("profile not found", results.get(0).errorCause());
-    assertEquals("1", results.get(0).url());
+    assertEquals(2, results.size());
+    assertNull(results.get(0).errorCode());
+    assertEquals("TBD-00000", results.get(1).errorCode());
+    assertEquals("profile not found", results.get(1).errorCause());
+    assertEquals("not-found", results.get(1).url());
   }
 
   @Test
-  void testGetProfileData_succeedsWithErrors() throws JsonProcessingException {
-    doReturn(Optional.of(createDummyDseProfile())).when(dseProfileRepository).findByUrl("found");
-    doReturn(Optional.empty()).when(dseProfileRepository).findByUrl("not-found");
+  void testGetProfileData_throwsOnJsonProcessingException() throws IOException {
+    var dseService = createDseService(createDummyDseProfileWithBogusEntry());
 
-    var results = assertDoesNotThrow(() -> dseService.getProfileData(List.of("found", "not-found")));
+    assertThrows(RuntimeException.class, () -> dseService.getProfileData(List.of("http://example.com")));
+  }
 
-    assertNotNull(results);
-    assertEquals(2, results.size());
-    assertNull(results.get(0).errorCode());
-    assertNotNull(results.get(1).errorCode());
+  @Test
+  void testGetProfileData_parsesProfilesOnlyOnce() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
+
+    var first = dseService.getProfileData(List.of("http://example.com"));
+    var second = dseService.getProfileData(List.of("http://example.com"));
+
+    assertSame(first.get(0), second.get(0));
+    verify(dseProfileRepository).findAll();
+    verifyNoMoreInteractions(dseProfileRepository);
   }
 
   @Test
-  void testGetProfileData_throwsOnJsonProcessingException() {
-    doReturn(Optional.of(createDummyDseProfileWithBogusEntry())).when(dseProfileRepository).findByUrl(any(String.class));
-    assertThrows(RuntimeException.class, () -> dseService.getProfileData(List.of("1")));
+  void testGetProfileData_reloadsProfilesOnOntologyVersionChange() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
+    var before = dseService.getProfileData(List.of("http://example.com"));
+    doReturn("2").when(ontologyVersion).get();
+    doReturn(List.of()).when(dseProfileRepository).findAll();
+
+    var after = dseService.getProfileData(List.of("http://example.com"));
+
+    assertNull(before.get(0).errorCode());
+    assertEquals("TBD-00000", after.get(0).errorCode());
+  }
+
+  @Test
+  void testGetProfileData_keepsProfilesOnFailedReload() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
+    var before = dseService.getProfileData(List.of("http://example.com"));
+    doReturn("2").when(ontologyVersion).get();
+    doThrow(new DataAccessResourceFailureException("database down")).when(dseProfileRepository).findAll();
+
+    var after = dseService.getProfileData(List.of("http://example.com"));
+
+    assertSame(before.get(0), after.get(0));
+  }
+
+  @Test
+  void testGetIndexedProfiles_indexesNestedFieldsAndReferences() throws IOException {
+    var dseService = createDseService(createDummyDseProfile());
+
+    var result = dseService.getIndexedProfiles(List.of("http://example.com"));
+
+    var indexedProfile = result.get("http://example.com");
+    assertTrue(indexedProfile.containsField("FIELDID"));
+    assertTrue(indexedProfile.containsField("fieldid.child"));
+    assertTrue(indexedProfile.containsReference("reference-id"));
+    assertFalse(indexedProfile.containsReference("reference-id.child"));
+    assertTrue(indexedProfile.containsNestedReference("Reference-Id.Child"));
+    assertFalse(indexedProfile.containsField(null));
   }
 
   private DseProfile createDummyDseProfile() throws JsonProcessingException {
@@ -167,7 +217,11 @@ class DseServiceTest {
         .recommended(true)
         .display(createDummyDisplayEntry())
         .description(createDummyDisplayEntry())
-        .children(List.of())
+        .children(List.of(Field.builder()
+            .id("fieldid.child")
+            .display(createDummyDisplayEntry())
+            .description(createDummyDisplayEntry())
+            .build()))
         .build();
   }
 
@@ -179,7 +233,10 @@ class DseServiceTest {
         .type("reference")
         .recommended(true)
         .required(false)
-        .children(List.of())
+        .children(List.of(Reference.builder()
+            .id("reference-id.child")
+            .type("reference")
+            .build()))
         .referencedProfiles(List.of(createDummyReferencedProfile()))
         .build();
   }
@@ -18,6 +18,7 @@ import de.medizininformatikinitiative.dataportal.backend.query.dataquery.Dataque
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatchSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryHashCalculator;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.*;
+import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.QueryQuotaSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultLine;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultService;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultServiceSpringConfig;
@@ -42,6 +43,7 @@ import java.net.URI;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.UUID;
 
 import static de.medizininformatikinitiative.dataportal.backend.common.api.Comparator.GREATER_EQUAL;
 import static de.medizininformatikinitiative.dataportal.backend.query.QueryHandlerService.ResultDetail.*;
@@ -60,6 +62,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
     QueryDispatchSpringConfig.class,
     QueryCollectSpringConfig.class,
     QueryHandlerService.class,
+    QueryQuotaSpringConfig.class,
     ResultServiceSpringConfig.class,
     DataquerySpringConfig.class
 })
@@ -79,7 +82,7 @@ public class QueryHandlerServiceIT {
 
   public static final String SITE_NAME_1 = "site-name-114606";
   public static final String SITE_NAME_2 = "site-name-114610";
-  public static final String CREATOR = "creator-114634";
+  private final String creator = "creator-" + UUID.randomUUID();
   public static final long UNKNOWN_QUERY_ID = 9999999L;
   public static final String TIME_STRING = "1969-07-20 20:17:40.0";
 
@@ -127,7 +130,7 @@ public class QueryHandlerServiceIT {
     fakeContent.setHash("a2189dffb");
     queryContentRepository.save(fakeContent);
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     query.setQueryContent(fakeContent);
     var queryId = queryRepository.save(query).getId();
 
@@ -150,7 +153,7 @@ public class QueryHandlerServiceIT {
     fakeContent.setHash("a2189dffb");
     queryContentRepository.save(fakeContent);
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     query.setQueryContent(fakeContent);
     var queryId = queryRepository.save(query).getId();
 
@@ -183,7 +186,7 @@ public class QueryHandlerServiceIT {
   @EnumSource
   public void testGetQueryResult_ErrorResultsAreIgnored(ResultDetail resultDetail) {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     var queryId = queryRepository.save(query).getId();
     resultService.addResultLine(query.getId(),
         ResultLine.builder()
@@ -201,7 +204,7 @@ public class QueryHandlerServiceIT {
   @Test
   public void testGetQueryResult_SummaryContainsOnlyTheTotal() {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     var queryId = queryRepository.save(query).getId();
     resultService.addResultLine(query.getId(),
         ResultLine.builder()
@@ -226,7 +229,7 @@ public class QueryHandlerServiceIT {
   @Test
   public void testGetQueryResult_DetailedObfuscatedDoesNotContainTheSiteNames() {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     var queryId = queryRepository.save(query).getId();
     resultService.addResultLine(query.getId(),
         ResultLine.builder()
@@ -256,7 +259,7 @@ public class QueryHandlerServiceIT {
   @Test
   public void testGetQueryResult_DetailedContainsTheSiteNames() {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     var queryId = queryRepository.save(query).getId();
     resultService.addResultLine(query.getId(),
         ResultLine.builder()
@@ -296,7 +299,7 @@ public class QueryHandlerServiceIT {
     var queryContent = new QueryContent(queryContentString);
     queryContent.setHash(queryContentHash);
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     query.setQueryContent(queryContent);
     var queryId = queryRepository.save(query).getId();
 
@@ -314,7 +317,7 @@ public class QueryHandlerServiceIT {
     var queryContent = new QueryContent(queryContentString);
     queryContent.setHash(queryContentHash);
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     query.setQueryContent(queryContent);
     var queryId = queryRepository.save(query).getId();
 
@@ -332,20 +335,41 @@ public class QueryHandlerServiceIT {
   @Test
   public void testGetAmountOfQueriesByUserAndInterval() throws JsonProcessingException {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     queryRepository.save(query).getId();
 
-    var count0 = queryHandlerService.getAmountOfQueriesByUserAndInterval(CREATOR, "PT0M");
-    var count1 = queryHandlerService.getAmountOfQueriesByUserAndInterval(CREATOR, "PT1M");
+    var count0 = queryHandlerService.getAmountOfQueriesByUserAndInterval(creator, "PT0M");
+    var count1 = queryHandlerService.getAmountOfQueriesByUserAndInterval(creator, "PT1M");
 
     assertThat(count0).isEqualTo(0);
     assertThat(count1).isEqualTo(1);
   }
 
+  @Test
+  public void testGetAmountOfQueriesByUserAndInterval_countsQueriesRunAfterFirstAccess() {
+    var countBefore = queryHandlerService.getAmountOfQueriesByUserAndInterval(creator, "PT1M");
+
+    queryHandlerService.runQuery(createValidCcdl(), creator).block();
+    var countAfter = queryHandlerService.getAmountOfQueriesByUserAndInterval(creator, "PT1M");
+
+    assertThat(countBefore).isEqualTo(0);
+    assertThat(countAfter).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getRetryAfterTime() -> return >0 on query run within the interval")
+  public void getRetryAfterTime_nonZeroOnQueryRunWithinInterval() {
+    queryHandlerService.runQuery(createValidCcdl(), creator).block();
+
+    Long retryAfterTime = queryHandlerService.getRetryAfterTime(creator, 0, "PT1M");
+
+    assertThat(retryAfterTime).isGreaterThan(0L).isLessThanOrEqualTo(61L);
+  }
+
   @Test
   @DisplayName("getRetryAfterTime() -> return 0 on empty")
   public void getRetryAfterTime_zeroOnEmpty() {
-    Long retryAfterTime = queryHandlerService.getRetryAfterTime(CREATOR, 0, "PT1000000M");
+    Long retryAfterTime = queryHandlerService.getRetryAfterTime(creator, 0, "PT1000000M");
     assertThat(retryAfterTime).isEqualTo(0L);
   }
 
@@ -353,9 +377,9 @@ public class QueryHandlerServiceIT {
   @DisplayName("getRetryAfterTime() -> return >0 on non empty")
   public void getRetryAfterTime_nonZeroOnNotEmpty() {
     var query = new Query();
-    query.setCreatedBy(CREATOR);
+    query.setCreatedBy(creator);
     queryRepository.save(query);
-    Long retryAfterTime = queryHandlerService.getRetryAfterTime(CREATOR, 0, "PT1000000M");
+    Long retryAfterTime = queryHandlerService.getRetryAfterTime(creator, 0, "PT1000000M");
     assertThat(retryAfterTime).isGreaterThan(0L);
   }
 
@@ -366,7 +390,7 @@ public class QueryHandlerServiceIT {
                                                            @Value("${app.privacy.quota.hard.create.amount}") int hardLimit,
                                                            @Value("${app.privacy.quota.soft.create.amount}") int softLimit) {
     var sentQueryStatistics =
-        assertDoesNotThrow(() -> queryHandlerService.getSentQueryStatistics(CREATOR, softLimit, softInterval, hardLimit, hardInterval));
+        assertDoesNotThrow(() -> queryHandlerService.getSentQueryStatistics(creator, softLimit, softInterval, hardLimit, hardInterval));
 
     assertThat(sentQueryStatistics).isInstanceOf(QueryQuota.class);
     assertThat(sentQueryStatistics.hard().interval()).isEqualTo(hardInterval);
@@ -389,25 +413,25 @@ public class QueryHandlerServiceIT {
 
     // This query is from "right now", so it should count towards both limits
     var currentQuery = new Query();
-    currentQuery.setCreatedBy(CREATOR);
+    currentQuery.setCreatedBy(creator);
     currentQuery.setQueryContent(fakeContent);
     queryRepository.save(currentQuery);
 
     // This query is from another user and should not be included in any of the limits
     var queryFromAnotherUser = new Query();
-    queryFromAnotherUser.setCreatedBy("not-the-original-" + CREATOR);
+    queryFromAnotherUser.setCreatedBy("not-the-original-" + creator);
     queryFromAnotherUser.setQueryContent(fakeContent);
     queryRepository.save(queryFromAnotherUser);
 
     // This query is very old and should not count towards any of the limits
     var veryOldQuery = new Query();
-    veryOldQuery.setCreatedBy(CREATOR);
+    veryOldQuery.setCreatedBy(creator);
     veryOldQuery.setQueryContent(fakeContent);
     var veryOldQueryId = queryRepository.save(veryOldQuery).getId();
 
     // This query is older than the soft limit but younger than the hard limit, so it should only count towards the hard limit
     var queryOnlyCountingToHardLimit = new Query();
-    queryOnlyCountingToHardLimit.setCreatedBy(CREATOR);
+    queryOnlyCountingToHardLimit.setCreatedBy(creator);
     queryOnlyCountingToHardLimit.setQueryContent(fakeContent);
     var inbetweenQueryId = queryRepository.save(queryOnlyCountingToHardLimit).getId();
 
@@ -415,7 +439,7 @@ public class QueryHandlerServiceIT {
     queryRepository.updateCreationDate(inbetweenQueryId, Timestamp.valueOf(LocalDateTime.now().minus(PeriodDuration.parse(softInterval)).minusSeconds(5L)));
 
     var sentQueryStatistics =
-        assertDoesNotThrow(() -> queryHandlerService.getSentQueryStatistics(CREATOR, softLimit, softInterval, hardLimit, hardInterval));
+        assertDoesNotThrow(() -> queryHandlerService.getSentQueryStatistics(creator, softLimit, softInterval, hardLimit, hardInterval));
 
     assertThat(sentQueryStatistics).isInstanceOf(QueryQuota.class);
     assertThat(sentQueryStatistics.hard().interval()).isEqualTo(hardInterval);
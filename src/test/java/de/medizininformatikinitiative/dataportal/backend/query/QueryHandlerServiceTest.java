@@ -8,10 +8,12 @@ import com.networknt.schema.path.NodePath;
 import com.networknt.schema.path.PathType;
 import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
 import de.medizininformatikinitiative.dataportal.backend.query.api.validation.JsonSchemaValidator;
+import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryAuthorCache;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatchException;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatcher;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentRepository;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.QueryQuotaCounter;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultService;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslator;
 import org.junit.jupiter.api.BeforeEach;
@@ -24,7 +26,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.test.StepVerifier;
 
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -32,6 +36,9 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class QueryHandlerServiceTest {
@@ -55,11 +62,18 @@ class QueryHandlerServiceTest {
   @Mock
   private QueryTranslator queryTranslator;
 
+  @Mock
+  private QueryQuotaCounter queryQuotaCounter;
+
+  @Mock
+  private QueryAuthorCache queryAuthorCache;
+
   private QueryHandlerService queryHandlerService;
 
   private QueryHandlerService createQueryHandlerService() {
     return new QueryHandlerService(queryDispatcher, queryRepository, queryContentRepository,
-        resultService, queryTranslator, jsonUtil);
+        resultService, queryTranslator, jsonUtil, queryQuotaCounter,
+        queryAuthorCache);
   }
 
   @BeforeEach
@@ -83,6 +97,52 @@ class QueryHandlerServiceTest {
         .verify();
   }
 
+  @Test
+  public void testRunQueryAsync_recordsQueryInQuotaCounter() throws QueryDispatchException {
+    var testCcdl = Ccdl.builder()
+        .inclusionCriteria(List.of(List.of()))
+        .exclusionCriteria(List.of(List.of()))
+        .build();
+    doReturn(1L).when(queryDispatcher).enqueueNewQuery(testCcdl, "userid");
+
+    queryHandlerService.runQueryAsync(testCcdl, "userid");
+
+    verify(queryQuotaCounter).record("userid", 1L);
+  }
+
+  @Test
+  public void testGetAmountOfQueriesByUserAndInterval_countsInMemoryIfCovered() {
+    doReturn(true).when(queryQuotaCounter).covers(Duration.ofMinutes(1));
+    doReturn(2L).when(queryQuotaCounter).count("userid", Duration.ofMinutes(1));
+
+    var amount = queryHandlerService.getAmountOfQueriesByUserAndInterval("userid", "PT1M");
+
+    assertThat(amount).isEqualTo(2L);
+    verifyNoInteractions(queryRepository);
+  }
+
+  @Test
+  public void testGetAmountOfQueriesByUserAndInterval_countsInDatabaseIfNotCovered() {
+    doReturn(false).when(queryQuotaCounter).covers(Duration.ofDays(1));
+    doReturn(3L).when(queryRepository).countQueriesByAuthorInTheLastNMinutes("userid", 1440);
+
+    var amount = queryHandlerService.getAmountOfQueriesByUserAndInterval("userid", "PT24H");
+
+    assertThat(amount).isEqualTo(3L);
+    verify(queryQuotaCounter, never()).count(any(), any());
+  }
+
+  @Test
+  public void testGetRetryAfterTime_usesAgeOfQueryInMemoryIfCovered() {
+    doReturn(true).when(queryQuotaCounter).covers(Duration.ofMinutes(1));
+    doReturn(Optional.of(Duration.ofSeconds(20))).when(queryQuotaCounter).ageOfNthLatest("userid", 2);
+
+    var retryAfter = queryHandlerService.getRetryAfterTime("userid", 2, "PT1M");
+
+    assertThat(retryAfter).isEqualTo(41L);
+    verifyNoInteractions(queryRepository);
+  }
+
 //  @Test
 //  public void testValidateCcdl_noErrors() throws JsonProcessingException {
 //    JsonNode jsonNode = jsonUtil.readTree("{\"foo\":\"bar\"}");
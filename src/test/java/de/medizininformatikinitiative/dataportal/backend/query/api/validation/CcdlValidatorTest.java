@@ -1,5 +1,6 @@
 package de.medizininformatikinitiative.dataportal.backend.query.api.validation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
@@ -8,6 +9,8 @@ import de.medizininformatikinitiative.dataportal.backend.query.api.Ccdl;
 import de.medizininformatikinitiative.dataportal.backend.query.api.TimeRestriction;
 import de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilter;
 import de.medizininformatikinitiative.dataportal.backend.terminology.TerminologyService;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeAvailabilityCheck;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeableConceptService;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.TerminologyEsService;
 import jakarta.validation.ConstraintValidatorContext;
@@ -22,13 +25,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static de.medizininformatikinitiative.dataportal.backend.common.api.Comparator.GREATER_EQUAL;
+import static de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilterType.CONCEPT;
 import static de.medizininformatikinitiative.dataportal.backend.query.api.ValueFilterType.QUANTITY_COMPARATOR;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -55,27 +66,120 @@ public class CcdlValidatorTest {
   @Mock
   private CodeableConceptService codeableConceptService;
 
+  private final ObjectMapper jsonUtil = new ObjectMapper();
+
   @BeforeEach
   public void setUp() throws IOException {
-    var jsonUtil = new ObjectMapper();
     lenient().when(constraintValidatorContext.buildConstraintViolationWithTemplate(anyString()))
         .thenReturn(violationBuilder);
     lenient().when(violationBuilder.addConstraintViolation())
         .thenReturn(constraintValidatorContext);
-    validator = new CcdlValidator(terminologyService, terminologyEsService, codeableConceptService, jsonUtil);
+    validator = new CcdlValidator(terminologyService, terminologyEsService, codeableConceptService);
   }
 
   @Test
   public void testValidate_validQueryOk() {
     var ccdl = buildValidQuery();
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(anyString(), anyString());
+    stubUiProfilesForAllCriteria();
+    stubAllTermCodesExisting();
+    assertTrue(validator.isValid(ccdl, constraintValidatorContext));
+  }
+
+  @Test
+  public void testValidate_looksUpTermCodesAndUiProfilesOncePerQuery() {
+    var ccdl = buildValidQuery();
+    var criterion = ccdl.inclusionCriteria().get(0).get(0);
+    stubUiProfilesForAllCriteria();
+    stubAllTermCodesExisting();
+
+    assertTrue(validator.isValid(ccdl, constraintValidatorContext));
+
+    verify(terminologyService).findExistingTermCodes(Set.copyOf(criterion.termCodes()));
+    verify(terminologyService).getUiProfiles(Set.of(TerminologyEsService.createContextualizedTermcodeHash(criterion)));
+    verify(terminologyService, never()).isExistingTermCode(anyString(), anyString());
+  }
+
+  @Test
+  public void testValidate_ignoresConsentTermCodesInLookup() {
+    var consentTermCode = TermCode.builder()
+        .code("yes-yes-yes-yes")
+        .system("fdpg.consent.combined")
+        .display("consent")
+        .build();
+    var validQuery = buildValidQuery();
+    var criterion = validQuery.inclusionCriteria().get(0).get(0);
+    var consentCriterion = Criterion.builder()
+        .termCodes(List.of(consentTermCode))
+        .context(criterion.context())
+        .build();
+    var ccdl = Ccdl.builder()
+        .display(validQuery.display())
+        .version(validQuery.version())
+        .inclusionCriteria(List.of(List.of(criterion, consentCriterion)))
+        .build();
+    stubUiProfilesForAllCriteria();
+    stubAllTermCodesExisting();
+
     assertTrue(validator.isValid(ccdl, constraintValidatorContext));
+
+    verify(terminologyService).findExistingTermCodes(Set.copyOf(criterion.termCodes()));
+  }
+
+  @Test
+  public void testValidate_termCodeNotInSystemFails() {
+    var ccdl = buildValidQuery();
+    stubUiProfilesForAllCriteria();
+    doReturn(Set.of()).when(terminologyService).findExistingTermCodes(anyCollection());
+
+    assertFalse(validator.isValid(ccdl, constraintValidatorContext));
+    verify(constraintValidatorContext, times(2))
+        .buildConstraintViolationWithTemplate(contains("VALIDATION-20002"));
+  }
+
+  @Test
+  public void testValidate_missingUiProfileFails() {
+    var ccdl = buildValidQuery();
+    doReturn(Map.of()).when(terminologyService).getUiProfiles(anyCollection());
+    stubAllTermCodesExisting();
+
+    assertFalse(validator.isValid(ccdl, constraintValidatorContext));
+    verify(constraintValidatorContext, times(2))
+        .buildConstraintViolationWithTemplate(contains("VALIDATION-50001"));
+  }
+
+  @Test
+  public void testValidate_checksAllSelectedConceptsWithSingleSearch() {
+    var validQuery = buildValidQuery();
+    var criterion = validQuery.inclusionCriteria().get(0).get(0);
+    var maleOrFemale = conceptCriterion(criterion, "male", "female");
+    var femaleOrOther = conceptCriterion(criterion, "female", "other");
+    var ccdl = Ccdl.builder()
+        .display(validQuery.display())
+        .version(validQuery.version())
+        .inclusionCriteria(List.of(List.of(maleOrFemale), List.of(femaleOrOther)))
+        .build();
+    stubUiProfilesForAllCriteria();
+    stubAllTermCodesExisting();
+    doAnswer(invocation -> invocation.<Collection<CodeAvailabilityCheck>>getArgument(0).stream()
+        .collect(Collectors.toMap(Function.identity(), check -> check.codes().stream()
+            .filter(code -> !code.equals("other"))
+            .toList())))
+        .when(codeableConceptService).availableCodesInValueSets(anyCollection());
+
+    assertFalse(validator.isValid(ccdl, constraintValidatorContext));
+
+    var valueSets = List.of("http://hl7.org/fhir/ValueSet/administrative-gender");
+    verify(codeableConceptService).availableCodesInValueSets(Set.of(
+        new CodeAvailabilityCheck(List.of("male", "female"), valueSets),
+        new CodeAvailabilityCheck(List.of("female", "other"), valueSets)));
+    verify(codeableConceptService, never()).availableCodesInValueSets(anyList(), anyList());
+    verify(constraintValidatorContext)
+        .buildConstraintViolationWithTemplate(contains("VALIDATION-1000001"));
   }
 
   @Test
   public void testValidate_invalidQueriesFail() {
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(anyString());
+    stubUiProfilesForAllCriteria();
 
     var queryWithoutVersion = buildInvalidQueryWithoutVersion();
     assertFalse(validator.isValid(queryWithoutVersion, constraintValidatorContext));
@@ -372,6 +476,10 @@ public class CcdlValidatorTest {
   }
 
   @NotNull
+  private UiProfile createValidUiProfile() throws JsonProcessingException {
+    return jsonUtil.readValue(createValidUiProfileString(), UiProfile.class);
+  }
+
   private String createValidUiProfileString() {
     return """
           {
@@ -407,4 +515,33 @@ public class CcdlValidatorTest {
           """;
   }
 
+  private Criterion conceptCriterion(Criterion criterion, String... selectedCodes) {
+    return Criterion.builder()
+        .termCodes(criterion.termCodes())
+        .context(criterion.context())
+        .valueFilter(ValueFilter.builder()
+            .type(CONCEPT)
+            .selectedConcepts(Stream.of(selectedCodes)
+                .map(code -> TermCode.builder()
+                    .code(code)
+                    .system("http://hl7.org/fhir/administrative-gender")
+                    .display(code)
+                    .build())
+                .toList())
+            .build())
+        .build();
+  }
+
+  private void stubUiProfilesForAllCriteria() {
+    doAnswer(invocation -> {
+      var uiProfile = createValidUiProfile();
+      return invocation.<Collection<String>>getArgument(0).stream()
+          .collect(Collectors.toMap(Function.identity(), hash -> uiProfile));
+    }).when(terminologyService).getUiProfiles(anyCollection());
+  }
+
+  private void stubAllTermCodesExisting() {
+    doAnswer(invocation -> Set.copyOf(invocation.<Collection<TermCode>>getArgument(0)))
+        .when(terminologyService).findExistingTermCodes(anyCollection());
+  }
 }
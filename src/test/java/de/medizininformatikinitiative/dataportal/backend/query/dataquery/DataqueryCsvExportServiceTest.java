@@ -4,8 +4,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.common.api.*;
 import de.medizininformatikinitiative.dataportal.backend.dse.api.LocalizedValue;
-import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfile;
-import de.medizininformatikinitiative.dataportal.backend.dse.persistence.DseProfileRepository;
+import de.medizininformatikinitiative.dataportal.backend.dse.DseService;
+import de.medizininformatikinitiative.dataportal.backend.dse.IndexedDseProfile;
+import de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile;
 import de.medizininformatikinitiative.dataportal.backend.query.api.*;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.CodeableConceptEntry;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.EsSearchResultEntry;
@@ -28,12 +29,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -49,7 +56,7 @@ class DataqueryCsvExportServiceTest {
   private ObjectMapper objectMapper;
 
   @Mock
-  private DseProfileRepository dseProfileRepository;
+  private DseService dseService;
 
   @Mock
   private UiProfileRepository uiProfileRepository;
@@ -117,8 +124,7 @@ class DataqueryCsvExportServiceTest {
     CodeableConceptEntry ccEntry = mock(CodeableConceptEntry.class);
     doReturn(displayEntry).when(ccEntry).display();
     doReturn(ccEntry).when(codeableConceptService).getSearchResultEntryByTermCode(any(TermCode.class));
-    doReturn(Optional.of(createDseProfile())).when(dseProfileRepository).findByUrl(anyString());
-    doReturn(createDseProfileApi()).when(objectMapper).readValue(anyString(), eq(de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile.class));
+    stubDseProfiles();
 
     String csvResult = dataqueryCsvExportService.jsonToCsv(dataExtraction, language);
 
@@ -126,6 +132,40 @@ class DataqueryCsvExportServiceTest {
     assertTrue(csvResult.contains("basic testgroup"));
   }
 
+  @Test
+  void testPrepare_resolvesProfilesOnceForAllLanguages() throws IOException {
+    var dataExtraction = createValidDataExtraction();
+    DisplayEntry displayEntry = createDisplayEntry();
+
+    CodeableConceptEntry ccEntry = mock(CodeableConceptEntry.class);
+    doReturn(displayEntry).when(ccEntry).display();
+    doReturn(ccEntry).when(codeableConceptService).getSearchResultEntryByTermCode(any(TermCode.class));
+    stubDseProfiles();
+
+    var prepared = dataqueryCsvExportService.prepare(dataExtraction);
+    for (DataqueryCsvExportService.SUPPORTED_LANGUAGES language : DataqueryCsvExportService.SUPPORTED_LANGUAGES.values()) {
+      var writer = new StringWriter();
+      dataqueryCsvExportService.writeCsv(prepared, language, writer);
+      assertTrue(writer.toString().contains("basic testgroup"));
+    }
+
+    verify(dseService).getIndexedProfiles(Set.of("https://www.medizininformatik-initiative.de/fhir/core/modul-labor/StructureDefinition/ObservationLab"));
+    verifyNoInteractions(objectMapper);
+  }
+
+  @Test
+  void testPrepare_throwsOnUnknownProfile() {
+    var url = "https://www.medizininformatik-initiative.de/fhir/core/modul-labor/StructureDefinition/ObservationLab";
+    doReturn(Map.of(url, IndexedDseProfile.of(DseProfile.builder()
+        .url(url)
+        .errorCode("TBD-00000")
+        .errorCause("profile not found")
+        .build())))
+        .when(dseService).getIndexedProfiles(anyCollection());
+
+    assertThrows(DataqueryCsvExportException.class, () -> dataqueryCsvExportService.prepare(createValidDataExtraction()));
+  }
+
   @Test
   void testAddFileToZip() throws IOException {
     String fileName = "dataquery.json";
@@ -158,6 +198,42 @@ class DataqueryCsvExportServiceTest {
     }
   }
 
+  @Test
+  void testAddFileToZip_streamsCsvIntoEntry() throws IOException {
+    var dataExtraction = createValidDataExtraction();
+    DisplayEntry displayEntry = createDisplayEntry();
+
+    CodeableConceptEntry ccEntry = mock(CodeableConceptEntry.class);
+    doReturn(displayEntry).when(ccEntry).display();
+    doReturn(ccEntry).when(codeableConceptService).getSearchResultEntryByTermCode(any(TermCode.class));
+    stubDseProfiles();
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+      dataqueryCsvExportService.addFileToZip(zos, "features.csv",
+          writer -> dataqueryCsvExportService.writeCsv(dataqueryCsvExportService.prepare(dataExtraction),
+              DataqueryCsvExportService.SUPPORTED_LANGUAGES.EN, writer));
+      dataqueryCsvExportService.addFileToZip(zos, "second.csv", writer -> writer.write("foo"));
+    }
+
+    try (ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+         ZipInputStream zis = new ZipInputStream(bais)) {
+
+      ZipEntry entry = zis.getNextEntry();
+      assertNotNull(entry, "zipfile is empty");
+      assertEquals("features.csv", entry.getName(), "wrong filename inside zip archive");
+      String extractedContent = new String(zis.readAllBytes(), StandardCharsets.UTF_8);
+      assertEquals(dataqueryCsvExportService.jsonToCsv(dataExtraction, DataqueryCsvExportService.SUPPORTED_LANGUAGES.EN),
+          extractedContent, "zip content does not match");
+
+      entry = zis.getNextEntry();
+      assertNotNull(entry, "second entry is missing");
+      assertEquals("foo", new String(zis.readAllBytes(), StandardCharsets.UTF_8));
+
+      assertNull(zis.getNextEntry(), "too many entries in zipfile");
+    }
+  }
+
   private DataExtraction createValidDataExtraction() {
     return DataExtraction.builder()
         .attributeGroups(createAttributeGroups())
@@ -336,17 +412,6 @@ class DataqueryCsvExportServiceTest {
         .build();
   }
 
-  private DseProfile createDseProfile() throws IOException {
-    var dseProfile = new DseProfile();
-    FileInputStream fis = new FileInputStream("src/test/resources/de/medizininformatikinitiative/dataportal/backend/query/dataquery/dseProfileDiagnose.json");
-    String dseProfileString = IOUtils.toString(fis, StandardCharsets.UTF_8);
-
-    dseProfile.setId(1L);
-    dseProfile.setEntry(dseProfileString);
-    dseProfile.setUrl("https://www.medizininformatik-initiative.de/fhir/core/modul-diagnose/StructureDefinition/Diagnose");
-    return dseProfile;
-  }
-
   private UiProfile createUiProfile() {
     var uiProfile = new UiProfile();
     uiProfile.setId(1L);
@@ -362,9 +427,18 @@ class DataqueryCsvExportServiceTest {
     return uiProfile;
   }
 
-  private de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile createDseProfileApi() throws IOException {
+  private DseProfile createDseProfile() throws IOException {
     ObjectMapper mapper = new ObjectMapper();
-    return mapper.readValue(createDseProfile().getEntry(), de.medizininformatikinitiative.dataportal.backend.dse.api.DseProfile.class);
+    FileInputStream fis = new FileInputStream("src/test/resources/de/medizininformatikinitiative/dataportal/backend/query/dataquery/dseProfileDiagnose.json");
+    return mapper.readValue(IOUtils.toString(fis, StandardCharsets.UTF_8), DseProfile.class);
+  }
+
+  private void stubDseProfiles() throws IOException {
+    var dseProfile = IndexedDseProfile.of(createDseProfile());
+    doAnswer(invocation -> {
+      Collection<String> urls = invocation.getArgument(0);
+      return urls.stream().collect(Collectors.toMap(Function.identity(), url -> dseProfile));
+    }).when(dseService).getIndexedProfiles(anyCollection());
   }
 
   private de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile createUiProfileApi() throws JsonProcessingException {
@@ -14,6 +14,7 @@ import de.medizininformatikinitiative.dataportal.backend.query.broker.BrokerSpri
 import de.medizininformatikinitiative.dataportal.backend.query.collect.QueryCollectSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatchSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.DataqueryRepository;
+import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.QueryQuotaSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultServiceSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslatorSpringConfig;
 import org.junit.jupiter.api.Tag;
@@ -43,6 +44,7 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
     QueryDispatchSpringConfig.class,
     QueryCollectSpringConfig.class,
     QueryHandlerService.class,
+    QueryQuotaSpringConfig.class,
     ResultServiceSpringConfig.class,
     DataquerySpringConfig.class
 })
@@ -30,12 +30,16 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.test.context.support.WithMockUser;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
 import java.io.InputStream;
 import java.net.URI;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
@@ -84,7 +88,8 @@ class DataqueryHandlerTest {
   void setUp() {
     jsonUtil.registerModule(new JavaTimeModule());
     jsonUtil.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-    dataqueryHandler = new DataqueryHandler(csvExportService, jsonUtil, dataqueryRepository, MAX_QUERIES_PER_USER, KEYCLOAK_ADMIN_ROLE);
+    dataqueryHandler = new DataqueryHandler(csvExportService, jsonUtil, dataqueryRepository, MAX_QUERIES_PER_USER,
+        KEYCLOAK_ADMIN_ROLE);
   }
 
   @AfterEach
@@ -436,14 +441,59 @@ class DataqueryHandlerTest {
   @CsvSource({"true,true,true", "true,true,false", "true,false,true", "true,false,false", "false,true,true",
       "false,true,false", "false,false,true", "false,false,false"})
   @DisplayName("createCsvExportZipfile() -> creating a csv export succeeds")
-  void createCsvExportZipfile(String withInclusionCriteria, String withExclusionCriteria, String withDataextraction) {
+  void createCsvExportZipfile(String withInclusionCriteria, String withExclusionCriteria, String withDataextraction) throws IOException {
     var dataquery = createDataquery(Boolean.parseBoolean(withInclusionCriteria),
         Boolean.parseBoolean(withExclusionCriteria),
         Boolean.parseBoolean(withDataextraction));
 
-    var byteArrayOutputStream = assertDoesNotThrow(() -> dataqueryHandler.createCsvExportZipfile(dataquery));
-    assertNotNull(byteArrayOutputStream);
-    assertInstanceOf(ByteArrayOutputStream.class, byteArrayOutputStream);
+    var streamingResponseBody = assertDoesNotThrow(() -> dataqueryHandler.createCsvExportZipfile(dataquery));
+    assertNotNull(streamingResponseBody);
+    streamingResponseBody.writeTo(new ByteArrayOutputStream());
+
+    verify(csvExportService).addFileToZip(any(ZipOutputStream.class), eq("Datendefinition.json"),
+        any(DataqueryCsvExportService.ZipEntryContentWriter.class));
+    verify(csvExportService, times(7)).addFileToZip(any(ZipOutputStream.class), anyString(),
+        any(DataqueryCsvExportService.ZipEntryContentWriter.class));
+  }
+
+  @Test
+  @DisplayName("createCsvExportZipfile() -> nothing is written before the response body is streamed")
+  void createCsvExportZipfile_writesNothingUpFront() throws DataqueryException {
+    dataqueryHandler.createCsvExportZipfile(createDataquery(true, true, true));
+
+    verify(csvExportService).prepare(any(DataExtraction.class));
+    verifyNoMoreInteractions(csvExportService);
+  }
+
+  @Test
+  @DisplayName("createCsvExportZipfile() -> the features of all languages are written from the same prepared data extraction")
+  void createCsvExportZipfile_preparesDataExtractionOnce() throws Exception {
+    var preparedDataExtraction = new DataqueryCsvExportService.PreparedDataExtraction(DataExtraction.builder().build(), Map.of());
+    doReturn(preparedDataExtraction).when(csvExportService).prepare(any(DataExtraction.class));
+    doCallRealMethod().when(csvExportService).addFileToZip(any(ZipOutputStream.class), anyString(),
+        any(DataqueryCsvExportService.ZipEntryContentWriter.class));
+
+    dataqueryHandler.createCsvExportZipfile(createDataquery(true, true, true)).writeTo(new ByteArrayOutputStream());
+
+    verify(csvExportService).prepare(any(DataExtraction.class));
+    for (var lang : DataqueryCsvExportService.SUPPORTED_LANGUAGES.values()) {
+      verify(csvExportService).writeCsv(same(preparedDataExtraction), eq(lang), any(Writer.class));
+    }
+  }
+
+  @Test
+  @DisplayName("createCsvExportZipfile() -> a failing csv file of a language created in the background fails the export")
+  void createCsvExportZipfile_throwsOnFailingBackgroundLanguage() throws Exception {
+    var preparedDataExtraction = new DataqueryCsvExportService.PreparedDataExtraction(DataExtraction.builder().build(), Map.of());
+    doReturn(preparedDataExtraction).when(csvExportService).prepare(any(DataExtraction.class));
+    doCallRealMethod().when(csvExportService).addFileToZip(any(ZipOutputStream.class), anyString(),
+        any(DataqueryCsvExportService.ZipEntryContentWriter.class));
+    doThrow(DataqueryCsvExportException.class).when(csvExportService)
+        .writeCsv(same(preparedDataExtraction), eq(DataqueryCsvExportService.SUPPORTED_LANGUAGES.EN), any(Writer.class));
+
+    var body = dataqueryHandler.createCsvExportZipfile(createDataquery(true, true, true));
+
+    assertThrows(DataqueryCsvExportException.class, () -> body.writeTo(new ByteArrayOutputStream()));
   }
 
   @Test
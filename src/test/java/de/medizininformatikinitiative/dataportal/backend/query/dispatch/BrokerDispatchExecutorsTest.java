@@ -0,0 +1,80 @@
+package de.medizininformatikinitiative.dataportal.backend.query.dispatch;
+
+import de.medizininformatikinitiative.dataportal.backend.query.broker.BrokerClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@Tag("query")
+@Tag("dispatch")
+@ExtendWith(MockitoExtension.class)
+class BrokerDispatchExecutorsTest {
+
+  @Mock
+  private BrokerClient saturatedBrokerClient;
+
+  @Mock
+  private BrokerClient otherBrokerClient;
+
+  private BrokerDispatchExecutors brokerDispatchExecutors;
+  private CountDownLatch release;
+
+  @BeforeEach
+  void setUp() {
+    brokerDispatchExecutors = new BrokerDispatchExecutors(List.of(saturatedBrokerClient, otherBrokerClient), 1, 1);
+    release = new CountDownLatch(1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    brokerDispatchExecutors.close();
+  }
+
+  @Test
+  void saturatedBrokerRejectsFurtherDispatches() {
+    var executor = brokerDispatchExecutors.forBroker(saturatedBrokerClient);
+    executor.execute(this::awaitRelease);
+    executor.execute(this::awaitRelease);
+
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+    }));
+  }
+
+  @Test
+  void saturatedBrokerDoesNotBlockOtherBrokers() throws InterruptedException {
+    var executor = brokerDispatchExecutors.forBroker(saturatedBrokerClient);
+    executor.execute(this::awaitRelease);
+    executor.execute(this::awaitRelease);
+    var otherDispatchDone = new CountDownLatch(1);
+
+    brokerDispatchExecutors.forBroker(otherBrokerClient).execute(otherDispatchDone::countDown);
+
+    assertTrue(otherDispatchDone.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void forBroker_failsForUnknownBroker() {
+    assertThrows(IllegalArgumentException.class, () -> brokerDispatchExecutors.forBroker(mock(BrokerClient.class)));
+  }
+
+  private void awaitRelease() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package de.medizininformatikinitiative.dataportal.backend.query.dispatch;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@Tag("query")
+@Tag("dispatch")
+@ExtendWith(MockitoExtension.class)
+class QueryAuthorCacheTest {
+
+  private static final Long QUERY_ID = 1L;
+  private static final String AUTHOR_ID = "author-id-140213";
+
+  @Mock
+  private QueryRepository queryRepository;
+
+  private SimpleMeterRegistry meterRegistry;
+  private QueryAuthorCache queryAuthorCache;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    queryAuthorCache = new QueryAuthorCache(queryRepository, 1_000, meterRegistry);
+  }
+
+  @Test
+  void getAuthor_ofEnqueuedQueryDoesNotReadDatabase() {
+    queryAuthorCache.put(QUERY_ID, AUTHOR_ID);
+
+    assertThat(queryAuthorCache.getAuthor(QUERY_ID)).contains(AUTHOR_ID);
+    verifyNoInteractions(queryRepository);
+  }
+
+  @Test
+  void getAuthor_readsDatabaseOnlyOnce() {
+    doReturn(Optional.of(AUTHOR_ID)).when(queryRepository).getAuthor(QUERY_ID);
+
+    var first = queryAuthorCache.getAuthor(QUERY_ID);
+    var second = queryAuthorCache.getAuthor(QUERY_ID);
+
+    assertThat(first).contains(AUTHOR_ID);
+    assertThat(second).contains(AUTHOR_ID);
+    verify(queryRepository, times(1)).getAuthor(QUERY_ID);
+  }
+
+  @Test
+  void getAuthor_doesNotCacheUnknownQuery() {
+    doReturn(Optional.empty(), Optional.of(AUTHOR_ID)).when(queryRepository).getAuthor(QUERY_ID);
+
+    var unknown = queryAuthorCache.getAuthor(QUERY_ID);
+    var known = queryAuthorCache.getAuthor(QUERY_ID);
+
+    assertThat(unknown).isEmpty();
+    assertThat(known).contains(AUTHOR_ID);
+  }
+
+  @Test
+  void getAuthor_exposesHitAndMissMetrics() {
+    queryAuthorCache.put(QUERY_ID, AUTHOR_ID);
+
+    queryAuthorCache.getAuthor(QUERY_ID);
+    queryAuthorCache.getAuthor(2L);
+
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "queryAuthor").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "queryAuthor").tag("result", "miss")
+        .functionCounter().count()).isEqualTo(1);
+  }
+}
@@ -20,11 +20,19 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import reactor.test.StepVerifier;
 
 import java.net.URI;
+import java.util.HashSet;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static de.medizininformatikinitiative.dataportal.backend.query.persistence.BrokerClientType.MOCK;
 import static org.junit.jupiter.api.Assertions.*;
@@ -79,6 +87,9 @@ public class QueryDispatcherIT {
   @Autowired
   private List<BrokerClient> queryBrokerClients;
 
+  @Autowired
+  private QueryAuthorCache queryAuthorCache;
+
   @Test
   public void testEnqueueNewQuery_QueryContentGetsCreatedIfNotAlreadyPresent() throws JsonProcessingException {
     var otherQuery = Ccdl.builder()
@@ -133,6 +144,53 @@ public class QueryDispatcherIT {
     assertNotNull(enqueuedQueries.get(0).getCreatedAt());
   }
 
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void testEnqueueNewQuery_ConcurrentIdenticalQueriesShareContent() throws Exception {
+    var testQuery = Ccdl.builder()
+        .display("concurrent-" + UUID.randomUUID())
+        .build();
+    var serializedTestQueryHash = queryHashCalculator.calculateSerializedQueryBodyHash(
+        jsonUtil.writeValueAsString(testQuery));
+    var threads = 16;
+    var executor = Executors.newFixedThreadPool(threads);
+    var start = new CountDownLatch(1);
+
+    try {
+      var enqueues = IntStream.range(0, threads)
+          .mapToObj(i -> executor.submit(() -> {
+            start.await();
+            return queryDispatcher.enqueueNewQuery(testQuery, "test-" + i);
+          }))
+          .toList();
+      start.countDown();
+
+      var queryIds = new HashSet<Long>();
+      for (var enqueue : enqueues) {
+        queryIds.add(enqueue.get(30, TimeUnit.SECONDS));
+      }
+
+      var queryContent = queryContentRepository.findByHash(serializedTestQueryHash);
+      assertTrue(queryContent.isPresent());
+      assertEquals(threads, queryIds.size());
+      for (var queryId : queryIds) {
+        assertEquals(queryContent.get().getId(), queryContentRepository.findByQueryId(queryId).orElseThrow().getId());
+      }
+    } finally {
+      executor.shutdownNow();
+      // removes the enqueued queries as well, since they reference the content
+      queryContentRepository.findByHash(serializedTestQueryHash).ifPresent(queryContentRepository::delete);
+    }
+  }
+
+  @Test
+  public void testEnqueueNewQuery_AuthorIsCached() {
+    var queryId = assertDoesNotThrow(() -> queryDispatcher.enqueueNewQuery(Ccdl.builder().build(), "test"));
+    queryRepository.deleteAll();
+
+    assertEquals("test", queryAuthorCache.getAuthor(queryId).orElseThrow());
+  }
+
   @Test
   public void testDispatchEnqueuedQuery_UnknownQueryIdDoesNotLeadToPersistedDispatchEntry() {
     var unknownQueryId = 9999999L;
@@ -10,6 +10,8 @@ import de.medizininformatikinitiative.dataportal.backend.query.broker.QueryNotFo
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.*;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationComponent;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -22,10 +24,19 @@ import reactor.test.StepVerifier;
 
 import java.io.IOException;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.BrokerClientType.AKTIN;
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.BrokerClientType.DIRECT;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @Tag("query")
@@ -45,22 +56,50 @@ public class QueryDispatcherTest {
   @Mock
   private QueryRepository queryRepository;
 
-  @Mock
-  private QueryContentRepository queryContentRepository;
-
   @Mock
   private QueryDispatchRepository queryDispatchRepository;
 
+  private BrokerDispatchExecutors brokerDispatchExecutors;
+
+  private SimpleMeterRegistry meterRegistry;
+
   private QueryDispatcher createQueryDispatcher(List<BrokerClient> brokerClients) {
+    return createQueryDispatcher(brokerClients, Duration.ofSeconds(10));
+  }
+
+  private QueryDispatcher createQueryDispatcher(List<BrokerClient> brokerClients, Duration brokerDispatchTimeout) {
+    return createQueryDispatcher(brokerClients, brokerDispatchTimeout, 4, 10);
+  }
+
+  private QueryDispatcher createQueryDispatcher(List<BrokerClient> brokerClients, Duration brokerDispatchTimeout,
+                                                int threadsPerBroker, int queueCapacity) {
+    brokerDispatchExecutors = new BrokerDispatchExecutors(brokerClients, threadsPerBroker, queueCapacity);
     return new QueryDispatcher(brokerClients, queryTranslationComponent, queryHashCalculator,
-        jsonUtil, queryRepository, queryContentRepository, queryDispatchRepository);
+        jsonUtil, queryRepository, queryDispatchRepository, brokerDispatchExecutors,
+        brokerDispatchTimeout, meterRegistry, new QueryAuthorCache(queryRepository, 1_000, meterRegistry));
   }
 
 
   @BeforeEach
   public void resetMocks() {
-    Mockito.reset(queryTranslationComponent, queryHashCalculator, jsonUtil, queryRepository, queryContentRepository,
+    Mockito.reset(queryTranslationComponent, queryHashCalculator, jsonUtil, queryRepository,
         queryDispatchRepository);
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  public void shutdownExecutors() {
+    if (brokerDispatchExecutors != null) {
+      brokerDispatchExecutors.close();
+    }
+  }
+
+  private Query createEnqueuedTestQuery(long queryId) throws JsonProcessingException {
+    var testQuery = new Query();
+    testQuery.setId(queryId);
+    testQuery.setQueryContent(new QueryContent(jsonUtil.writeValueAsString(Ccdl.builder().build())));
+    doReturn(Optional.of(testQuery)).when(queryRepository).findById(queryId);
+    return testQuery;
   }
 
   @Test
@@ -192,6 +231,25 @@ public class QueryDispatcherTest {
     verify(succeedingBrokerClient, times(1)).publishQuery("1");
   }
 
+  @Test
+  public void testDispatchEnqueuedQuery_DoesNotFailOnBrokerMissingQueryDefinition()
+      throws IOException, QueryNotFoundException, QueryDefinitionNotFoundException {
+    var brokerClientMissingDefinition = mock(BrokerClient.class);
+    var succeedingBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(brokerClientMissingDefinition, succeedingBrokerClient));
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn("1").when(brokerClientMissingDefinition).createQuery(testQueryId);
+    doReturn("2").when(succeedingBrokerClient).createQuery(testQueryId);
+    doThrow(QueryDefinitionNotFoundException.class).when(brokerClientMissingDefinition).publishQuery("1");
+
+    StepVerifier.create(queryDispatcher.dispatchEnqueuedQuery(testQueryId))
+        .expectComplete()
+        .verify();
+    verify(succeedingBrokerClient).publishQuery("2");
+  }
+
   @Test
   public void testDispatchEnqueuedQuery_BrokerAfterFirstSuccessfulOneAreCalled()
       throws IOException,
@@ -245,4 +303,256 @@ public class QueryDispatcherTest {
     verify(failingBrokerClient, times(1)).publishQuery("1");
     verify(anotherFailingBrokerClient, times(1)).publishQuery("1");
   }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_SlowBrokerDoesNotDelayDispatch() throws Exception {
+    var slowBrokerClient = mock(BrokerClient.class);
+    var fastBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(slowBrokerClient, fastBrokerClient));
+    var slowBrokerRelease = new CountDownLatch(1);
+    var slowBrokerPublished = new CountDownLatch(1);
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(slowBrokerClient).getBrokerType();
+    doReturn(DIRECT).when(fastBrokerClient).getBrokerType();
+    doAnswer(invocation -> {
+      slowBrokerRelease.await();
+      return "1";
+    }).when(slowBrokerClient).createQuery(testQueryId);
+    doAnswer(invocation -> {
+      slowBrokerPublished.countDown();
+      return null;
+    }).when(slowBrokerClient).publishQuery("1");
+    doReturn("2").when(fastBrokerClient).createQuery(testQueryId);
+
+    try {
+      assertTimeoutPreemptively(Duration.ofSeconds(5), () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+      verify(fastBrokerClient).publishQuery("2");
+      verify(slowBrokerClient, never()).publishQuery(anyString());
+    } finally {
+      slowBrokerRelease.countDown();
+    }
+
+    // the slow broker still finishes in the background
+    assertTrue(slowBrokerPublished.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_DoesFailIfAllBrokersTimeOut() throws Exception {
+    var hangingBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(hangingBrokerClient), Duration.ofMillis(100));
+    var release = new CountDownLatch(1);
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(hangingBrokerClient).getBrokerType();
+    doAnswer(invocation -> {
+      release.await();
+      return "1";
+    }).when(hangingBrokerClient).createQuery(testQueryId);
+
+    try {
+      assertThrows(QueryDispatchException.class, () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+    } finally {
+      release.countDown();
+    }
+
+    var timer = meterRegistry.find(QueryDispatcher.DISPATCH_TIMER_NAME)
+        .tags("broker", "AKTIN", "outcome", "timeout")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_DoesFailIfAllBrokersFail() throws Exception {
+    var failingBrokerClient = mock(BrokerClient.class);
+    var anotherFailingBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(failingBrokerClient, anotherFailingBrokerClient));
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(failingBrokerClient).getBrokerType();
+    doReturn(DIRECT).when(anotherFailingBrokerClient).getBrokerType();
+    doReturn("1").when(failingBrokerClient).createQuery(testQueryId);
+    doReturn("1").when(anotherFailingBrokerClient).createQuery(testQueryId);
+    doThrow(IOException.class).when(failingBrokerClient).publishQuery(anyString());
+    doThrow(IOException.class).when(anotherFailingBrokerClient).publishQuery(anyString());
+
+    assertThrows(QueryDispatchException.class, () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+    verify(failingBrokerClient).publishQuery("1");
+    verify(anotherFailingBrokerClient).publishQuery("1");
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_RecordsOutcomeAndLatencyPerBroker() throws Exception {
+    var failingBrokerClient = mock(BrokerClient.class);
+    var succeedingBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(failingBrokerClient, succeedingBrokerClient));
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(failingBrokerClient).getBrokerType();
+    doReturn(DIRECT).when(succeedingBrokerClient).getBrokerType();
+    doThrow(IOException.class).when(failingBrokerClient).createQuery(testQueryId);
+    doReturn("1").when(succeedingBrokerClient).createQuery(testQueryId);
+
+    queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+      var successTimer = meterRegistry.find(QueryDispatcher.DISPATCH_TIMER_NAME)
+          .tags("broker", "DIRECT", "outcome", "success")
+          .timer();
+      var failureTimer = meterRegistry.find(QueryDispatcher.DISPATCH_TIMER_NAME)
+          .tags("broker", "AKTIN", "outcome", "failure")
+          .timer();
+      assertNotNull(successTimer);
+      assertNotNull(failureTimer);
+      assertEquals(1, successTimer.count());
+      assertEquals(1, failureTimer.count());
+    });
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_TimedOutDispatchIsInterruptedAndNotPersisted() throws Exception {
+    var hangingBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(hangingBrokerClient), Duration.ofMillis(100));
+    var interrupted = new CountDownLatch(1);
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(hangingBrokerClient).getBrokerType();
+    doAnswer(invocation -> {
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+        throw new IOException("interrupted", e);
+      }
+      return "1";
+    }).when(hangingBrokerClient).createQuery(testQueryId);
+
+    assertThrows(QueryDispatchException.class, () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    brokerDispatchExecutors.close();
+    assertTrue(brokerDispatchExecutors.forBroker(hangingBrokerClient).awaitTermination(5, TimeUnit.SECONDS));
+    verify(queryDispatchRepository, never()).save(any());
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_DispatchFinishedAfterTimeoutIsPersisted() throws Exception {
+    var slowBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(slowBrokerClient), Duration.ofMillis(100));
+    var release = new CountDownLatch(1);
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(slowBrokerClient).getBrokerType();
+    doReturn("1").when(slowBrokerClient).createQuery(testQueryId);
+    // ignores the interruption by the timeout and publishes the query anyway
+    doAnswer(invocation -> {
+      awaitUninterruptibly(release);
+      return null;
+    }).when(slowBrokerClient).publishQuery("1");
+
+    try {
+      assertThrows(QueryDispatchException.class, () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+    } finally {
+      release.countDown();
+    }
+
+    verify(queryDispatchRepository, timeout(5000)).save(argThat(dispatch ->
+        dispatch.getId().getExternalId().equals("1") && dispatch.getId().getBrokerType() == AKTIN));
+    assertNull(meterRegistry.find(QueryDispatcher.DISPATCH_TIMER_NAME)
+        .tags("broker", "AKTIN", "outcome", "success")
+        .timer());
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_TimeoutStartsOnceDispatchRuns() throws Exception {
+    var brokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(brokerClient), Duration.ofMillis(500), 1, 10);
+    var firstDispatchStarted = new CountDownLatch(1);
+
+    createEnqueuedTestQuery(1L);
+    createEnqueuedTestQuery(2L);
+    doReturn(AKTIN).when(brokerClient).getBrokerType();
+    doAnswer(invocation -> {
+      firstDispatchStarted.countDown();
+      Thread.sleep(400);
+      return "1";
+    }).when(brokerClient).createQuery(1L);
+    doAnswer(invocation -> {
+      Thread.sleep(200);
+      return "2";
+    }).when(brokerClient).createQuery(2L);
+
+    var firstDispatch = CompletableFuture.runAsync(() -> {
+      try {
+        queryDispatcher.dispatchEnqueuedQueryAsync(1L);
+      } catch (QueryDispatchException e) {
+        throw new CompletionException(e);
+      }
+    });
+    assertTrue(firstDispatchStarted.await(5, TimeUnit.SECONDS));
+
+    // waits for the first dispatch for 400 ms before it takes 200 ms on its own, exceeding the timeout in total
+    assertDoesNotThrow(() -> queryDispatcher.dispatchEnqueuedQueryAsync(2L));
+    assertDoesNotThrow(() -> firstDispatch.get(5, TimeUnit.SECONDS));
+    verify(brokerClient).publishQuery("1");
+    verify(brokerClient).publishQuery("2");
+  }
+
+  @Test
+  public void testDispatchEnqueuedQueryAsync_DispatchToSaturatedBrokerIsRejected() throws Exception {
+    var saturatedBrokerClient = mock(BrokerClient.class);
+    var queryDispatcher = createQueryDispatcher(List.of(saturatedBrokerClient), Duration.ofSeconds(10), 1, 1);
+    var release = new CountDownLatch(1);
+
+    var testQueryId = 99999L;
+    createEnqueuedTestQuery(testQueryId);
+    doReturn(AKTIN).when(saturatedBrokerClient).getBrokerType();
+
+    try {
+      // occupies the only thread and the only queue slot of the broker
+      var executor = brokerDispatchExecutors.forBroker(saturatedBrokerClient);
+      executor.execute(() -> awaitQuietly(release));
+      executor.execute(() -> awaitQuietly(release));
+
+      assertThrows(QueryDispatchException.class, () -> queryDispatcher.dispatchEnqueuedQueryAsync(testQueryId));
+    } finally {
+      release.countDown();
+    }
+
+    var timer = meterRegistry.find(QueryDispatcher.DISPATCH_TIMER_NAME)
+        .tags("broker", "AKTIN", "outcome", "rejected")
+        .timer();
+    assertNotNull(timer);
+    assertEquals(1, timer.count());
+    verify(saturatedBrokerClient, never()).createQuery(anyLong());
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    var interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
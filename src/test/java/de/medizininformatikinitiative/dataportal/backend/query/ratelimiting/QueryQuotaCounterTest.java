@@ -0,0 +1,159 @@
+package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryCreation;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Tag("query")
+@Tag("ratelimiting")
+@ExtendWith(MockitoExtension.class)
+class QueryQuotaCounterTest {
+
+  private static final String USER_ID = "user-id-105814";
+  private static final Duration HORIZON = Duration.ofMinutes(10);
+
+  @Mock
+  private QueryRepository queryRepository;
+
+  private SimpleMeterRegistry meterRegistry;
+  private QueryQuotaCounter queryQuotaCounter;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    queryQuotaCounter = new QueryQuotaCounter(queryRepository, HORIZON, 1_000, Duration.ofHours(1), meterRegistry);
+  }
+
+  @Test
+  void covers() {
+    assertThat(queryQuotaCounter.covers(Duration.ofMinutes(1))).isTrue();
+    assertThat(queryQuotaCounter.covers(HORIZON)).isTrue();
+    assertThat(queryQuotaCounter.covers(HORIZON.plusMinutes(1))).isFalse();
+  }
+
+  @Test
+  void disabled_coversNoIntervalAndDoesNotReadDatabase() {
+    var disabledCounter = QueryQuotaCounter.disabled(queryRepository, meterRegistry);
+
+    disabledCounter.record(USER_ID, 1L);
+
+    assertThat(disabledCounter.covers(Duration.ofMinutes(1))).isFalse();
+    verifyNoInteractions(queryRepository);
+  }
+
+  @Test
+  void count_loadsWindowOnFirstAccessOnly() {
+    when(queryRepository.findCreationsByAuthorSince(eq(USER_ID), any())).thenReturn(List.of(
+        creation(1L, Duration.ofSeconds(30)),
+        creation(2L, Duration.ofMinutes(5))));
+
+    var softCount = queryQuotaCounter.count(USER_ID, Duration.ofMinutes(1));
+    var hardCount = queryQuotaCounter.count(USER_ID, HORIZON);
+
+    assertThat(softCount).isEqualTo(1);
+    assertThat(hardCount).isEqualTo(2);
+    verify(queryRepository, times(1)).findCreationsByAuthorSince(eq(USER_ID), any());
+  }
+
+  @Test
+  void count_loadsWindowOfTheHorizon() {
+    var before = Instant.now();
+
+    queryQuotaCounter.count(USER_ID, Duration.ofMinutes(1));
+
+    verify(queryRepository).findCreationsByAuthorSince(eq(USER_ID), argThat(since ->
+        !since.toInstant().isBefore(before.minus(HORIZON)) && !since.toInstant().isAfter(Instant.now().minus(HORIZON))));
+  }
+
+  @Test
+  void count_includesRecordedQueries() {
+    queryQuotaCounter.count(USER_ID, Duration.ofMinutes(1));
+
+    queryQuotaCounter.record(USER_ID, 1L);
+    queryQuotaCounter.record(USER_ID, 2L);
+
+    assertThat(queryQuotaCounter.count(USER_ID, Duration.ofMinutes(1))).isEqualTo(2);
+    verify(queryRepository, times(1)).findCreationsByAuthorSince(eq(USER_ID), any());
+  }
+
+  @Test
+  void record_doesNotCountQueryAlreadyLoadedTwice() {
+    when(queryRepository.findCreationsByAuthorSince(eq(USER_ID), any()))
+        .thenReturn(List.of(creation(1L, Duration.ZERO)));
+
+    queryQuotaCounter.record(USER_ID, 1L);
+
+    assertThat(queryQuotaCounter.count(USER_ID, Duration.ofMinutes(1))).isEqualTo(1);
+  }
+
+  @Test
+  void count_keepsUsersApart() {
+    queryQuotaCounter.record(USER_ID, 1L);
+
+    assertThat(queryQuotaCounter.count("other-" + USER_ID, HORIZON)).isZero();
+  }
+
+  @Test
+  void ageOfNthLatest() {
+    when(queryRepository.findCreationsByAuthorSince(eq(USER_ID), any())).thenReturn(List.of(
+        creation(1L, Duration.ofMinutes(5)),
+        creation(2L, Duration.ofMinutes(1)),
+        creation(3L, Duration.ofMinutes(3))));
+
+    var latest = queryQuotaCounter.ageOfNthLatest(USER_ID, 0);
+    var secondLatest = queryQuotaCounter.ageOfNthLatest(USER_ID, 1);
+    var oldest = queryQuotaCounter.ageOfNthLatest(USER_ID, 2);
+
+    assertThat(latest).hasValueSatisfying(age -> assertThat(age).isBetween(Duration.ofMinutes(1),
+        Duration.ofMinutes(2)));
+    assertThat(secondLatest).hasValueSatisfying(age -> assertThat(age).isBetween(Duration.ofMinutes(3),
+        Duration.ofMinutes(4)));
+    assertThat(oldest).hasValueSatisfying(age -> assertThat(age).isBetween(Duration.ofMinutes(5),
+        Duration.ofMinutes(6)));
+  }
+
+  @Test
+  void ageOfNthLatest_emptyIfUserCreatedFewerQueries() {
+    queryQuotaCounter.record(USER_ID, 1L);
+
+    assertThat(queryQuotaCounter.ageOfNthLatest(USER_ID, 1)).isEmpty();
+  }
+
+  @Test
+  void count_exposesWindowCountMetric() {
+    queryQuotaCounter.count(USER_ID, HORIZON);
+    queryQuotaCounter.count("other-" + USER_ID, HORIZON);
+
+    assertThat(meterRegistry.get("cache.size").tag("cache", "queryQuota").gauge().value()).isEqualTo(2);
+  }
+
+  private static QueryCreation creation(Long id, Duration age) {
+    return new QueryCreation() {
+      @Override
+      public Long getId() {
+        return id;
+      }
+
+      @Override
+      public Timestamp getCreatedAt() {
+        return Timestamp.from(Instant.now().minus(age));
+      }
+    };
+  }
+}
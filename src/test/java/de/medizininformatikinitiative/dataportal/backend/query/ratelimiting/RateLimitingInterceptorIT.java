@@ -27,6 +27,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import reactor.core.publisher.Flux;
 
 import java.net.URI;
 import java.util.List;
@@ -333,4 +334,53 @@ public class RateLimitingInterceptorIT {
         .andExpect(status().isOk());
   }
 
+  @Test
+  public void testStreamSummaryResult_FailsOnImmediateSecondStream() throws Exception {
+    var authorName = UUID.randomUUID().toString();
+    var requestUri = PATH_API + PATH_QUERY + PATH_FEASIBILITY + "/1" + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM;
+
+    doReturn(false).when(authenticationHelper)
+        .hasAuthority(any(Authentication.class), eq("ROLE_DATAPORTAL_TEST_ADMIN"));
+    doReturn(authorName).when(queryHandlerService).getAuthorId(any(Long.class));
+    doReturn(Flux.empty()).when(queryHandlerService).streamQueryResult(any(Long.class), eq(ResultDetail.SUMMARY));
+
+    mockMvc
+        .perform(
+            get(requestUri).with(csrf())
+                .with(user(authorName).password("pass").roles("DATAPORTAL_TEST_USER"))
+        )
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(
+            get(requestUri).with(csrf())
+                .with(user(authorName).password("pass").roles("DATAPORTAL_TEST_USER"))
+        )
+        .andExpect(status().isTooManyRequests());
+  }
+
+  @Test
+  public void testGetSummaryResult_FailsImmediatelyAfterOpeningStream() throws Exception {
+    var authorName = UUID.randomUUID().toString();
+    var requestUri = PATH_API + PATH_QUERY + PATH_FEASIBILITY + "/1";
+
+    doReturn(false).when(authenticationHelper)
+        .hasAuthority(any(Authentication.class), eq("ROLE_DATAPORTAL_TEST_ADMIN"));
+    doReturn(authorName).when(queryHandlerService).getAuthorId(any(Long.class));
+    doReturn(Flux.empty()).when(queryHandlerService).streamQueryResult(any(Long.class), eq(ResultDetail.SUMMARY));
+
+    mockMvc
+        .perform(
+            get(requestUri + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM).with(csrf())
+                .with(user(authorName).password("pass").roles("DATAPORTAL_TEST_USER"))
+        )
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(
+            get(requestUri + WebSecurityConfig.PATH_SUMMARY_RESULT).with(csrf())
+                .with(user(authorName).password("pass").roles("DATAPORTAL_TEST_USER"))
+        )
+        .andExpect(status().isTooManyRequests());
+  }
 }
@@ -1,6 +1,7 @@
 package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
 
 import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -11,6 +12,7 @@ import org.threeten.extra.PeriodDuration;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 
 @Tag("query")
@@ -23,12 +25,16 @@ public class RateLimitingServiceTest {
   private final int amountDetailedObfuscated = 2;
   private final PeriodDuration intervalDetailedObfuscated = PeriodDuration.of(Duration.ofSeconds(2));
 
+  private final long maxUsers = 1_000;
+
+  private SimpleMeterRegistry meterRegistry;
   private RateLimitingService rateLimitingService;
 
   @BeforeEach
   void setUp() {
+    this.meterRegistry = new SimpleMeterRegistry();
     this.rateLimitingService = new RateLimitingService(intervalPollingSummary, intervalPollingDetailed, amountDetailedObfuscated,
-        intervalDetailedObfuscated);
+        intervalDetailedObfuscated, maxUsers, meterRegistry);
   }
 
   @Test
@@ -48,6 +54,11 @@ public class RateLimitingServiceTest {
     assertEquals(detailedBucketSomeone, rateLimitingService.resolveSummaryResultBucket("someone"));
   }
 
+  @Test
+  void testGetBucketExpiry_isLongestRefillTime() {
+    assertEquals(Duration.ofSeconds(4), rateLimitingService.getBucketExpiry());
+  }
+
   @Test
   void testResolveBucketRefill() throws InterruptedException {
     Bucket bucketSomeoneSummary = rateLimitingService.resolveSummaryResultBucket("someone");
@@ -62,4 +73,59 @@ public class RateLimitingServiceTest {
     Thread.sleep(TimeUnit.MILLISECONDS.convert(intervalPollingSummary.getDuration()));
     assertTrue(bucketSomeoneDetailed.tryConsume(1));
   }
+
+  @Test
+  void testBucketCountMetrics() {
+    rateLimitingService.resolveSummaryResultBucket("someone");
+    rateLimitingService.resolveSummaryResultBucket("someone-else");
+    rateLimitingService.resolveSummaryResultBucket("someone");
+    rateLimitingService.resolveDetailedObfuscatedResultBucket("someone");
+    rateLimitingService.addTokensToDetailedObfuscatedResultBucket("someone", 1);
+
+    assertEquals(2, bucketCount("rateLimiting.summaryResult"));
+    assertEquals(1, bucketCount("rateLimiting.detailedObfuscatedResult"));
+    assertEquals(1, bucketCount("rateLimiting.viewDetailedObfuscatedResult"));
+  }
+
+  @Test
+  void testResolveBucket_boundsNumberOfPollingBucketsWithManyDistinctUsers() {
+    for (int i = 0; i < 100_000; i++) {
+      var userId = "user-" + i;
+      assertTrue(rateLimitingService.resolveSummaryResultBucket(userId).tryConsume(1));
+      assertTrue(rateLimitingService.resolveDetailedObfuscatedResultBucket(userId).tryConsume(1));
+    }
+
+    await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+      assertTrue(bucketCount("rateLimiting.summaryResult") <= maxUsers);
+      assertTrue(bucketCount("rateLimiting.detailedObfuscatedResult") <= maxUsers);
+    });
+  }
+
+  @Test
+  void testResolveBucket_keepsDetailedObfuscatedQuotaWithManyDistinctUsers() {
+    assertTrue(rateLimitingService.resolveViewDetailedObfuscatedBucket("someone").tryConsume(amountDetailedObfuscated));
+
+    for (int i = 0; i < 10 * maxUsers; i++) {
+      assertTrue(rateLimitingService.resolveViewDetailedObfuscatedBucket("user-" + i).tryConsume(1));
+    }
+
+    assertFalse(rateLimitingService.resolveViewDetailedObfuscatedBucket("someone").tryConsume(1));
+  }
+
+  @Test
+  void testResolveBucket_keepsBucketUntilItIsRefilledCompletely() throws InterruptedException {
+    Bucket bucket = rateLimitingService.resolveViewDetailedObfuscatedBucket("someone");
+    assertTrue(bucket.tryConsume(amountDetailedObfuscated));
+
+    Thread.sleep(TimeUnit.MILLISECONDS.convert(intervalDetailedObfuscated.getDuration()));
+
+    var resolvedBucket = rateLimitingService.resolveViewDetailedObfuscatedBucket("someone");
+    assertSame(bucket, resolvedBucket);
+    assertTrue(resolvedBucket.tryConsume(1));
+    assertFalse(resolvedBucket.tryConsume(1));
+  }
+
+  private double bucketCount(String cacheName) {
+    return meterRegistry.get("cache.size").tag("cache", cacheName).gauge().value();
+  }
 }
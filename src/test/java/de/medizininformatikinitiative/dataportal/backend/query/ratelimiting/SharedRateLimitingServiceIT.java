@@ -0,0 +1,113 @@
+package de.medizininformatikinitiative.dataportal.backend.query.ratelimiting;
+
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.threeten.extra.PeriodDuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("query")
+@Tag("ratelimiting")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers
+class SharedRateLimitingServiceIT {
+
+  private static final int AMOUNT_DETAILED_OBFUSCATED = 2;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private RateLimitingService replicaA;
+  private RateLimitingService replicaB;
+
+  private String userId;
+
+  @BeforeEach
+  void setUp() {
+    userId = "user-" + System.nanoTime();
+    var sharedBuckets = new RateLimitingServiceSpringConfig().createSharedRateLimitBuckets(dataSource);
+    replicaA = createReplica(sharedBuckets);
+    replicaB = createReplica(sharedBuckets);
+  }
+
+  private RateLimitingService createReplica(ProxyManager<String> sharedBuckets) {
+    return new RateLimitingService(PeriodDuration.of(Duration.ofMinutes(1)), PeriodDuration.of(Duration.ofMinutes(1)),
+        AMOUNT_DETAILED_OBFUSCATED, PeriodDuration.of(Duration.ofHours(1)), 1_000, new SimpleMeterRegistry(),
+        sharedBuckets, Duration.ofSeconds(1));
+  }
+
+  @Test
+  void pollingRateLimitsAreSharedBetweenReplicas() {
+    assertTrue(replicaA.resolveSummaryResultBucket(userId).tryConsume(1));
+    assertTrue(replicaA.resolveDetailedObfuscatedResultBucket(userId).tryConsume(1));
+
+    assertFalse(replicaB.resolveSummaryResultBucket(userId).tryConsume(1));
+    assertFalse(replicaB.resolveDetailedObfuscatedResultBucket(userId).tryConsume(1));
+  }
+
+  @Test
+  void detailedObfuscatedResultQuotaIsSharedBetweenReplicas() {
+    assertTrue(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(AMOUNT_DETAILED_OBFUSCATED));
+
+    assertFalse(replicaB.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+  }
+
+  @Test
+  void returnedTokensAreVisibleToOtherReplicas() {
+    assertTrue(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(AMOUNT_DETAILED_OBFUSCATED));
+
+    replicaA.addTokensToDetailedObfuscatedResultBucket(userId, 1);
+
+    assertTrue(replicaB.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+    assertFalse(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+  }
+
+  @Test
+  void quotasOfDifferentUsersAreIndependent() {
+    assertTrue(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(AMOUNT_DETAILED_OBFUSCATED));
+
+    assertTrue(replicaB.resolveViewDetailedObfuscatedBucket(userId + "-other").tryConsume(1));
+  }
+
+  @Test
+  void purgeDeletesBucketsNotWrittenWithinExpiry() {
+    assertTrue(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+
+    new PostgresRateLimitBucketPurger(dataSource, Duration.ZERO, Duration.ofMinutes(1)).purgeExpiredBuckets();
+
+    assertEquals(0, countBuckets());
+  }
+
+  @Test
+  void purgeKeepsBucketsWrittenWithinExpiry() {
+    assertTrue(replicaA.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+
+    new PostgresRateLimitBucketPurger(dataSource, Duration.ofHours(1), Duration.ofMinutes(1)).purgeExpiredBuckets();
+
+    assertEquals(1, countBuckets());
+    assertTrue(replicaB.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+    assertFalse(replicaB.resolveViewDetailedObfuscatedBucket(userId).tryConsume(1));
+  }
+
+  private long countBuckets() {
+    return new JdbcTemplate(dataSource).queryForObject("SELECT count(*) FROM rate_limit_bucket WHERE id LIKE ?",
+        Long.class, "%:" + userId);
+  }
+}
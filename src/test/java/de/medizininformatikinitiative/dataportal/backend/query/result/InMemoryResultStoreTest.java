@@ -0,0 +1,65 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.ERROR;
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.SUCCESS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Tag("query")
+@Tag("result")
+@ExtendWith(MockitoExtension.class)
+class InMemoryResultStoreTest {
+
+  private static final String SITE_NAME = "site-name-101512";
+  private static final long QUERY_ID = 1L;
+  private static final Duration RESULT_EXPIRY = Duration.ofSeconds(1);
+
+  @Mock
+  private ResultStore.Listener listener;
+
+  private InMemoryResultStore resultStore;
+
+  @BeforeEach
+  void setUp() {
+    resultStore = new InMemoryResultStore(RESULT_EXPIRY);
+    resultStore.setListener(listener);
+  }
+
+  @Test
+  void addResultLine_keepsFirstResultPerSiteAndInformsListenerAboutItOnly() {
+    var resultLine = ResultLine.builder().siteName(SITE_NAME).type(SUCCESS).result(10L).build();
+
+    resultStore.addResultLine(QUERY_ID, resultLine);
+    resultStore.addResultLine(QUERY_ID, ResultLine.builder().siteName(SITE_NAME).type(ERROR).result(0L).build());
+
+    assertThat(resultStore.findByQuery(QUERY_ID)).singleElement().isEqualTo(resultLine);
+    verify(listener, times(1)).onResultsChanged(QUERY_ID, resultLine);
+    verify(listener, times(1)).onResultsChanged(anyLong(), any());
+  }
+
+  @Test
+  void findByQuery_unknownQueryIsEmpty() {
+    assertThat(resultStore.findByQuery(QUERY_ID)).isEmpty();
+  }
+
+  @Test
+  void expiredResultsAreRemovedAndListenerIsInformed() {
+    resultStore.addResultLine(QUERY_ID, ResultLine.builder().siteName(SITE_NAME).type(SUCCESS).result(10L).build());
+
+    verify(listener, timeout(RESULT_EXPIRY.multipliedBy(5).toMillis())).onResultsRemoved(QUERY_ID, true);
+    assertThat(resultStore.findByQuery(QUERY_ID)).isEmpty();
+  }
+}
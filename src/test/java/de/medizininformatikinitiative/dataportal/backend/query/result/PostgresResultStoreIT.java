@@ -0,0 +1,138 @@
+package de.medizininformatikinitiative.dataportal.backend.query.result;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.ERROR;
+import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.SUCCESS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@Tag("query")
+@Tag("result")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers
+class PostgresResultStoreIT {
+
+  private static final String SITE_NAME_1 = "site-name-112233";
+  private static final String SITE_NAME_2 = "site-name-112240";
+  private static final Duration RESULT_EXPIRY = Duration.ofSeconds(2);
+  private static final Duration PURGE_INTERVAL = Duration.ofMillis(500);
+  private static final long NOTIFICATION_TIMEOUT_MILLIS = 5000;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private DataSourceProperties dataSourceProperties;
+
+  private PostgresResultStore replicaA;
+  private PostgresResultStore replicaB;
+
+  private ResultStore.Listener listenerA;
+  private ResultStore.Listener listenerB;
+
+  private long queryId;
+
+  @BeforeEach
+  void setUp() {
+    queryId = System.nanoTime();
+    listenerA = mock(ResultStore.Listener.class);
+    listenerB = mock(ResultStore.Listener.class);
+    var listenerDataSource = dataSourceProperties.initializeDataSourceBuilder()
+        .type(SimpleDriverDataSource.class)
+        .build();
+    replicaA = new PostgresResultStore(dataSource, listenerDataSource, RESULT_EXPIRY, PURGE_INTERVAL);
+    replicaB = new PostgresResultStore(dataSource, listenerDataSource, RESULT_EXPIRY, PURGE_INTERVAL);
+    replicaA.setListener(listenerA);
+    replicaB.setListener(listenerB);
+    replicaA.start();
+    replicaB.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    replicaA.close();
+    replicaB.close();
+  }
+
+  @Test
+  void resultsAreVisibleOnAllReplicas() {
+    var resultLine = ResultLine.builder().siteName(SITE_NAME_1).type(SUCCESS).result(10L).build();
+
+    replicaA.addResultLine(queryId, resultLine);
+
+    assertThat(replicaB.findByQuery(queryId)).singleElement().isEqualTo(resultLine);
+    verify(listenerA, timeout(NOTIFICATION_TIMEOUT_MILLIS)).onResultsChanged(queryId, resultLine);
+    verify(listenerB, timeout(NOTIFICATION_TIMEOUT_MILLIS)).onResultsChanged(queryId, resultLine);
+  }
+
+  @Test
+  void notificationsCarrySiteNamesContainingColons() {
+    var resultLine = ResultLine.builder().siteName("site:name:112233").type(ERROR).result(0L).build();
+
+    replicaA.addResultLine(queryId, resultLine);
+
+    verify(listenerB, timeout(NOTIFICATION_TIMEOUT_MILLIS)).onResultsChanged(queryId, resultLine);
+  }
+
+  @Test
+  void discardedResultsAreNotAnnounced() throws InterruptedException {
+    var resultLine = ResultLine.builder().siteName(SITE_NAME_1).type(SUCCESS).result(10L).build();
+
+    replicaA.addResultLine(queryId, resultLine);
+    replicaB.addResultLine(queryId, ResultLine.builder().siteName(SITE_NAME_1).type(ERROR).result(0L).build());
+
+    verify(listenerA, timeout(NOTIFICATION_TIMEOUT_MILLIS)).onResultsChanged(queryId, resultLine);
+    Thread.sleep(500);
+    verify(listenerA, times(1)).onResultsChanged(eq(queryId), any());
+  }
+
+  @Test
+  void writtenAtIsStoredWithTimeZone() {
+    var dataType = new JdbcTemplate(dataSource).queryForObject("""
+        SELECT data_type FROM information_schema.columns
+        WHERE table_name = 'query_result_line' AND column_name = 'written_at'""", String.class);
+
+    assertThat(dataType).isEqualTo("timestamp with time zone");
+  }
+
+  @Test
+  void keepsFirstResultPerSite() {
+    var resultLine = ResultLine.builder().siteName(SITE_NAME_1).type(SUCCESS).result(10L).build();
+    var otherResultLine = ResultLine.builder().siteName(SITE_NAME_2).type(ERROR).result(0L).build();
+
+    replicaA.addResultLine(queryId, resultLine);
+    replicaB.addResultLine(queryId, ResultLine.builder().siteName(SITE_NAME_1).type(ERROR).result(0L).build());
+    replicaB.addResultLine(queryId, otherResultLine);
+
+    assertThat(replicaA.findByQuery(queryId)).containsExactlyInAnyOrder(resultLine, otherResultLine);
+  }
+
+  @Test
+  void expiredResultsArePurgedAndAllReplicasAreInformed() {
+    replicaA.addResultLine(queryId, ResultLine.builder().siteName(SITE_NAME_1).type(SUCCESS).result(10L).build());
+
+    var expiryTimeout = RESULT_EXPIRY.plus(PURGE_INTERVAL).toMillis() + NOTIFICATION_TIMEOUT_MILLIS;
+    verify(listenerA, timeout(expiryTimeout).atLeastOnce()).onResultsRemoved(eq(queryId), anyBoolean());
+    verify(listenerB, timeout(expiryTimeout).atLeastOnce()).onResultsRemoved(eq(queryId), anyBoolean());
+    assertThat(replicaA.findByQuery(queryId)).isEmpty();
+    assertThat(replicaB.findByQuery(queryId)).isEmpty();
+  }
+}
@@ -6,16 +6,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.threeten.extra.PeriodDuration;
+import reactor.test.StepVerifier;
 
 import java.net.URI;
 import java.time.Duration;
+import java.util.List;
 
 import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.ERROR;
 import static de.medizininformatikinitiative.dataportal.backend.query.persistence.ResultType.SUCCESS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
 
 @Tag("query")
 @Tag("result")
@@ -145,4 +150,155 @@ class ResultServiceTest {
     assertThat(resultLines1).singleElement().isEqualTo(resultLine);
     assertThat(resultLines2).singleElement().isEqualTo(resultLine);
   }
+
+  @Test
+  void findAggregateByQuery_sumsSuccessfulResultsOnly() {
+    ResultLine resultLine1 = ResultLine.builder()
+        .siteName(SITE_NAME_1)
+        .type(SUCCESS)
+        .result(10L)
+        .build();
+    ResultLine resultLine2 = ResultLine.builder()
+        .siteName(SITE_NAME_2)
+        .type(SUCCESS)
+        .result(20L)
+        .build();
+    resultService.addResultLine(QUERY_ID, resultLine1);
+    resultService.addResultLine(QUERY_ID, resultLine2);
+    resultService.addResultLine(QUERY_ID, ResultLine.builder()
+        .siteName(SITE_NAME)
+        .type(ERROR)
+        .result(0L)
+        .build());
+
+    var resultAggregate = resultService.findAggregateByQuery(QUERY_ID);
+
+    assertThat(resultAggregate.totalNumberOfPatients()).isEqualTo(30L);
+    assertThat(resultAggregate.successfulResults()).containsExactlyInAnyOrder(resultLine1, resultLine2);
+  }
+
+  @Test
+  void findAggregateByQuery_returnsSameSnapshotUntilNextResult() {
+    resultService.addResultLine(QUERY_ID, ResultLine.builder()
+        .siteName(SITE_NAME_1)
+        .type(SUCCESS)
+        .result(10L)
+        .build());
+
+    var resultAggregate = resultService.findAggregateByQuery(QUERY_ID);
+
+    assertThat(resultService.findAggregateByQuery(QUERY_ID)).isSameAs(resultAggregate);
+    resultService.addResultLine(QUERY_ID, ResultLine.builder()
+        .siteName(SITE_NAME_2)
+        .type(SUCCESS)
+        .result(20L)
+        .build());
+    assertThat(resultService.findAggregateByQuery(QUERY_ID).totalNumberOfPatients()).isEqualTo(30L);
+  }
+
+  @Test
+  void findAggregateByQuery_unknownQueryIsEmpty() {
+    assertThat(resultService.findAggregateByQuery(QUERY_ID)).isEqualTo(ResultAggregate.EMPTY);
+  }
+
+  @Test
+  void findAggregateByQuery_readsStoreOnceAndIsExtendedByNewResults() {
+    var resultStore = mock(ResultStore.class);
+    var listener = ArgumentCaptor.forClass(ResultStore.Listener.class);
+    var resultService = new ResultService(resultStore, expiryTime, null, queryDispatchRepository);
+    verify(resultStore).setListener(listener.capture());
+    var resultLine1 = ResultLine.builder().siteName(SITE_NAME_1).type(SUCCESS).result(10L).build();
+    var resultLine2 = ResultLine.builder().siteName(SITE_NAME_2).type(SUCCESS).result(20L).build();
+    doReturn(List.of(resultLine1)).when(resultStore).findByQuery(QUERY_ID);
+
+    resultService.findAggregateByQuery(QUERY_ID);
+    listener.getValue().onResultsChanged(QUERY_ID, resultLine1);
+    listener.getValue().onResultsChanged(QUERY_ID, resultLine2);
+
+    var resultAggregate = resultService.findAggregateByQuery(QUERY_ID);
+    assertThat(resultAggregate.successfulResults()).containsExactly(resultLine1, resultLine2);
+    assertThat(resultAggregate.totalNumberOfPatients()).isEqualTo(30L);
+    verify(resultStore, times(1)).findByQuery(QUERY_ID);
+  }
+
+  @Test
+  void newResultsOfQueriesNotAskedForAreNotReadFromStore() {
+    var resultStore = mock(ResultStore.class);
+    var listener = ArgumentCaptor.forClass(ResultStore.Listener.class);
+    new ResultService(resultStore, expiryTime, null, queryDispatchRepository);
+    verify(resultStore).setListener(listener.capture());
+
+    listener.getValue().onResultsChanged(QUERY_ID,
+        ResultLine.builder().siteName(SITE_NAME).type(SUCCESS).result(10L).build());
+
+    verify(resultStore, never()).findByQuery(anyLong());
+  }
+
+  @Test
+  void streamSuccessfulByQuery_emitsCurrentResultsAndUpdates() {
+    ResultLine resultLine1 = ResultLine.builder()
+        .siteName(SITE_NAME_1)
+        .type(SUCCESS)
+        .result(10L)
+        .build();
+    ResultLine resultLine2 = ResultLine.builder()
+        .siteName(SITE_NAME_2)
+        .type(SUCCESS)
+        .result(20L)
+        .build();
+    resultService.addResultLine(QUERY_ID, resultLine1);
+
+    StepVerifier.create(resultService.streamSuccessfulByQuery(QUERY_ID))
+        .expectNext(List.of(resultLine1))
+        .then(() -> resultService.addResultLine(QUERY_ID, resultLine2))
+        .assertNext(resultLines -> assertThat(resultLines).containsExactlyInAnyOrder(resultLine1, resultLine2))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  void streamSuccessfulByQuery_ignoresErrorResultLinesAndOtherQueries() {
+    ResultLine resultLine = ResultLine.builder()
+        .siteName(SITE_NAME_1)
+        .type(SUCCESS)
+        .result(10L)
+        .build();
+
+    StepVerifier.create(resultService.streamSuccessfulByQuery(QUERY_ID))
+        .expectNext(List.of())
+        .then(() -> resultService.addResultLine(QUERY_ID, ResultLine.builder()
+            .siteName(SITE_NAME)
+            .type(ERROR)
+            .result(0L)
+            .build()))
+        .then(() -> resultService.addResultLine(QUERY_ID_1, resultLine))
+        .then(() -> resultService.addResultLine(QUERY_ID, resultLine))
+        .expectNext(List.of(resultLine))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  void streamSuccessfulByQuery_completesOnResultExpiry() {
+    resultService.addResultLine(QUERY_ID,
+        ResultLine.builder()
+            .siteName(SITE_NAME)
+            .type(SUCCESS)
+            .result(0L)
+            .build()
+    );
+
+    StepVerifier.create(resultService.streamSuccessfulByQuery(QUERY_ID))
+        .expectNextCount(1)
+        .expectComplete()
+        .verify(expiryTime.getDuration().multipliedBy(5));
+  }
+
+  @Test
+  void streamSuccessfulByQuery_completesWithoutAnyResult() {
+    StepVerifier.create(resultService.streamSuccessfulByQuery(QUERY_ID))
+        .expectNext(List.of())
+        .expectComplete()
+        .verify(expiryTime.getDuration().multipliedBy(5));
+  }
 }
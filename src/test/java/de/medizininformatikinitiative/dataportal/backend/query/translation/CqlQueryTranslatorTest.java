@@ -1,6 +1,8 @@
 package de.medizininformatikinitiative.dataportal.backend.query.translation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
@@ -16,10 +18,12 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -37,27 +41,58 @@ public class CqlQueryTranslatorTest {
   private CqlQueryTranslator cqlQueryTranslator;
 
   @Test
-  public void testTranslate_ModelConversionFailsDuringEncoding() throws JsonProcessingException {
+  public void testTranslate_ModelConversionFailsDuringEncoding() throws IOException {
     var testQuery = Ccdl.builder().build();
-    doThrow(JsonProcessingException.class).when(jsonUtil).writeValueAsString(testQuery);
+    doThrow(JsonMappingException.class).when(jsonUtil).writeValue(any(JsonGenerator.class), eq(testQuery));
 
     assertThrows(QueryTranslationException.class, () -> cqlQueryTranslator.translate(testQuery));
-    verify(jsonUtil, never()).readValue(anyString(), eq(de.numcodex.sq2cql.model.structured_query.StructuredQuery.class));
+    verify(jsonUtil, never()).readValue(any(JsonParser.class),
+        eq(de.numcodex.sq2cql.model.structured_query.StructuredQuery.class));
     verifyNoInteractions(translator);
   }
 
   @Test
-  public void testTranslate_ModelConversionFailsDuringDecoding() throws JsonProcessingException {
+  public void testTranslate_ModelConversionFailsDuringDecoding() throws IOException {
     var testQuery = Ccdl.builder().build();
-    doReturn("foo").when(jsonUtil).writeValueAsString(testQuery);
-    doThrow(JsonProcessingException.class).when(jsonUtil).readValue("foo",
-        de.numcodex.sq2cql.model.structured_query.StructuredQuery.class);
+    doThrow(JsonMappingException.class).when(jsonUtil).readValue(any(JsonParser.class),
+        eq(de.numcodex.sq2cql.model.structured_query.StructuredQuery.class));
 
     assertThrows(QueryTranslationException.class, () -> cqlQueryTranslator.translate(testQuery));
-    verify(jsonUtil).readValue("foo", de.numcodex.sq2cql.model.structured_query.StructuredQuery.class);
+    verify(jsonUtil).readValue(any(JsonParser.class),
+        eq(de.numcodex.sq2cql.model.structured_query.StructuredQuery.class));
     verifyNoInteractions(translator);
   }
 
+  @Test
+  public void testToStructuredQuery_DoesNotRenderIntermediateJsonString() throws Exception {
+    var termCode = TermCode.builder()
+        .code("424144002")
+        .system("http://snomed.info/sct")
+        .display("Gegenwärtiges chronologisches Alter")
+        .build();
+    var context = TermCode.builder()
+        .code("Patient")
+        .system("fdpg.mii.cds")
+        .version("1.0.0")
+        .display("Patient")
+        .build();
+    var criterion = Criterion.builder()
+        .termCodes(List.of(termCode))
+        .context(context)
+        .build();
+    var testQuery = Ccdl.builder()
+        .version(URI.create("http://to_be_decided.com/draft-2/schema#"))
+        .inclusionCriteria(List.of(List.of(criterion)))
+        .build();
+
+    var structuredQuery = CqlQueryTranslator.toStructuredQuery(jsonUtil, testQuery);
+
+    assertNotNull(structuredQuery);
+    verify(jsonUtil, never()).writeValueAsString(any());
+    verify(jsonUtil, never()).readValue(anyString(),
+        eq(de.numcodex.sq2cql.model.structured_query.StructuredQuery.class));
+  }
+
   @Disabled("Needs to be enabled if the new version of sq2cl is available and compatible with structured query v2.")
   @Test
   public void testTranslate_TranslationFails() {
@@ -0,0 +1,85 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Map;
+import java.util.Set;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.CQL;
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.STRUCTURED_QUERY;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("query")
+@Tag("translation")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers
+class QueryTranslationCacheIT {
+
+  private static final String MAPPING_VERSION = "mapping-version-151502";
+  private static final String QUERY_CONTENT_HASH = "query-content-hash-151502";
+
+  @Autowired
+  private QueryContentTranslationRepository translationRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @AfterEach
+  void cleanup() {
+    translationRepository.deleteAll();
+  }
+
+  private QueryTranslationCache createInstance(String mappingVersion) {
+    return new QueryTranslationCache(mappingVersion, Set.of(CQL, STRUCTURED_QUERY), 10, translationRepository);
+  }
+
+  @Test
+  void put_translationsPersistedByAnotherInstanceDoNotFailSurroundingTransaction() {
+    var translationCache = createInstance(MAPPING_VERSION);
+    createInstance(MAPPING_VERSION).put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"));
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"));
+
+      assertFalse(status.isRollbackOnly());
+    });
+    assertEquals(2, translationRepository.count());
+  }
+
+  @Test
+  void put_persistsIndependentlyOfSurroundingTransaction() {
+    var translationCache = createInstance(MAPPING_VERSION);
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"));
+      status.setRollbackOnly();
+    });
+
+    assertEquals(Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"),
+        createInstance(MAPPING_VERSION).find(QUERY_CONTENT_HASH).orElseThrow());
+  }
+
+  @Test
+  void put_replacesTranslationsOfOtherMappingVersions() {
+    createInstance("other-" + MAPPING_VERSION).put(QUERY_CONTENT_HASH,
+        Map.of(CQL, "library Outdated", STRUCTURED_QUERY, "{}"));
+
+    createInstance(MAPPING_VERSION).put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"));
+
+    assertEquals(2, translationRepository.count());
+    assertTrue(createInstance("other-" + MAPPING_VERSION).find(QUERY_CONTENT_HASH).isEmpty());
+  }
+}
@@ -0,0 +1,122 @@
+package de.medizininformatikinitiative.dataportal.backend.query.translation;
+
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslation;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslation.QueryContentTranslationId;
+import de.medizininformatikinitiative.dataportal.backend.query.persistence.QueryContentTranslationRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.CQL;
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.FHIR;
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.STRUCTURED_QUERY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@Tag("query")
+@Tag("translation")
+@ExtendWith(MockitoExtension.class)
+class QueryTranslationCacheTest {
+
+  private static final String MAPPING_VERSION = "mapping-version";
+  private static final String QUERY_CONTENT_HASH = "query-content-hash";
+
+  @Mock
+  private QueryContentTranslationRepository translationRepository;
+
+  private static QueryContentTranslation persistedTranslation(String mediaType, String translation) {
+    return new QueryContentTranslation(
+        new QueryContentTranslationId(QUERY_CONTENT_HASH, MAPPING_VERSION, mediaType), translation);
+  }
+
+  @Test
+  void testFind_UnknownQueryContentIsNotFound() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, null);
+
+    assertTrue(translationCache.find(QUERY_CONTENT_HASH).isEmpty());
+  }
+
+  @Test
+  void testFind_PutTranslationsAreFound() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, null);
+
+    translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve"));
+
+    assertEquals(Map.of(CQL, "library Retrieve"), translationCache.find(QUERY_CONTENT_HASH).orElseThrow());
+  }
+
+  @Test
+  void testPut_TranslationsIntoFormatsNotCachedAreDropped() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, null);
+
+    translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve", FHIR, "Patient?gender=female"));
+
+    assertEquals(Map.of(CQL, "library Retrieve"), translationCache.find(QUERY_CONTENT_HASH).orElseThrow());
+  }
+
+  @Test
+  void testFind_TranslationsOfOtherMappingVersionAreNotFound() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, translationRepository);
+    var otherTranslationCache = new QueryTranslationCache("other-mapping-version", Set.of(CQL), 10, null);
+    otherTranslationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve"));
+
+    assertTrue(translationCache.find(QUERY_CONTENT_HASH).isEmpty());
+    verify(translationRepository).findByQueryContentHashAndMappingVersion(QUERY_CONTENT_HASH, MAPPING_VERSION);
+  }
+
+  @Test
+  void testFind_PersistedTranslationsAreFoundAndKeptInMemory() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL, STRUCTURED_QUERY), 10,
+        translationRepository);
+    doReturn(List.of(persistedTranslation(CQL.getRepresentation(), "library Retrieve"),
+        persistedTranslation(STRUCTURED_QUERY.getRepresentation(), "{}")))
+        .when(translationRepository).findByQueryContentHashAndMappingVersion(QUERY_CONTENT_HASH, MAPPING_VERSION);
+
+    var firstLookup = translationCache.find(QUERY_CONTENT_HASH);
+    var secondLookup = translationCache.find(QUERY_CONTENT_HASH);
+
+    assertEquals(Map.of(CQL, "library Retrieve", STRUCTURED_QUERY, "{}"), firstLookup.orElseThrow());
+    assertEquals(firstLookup, secondLookup);
+    verify(translationRepository, times(1))
+        .findByQueryContentHashAndMappingVersion(QUERY_CONTENT_HASH, MAPPING_VERSION);
+  }
+
+  @Test
+  void testFind_IncompletePersistedTranslationsAreNotFound() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL, STRUCTURED_QUERY), 10,
+        translationRepository);
+    doReturn(List.of(persistedTranslation(CQL.getRepresentation(), "library Retrieve")))
+        .when(translationRepository).findByQueryContentHashAndMappingVersion(QUERY_CONTENT_HASH, MAPPING_VERSION);
+
+    assertTrue(translationCache.find(QUERY_CONTENT_HASH).isEmpty());
+  }
+
+  @Test
+  void testPut_TranslationsArePersistedReplacingOtherMappingVersions() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, translationRepository);
+
+    translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve"));
+
+    verify(translationRepository).deleteOtherMappingVersions(QUERY_CONTENT_HASH, MAPPING_VERSION);
+    verify(translationRepository).insertIfAbsent(QUERY_CONTENT_HASH, MAPPING_VERSION, CQL.getRepresentation(),
+        "library Retrieve");
+  }
+
+  @Test
+  void testPut_FailingPersistenceStillKeepsTranslationsInMemory() {
+    var translationCache = new QueryTranslationCache(MAPPING_VERSION, Set.of(CQL), 10, translationRepository);
+    doThrow(DataAccessResourceFailureException.class).when(translationRepository)
+        .insertIfAbsent(anyString(), anyString(), anyString(), anyString());
+
+    assertDoesNotThrow(() -> translationCache.put(QUERY_CONTENT_HASH, Map.of(CQL, "library Retrieve")));
+    assertEquals(Map.of(CQL, "library Retrieve"), translationCache.find(QUERY_CONTENT_HASH).orElseThrow());
+  }
+}
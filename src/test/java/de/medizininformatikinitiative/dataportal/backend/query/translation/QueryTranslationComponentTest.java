@@ -10,10 +10,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.CQL;
+import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.FHIR;
 import static de.medizininformatikinitiative.dataportal.backend.query.QueryMediaType.STRUCTURED_QUERY;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -28,6 +37,10 @@ public class QueryTranslationComponentTest {
   private QueryTranslator firstQueryTranslator;
   @Mock
   private QueryTranslator secondQueryTranslator;
+  @Mock
+  private QueryTranslator thirdQueryTranslator;
+
+  private final ExecutorService translationExecutor = Executors.newCachedThreadPool();
 
   @BeforeAll
   public static void setUp() {
@@ -36,7 +49,16 @@ public class QueryTranslationComponentTest {
 
   @AfterEach
   public void resetMocks() {
-    clearInvocations(firstQueryTranslator, secondQueryTranslator);
+    clearInvocations(firstQueryTranslator, secondQueryTranslator, thirdQueryTranslator);
+    translationExecutor.shutdownNow();
+  }
+
+  private QueryTranslationComponent setUpComponentWithOptionalFormats(Duration translationTimeout) {
+    return new QueryTranslationComponent(Map.of(
+        STRUCTURED_QUERY, firstQueryTranslator,
+        CQL, secondQueryTranslator,
+        FHIR, thirdQueryTranslator
+    ), Set.of(CQL, FHIR), translationExecutor, translationTimeout, null);
   }
 
   private QueryTranslationComponent setUpComponent(Map<QueryMediaType, QueryTranslator> translators) {
@@ -82,4 +104,178 @@ public class QueryTranslationComponentTest {
     assertTrue(translationsResults.containsKey(CQL));
     assertEquals("bar", translationsResults.get(CQL));
   }
+
+  @Test
+  public void testTranslate_KnownQueryContentIsOnlyTranslatedOnce() throws QueryTranslationException {
+    var translationCache = new QueryTranslationCache("mapping-version", Set.of(CQL), 10, null);
+    var queryTranslationComponent = new QueryTranslationComponent(Map.of(CQL, firstQueryTranslator),
+        translationCache);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+
+    var firstTranslations = queryTranslationComponent.translate("hash", testQuery);
+    var secondTranslations = queryTranslationComponent.translate("hash", testQuery);
+
+    verify(firstQueryTranslator, times(1)).translate(testQuery);
+    assertEquals(Map.of(CQL, "foo"), firstTranslations);
+    assertEquals(firstTranslations, secondTranslations);
+  }
+
+  @Test
+  public void testTranslate_FailedTranslationIsNotCached() throws QueryTranslationException {
+    var translationCache = new QueryTranslationCache("mapping-version", Set.of(CQL), 10, null);
+    var queryTranslationComponent = new QueryTranslationComponent(Map.of(CQL, firstQueryTranslator),
+        translationCache);
+    doThrow(QueryTranslationException.class).when(firstQueryTranslator).translate(testQuery);
+
+    assertThrows(QueryTranslationException.class, () -> queryTranslationComponent.translate("hash", testQuery));
+    assertTrue(translationCache.find("hash").isEmpty());
+  }
+
+  @Test
+  public void testTranslate_FailingOptionalFormatIsLeftOut() throws QueryTranslationException {
+    var queryTranslationComponent = setUpComponentWithOptionalFormats(Duration.ofSeconds(5));
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+    doThrow(QueryTranslationException.class).when(secondQueryTranslator).translate(testQuery);
+    doReturn("baz").when(thirdQueryTranslator).translate(testQuery);
+
+    var translationResults = assertDoesNotThrow(() -> queryTranslationComponent.translate(testQuery));
+
+    assertEquals(Map.of(STRUCTURED_QUERY, "foo", FHIR, "baz"), translationResults);
+  }
+
+  @Test
+  public void testTranslate_TimedOutOptionalFormatIsLeftOut() throws QueryTranslationException {
+    var queryTranslationComponent = setUpComponentWithOptionalFormats(Duration.ofMillis(100));
+    var release = new CountDownLatch(1);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+    doReturn("bar").when(secondQueryTranslator).translate(testQuery);
+    doAnswer(invocation -> {
+      release.await();
+      return "baz";
+    }).when(thirdQueryTranslator).translate(testQuery);
+
+    try {
+      var translationResults = assertDoesNotThrow(() -> queryTranslationComponent.translate(testQuery));
+      assertEquals(Map.of(STRUCTURED_QUERY, "foo", CQL, "bar"), translationResults);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testTranslate_TimedOutOptionalTranslationIsInterrupted() throws Exception {
+    var queryTranslationComponent = setUpComponentWithOptionalFormats(Duration.ofMillis(100));
+    var interrupted = new CountDownLatch(1);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+    doReturn("bar").when(secondQueryTranslator).translate(testQuery);
+    doAnswer(invocation -> {
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return "baz";
+    }).when(thirdQueryTranslator).translate(testQuery);
+
+    queryTranslationComponent.translate(testQuery);
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTranslate_RejectedOptionalFormatIsLeftOut() throws QueryTranslationException {
+    var saturatedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+    var queryTranslationComponent = new QueryTranslationComponent(Map.of(
+        STRUCTURED_QUERY, firstQueryTranslator,
+        FHIR, thirdQueryTranslator
+    ), Set.of(FHIR), saturatedExecutor, Duration.ofSeconds(5), null);
+    var release = new CountDownLatch(1);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+
+    try {
+      // occupies the only thread and the only queue slot of the executor
+      saturatedExecutor.execute(() -> awaitQuietly(release));
+      saturatedExecutor.execute(() -> awaitQuietly(release));
+
+      var translationResults = assertDoesNotThrow(() -> queryTranslationComponent.translate(testQuery));
+
+      assertEquals(Map.of(STRUCTURED_QUERY, "foo"), translationResults);
+      verify(thirdQueryTranslator, never()).translate(any());
+    } finally {
+      release.countDown();
+      saturatedExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTranslate_FailingRequiredFormatFailsTranslation() throws QueryTranslationException {
+    var queryTranslationComponent = setUpComponentWithOptionalFormats(Duration.ofSeconds(5));
+    doThrow(QueryTranslationException.class).when(firstQueryTranslator).translate(testQuery);
+    lenient().doReturn("bar").when(secondQueryTranslator).translate(testQuery);
+    lenient().doReturn("baz").when(thirdQueryTranslator).translate(testQuery);
+
+    assertThrows(QueryTranslationException.class, () -> queryTranslationComponent.translate(testQuery));
+  }
+
+  @Test
+  public void testTranslate_OptionalFormatsAreTranslatedConcurrently() throws QueryTranslationException {
+    var queryTranslationComponent = setUpComponentWithOptionalFormats(Duration.ofSeconds(5));
+    var optionalTranslationsStarted = new CountDownLatch(2);
+    doAnswer(invocation -> {
+      optionalTranslationsStarted.countDown();
+      return optionalTranslationsStarted.await(5, TimeUnit.SECONDS) ? "bar" : "sequential";
+    }).when(secondQueryTranslator).translate(testQuery);
+    doAnswer(invocation -> {
+      optionalTranslationsStarted.countDown();
+      return optionalTranslationsStarted.await(5, TimeUnit.SECONDS) ? "baz" : "sequential";
+    }).when(thirdQueryTranslator).translate(testQuery);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+
+    var translationResults = assertDoesNotThrow(() -> queryTranslationComponent.translate(testQuery));
+
+    assertEquals(Map.of(STRUCTURED_QUERY, "foo", CQL, "bar", FHIR, "baz"), translationResults);
+  }
+
+  @Test
+  public void testTranslate_TranslationMissingOptionalFormatIsNotCached() throws QueryTranslationException {
+    var translationCache = new QueryTranslationCache("mapping-version", Set.of(STRUCTURED_QUERY, CQL), 10, null);
+    var queryTranslationComponent = new QueryTranslationComponent(Map.of(
+        STRUCTURED_QUERY, firstQueryTranslator,
+        CQL, secondQueryTranslator
+    ), Set.of(CQL), translationExecutor, Duration.ofSeconds(5), translationCache);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+    doThrow(QueryTranslationException.class).when(secondQueryTranslator).translate(testQuery);
+
+    var translationResults = queryTranslationComponent.translate("hash", testQuery);
+
+    assertEquals(Map.of(STRUCTURED_QUERY, "foo"), translationResults);
+    assertTrue(translationCache.find("hash").isEmpty());
+  }
+
+  @Test
+  public void testTranslate_FormatNotCachedIsTranslatedAnew() throws QueryTranslationException {
+    var translationCache = new QueryTranslationCache("mapping-version", Set.of(CQL), 10, null);
+    var queryTranslationComponent = new QueryTranslationComponent(Map.of(
+        CQL, firstQueryTranslator,
+        FHIR, secondQueryTranslator
+    ), Set.of(FHIR), translationExecutor, Duration.ofSeconds(5), translationCache);
+    doReturn("foo").when(firstQueryTranslator).translate(testQuery);
+    doReturn("bar", "baz").when(secondQueryTranslator).translate(testQuery);
+
+    var firstTranslations = queryTranslationComponent.translate("hash", testQuery);
+    var secondTranslations = queryTranslationComponent.translate("hash", testQuery);
+
+    verify(firstQueryTranslator, times(1)).translate(testQuery);
+    verify(secondQueryTranslator, times(2)).translate(testQuery);
+    assertEquals(Map.of(CQL, "foo", FHIR, "bar"), firstTranslations);
+    assertEquals(Map.of(CQL, "foo", FHIR, "baz"), secondTranslations);
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
@@ -20,7 +20,6 @@ import de.medizininformatikinitiative.dataportal.backend.query.dataquery.Dataque
 import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.AuthenticationHelper;
 import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.RateLimitingServiceSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.validation.ValidationService;
-import org.hamcrest.Matchers;
 import org.hl7.fhir.utilities.tests.TestConfig;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Tag;
@@ -37,6 +36,7 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -209,15 +209,19 @@ public class DataqueryHandlerRestControllerIT {
     long dataqueryId = 1L;
 
     doReturn(createValidApiDataqueryToGet(dataqueryId)).when(dataqueryHandler).getDataqueryById(any(Long.class), any(Authentication.class));
-    doReturn(createValidByteArrayOutputStream()).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
+    doReturn(createValidZipfile()).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
 
-    mockMvc.perform(get(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/" + dataqueryId + "/crtdl"))
+    var mvcResult = mockMvc.perform(get(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/" + dataqueryId + "/crtdl"))
             .header(HttpHeaders.ACCEPT, "application/zip")
             .with(csrf()))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(mvcResult))
         .andExpect(status().isOk())
         .andExpect(content().contentType("application/zip"))
         .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/zip"))
-        .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, Matchers.not("0")));
+        .andExpect(content().bytes(createValidZipfileContent()));
   }
 
   @Test
@@ -236,30 +240,22 @@ public class DataqueryHandlerRestControllerIT {
 
   @Test
   @WithMockUser(roles = "DATAPORTAL_TEST_USER")
-  public void testGetDataqueryCrtdlCsv_failsOnJsonError() throws Exception {
+  public void testGetDataqueryCrtdlCsv_failsOnCsvExportErrorBeforeAnythingIsWritten() throws Exception {
     long dataqueryId = 1;
 
     doReturn(createValidApiDataqueryToGet(dataqueryId)).when(dataqueryHandler).getDataqueryById(any(Long.class), any(Authentication.class));
-    doThrow(JsonProcessingException.class).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
+    doReturn((StreamingResponseBody) outputStream -> {
+      throw new DataqueryCsvExportException();
+    }).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
 
-    mockMvc.perform(get(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/" + dataqueryId + "/crtdl"))
+    var mvcResult = mockMvc.perform(get(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/" + dataqueryId + "/crtdl"))
             .header(HttpHeaders.ACCEPT, "application/zip")
             .with(csrf()))
-        .andExpect(status().isInternalServerError());
-  }
-
-  @Test
-  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
-  public void testGetDataqueryCrtdlCsv_failsOnIoException() throws Exception {
-    long dataqueryId = 1;
+        .andExpect(request().asyncStarted())
+        .andReturn();
 
-    doReturn(createValidApiDataqueryToGet(dataqueryId)).when(dataqueryHandler).getDataqueryById(any(Long.class), any(Authentication.class));
-    doThrow(IOException.class).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
-
-    mockMvc.perform(get(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/" + dataqueryId + "/crtdl"))
-            .header(HttpHeaders.ACCEPT, "application/zip")
-            .with(csrf()))
-        .andExpect(status().isInternalServerError());
+    mockMvc.perform(asyncDispatch(mvcResult))
+        .andExpect(status().isUnprocessableEntity());
   }
 
   @Test
@@ -267,15 +263,19 @@ public class DataqueryHandlerRestControllerIT {
   public void testConvertCrtdlToCsv_succeeds() throws Exception {
     long dataqueryId = 1L;
 
-    doReturn(createValidByteArrayOutputStream()).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
+    doReturn(createValidZipfile()).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
 
-    mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/convert/crtdl")).with(csrf())
+    var mvcResult = mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/convert/crtdl")).with(csrf())
             .contentType(APPLICATION_JSON)
             .content(jsonUtil.writeValueAsString(createValidDataqueryToStore(dataqueryId))))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(mvcResult))
         .andExpect(status().isOk())
         .andExpect(content().contentType("application/zip"))
         .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/zip"))
-        .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, Matchers.not("0")));
+        .andExpect(content().bytes(createValidZipfileContent()));
   }
 
   @Test
@@ -293,28 +293,21 @@ public class DataqueryHandlerRestControllerIT {
 
   @Test
   @WithMockUser(roles = "DATAPORTAL_TEST_USER")
-  public void testConvertCrtdlToCsv_failsOnJsonError() throws Exception {
+  public void testConvertCrtdlToCsv_failsOnCsvExportErrorBeforeAnythingIsWritten() throws Exception {
     long dataqueryId = 1L;
 
-    doThrow(JsonProcessingException.class).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
+    doReturn((StreamingResponseBody) outputStream -> {
+      throw new DataqueryCsvExportException();
+    }).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
 
-    mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/convert/crtdl")).with(csrf())
+    var mvcResult = mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/convert/crtdl")).with(csrf())
             .contentType(APPLICATION_JSON)
             .content(jsonUtil.writeValueAsString(createValidDataqueryToStore(dataqueryId))))
-        .andExpect(status().isInternalServerError());
-  }
-
-  @Test
-  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
-  public void testConvertCrtdlToCsv_failsOnIoException() throws Exception {
-    long dataqueryId = 1L;
-
-    doThrow(IOException.class).when(dataqueryHandler).createCsvExportZipfile(any(Dataquery.class));
+        .andExpect(request().asyncStarted())
+        .andReturn();
 
-    mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_DATA + "/convert/crtdl")).with(csrf())
-            .contentType(APPLICATION_JSON)
-            .content(jsonUtil.writeValueAsString(createValidDataqueryToStore(dataqueryId))))
-        .andExpect(status().isInternalServerError());
+    mockMvc.perform(asyncDispatch(mvcResult))
+        .andExpect(status().isUnprocessableEntity());
   }
 
   @Test
@@ -648,19 +641,18 @@ public class DataqueryHandlerRestControllerIT {
         .build();
   }
 
-  private ByteArrayOutputStream createValidByteArrayOutputStream() throws IOException {
+  private StreamingResponseBody createValidZipfile() {
+    return outputStream -> outputStream.write(createValidZipfileContent());
+  }
+
+  private byte[] createValidZipfileContent() throws IOException {
     var byteArrayOutputStream = new ByteArrayOutputStream();
-    var zipOutputStream = new ZipOutputStream(byteArrayOutputStream);
-    Map<String, String> files = new HashMap<>();
-    files.put("foo.json", "{}");
-    for (Map.Entry<String, String> file : files.entrySet()) {
-      ZipEntry entry = new ZipEntry(file.getKey());
-      zipOutputStream.putNextEntry(entry);
-      zipOutputStream.write(file.getValue().getBytes());
+    try (var zipOutputStream = new ZipOutputStream(byteArrayOutputStream)) {
+      zipOutputStream.putNextEntry(new ZipEntry("foo.json"));
+      zipOutputStream.write("{}".getBytes());
       zipOutputStream.closeEntry();
     }
-    zipOutputStream.close();
-    byteArrayOutputStream.close();
-    return byteArrayOutputStream;
+    return byteArrayOutputStream.toByteArray();
   }
+
 }
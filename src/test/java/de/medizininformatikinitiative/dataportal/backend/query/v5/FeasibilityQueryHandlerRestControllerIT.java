@@ -23,6 +23,7 @@ import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.Rate
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultLine;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslationException;
 import de.medizininformatikinitiative.dataportal.backend.terminology.TerminologyService;
+import de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.CodeableConceptService;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.TerminologyEsService;
 import de.medizininformatikinitiative.dataportal.backend.validation.ValidationService;
@@ -43,12 +44,17 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static de.medizininformatikinitiative.dataportal.backend.common.api.Comparator.GREATER_EQUAL;
 import static de.medizininformatikinitiative.dataportal.backend.config.WebSecurityConfig.*;
@@ -59,7 +65,9 @@ import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.any;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -383,8 +391,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
 //    doReturn(Mono.just(1L)).when(queryHandlerService).runQuery(any(Ccdl.class), eq("test"));
     doReturn(1L).when(queryHandlerService).runQueryAsync(any(Ccdl.class), eq("test"));
 
@@ -404,8 +411,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
     doReturn(1L).when(queryHandlerService).runQueryAsync(any(Ccdl.class), eq("test"));
 
     mockMvc.perform(post(URI.create(contextPath + PATH)).with(csrf())
@@ -426,8 +432,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
 //    doReturn(Mono.error(dispatchError)).when(queryHandlerService).runQuery(any(Ccdl.class), eq("test"));
     doThrow(dispatchError).when(queryHandlerService).runQueryAsync(any(Ccdl.class), eq("test"));
 
@@ -444,8 +449,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
     doReturn((long) quotaSoftCreateAmount + 1).when(queryHandlerService).getAmountOfQueriesByUserAndInterval(any(String.class), any(String.class));
 
     mockMvc.perform(post(URI.create(PATH)).with(csrf())
@@ -466,8 +470,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
     doReturn(userBlacklistOptional).when(userBlacklistRepository).findByUserId(any(String.class));
     doReturn(Mono.just(1L)).when(queryHandlerService).runQuery(any(Ccdl.class), eq("test"));
 
@@ -484,8 +487,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
     doReturn((long) quotaHardCreateAmount).when(queryHandlerService).getAmountOfQueriesByUserAndInterval(any(String.class), eq(quotaHardCreateInterval));
     doReturn(Mono.just(1L)).when(queryHandlerService).runQuery(any(Ccdl.class), eq("test"));
 
@@ -500,8 +502,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
   public void testRunQueryEndpoint_SucceedsOnExceedingHardlimitAsPowerUserWith201() throws Exception {
     Ccdl testQuery = createValidCcdl();
 
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
 
     doReturn(List.of()).when(validationService).validateCcdlSchema(any(JsonNode.class));
     doReturn(testQuery).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
@@ -570,6 +571,55 @@ public class FeasibilityQueryHandlerRestControllerIT {
         .andExpect(jsonPath("$.issues[0].code").value("FEAS-" + FeasibilityIssue.PRIVACY_RESTRICTION_RESULT_SITES.code()));
   }
 
+  @Test
+  @WithMockUser(roles = {"DATAPORTAL_TEST_USER"}, username = "test")
+  public void testStreamSummaryQueryResult_succeeds() throws Exception {
+    doReturn("test").when(queryHandlerService).getAuthorId(any(Long.class));
+    doReturn(Flux.just(createTestQueryResult(QueryHandlerService.ResultDetail.SUMMARY)))
+        .when(queryHandlerService).streamQueryResult(any(Long.class), eq(QueryHandlerService.ResultDetail.SUMMARY));
+
+    var mvcResult = mockMvc.perform(get(URI.create(PATH + "/1" + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM))
+            .accept(TEXT_EVENT_STREAM)
+            .with(csrf()))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(mvcResult))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(TEXT_EVENT_STREAM))
+        .andExpect(content().string(containsString("\"totalNumberOfPatients\"")));
+  }
+
+  @Test
+  @WithMockUser(roles = {"DATAPORTAL_TEST_USER"}, username = "test")
+  public void testStreamSummaryQueryResult_emitsIssueWhenBelowThreshold() throws Exception {
+    doReturn("test").when(queryHandlerService).getAuthorId(any(Long.class));
+    doReturn(Flux.just(QueryResult.builder().queryId(1L).totalNumberOfPatients(0).build()))
+        .when(queryHandlerService).streamQueryResult(any(Long.class), eq(QueryHandlerService.ResultDetail.SUMMARY));
+
+    var mvcResult = mockMvc.perform(get(URI.create(PATH + "/1" + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM))
+            .accept(TEXT_EVENT_STREAM)
+            .with(csrf()))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(mvcResult))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("FEAS-" + FeasibilityIssue.PRIVACY_RESTRICTION_RESULT_SIZE.code())))
+        .andExpect(content().string(not(containsString("totalNumberOfPatients"))));
+  }
+
+  @Test
+  @WithMockUser(roles = {"DATAPORTAL_TEST_USER"}, username = "test")
+  public void testStreamSummaryQueryResult_failsOnWrongAuthorWith403() throws Exception {
+    doReturn("some-other-user").when(queryHandlerService).getAuthorId(any(Long.class));
+
+    mockMvc.perform(get(URI.create(PATH + "/1" + WebSecurityConfig.PATH_SUMMARY_RESULT_STREAM))
+            .accept(TEXT_EVENT_STREAM)
+            .with(csrf()))
+        .andExpect(status().isForbidden());
+  }
+
   @Test
   @WithMockUser(roles = {"DATAPORTAL_TEST_USER"}, username = "test")
   public void testGetDetailedObfuscatedResult_failsOnWrongAuthorWith403() throws Exception {
@@ -611,8 +661,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
     doReturn(createValidCcdl()).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
     doReturn(createDummyCql()).when(queryHandlerService).translateQueryToCql(any(Ccdl.class));
 
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
 
     mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_FEASIBILITY + "/cql")).with(csrf())
             .contentType(APPLICATION_JSON)
@@ -641,8 +690,7 @@ public class FeasibilityQueryHandlerRestControllerIT {
     doReturn(createValidCcdl()).when(validationService).ccdlFromJsonNode(any(JsonNode.class));
     doThrow(QueryTranslationException.class).when(queryHandlerService).translateQueryToCql(any(Ccdl.class));
 
-    doReturn(true).when(terminologyService).isExistingTermCode(any(String.class), any(String.class));
-    doReturn(createValidUiProfileString()).when(terminologyService).getUiProfile(any(String.class));
+    stubValidTerminology();
 
     mockMvc.perform(post(URI.create(PATH_API + PATH_QUERY + PATH_FEASIBILITY + "/cql")).with(csrf())
             .contentType(APPLICATION_JSON)
@@ -668,6 +716,16 @@ public class FeasibilityQueryHandlerRestControllerIT {
         """;
   }
 
+  private void stubValidTerminology() {
+    doAnswer(invocation -> Set.copyOf(invocation.<Collection<TermCode>>getArgument(0)))
+        .when(terminologyService).findExistingTermCodes(anyCollection());
+    doAnswer(invocation -> {
+      var uiProfile = jsonUtil.readValue(createValidUiProfileString(), UiProfile.class);
+      return invocation.<Collection<String>>getArgument(0).stream()
+          .collect(Collectors.toMap(Function.identity(), hash -> uiProfile));
+    }).when(terminologyService).getUiProfiles(anyCollection());
+  }
+
   @NotNull
   private String createValidUiProfileString() {
     return """
@@ -13,6 +13,7 @@ import de.medizininformatikinitiative.dataportal.backend.query.collect.QueryColl
 import de.medizininformatikinitiative.dataportal.backend.query.dataquery.*;
 import de.medizininformatikinitiative.dataportal.backend.query.dispatch.QueryDispatchSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.persistence.DataqueryRepository;
+import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.QueryQuotaSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.result.ResultServiceSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.query.translation.QueryTranslatorSpringConfig;
 import org.junit.jupiter.api.BeforeEach;
@@ -38,6 +39,7 @@ import static org.assertj.core.api.Assertions.assertThat;
     QueryDispatchSpringConfig.class,
     QueryCollectSpringConfig.class,
     QueryHandlerService.class,
+    QueryQuotaSpringConfig.class,
     ResultServiceSpringConfig.class,
     DataquerySpringConfig.class
 })
@@ -22,13 +22,17 @@ import org.springframework.core.io.Resource;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 @Tag("terminology")
 @ExtendWith(MockitoExtension.class)
@@ -46,7 +50,8 @@ class TerminologyServiceTest {
   private Resource terminologySystemsResource;
 
   private TerminologyService createTerminologyService() throws IOException {
-    return new TerminologyService("src/test/resources/ontology/terminology_systems.json", uiProfileRepository, termCodeRepository, jsonUtil);
+    return new TerminologyService("src/test/resources/ontology/terminology_systems.json", uiProfileRepository,
+        termCodeRepository, new UiProfileCache(uiProfileRepository, jsonUtil, () -> "1"), jsonUtil);
   }
 
   @BeforeEach
@@ -66,6 +71,54 @@ class TerminologyServiceTest {
     assertEquals(termCodeResult, doesExist);
   }
 
+  @Test
+  void findExistingTermCodes_matchesSystemAndCode() throws IOException {
+    var terminologyService = createTerminologyService();
+    var existingTermCode = apiTermCode("http://loinc.org", "LL2191-6");
+    var termCodeInOtherSystem = apiTermCode("http://snomed.info/sct", "LL2191-6");
+    var unknownTermCode = apiTermCode("http://loinc.org", "unknown");
+    doReturn(List.of(createTermCode())).when(termCodeRepository).findAllByCodes(Set.of("LL2191-6", "unknown"));
+
+    var result = terminologyService.findExistingTermCodes(List.of(existingTermCode, termCodeInOtherSystem,
+        unknownTermCode));
+
+    assertThat(result).containsExactly(existingTermCode);
+  }
+
+  @Test
+  void findExistingTermCodes_emptyTermCodesDoNotQuery() throws IOException {
+    var terminologyService = createTerminologyService();
+
+    var result = terminologyService.findExistingTermCodes(List.of());
+
+    assertThat(result).isEmpty();
+    verifyNoInteractions(termCodeRepository);
+  }
+
+  @Test
+  void getUiProfilesByHashes_omitsHashesWithoutUiProfile() throws IOException {
+    var terminologyService = createTerminologyService();
+    var uiProfile = createUiProfile();
+    doReturn(List.of(contextualizedUiProfile("hash-1", uiProfile))).when(uiProfileRepository)
+        .findAllByContextualizedTermcodeHashes(Set.of("hash-1", "hash-2"));
+
+    var result = terminologyService.getUiProfiles(List.of("hash-1", "hash-2"));
+
+    assertThat(result).isEqualTo(Map.of("hash-1",
+        jsonUtil.readValue(uiProfile.getUiProfile(),
+            de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile.class)));
+  }
+
+  @Test
+  void getUiProfilesByHashes_emptyHashesDoNotQuery() throws IOException {
+    var terminologyService = createTerminologyService();
+
+    var result = terminologyService.getUiProfiles(Set.of());
+
+    assertThat(result).isEmpty();
+    verifyNoInteractions(uiProfileRepository);
+  }
+
   @Test
   void testMin() {
     int expected = 3;
@@ -92,6 +145,7 @@ class TerminologyServiceTest {
 
     var result = assertDoesNotThrow(() -> terminologyService.getCriteriaProfileData(List.of()));
     assertTrue(result.isEmpty());
+    verifyNoInteractions(termCodeRepository);
   }
 
   @ParameterizedTest
@@ -112,21 +166,11 @@ class TerminologyServiceTest {
     boolean excludeContext = Boolean.parseBoolean(noContext);
     boolean excludeTermcodes = Boolean.parseBoolean(noTermcodes);
 
-    if (excludeUiProfile) {
-      doReturn(Optional.empty()).when(uiProfileRepository).getUiProfileNameByContextualizedTermcodeHash(any(String.class));
-    } else {
-      doReturn(Optional.of("Patient")).when(uiProfileRepository).getUiProfileNameByContextualizedTermcodeHash(any(String.class));
-    }
-    if (excludeContext) {
-      doReturn(Optional.empty()).when(termCodeRepository).findContextByContextualizedTermcodeHash(any(String.class));
-    } else {
-      doReturn(Optional.of(createContext())).when(termCodeRepository).findContextByContextualizedTermcodeHash(any(String.class));
-    }
-    if (excludeTermcodes) {
-      doReturn(Optional.empty()).when(termCodeRepository).findTermCodeByContextualizedTermcodeHash(any(String.class));
-    } else {
-      doReturn(Optional.of(createTermCode())).when(termCodeRepository).findTermCodeByContextualizedTermcodeHash(any(String.class));
-    }
+    var details = ids.stream()
+        .map(id -> contextualizedTermCodeDetails(id, excludeTermcodes ? null : createTermCode(),
+            excludeContext ? null : createContext(), excludeUiProfile ? null : "Patient"))
+        .toList();
+    doReturn(details).when(termCodeRepository).findDetailsByContextualizedTermcodeHashes(Set.copyOf(ids));
 
     var result = assertDoesNotThrow(() -> terminologyService.getCriteriaProfileData(ids));
 
@@ -141,6 +185,27 @@ class TerminologyServiceTest {
     }
   }
 
+  @Test
+  void getCriteriaProfileData_queriesAllIdsAtOnceAndKeepsOrder() throws IOException {
+    var terminologyService = createTerminologyService();
+    List<String> ids = List.of("789", "unknown", "123", "789");
+    doReturn(List.of(
+        contextualizedTermCodeDetails("123", createTermCode(), createContext(), "Patient"),
+        contextualizedTermCodeDetails("789", createTermCode(), createContext(), "Diagnose")))
+        .when(termCodeRepository).findDetailsByContextualizedTermcodeHashes(Set.of("123", "789", "unknown"));
+
+    var result = terminologyService.getCriteriaProfileData(ids);
+
+    assertThat(result).extracting(CriteriaProfileData::id).containsExactlyElementsOf(ids);
+    assertThat(result).extracting(CriteriaProfileData::uiProfileId)
+        .containsExactly("Diagnose", "undefined", "Patient", "Diagnose");
+    assertThat(result.get(1).context()).isNull();
+    assertThat(result.get(1).termCodes()).isEmpty();
+    verify(termCodeRepository).findDetailsByContextualizedTermcodeHashes(Set.of("123", "789", "unknown"));
+    verifyNoMoreInteractions(termCodeRepository);
+    verifyNoInteractions(uiProfileRepository);
+  }
+
   @Test
   void getUiProfiles_succeeds() throws IOException {
     var terminologyService = createTerminologyService();
@@ -218,6 +283,26 @@ class TerminologyServiceTest {
     }
   }
 
+  @Test
+  void addDisplayDataToCriteriaProfileData_matchesDisplayDataById() throws IOException {
+    var terminologyService = createTerminologyService();
+    var criteriaProfileData = List.of(
+        CriteriaProfileData.builder().id("id-1").termCodes(List.of()).build(),
+        CriteriaProfileData.builder().id("id-2").termCodes(List.of()).build(),
+        CriteriaProfileData.builder().id("id-3").termCodes(List.of()).build());
+    var displayData = List.of(
+        EsSearchResultEntry.builder().id("id-3").display(DisplayEntry.builder().original("three").build()).build(),
+        EsSearchResultEntry.builder().id("id-1").display(DisplayEntry.builder().original("one").build()).build(),
+        EsSearchResultEntry.builder().id("id-1").display(DisplayEntry.builder().original("other").build()).build());
+
+    var result = terminologyService.addDisplayDataToCriteriaProfileData(criteriaProfileData, displayData);
+
+    assertThat(result).extracting(CriteriaProfileData::id).containsExactly("id-1", "id-2", "id-3");
+    assertThat(result.get(0).display().original()).isEqualTo("one");
+    assertNull(result.get(1).display());
+    assertThat(result.get(2).display().original()).isEqualTo("three");
+  }
+
   private UiProfile createUiProfile() throws JsonProcessingException {
     var uiProfile = new UiProfile();
     uiProfile.setId(1L);
@@ -239,6 +324,61 @@ class TerminologyServiceTest {
     return uiProfile;
   }
 
+  private de.medizininformatikinitiative.dataportal.backend.common.api.TermCode apiTermCode(String system,
+                                                                                           String code) {
+    return de.medizininformatikinitiative.dataportal.backend.common.api.TermCode.builder()
+        .system(system)
+        .code(code)
+        .display(code)
+        .build();
+  }
+
+  static UiProfileRepository.ContextualizedUiProfile contextualizedUiProfile(String hash, UiProfile uiProfile) {
+    return new UiProfileRepository.ContextualizedUiProfile() {
+      @Override
+      public String getContextualizedTermcodeHash() {
+        return hash;
+      }
+
+      @Override
+      public Long getUiProfileId() {
+        return uiProfile.getId();
+      }
+
+      @Override
+      public String getUiProfile() {
+        return uiProfile.getUiProfile();
+      }
+    };
+  }
+
+  private static TermCodeRepository.ContextualizedTermCodeDetails contextualizedTermCodeDetails(String hash,
+                                                                                              TermCode termCode,
+                                                                                              Context context,
+                                                                                              String uiProfileName) {
+    return new TermCodeRepository.ContextualizedTermCodeDetails() {
+      @Override
+      public String getContextualizedTermcodeHash() {
+        return hash;
+      }
+
+      @Override
+      public TermCode getTermCode() {
+        return termCode;
+      }
+
+      @Override
+      public Context getContext() {
+        return context;
+      }
+
+      @Override
+      public String getUiProfileName() {
+        return uiProfileName;
+      }
+    };
+  }
+
   private TermCode createTermCode() {
     TermCode termCode = new TermCode();
     termCode.setId(1L);
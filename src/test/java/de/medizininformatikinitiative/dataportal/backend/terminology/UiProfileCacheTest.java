@@ -0,0 +1,144 @@
+package de.medizininformatikinitiative.dataportal.backend.terminology;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfile;
+import de.medizininformatikinitiative.dataportal.backend.terminology.persistence.UiProfileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.medizininformatikinitiative.dataportal.backend.terminology.TerminologyServiceTest.contextualizedUiProfile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@Tag("terminology")
+@ExtendWith(MockitoExtension.class)
+class UiProfileCacheTest {
+
+  private final ObjectMapper jsonUtil = new ObjectMapper();
+  private final AtomicReference<String> ontologyVersion = new AtomicReference<>("1");
+
+  @Mock
+  private UiProfileRepository uiProfileRepository;
+
+  private UiProfileCache uiProfileCache;
+
+  @BeforeEach
+  void setUp() {
+    uiProfileCache = new UiProfileCache(uiProfileRepository, jsonUtil, ontologyVersion::get);
+  }
+
+  @Test
+  void findByContextualizedTermCodeHashes_parsesEachProfileOnce() throws JsonProcessingException {
+    var uiProfile = createUiProfile(1L, "profile-1");
+    doReturn(List.of(contextualizedUiProfile("hash-1", uiProfile), contextualizedUiProfile("hash-2", uiProfile)))
+        .when(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("hash-1", "hash-2"));
+
+    var first = uiProfileCache.findByContextualizedTermCodeHashes(List.of("hash-1", "hash-2"));
+    var second = uiProfileCache.findByContextualizedTermCodeHashes(List.of("hash-2", "hash-1"));
+
+    assertThat(first.get("hash-1").name()).isEqualTo("profile-1");
+    assertThat(first.get("hash-1")).isSameAs(first.get("hash-2"));
+    assertThat(second.get("hash-1")).isSameAs(first.get("hash-1"));
+    verify(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("hash-1", "hash-2"));
+    verifyNoMoreInteractions(uiProfileRepository);
+  }
+
+  @Test
+  void findByContextualizedTermCodeHashes_onlyLoadsUncachedHashes() throws JsonProcessingException {
+    doReturn(List.of(contextualizedUiProfile("hash-1", createUiProfile(1L, "profile-1"))))
+        .when(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("hash-1"));
+    doReturn(List.of(contextualizedUiProfile("hash-2", createUiProfile(2L, "profile-2"))))
+        .when(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("hash-2"));
+
+    uiProfileCache.findByContextualizedTermCodeHashes(List.of("hash-1"));
+    var result = uiProfileCache.findByContextualizedTermCodeHashes(List.of("hash-1", "hash-2"));
+
+    assertThat(result).containsOnlyKeys("hash-1", "hash-2");
+    assertThat(result.get("hash-2").name()).isEqualTo("profile-2");
+  }
+
+  @Test
+  void findByContextualizedTermCodeHashes_omitsHashesWithoutProfile() {
+    doReturn(List.of()).when(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("unknown"));
+
+    var result = uiProfileCache.findByContextualizedTermCodeHashes(List.of("unknown"));
+
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void findAll_reusesProfilesParsedByHash() throws JsonProcessingException {
+    var uiProfile = createUiProfile(1L, "profile-1");
+    doReturn(List.of(contextualizedUiProfile("hash-1", uiProfile)))
+        .when(uiProfileRepository).findAllByContextualizedTermcodeHashes(Set.of("hash-1"));
+    doReturn(List.of(uiProfile, createUiProfile(2L, "profile-2"))).when(uiProfileRepository).findAll();
+
+    var byHash = uiProfileCache.findByContextualizedTermCodeHashes(List.of("hash-1"));
+    var all = uiProfileCache.findAll();
+    var allAgain = uiProfileCache.findAll();
+
+    assertThat(all).hasSize(2);
+    assertThat(all.get(0)).isSameAs(byHash.get("hash-1"));
+    assertThat(allAgain).isSameAs(all);
+    verify(uiProfileRepository).findAll();
+  }
+
+  @Test
+  void findAll_returnsImmutableProfiles() throws JsonProcessingException {
+    doReturn(List.of(createUiProfile(1L, "profile-1"))).when(uiProfileRepository).findAll();
+
+    var all = uiProfileCache.findAll();
+
+    assertThrows(UnsupportedOperationException.class, () -> all.add(all.get(0)));
+    assertThrows(UnsupportedOperationException.class, () -> all.get(0).attributeDefinitions().clear());
+  }
+
+  @Test
+  void changedOntologyVersion_invalidatesCache() throws JsonProcessingException {
+    doReturn(List.of(createUiProfile(1L, "profile-1"))).when(uiProfileRepository).findAll();
+
+    var before = uiProfileCache.findAll();
+    ontologyVersion.set("2");
+    var after = uiProfileCache.findAll();
+
+    assertThat(after).isNotSameAs(before);
+    assertThat(after.get(0)).isNotSameAs(before.get(0));
+    verify(uiProfileRepository, times(2)).findAll();
+  }
+
+  @Test
+  void invalidProfile_throws() {
+    var uiProfile = new UiProfile();
+    uiProfile.setId(1L);
+    uiProfile.setName("bogus");
+    uiProfile.setUiProfile("{ not json");
+    doReturn(List.of(uiProfile)).when(uiProfileRepository).findAll();
+
+    assertThrows(RuntimeException.class, () -> uiProfileCache.findAll());
+  }
+
+  private UiProfile createUiProfile(long id, String name) throws JsonProcessingException {
+    var uiProfile = new UiProfile();
+    uiProfile.setId(id);
+    uiProfile.setName(name);
+    uiProfile.setUiProfile(jsonUtil.writeValueAsString(
+        de.medizininformatikinitiative.dataportal.backend.terminology.api.UiProfile.builder()
+            .name(name)
+            .timeRestrictionAllowed(true)
+            .build()));
+    return uiProfile;
+  }
+}
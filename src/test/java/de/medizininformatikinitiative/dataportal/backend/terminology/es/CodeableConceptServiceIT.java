@@ -1,6 +1,7 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.es;
 
 import de.medizininformatikinitiative.dataportal.backend.common.api.TermCode;
+import de.medizininformatikinitiative.dataportal.backend.terminology.OntologyVersion;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.CodeableConceptBulkSearchRequest;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.CodeableConceptEntry;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.CodeableConceptEsRepository;
@@ -11,6 +12,7 @@ import org.springframework.boot.testcontainers.service.connection.ServiceConnect
 import org.springframework.context.annotation.Import;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.testcontainers.containers.wait.strategy.Wait;
@@ -29,7 +31,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 @Tag("terminology")
 @Tag("elasticsearch")
-@Import({CodeableConceptService.class})
+@Import({CodeableConceptService.class, SearchResultCacheSpringConfig.class})
 @Testcontainers
 @DataElasticsearchTest(properties = {
     "app.elastic.filter=context,terminology"
@@ -52,6 +54,8 @@ public class CodeableConceptServiceIT {
   private CodeableConceptEsRepository repo;
   @Autowired
   private CodeableConceptService codeableConceptService;
+  @MockitoBean
+  private OntologyVersion ontologyVersion;
 
   @BeforeAll
   static void setUp() throws InterruptedException {
@@ -237,6 +241,37 @@ public class CodeableConceptServiceIT {
     Assertions.assertNull(result);
   }
 
+  @Test
+  void testAvailableCodesInValueSets_succeeds() {
+    var result = codeableConceptService.availableCodesInValueSets(List.of("A1.1", "A1.0"), List.of("some-value-set"));
+
+    assertThat(result).containsExactly("A1.1");
+  }
+
+  @Test
+  void testAvailableCodesInValueSets_answersAllChecksAtOnce() {
+    var inValueSet = new CodeAvailabilityCheck(List.of("A1.1", "A1.0"), List.of("some-value-set"));
+    var inUnknownValueSet = new CodeAvailabilityCheck(List.of("A1.1"), List.of("unknown-value-set"));
+    var inOneOfValueSets = new CodeAvailabilityCheck(List.of("A2.0", "A1.1"),
+        List.of("unknown-value-set", "some-value-set"));
+
+    var result = codeableConceptService.availableCodesInValueSets(List.of(inValueSet, inUnknownValueSet,
+        inOneOfValueSets));
+
+    assertThat(result)
+        .containsEntry(inValueSet, List.of("A1.1"))
+        .containsEntry(inUnknownValueSet, List.of())
+        .containsEntry(inOneOfValueSets, List.of("A1.1"));
+  }
+
+  @Test
+  void testAvailableCodesInValueSets_throwsOnCheckWithoutValueSets() {
+    var check = new CodeAvailabilityCheck(List.of("A1.1"), List.of());
+
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> codeableConceptService.availableCodesInValueSets(List.of(check)));
+  }
+
   private TermCode createTermCode() {
     return TermCode.builder()
         .code("A2.0")
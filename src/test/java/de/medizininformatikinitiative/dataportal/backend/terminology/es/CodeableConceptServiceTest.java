@@ -8,6 +8,7 @@ import de.medizininformatikinitiative.dataportal.backend.terminology.api.Codeabl
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.CodeableConceptDocument;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.Display;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.CodeableConceptEsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,18 +20,29 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.*;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class CodeableConceptServiceTest {
@@ -55,7 +67,9 @@ class CodeableConceptServiceTest {
   }
 
   private CodeableConceptService createCodeableConceptService() {
-    return new CodeableConceptService(operations, repository);
+    return new CodeableConceptService(operations, repository,
+        new SearchResultCache<>("codeableConceptSearch", 100, Duration.ofHours(1), () -> "1", new SimpleMeterRegistry()),
+        Duration.ofMinutes(5));
   }
 
   @BeforeEach
@@ -139,6 +153,19 @@ class CodeableConceptServiceTest {
     );
   }
 
+  @Test
+  void testPerformCodeableConceptSearchWithRepoAndPaging_cachesNormalizedSearch() {
+    SearchHits<CodeableConceptDocument> dummySearchHitsPage = createDummySearchHitsPage(5);
+    doReturn(dummySearchHitsPage).when(operations).search(any(NativeQuery.class), any(Class.class));
+
+    var first = codeableConceptService.performCodeableConceptSearchWithRepoAndPaging("foo", List.of("a", "b"), 20, 0);
+    var second = codeableConceptService.performCodeableConceptSearchWithRepoAndPaging("foo ", List.of("b", "a"), 20, 0);
+    codeableConceptService.performCodeableConceptSearchWithRepoAndPaging("foo", List.of("a", "b"), 20, 1);
+
+    assertSame(first, second);
+    verify(operations, times(2)).search(any(NativeQuery.class), any(Class.class));
+  }
+
   @Test
   void testPerformCodeableConceptSearchWithRepoAndPaging_succeedsWithEmptyResult() {
     SearchHits<CodeableConceptDocument> dummySearchHitsPage = createDummySearchHitsPage(0);
@@ -184,6 +211,26 @@ class CodeableConceptServiceTest {
     assertThat(searchResult.notFound()).containsExactlyInAnyOrderElementsOf(searchtermsNotFound);
   }
 
+  @Test
+  void testPerformCodeableConceptSearchWithCursor_singlePageOpensNoPointInTime() {
+    doReturn(IndexCoordinates.of("codeable_concept")).when(operations).getIndexCoordinatesFor(CodeableConceptDocument.class);
+    var dummySearchHitsPage = createDummySearchHitsPage(5);
+    doReturn(dummySearchHitsPage).when(operations).search(any(NativeQuery.class), eq(CodeableConceptDocument.class));
+
+    var result = codeableConceptService.performCodeableConceptSearchWithCursor("foo", List.of("bar"), 20, "*");
+
+    assertEquals(dummySearchHitsPage.getTotalHits(), result.getTotalHits());
+    assertEquals(5, result.getResults().size());
+    assertNull(result.getNextCursor());
+    verify(operations, never()).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+  }
+
+  @Test
+  void testPerformCodeableConceptSearchWithCursor_throwsOnInvalidCursor() {
+    assertThrows(InvalidSearchCursorException.class,
+        () -> codeableConceptService.performCodeableConceptSearchWithCursor("foo", null, 20, "not-a-cursor"));
+  }
+
   @Test
   void testGetSearchResultsEntryByIds_succeeds() {
     CodeableConceptDocument dummyCodeableConceptDocument = createDummyCodeableConceptDocument("1");
@@ -209,6 +256,39 @@ class CodeableConceptServiceTest {
     ));
   }
 
+  @Test
+  void testGetSearchResultsEntryByIds_sharesConcurrentIdenticalLookups() throws Exception {
+    var lookupStarted = new CountDownLatch(1);
+    var releaseLookup = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      lookupStarted.countDown();
+      releaseLookup.await();
+      return List.of(createDummyCodeableConceptDocument("1"));
+    }).when(repository).findAllById(anyList());
+
+    var first = new FutureTask<>(() -> codeableConceptService.getSearchResultsEntryByIds(List.of("1")));
+    new Thread(first).start();
+    assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+    var second = new FutureTask<>(() -> codeableConceptService.getSearchResultsEntryByIds(List.of("1")));
+    var secondThread = new Thread(second);
+    secondThread.start();
+    await().atMost(10, TimeUnit.SECONDS).until(() -> secondThread.getState() == Thread.State.WAITING);
+    releaseLookup.countDown();
+
+    assertThat(second.get(10, TimeUnit.SECONDS)).isSameAs(first.get(10, TimeUnit.SECONDS)).hasSize(1);
+    verify(repository, times(1)).findAllById(anyList());
+  }
+
+  @Test
+  void testGetSearchResultsEntryByIds_looksUpAgainAfterCompletion() {
+    doReturn(List.of(createDummyCodeableConceptDocument("1"))).when(repository).findAllById(anyList());
+
+    codeableConceptService.getSearchResultsEntryByIds(List.of("1"));
+    codeableConceptService.getSearchResultsEntryByIds(List.of("1"));
+
+    verify(repository, times(2)).findAllById(anyList());
+  }
+
   @Test
   void testGetSearchResultsEntryByIds_emptyOnNotFound() {
     doReturn(List.of()).when(repository).findAllById(anyList());
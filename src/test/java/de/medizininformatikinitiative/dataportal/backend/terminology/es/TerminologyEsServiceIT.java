@@ -1,9 +1,12 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.es;
 
+import de.medizininformatikinitiative.dataportal.backend.terminology.OntologyVersion;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.EsSearchResultEntry;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.EsSearchResultEntryExtended;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.RelativeEntry;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.TerminologyBulkSearchRequest;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.Display;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.OntologyListItemDocument;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.TermFilter;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.OntologyItemEsRepository;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.OntologyItemNotFoundException;
@@ -20,6 +23,7 @@ import org.springframework.boot.test.autoconfigure.data.elasticsearch.DataElasti
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.testcontainers.containers.wait.strategy.Wait;
@@ -40,7 +44,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Tag("terminology")
 @Tag("elasticsearch")
-@Import({TerminologyEsService.class})
+@Import({TerminologyEsService.class, SearchResultCacheSpringConfig.class})
 @Testcontainers
 @DataElasticsearchTest(properties = {
     "app.elastic.filter=context,terminology,kds_module"
@@ -63,6 +67,8 @@ public class TerminologyEsServiceIT {
   private OntologyItemEsRepository ontologyItemEsRepository;
   @Autowired
   private TerminologyEsService terminologyEsService;
+  @MockitoBean
+  private OntologyVersion ontologyVersion;
 
   @BeforeAll
   static void setUp() throws IOException, InterruptedException {
@@ -252,6 +258,56 @@ public class TerminologyEsServiceIT {
     assertThat(page.results().get(0).termcode()).containsIgnoringCase("r03");
   }
 
+  @Test
+  void testPerformOntologySearchWithPaging_ranksAvailableEntryFirstOnEqualRelevance() {
+    // The unavailable entry is indexed first, so that it would come first if both had the same score
+    var unavailable = createRankingTestEntry("ranking-test-unavailable", 0);
+    var available = createRankingTestEntry("ranking-test-available", 5);
+    ontologyListItemEsRepository.save(unavailable);
+    ontologyListItemEsRepository.save(available);
+
+    try {
+      var page = terminologyEsService.performOntologySearchWithPaging("Rangfolgetestbegriff", null, null, null, null,
+          false, 10, 0);
+
+      assertThat(page.results()).extracting(EsSearchResultEntry::id)
+          .containsExactly("ranking-test-available", "ranking-test-unavailable");
+    } finally {
+      ontologyListItemEsRepository.deleteAll(List.of(unavailable, available));
+    }
+  }
+
+  private static OntologyListItemDocument createRankingTestEntry(String id, int availability) {
+    return OntologyListItemDocument.builder()
+        .id(id)
+        .display(Display.builder()
+            .original("Rangfolgetestbegriff")
+            .deDe("Rangfolgetestbegriff")
+            .enUs("Rangfolgetestbegriff")
+            .build())
+        .availability(availability)
+        .terminology("http://example.com/ranking-test")
+        .termcode("RANKING")
+        .selectable(true)
+        .build();
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_pagesThroughAllResults() {
+    var firstPage = terminologyEsService.performOntologySearchWithCursor("Blutdr", null, null, null, null, false, 2, "*");
+    assertThat(firstPage.totalHits()).isEqualTo(3);
+    assertThat(firstPage.results()).hasSize(2);
+    assertThat(firstPage.nextCursor()).isNotNull();
+
+    var lastPage = terminologyEsService.performOntologySearchWithCursor("Blutdr", null, null, null, null, false, 2,
+        firstPage.nextCursor());
+    assertThat(lastPage.results()).hasSize(1);
+    assertThat(lastPage.nextCursor()).isNull();
+
+    assertThat(Stream.concat(firstPage.results().stream(), lastPage.results().stream()).map(EsSearchResultEntry::termcode))
+        .containsExactlyInAnyOrder("R03", "R03.0", "R03.1");
+  }
+
   @Test
   void testPerformExactSearch_succeeds() {
     List<String> expectedFoundResults = List.of("R03", "R03.0", "R03.1");
@@ -392,4 +448,18 @@ public class TerminologyEsServiceIT {
   void testGetSearchRelationsByHash_throwsOnNotFound() {
     assertThrows(OntologyItemNotFoundException.class, () -> terminologyEsService.getRelationEntryByHash("invalid-id"));
   }
+
+  @Test
+  void testAvailableCodesInReferencedCriteriaSets_answersAllChecksAtOnce() {
+    var criteriaSet = "http://fdpg.mii.cds/CriteriaSet/Diagnose/icd-10-gm";
+    var inCriteriaSet = new CodeAvailabilityCheck(List.of("R03.0", "5-925.gb"), List.of(criteriaSet));
+    var inUnknownCriteriaSet = new CodeAvailabilityCheck(List.of("R03.0"), List.of("unknown-criteria-set"));
+
+    var result = terminologyEsService.availableCodesInReferencedCriteriaSets(List.of(inCriteriaSet,
+        inUnknownCriteriaSet));
+
+    assertThat(result)
+        .containsEntry(inCriteriaSet, List.of("R03.0"))
+        .containsEntry(inUnknownCriteriaSet, List.of());
+  }
 }
@@ -1,5 +1,7 @@
 package de.medizininformatikinitiative.dataportal.backend.terminology.es;
 
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
 import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
 import de.medizininformatikinitiative.dataportal.backend.common.api.Criterion;
 import de.medizininformatikinitiative.dataportal.backend.common.api.DisplayEntry;
@@ -12,6 +14,7 @@ import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.*;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.OntologyItemEsRepository;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.OntologyItemNotFoundException;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.repository.OntologyListItemEsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -20,6 +23,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -29,15 +33,29 @@ import org.mockito.quality.Strictness;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.*;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Tag("terminology")
@@ -60,6 +78,9 @@ public class TerminologyEsServiceTest {
   @Mock
   private List<StringTermsBucket> stringTermsBuckets;
 
+  private final AtomicReference<String> ontologyVersion = new AtomicReference<>("1");
+  private SimpleMeterRegistry meterRegistry;
+
   @InjectMocks
   private TerminologyEsService terminologyEsService;
 
@@ -102,12 +123,20 @@ public class TerminologyEsServiceTest {
   }
 
   private TerminologyEsService createTerminologyEsService() {
-    return new TerminologyEsService(filterFields, operations, ontologyItemEsRepository, ontologyListItemEsRepository);
+    return createTerminologyEsService(Duration.ofHours(1));
+  }
+
+  private TerminologyEsService createTerminologyEsService(Duration timeToLive) {
+    return new TerminologyEsService(filterFields, operations, ontologyItemEsRepository, ontologyListItemEsRepository,
+        new SearchResultCache<>("ontologySearch", 100, timeToLive, ontologyVersion::get, meterRegistry),
+        new SearchResultCache<>("availableFilters", 1, timeToLive, ontologyVersion::get, meterRegistry),
+        Duration.ofMinutes(5));
   }
 
   @BeforeEach
   void setUp() {
     Mockito.reset(operations, ontologyItemEsRepository, ontologyListItemEsRepository);
+    meterRegistry = new SimpleMeterRegistry();
     terminologyEsService = createTerminologyEsService();
   }
 
@@ -136,6 +165,32 @@ public class TerminologyEsServiceTest {
     assertThrows(OntologyItemNotFoundException.class, () -> terminologyEsService.getSearchResultEntryByHash("id"));
   }
 
+  @Test
+  void testGetSearchResultEntryByHash_sharesConcurrentIdenticalLookups() throws Exception {
+    var lookupStarted = new CountDownLatch(1);
+    var releaseLookup = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      lookupStarted.countDown();
+      releaseLookup.await();
+      return Optional.empty();
+    }).when(ontologyListItemEsRepository).findById("id");
+
+    var first = new FutureTask<>(() -> terminologyEsService.getSearchResultEntryByHash("id"));
+    new Thread(first).start();
+    assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+    var second = new FutureTask<>(() -> terminologyEsService.getSearchResultEntryByHash("id"));
+    var secondThread = new Thread(second);
+    secondThread.start();
+    await().atMost(10, TimeUnit.SECONDS).until(() -> secondThread.getState() == Thread.State.WAITING);
+    releaseLookup.countDown();
+
+    var firstException = assertThrows(ExecutionException.class, first::get);
+    var secondException = assertThrows(ExecutionException.class, second::get);
+    assertThat(firstException.getCause()).isInstanceOf(OntologyItemNotFoundException.class);
+    assertThat(secondException.getCause()).isInstanceOf(OntologyItemNotFoundException.class);
+    verify(ontologyListItemEsRepository, times(1)).findById("id");
+  }
+
   @Test
   void testGetSearchResultEntryByCriterion() {
     String id = UUID.randomUUID().toString();
@@ -168,8 +223,8 @@ public class TerminologyEsServiceTest {
     doReturn(searchHits).when(operations).search(any(NativeQuery.class), any());
     doReturn(elasticsearchAggregations).when(searchHits).getAggregations();
     // This fails when written as doReturn()...when(), but works in this order...so...
-    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().sterms()
-        .buckets().array()).thenReturn(List.of(createStringTermsBucket()));
+    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().filter()
+        .aggregations().get(any(String.class)).sterms().buckets().array()).thenReturn(List.of(createStringTermsBucket()));
 
     var filters = terminologyEsService.getAvailableFilters();
 
@@ -177,6 +232,45 @@ public class TerminologyEsServiceTest {
     assertThat(filters).containsAll(expectedTermFiltersList);
   }
 
+  @Test
+  void testGetAvailableFilters_computesAllFacetsOncePerOntologyVersion() {
+    doReturn(searchHits).when(operations).search(any(NativeQuery.class), any());
+    doReturn(elasticsearchAggregations).when(searchHits).getAggregations();
+    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().filter()
+        .aggregations().get(any(String.class)).sterms().buckets().array()).thenReturn(List.of(createStringTermsBucket()));
+
+    terminologyEsService.precomputeAvailableFilters();
+    var first = terminologyEsService.getAvailableFilters();
+    var second = terminologyEsService.getAvailableFilters();
+    ontologyVersion.set("2");
+    var third = terminologyEsService.getAvailableFilters();
+
+    assertThat(second).isSameAs(first);
+    assertThat(third).isNotSameAs(first).isEqualTo(first);
+    verify(operations, times(2)).search(any(NativeQuery.class), any());
+  }
+
+  @Test
+  void testGetAvailableFilters_recomputesFacetsAfterTimeToLive() {
+    terminologyEsService = createTerminologyEsService(Duration.ZERO);
+    doReturn(searchHits).when(operations).search(any(NativeQuery.class), any());
+    doReturn(elasticsearchAggregations).when(searchHits).getAggregations();
+    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().filter()
+        .aggregations().get(any(String.class)).sterms().buckets().array()).thenReturn(List.of(createStringTermsBucket()));
+
+    terminologyEsService.getAvailableFilters();
+    terminologyEsService.getAvailableFilters();
+
+    verify(operations, times(2)).search(any(NativeQuery.class), any());
+  }
+
+  @Test
+  void testPrecomputeAvailableFilters_doesNotThrowIfElasticsearchIsUnavailable() {
+    doThrow(new RuntimeException("unavailable")).when(operations).search(any(NativeQuery.class), any());
+
+    assertDoesNotThrow(() -> terminologyEsService.precomputeAvailableFilters());
+  }
+
   @Test
   void testGetAvailableFiltersFiltered_succeeds() {
     var expectedTermFiltersList = createTermFilterList(filterFields);
@@ -184,8 +278,8 @@ public class TerminologyEsServiceTest {
     doReturn(searchHits).when(operations).search(any(NativeQuery.class), any());
     doReturn(elasticsearchAggregations).when(searchHits).getAggregations();
     // This fails when written as doReturn()...when(), but works in this order...so...
-    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().sterms()
-        .buckets().array()).thenReturn(List.of(createStringTermsBucket()));
+    when(elasticsearchAggregations.aggregationsAsMap().get(any(String.class)).aggregation().getAggregate().filter()
+        .aggregations().get(any(String.class)).sterms().buckets().array()).thenReturn(List.of(createStringTermsBucket()));
 
     var filters = terminologyEsService.getAvailableFilters("foo", null, null, null, null);
 
@@ -232,6 +326,49 @@ public class TerminologyEsServiceTest {
     assertThat(searchResult.results()).containsExactlyInAnyOrderElementsOf(dummySearchHitsPage.getSearchHits().stream().map(sh -> EsSearchResultEntry.of(sh.getContent())).toList());
   }
 
+  @Test
+  void testPerformOntologySearchWithPaging_cachesNormalizedSearch() {
+    SearchHits<OntologyListItemDocument> dummySearchHitsPage = createDummySearchHitsPageWithOntologyListItemDocuments(5);
+    doReturn(dummySearchHitsPage).when(operations).search(any(NativeQuery.class), any(Class.class));
+
+    var first = terminologyEsService.performOntologySearchWithPaging(
+        "foobar", List.of("a", "b"), null, List.of(), null, true, 20, 0);
+    var second = terminologyEsService.performOntologySearchWithPaging(
+        " foobar ", List.of("b", "a", "b"), List.of(), null, null, true, 20, 0);
+
+    assertThat(second).isSameAs(first);
+    verify(operations, times(1)).search(any(NativeQuery.class), any(Class.class));
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "ontologySearch").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "ontologySearch").tag("result", "miss")
+        .functionCounter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void testPerformOntologySearchWithPaging_doesNotShareResultsOfDifferentSearches() {
+    SearchHits<OntologyListItemDocument> dummySearchHitsPage = createDummySearchHitsPageWithOntologyListItemDocuments(5);
+    doReturn(dummySearchHitsPage).when(operations).search(any(NativeQuery.class), any(Class.class));
+
+    terminologyEsService.performOntologySearchWithPaging("foobar", null, null, null, null, true, 20, 0);
+    terminologyEsService.performOntologySearchWithPaging("foobar", null, null, null, null, false, 20, 0);
+    terminologyEsService.performOntologySearchWithPaging("foobar", null, null, null, null, true, 20, 1);
+    terminologyEsService.performOntologySearchWithPaging("foobar", List.of("a"), null, null, null, true, 20, 0);
+
+    verify(operations, times(4)).search(any(NativeQuery.class), any(Class.class));
+  }
+
+  @Test
+  void testPerformOntologySearchWithPaging_searchesAgainOnOntologyVersionChange() {
+    SearchHits<OntologyListItemDocument> dummySearchHitsPage = createDummySearchHitsPageWithOntologyListItemDocuments(5);
+    doReturn(dummySearchHitsPage).when(operations).search(any(NativeQuery.class), any(Class.class));
+
+    terminologyEsService.performOntologySearchWithPaging("foobar", null, null, null, null, true, 20, 0);
+    ontologyVersion.set("2");
+    terminologyEsService.performOntologySearchWithPaging("foobar", null, null, null, null, true, 20, 0);
+
+    verify(operations, times(2)).search(any(NativeQuery.class), any(Class.class));
+  }
+
   @Test
   void testPerformOntologySearchWithRepoAndPaging_throwsOnInvalidPageSize() {
     assertThrows(IllegalArgumentException.class, () -> terminologyEsService.performOntologySearchWithPaging(
@@ -239,6 +376,115 @@ public class TerminologyEsServiceTest {
     );
   }
 
+  @Test
+  void testPerformOntologySearchWithCursor_opensPointInTimeOnSecondPage() {
+    doReturn(IndexCoordinates.of("ontology")).when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+    doReturn("pit-1").when(operations).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    doReturn(createDummyCursorSearchHitsPage(2, null), createDummyCursorSearchHitsPage(4, "pit-2"),
+        createDummyCursorSearchHitsPage(1, "pit-3"))
+        .when(operations).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+
+    var firstPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2, "*");
+    verify(operations, never()).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    var secondPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2,
+        firstPage.nextCursor());
+    var lastPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2,
+        secondPage.nextCursor());
+
+    assertThat(firstPage.results()).hasSize(2);
+    assertThat(firstPage.nextCursor()).isNotNull();
+    assertThat(secondPage.results()).hasSize(2);
+    assertThat(secondPage.nextCursor()).isNotNull();
+    assertThat(lastPage.results()).hasSize(1);
+    assertThat(lastPage.nextCursor()).isNull();
+    var queryCaptor = ArgumentCaptor.forClass(NativeQuery.class);
+    verify(operations, times(3)).search(queryCaptor.capture(), eq(OntologyListItemDocument.class));
+    assertThat(queryCaptor.getAllValues().get(0).getPointInTime()).isNull();
+    // the second page skips the hits of the first one on the point in time
+    assertThat(queryCaptor.getAllValues().get(1).getPointInTime().id()).isEqualTo("pit-1");
+    assertThat(queryCaptor.getAllValues().get(1).getSearchAfter()).isNull();
+    assertThat(queryCaptor.getAllValues().get(1).getMaxResults()).isEqualTo(4);
+    assertThat(queryCaptor.getAllValues().get(2).getPointInTime().id()).isEqualTo("pit-2");
+    assertThat(queryCaptor.getAllValues().get(2).getSearchAfter()).containsExactly(10.0, 3);
+    assertThat(queryCaptor.getAllValues().get(2).getMaxResults()).isEqualTo(2);
+    verify(operations, times(1)).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    verify(operations).closePointInTime("pit-3");
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_throwsOnInvalidCursor() {
+    assertThrows(InvalidSearchCursorException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, false, 20, "not-a-cursor"));
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_rejectsCursorOfDifferentQuery() {
+    doReturn(IndexCoordinates.of("ontology")).when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+    doReturn("pit-1").when(operations).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    doReturn(createDummyCursorSearchHitsPage(2, "pit-2"))
+        .when(operations).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+    var firstPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2, "*");
+
+    assertThrows(InvalidSearchCursorException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "bar", null, null, null, null, false, 2, firstPage.nextCursor()));
+    assertThrows(InvalidSearchCursorException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, true, 2, firstPage.nextCursor()));
+    verify(operations, times(1)).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_rejectsCursorOfDifferentIndex() {
+    doReturn(IndexCoordinates.of("codeable_concept"))
+        .when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+    doReturn("pit-1").when(operations).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    doReturn(createDummyCursorSearchHitsPage(2, "pit-2"))
+        .when(operations).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+    var cursorOfOtherIndex = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false,
+        2, "*").nextCursor();
+    doReturn(IndexCoordinates.of("ontology")).when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+
+    assertThrows(InvalidSearchCursorException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, false, 2, cursorOfOtherIndex));
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_throwsInvalidCursorIfPointInTimeExpired() {
+    doReturn(IndexCoordinates.of("ontology")).when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+    doReturn("pit-1").when(operations).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    var searchContextMissing = new ElasticsearchException("search", ErrorResponse.of(r -> r
+        .status(404)
+        .error(e -> e.type("search_context_missing_exception").reason("No search context found for id [1]"))));
+    doReturn(createDummyCursorSearchHitsPage(2, null), createDummyCursorSearchHitsPage(4, "pit-2"))
+        .doThrow(new RuntimeException("search failed", searchContextMissing))
+        .when(operations).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+    var firstPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2, "*");
+    var secondPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2,
+        firstPage.nextCursor());
+
+    assertThrows(InvalidSearchCursorException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, false, 2, secondPage.nextCursor()));
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_closesPointInTimeIfSecondPageFails() {
+    doReturn(IndexCoordinates.of("ontology")).when(operations).getIndexCoordinatesFor(OntologyListItemDocument.class);
+    doReturn("pit-1").when(operations).openPointInTime(any(IndexCoordinates.class), any(Duration.class));
+    doReturn(createDummyCursorSearchHitsPage(2, null))
+        .doThrow(new RuntimeException("unavailable"))
+        .when(operations).search(any(NativeQuery.class), eq(OntologyListItemDocument.class));
+    var firstPage = terminologyEsService.performOntologySearchWithCursor("foo", null, null, null, null, false, 2, "*");
+
+    assertThrows(RuntimeException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, false, 2, firstPage.nextCursor()));
+    verify(operations).closePointInTime("pit-1");
+  }
+
+  @Test
+  void testPerformOntologySearchWithCursor_throwsOnInvalidPageSize() {
+    assertThrows(IllegalArgumentException.class, () -> terminologyEsService.performOntologySearchWithCursor(
+        "foo", null, null, null, null, false, 0, "*"));
+  }
+
   @ParameterizedTest
   @MethodSource("generateArgumentsForTestPerformExactSearch")
   void testPerformExactSearch(List<String> searchtermsFound, List<String> searchtermsNotFound, String terminology, String context) {
@@ -456,6 +702,29 @@ public class TerminologyEsServiceTest {
     return new SearchHitsImpl<>(totalHits, TotalHitsRelation.OFF, 10.0F, null, null, null, searchHitsList, null, null, null);
   }
 
+  private SearchHits<OntologyListItemDocument> createDummyCursorSearchHitsPage(int hits, String pointInTimeId) {
+    var searchHitsList = new ArrayList<SearchHit<OntologyListItemDocument>>();
+
+    for (int i = 0; i < hits; ++i) {
+      searchHitsList.add(
+          new SearchHit<>(
+              null,
+              null,
+              null,
+              10.0F,
+              new Object[]{10.0, (long) i},
+              null,
+              null,
+              null,
+              null,
+              null,
+              createDummyOntologyListItem(UUID.randomUUID().toString())
+          )
+      );
+    }
+    return new SearchHitsImpl<>(hits, TotalHitsRelation.EQUAL_TO, 10.0F, null, null, pointInTimeId, searchHitsList, null, null, null);
+  }
+
   private SearchHits<OntologyItemDocument> createDummySearchHitsPageWithOntologyItemDocuments(int totalHits) {
     var searchHitsList = new ArrayList<SearchHit<OntologyItemDocument>>();
 
@@ -77,6 +77,23 @@ class CodeableConceptRestControllerIT {
         .andExpect(jsonPath("$.results[0].termCode.display").value(dummyCcSearchResult.getResults().get(0).termCode().display()));
   }
 
+  @Test
+  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
+  void testSearchOntologyItemsCriteriaQuery_succeedsWithCursor() throws Exception {
+    CcSearchResult dummyCcSearchResult = createDummyCcSearchResult();
+    dummyCcSearchResult.setNextCursor("next-cursor");
+    doReturn(dummyCcSearchResult).when(codeableConceptService).performCodeableConceptSearchWithCursor(eq("foo"), isNull(), eq(20), eq("*"));
+
+    mockMvc.perform(get(URI.create(PATH_API + PATH_CODEABLE_CONCEPT + "/entry/search"))
+            .param("searchterm", "foo")
+            .param("cursor", "*")
+            .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalHits").value(dummyCcSearchResult.getTotalHits()))
+        .andExpect(jsonPath("$.results.length()").value(dummyCcSearchResult.getResults().size()))
+        .andExpect(jsonPath("$.nextCursor").value("next-cursor"));
+  }
+
   @Test
   @WithMockUser(roles = "DATAPORTAL_TEST_USER")
   void testSearchOntologyItemsBulk_succeedsWith200() throws Exception {
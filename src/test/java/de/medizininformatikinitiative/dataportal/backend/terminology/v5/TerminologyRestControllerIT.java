@@ -9,6 +9,7 @@ import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.Rate
 import de.medizininformatikinitiative.dataportal.backend.query.ratelimiting.RateLimitingServiceSpringConfig;
 import de.medizininformatikinitiative.dataportal.backend.terminology.TerminologyService;
 import de.medizininformatikinitiative.dataportal.backend.terminology.api.*;
+import de.medizininformatikinitiative.dataportal.backend.terminology.es.InvalidSearchCursorException;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.TerminologyEsService;
 import de.medizininformatikinitiative.dataportal.backend.terminology.es.model.*;
 import de.medizininformatikinitiative.dataportal.backend.validation.ValidationService;
@@ -35,6 +36,7 @@ import static de.medizininformatikinitiative.dataportal.backend.config.WebSecuri
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -93,6 +95,36 @@ public class TerminologyRestControllerIT {
         .andExpect(jsonPath("$.*", hasSize(0)));
   }
 
+  @Test
+  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
+  public void testPostCriteriaProfileData_succeedsWith200() throws Exception {
+    var ids = List.of(UUID.randomUUID(), UUID.randomUUID());
+    var idStrings = ids.stream().map(UUID::toString).toList();
+    var criteriaProfileDataList = createCriteriaProfileDataList(ids);
+    doReturn(criteriaProfileDataList).when(terminologyService).getCriteriaProfileData(idStrings);
+    doReturn(List.of(createDummyEsSearchResultEntry(idStrings.get(0)))).when(terminologyEsService).getSearchResultEntriesByHash(idStrings);
+    doReturn(criteriaProfileDataList).when(terminologyService).addDisplayDataToCriteriaProfileData(anyList(), anyList());
+
+    mockMvc.perform(post(URI.create(PATH_API + PATH_TERMINOLOGY + "/criteria-profile-data"))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(jsonUtil.writeValueAsString(idStrings))
+            .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.*", hasSize(2)))
+        .andExpect(jsonPath("$.[0].id").value(idStrings.get(0)))
+        .andExpect(jsonPath("$.[1].id").value(idStrings.get(1)));
+  }
+
+  @Test
+  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
+  public void testPostCriteriaProfileData_failsWith400OnMissingBody() throws Exception {
+    mockMvc.perform(post(URI.create(PATH_API + PATH_TERMINOLOGY + "/criteria-profile-data"))
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(csrf()))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   @WithMockUser(roles = "DATAPORTAL_TEST_USER")
   public void testGetUiProfiles_succeedsWith200() throws Exception {
@@ -212,10 +244,44 @@ public class TerminologyRestControllerIT {
         .andExpect(jsonPath("$.results[0].selectable").value(dummyEsSearchResult.results().get(0).selectable()))
         .andExpect(jsonPath("$.results[0].kdsModule").value(dummyEsSearchResult.results().get(0).kdsModule()))
         .andExpect(jsonPath("$.results[0].availability").value(dummyEsSearchResult.results().get(0).availability()))
-        .andExpect(jsonPath("$.results[0].context").value(dummyEsSearchResult.results().get(0).context()));
+        .andExpect(jsonPath("$.results[0].context").value(dummyEsSearchResult.results().get(0).context()))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
 
   }
 
+  @Test
+  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
+  public void testSearchOntologyItemsCriteriaQuery_succeedsWithCursor() throws Exception {
+    var dummyEsSearchResult = EsSearchResult.builder()
+        .totalHits(1)
+        .results(List.of(createDummyEsSearchResultEntry("abc-123")))
+        .nextCursor("next-cursor")
+        .build();
+    doReturn(dummyEsSearchResult).when(terminologyEsService).performOntologySearchWithCursor(eq("some-context"), isNull(), isNull(), isNull(), isNull(), eq(false), eq(20), eq("*"));
+
+    mockMvc.perform(get(URI.create(PATH_API + PATH_TERMINOLOGY + "/entry/search"))
+            .param("searchterm", "some-context")
+            .param("cursor", "*")
+            .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalHits").value(dummyEsSearchResult.totalHits()))
+        .andExpect(jsonPath("$.results[0].id").value(dummyEsSearchResult.results().get(0).id()))
+        .andExpect(jsonPath("$.nextCursor").value("next-cursor"));
+  }
+
+  @Test
+  @WithMockUser(roles = "DATAPORTAL_TEST_USER")
+  public void testSearchOntologyItemsCriteriaQuery_failsOnInvalidCursorWith400() throws Exception {
+    doThrow(new InvalidSearchCursorException(new IllegalArgumentException())).when(terminologyEsService)
+        .performOntologySearchWithCursor(any(String.class), isNull(), isNull(), isNull(), isNull(), anyBoolean(), anyInt(), any(String.class));
+
+    mockMvc.perform(get(URI.create(PATH_API + PATH_TERMINOLOGY + "/entry/search"))
+            .param("searchterm", "some-context")
+            .param("cursor", "invalid")
+            .with(csrf()))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void testSearchOntologyItemsCriteriaQuery_failsOnUnauthorized() throws Exception {
     doReturn(createDummyEsSearchResult(1)).when(terminologyEsService).performOntologySearchWithPaging(any(String.class), anyList(), anyList(), anyList(), anyList(), any(Boolean.class), any(Integer.class), any(Integer.class));